@@ -37,4 +37,14 @@ public interface ActiveNode extends Comparable<ActiveNode> {
 
   public String getHttpAddress();
 
+  /**
+   * @return the calls waiting in the queue of the rpc server for clients when
+   * the list was returned, or -1 if the node did not report its load
+   */
+  public int getCallQueueLength();
+
+  public int getActiveHandlers();
+
+  public int getHandlers();
+
 }
@@ -42,6 +42,10 @@ public ActiveNodePBImpl(ActiveNodeProto proto){
             proto.getHttpAddress(),
             proto.getServiceIpAddress(),
             proto.getServicePort());
+    if (proto.hasCallQueueLength()) {
+      setLoad(proto.getCallQueueLength(), proto.getActiveHandlers(),
+          proto.getHandlers());
+    }
   }
 
   public ActiveNodePBImpl(long id, String hostname, String ipAddress, int port,
@@ -155,6 +159,31 @@ public void setServiceRpcPort(int port) {
     builder.setServicePort(port);
   }
 
+  @Override
+  public int getCallQueueLength() {
+    ActiveNodeProtoOrBuilder p = viaProto ? proto : builder;
+    return p.hasCallQueueLength() ? p.getCallQueueLength() : -1;
+  }
+
+  @Override
+  public int getActiveHandlers() {
+    ActiveNodeProtoOrBuilder p = viaProto ? proto : builder;
+    return p.hasActiveHandlers() ? p.getActiveHandlers() : -1;
+  }
+
+  @Override
+  public int getHandlers() {
+    ActiveNodeProtoOrBuilder p = viaProto ? proto : builder;
+    return p.hasHandlers() ? p.getHandlers() : -1;
+  }
+
+  public void setLoad(int callQueueLength, int activeHandlers, int handlers) {
+    maybeInitBuilder();
+    builder.setCallQueueLength(callQueueLength);
+    builder.setActiveHandlers(activeHandlers);
+    builder.setHandlers(handlers);
+  }
+
   InetSocketAddress rpcAddressForDatanodes = null;
   @Override
   public InetSocketAddress getRpcServerAddressForDatanodes() {
@@ -157,6 +157,22 @@ public static void encodeData(byte[] gfTables, ByteBuffer[] inputs,
         s = gfTables[j * 32 + l * numInputs * 32 + 1];
         tableLine = GF256.gfMulTab()[s & 0xff];
 
+        if (input.order() == output.order()) {
+          // Multiplication and addition are done byte by byte, so 8 bytes can
+          // be read and written at once as long as both buffers use the same
+          // byte order. This saves 14 of the 16 bounds checked accesses of
+          // the loop below.
+          for (i = 0; i < times; i++, iPos += 8, oPos += 8) {
+            output.putLong(oPos, output.getLong(oPos) ^
+                gfMulWord(tableLine, input.getLong(iPos)));
+          }
+          for (i = extra; i < dataLen; i++, iPos++, oPos++) {
+            output.put(oPos, (byte) (output.get(oPos) ^
+                tableLine[0xff & input.get(iPos)]));
+          }
+          continue;
+        }
+
         for (i = 0; i < times; i++, iPos += 8, oPos += 8) {
           output.put(oPos + 0, (byte) (output.get(oPos + 0) ^
               tableLine[0xff & input.get(iPos + 0)]));
@@ -184,4 +200,18 @@ public static void encodeData(byte[] gfTables, ByteBuffer[] inputs,
     }
   }
 
+  /**
+   * Multiply each of the 8 bytes of the word by the coefficient of the given
+   * line of the multiplication table.
+   */
+  private static long gfMulWord(byte[] tableLine, long word) {
+    return (tableLine[(int) (word >>> 56) & 0xff] & 0xffL) << 56
+        | (tableLine[(int) (word >>> 48) & 0xff] & 0xffL) << 48
+        | (tableLine[(int) (word >>> 40) & 0xff] & 0xffL) << 40
+        | (tableLine[(int) (word >>> 32) & 0xff] & 0xffL) << 32
+        | (tableLine[(int) (word >>> 24) & 0xff] & 0xffL) << 24
+        | (tableLine[(int) (word >>> 16) & 0xff] & 0xffL) << 16
+        | (tableLine[(int) (word >>> 8) & 0xff] & 0xffL) << 8
+        | (tableLine[(int) word & 0xff] & 0xffL);
+  }
 }
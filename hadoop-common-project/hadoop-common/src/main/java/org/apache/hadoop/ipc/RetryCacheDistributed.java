@@ -26,6 +26,7 @@
 import io.hops.exception.TransactionContextException;
 import io.hops.metadata.hdfs.entity.RetryCacheEntry;
 import io.hops.transaction.EntityManager;
+import java.util.Collection;
 import java.util.Queue;
 import java.util.concurrent.LinkedBlockingQueue;
 
@@ -48,6 +49,10 @@ public class RetryCacheDistributed extends RetryCache{
    */
   public static class CacheEntryWithPayload extends CacheEntry {
     private byte[] payload;
+    // written to the database by the namenode in a later batch
+    private boolean staged = false;
+    // whether a lookup of the entry may read it from the database
+    private boolean readPersisted = true;
     
     CacheEntryWithPayload(byte[] clientId, int callId, byte[] payload,
         long expirationTime) {
@@ -68,6 +73,10 @@ public CacheEntryWithPayload(byte[] clientId, int callId, byte[] payload,
      this.payload = payload;
    }
 
+    public boolean isReadPersisted() {
+      return readPersisted;
+    }
+
     /** Override equals to avoid findbugs warnings */
     @Override
     public boolean equals(Object obj) {
@@ -94,10 +103,35 @@ public byte[] getPayload() {
    * @param expirationTime time for an entry to expire in nanoseconds
    */
   public RetryCacheDistributed(String cacheName, double percentage, long expirationTime) {
+    this(cacheName, percentage, expirationTime, false);
+  }
+
+  /**
+   * @param staged whether the entries are kept in memory and written to the
+   *     database in batches, see {@link #drainToPersist(Collection)}, instead
+   *     of in the transaction of each operation. The entries that are not
+   *     written yet are lost if the namenode fails.
+   */
+  public RetryCacheDistributed(String cacheName, double percentage,
+      long expirationTime, boolean staged) {
     super(cacheName, percentage, expirationTime);
     int capacity = LightWeightGSet.computeCapacity(percentage, cacheName);
     capacity = capacity > MAX_CAPACITY ? capacity : MAX_CAPACITY;
-    this.set = new LightWeightCacheDistributed(capacity, capacity, expirationTime, 0);
+    this.set = new LightWeightCacheDistributed(capacity, capacity,
+        expirationTime, 0, staged);
+  }
+
+  public boolean isStaged() {
+    return ((LightWeightCacheDistributed) set).isStaged();
+  }
+
+  /**
+   * Whether the entry of the call may be in the database, in which case the
+   * transaction of a staged cache reads it before the operation runs.
+   */
+  public boolean mayBePersisted(byte[] clientId, int callId) {
+    return ((LightWeightCacheDistributed) set).mayBePersisted(clientId,
+        callId);
   }
 
   /**
@@ -155,6 +189,11 @@ private CacheEntry waitForCompletion(CacheEntry newEntry) {
       // retried again.
       if (mapEntry.state != CacheEntry.SUCCESS) {
         mapEntry.state = CacheEntry.INPROGRESS;
+        if (isStaged() && mapEntry instanceof CacheEntryWithPayload) {
+          // the retry writes the new state of the entry
+          ((CacheEntryWithPayload) mapEntry).staged = true;
+          ((LightWeightCacheDistributed) set).stage(mapEntry);
+        }
       }
     }
     return mapEntry;
@@ -200,14 +239,40 @@ private static CacheEntryWithPayload newEntry(byte[] payload,
     return new CacheEntryWithPayload(Server.getClientId(), Server.getCallId(),
         payload, System.nanoTime() + expirationTime);
   }
+
+  private static CacheEntryWithPayload newStagedEntry(byte[] payload,
+      long expirationTime) {
+    CacheEntryWithPayload entry = newEntry(payload, expirationTime);
+    entry.staged = true;
+    return entry;
+  }
   
   /** Static method that provides null check for retryCache */
   public static CacheEntry waitForCompletion(RetryCacheDistributed cache) {
     if (skipRetryCache()) {
       return null;
     }
-    return cache != null ? cache
-        .waitForCompletion(newEntry(cache.expirationTime)) : null;
+    if (cache == null) {
+      return null;
+    }
+    return cache.waitForCompletion(cache.isStaged() ?
+        newStagedEntry(null, cache.expirationTime) :
+        newEntry(cache.expirationTime));
+  }
+
+  /**
+   * Same as {@link #waitForCompletion(RetryCacheDistributed)} on a staged
+   * cache, outside of any transaction, for a call that cannot be in the
+   * database. Only the entries in memory are looked up.
+   */
+  public static CacheEntry waitForCompletionInMemory(
+      RetryCacheDistributed cache) {
+    if (skipRetryCache()) {
+      return null;
+    }
+    CacheEntryWithPayload entry = newStagedEntry(null, cache.expirationTime);
+    entry.readPersisted = false;
+    return cache.waitForCompletion(entry);
   }
 
   /** Static method that provides null check for retryCache */
@@ -216,8 +281,12 @@ public static CacheEntryWithPayload waitForCompletion(RetryCacheDistributed cach
     if (skipRetryCache()) {
       return null;
     }
-    return (CacheEntryWithPayload) (cache != null ? cache
-        .waitForCompletion(newEntry(payload, cache.expirationTime)) : null);
+    if (cache == null) {
+      return null;
+    }
+    return (CacheEntryWithPayload) cache.waitForCompletion(cache.isStaged() ?
+        newStagedEntry(payload, cache.expirationTime) :
+        newEntry(payload, cache.expirationTime));
   }
 
   public static void setState(CacheEntry e, boolean success) {
@@ -225,6 +294,9 @@ public static void setState(CacheEntry e, boolean success) {
       return;
     }
     e.completed(success);
+    if (isStaged(e)) {
+      return;
+    }
     try{
     EntityManager.update(new RetryCacheEntry(e.getClientId(), e.getCallId(), null, e.getExpirationTime(),
         e.getState()));
@@ -239,6 +311,9 @@ public static void setState(CacheEntryWithPayload e, boolean success, byte[] pay
     }
     e.payload = payload;
     e.completed(success);
+    if (e.staged) {
+      return;
+    }
     EntityManager.update(new RetryCacheEntry(e.getClientId(), e.getCallId(), e.getPayload(), e.getExpirationTime(),
         e.getState()));
   }
@@ -250,7 +325,36 @@ public static void clear(RetryCacheDistributed cache) {
     }
   }
   
+  private static boolean isStaged(CacheEntry e) {
+    return e instanceof CacheEntryWithPayload &&
+        ((CacheEntryWithPayload) e).staged;
+  }
+
   public LinkedBlockingQueue<CacheEntry> getToRemove(){
     return ((LightWeightCacheDistributed)set).getToRemove();
   }
+
+  /**
+   * Moves the completed entries that are still to be written to the database
+   * to the given collection.
+   */
+  public int drainToPersist(Collection<CacheEntry> entries) {
+    return ((LightWeightCacheDistributed) set).drainToPersist(entries);
+  }
+
+  /**
+   * Queues again drained entries that could not be written.
+   */
+  public void restage(Collection<CacheEntry> entries) {
+    for (CacheEntry entry : entries) {
+      ((LightWeightCacheDistributed) set).stage(entry);
+    }
+  }
+
+  /**
+   * Called once the drained entries are in the database.
+   */
+  public void persisted(Collection<CacheEntry> entries) {
+    ((LightWeightCacheDistributed) set).persisted(entries);
+  }
 }
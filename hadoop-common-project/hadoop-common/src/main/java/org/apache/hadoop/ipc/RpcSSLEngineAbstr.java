@@ -17,6 +17,7 @@
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.util.DirectBufferPool;
 
 import javax.net.ssl.*;
 import java.io.*;
@@ -34,6 +35,9 @@ public abstract class RpcSSLEngineAbstr implements RpcSSLEngine {
     protected final SSLEngine sslEngine;
     protected final static int KB = 1024;
     private final ExecutorService exec = Executors.newSingleThreadExecutor();
+    // Shared by all the connections, the buffers are sized from the
+    // SSLSession so most of them have the same size
+    private final static DirectBufferPool BUFFER_POOL = new DirectBufferPool();
 
     /**
      *
@@ -56,36 +60,60 @@ public abstract class RpcSSLEngineAbstr implements RpcSSLEngine {
      *
      *          serverNet   clientNet
      *          Buffer      Buffer
+     *
+     * The buffers are direct buffers borrowed from a pool shared by all the
+     * connections. They are only held while the connection is reading or
+     * writing, except clientNetBuffer which is kept while it holds the start
+     * of a TLS record. The application data to send is wrapped directly
+     * from the buffer given to write, serverAppBuffer is only used during
+     * the handshake. Reads hold readLock and writes hold writeLock, the
+     * handshake holds both.
      */
-    protected ByteBuffer serverAppBuffer;
+    private ByteBuffer serverAppBuffer;
     protected ByteBuffer clientAppBuffer;
     protected ByteBuffer serverNetBuffer;
     protected ByteBuffer clientNetBuffer;
+    protected final Object readLock = new Object();
+    protected final Object writeLock = new Object();
 
     public RpcSSLEngineAbstr(SocketChannel socketChannel, SSLEngine sslEngine) {
         this.socketChannel = socketChannel;
         this.sslEngine = sslEngine;
-        //serverAppBuffer = ByteBuffer.allocate(sslEngine.getSession().getApplicationBufferSize());
-        serverAppBuffer = ByteBuffer.allocate(100 * KB);
-        //clientAppBuffer = ByteBuffer.allocate(sslEngine.getSession().getApplicationBufferSize());
-        clientAppBuffer = ByteBuffer.allocate(100 * KB);
-        //serverNetBuffer = ByteBuffer.allocate(sslEngine.getSession().getPacketBufferSize());
-        serverNetBuffer = ByteBuffer.allocate(100 * KB);
-        //clientNetBuffer = ByteBuffer.allocate(sslEngine.getSession().getPacketBufferSize());
-        clientNetBuffer = ByteBuffer.allocate(100 * KB);
     }
 
     @Override
     public boolean doHandshake() throws IOException {
+        synchronized (readLock) {
+            synchronized (writeLock) {
+                serverAppBuffer = borrowApplicationBuffer();
+                if (clientAppBuffer == null) {
+                    clientAppBuffer = borrowApplicationBuffer();
+                }
+                if (serverNetBuffer == null) {
+                    serverNetBuffer = borrowPacketBuffer();
+                }
+                if (clientNetBuffer == null) {
+                    clientNetBuffer = borrowPacketBuffer();
+                }
+                try {
+                    return doHandshakeInternal();
+                } finally {
+                    serverAppBuffer = returnBuffer(serverAppBuffer);
+                    clientAppBuffer = returnBuffer(clientAppBuffer);
+                    serverNetBuffer = returnBuffer(serverNetBuffer);
+                    releaseClientNetBuffer();
+                }
+            }
+        }
+    }
+
+    private boolean doHandshakeInternal() throws IOException {
         LOG.debug("Starting TLS handshake with peer");
 
         SSLEngineResult result;
         SSLEngineResult.HandshakeStatus handshakeStatus;
 
-        ByteBuffer serverAppBuffer = ByteBuffer.allocate(sslEngine.getSession().getApplicationBufferSize());
-        ByteBuffer clientAppBuffer = ByteBuffer.allocate(sslEngine.getSession().getApplicationBufferSize());
         serverNetBuffer.clear();
-        clientNetBuffer.clear();
 
         handshakeStatus = sslEngine.getHandshakeStatus();
         while (handshakeStatus != SSLEngineResult.HandshakeStatus.FINISHED
@@ -200,9 +228,19 @@ public boolean doHandshake() throws IOException {
     @Override
     public void close() throws IOException {
         sslEngine.closeOutbound();
-        doHandshake();
-        if (exec != null) {
-            exec.shutdown();
+        try {
+            doHandshake();
+        } finally {
+            if (exec != null) {
+                exec.shutdown();
+            }
+            synchronized (readLock) {
+                synchronized (writeLock) {
+                    clientAppBuffer = returnBuffer(clientAppBuffer);
+                    serverNetBuffer = returnBuffer(serverNetBuffer);
+                    clientNetBuffer = returnBuffer(clientNetBuffer);
+                }
+            }
         }
     }
 
@@ -213,6 +251,39 @@ public abstract int read(ReadableByteChannel channel, ByteBuffer buffer, Server.
         throws IOException;
     
 
+    protected ByteBuffer borrowApplicationBuffer() {
+        return BUFFER_POOL.getBuffer(sslEngine.getSession().getApplicationBufferSize());
+    }
+
+    protected ByteBuffer borrowPacketBuffer() {
+        return BUFFER_POOL.getBuffer(sslEngine.getSession().getPacketBufferSize());
+    }
+
+    /**
+     * Returns the buffer to the pool.
+     *
+     * @return null, to clear the reference to the returned buffer
+     */
+    protected static ByteBuffer returnBuffer(ByteBuffer buffer) {
+        if (buffer != null) {
+            BUFFER_POOL.returnBuffer(buffer);
+        }
+        return null;
+    }
+
+    /**
+     * Returns clientNetBuffer to the pool unless it holds data that was not
+     * unwrapped yet.
+     */
+    protected void releaseClientNetBuffer() {
+        if (clientNetBuffer != null && clientNetBuffer.position() == 0) {
+            clientNetBuffer = returnBuffer(clientNetBuffer);
+        }
+    }
+
+    /**
+     * Replaces a buffer whose content can be dropped by a bigger one.
+     */
     protected ByteBuffer enlargeApplicationBuffer(ByteBuffer buffer) {
         return enlargeBuffer(buffer, sslEngine.getSession().getApplicationBufferSize());
     }
@@ -223,22 +294,31 @@ protected ByteBuffer enlargePacketBuffer(ByteBuffer buffer) {
 
     protected ByteBuffer handleBufferUnderflow(ByteBuffer buffer) {
         // If there is no size issue, return the same buffer and let the
-        // peer read more data
-        if (sslEngine.getSession().getPacketBufferSize() < buffer.limit()) {
+        // peer read more data. The buffers are sized from the session, so
+        // compare with the capacity: the buffer is in write mode here
+        if (sslEngine.getSession().getPacketBufferSize() <= buffer.capacity()) {
             return buffer;
         } else {
-            ByteBuffer newBuffer = enlargePacketBuffer(buffer);
+            ByteBuffer newBuffer = BUFFER_POOL.getBuffer(newCapacity(buffer,
+                sslEngine.getSession().getPacketBufferSize()));
             buffer.flip();
             newBuffer.put(buffer);
+            returnBuffer(buffer);
             return newBuffer;
         }
     }
 
     private ByteBuffer enlargeBuffer(ByteBuffer buffer, int sessionProposedCapacity) {
+        ByteBuffer newBuffer = BUFFER_POOL.getBuffer(newCapacity(buffer, sessionProposedCapacity));
+        returnBuffer(buffer);
+        return newBuffer;
+    }
+
+    private static int newCapacity(ByteBuffer buffer, int sessionProposedCapacity) {
         if (sessionProposedCapacity > buffer.capacity()) {
-            return ByteBuffer.allocate(sessionProposedCapacity);
+            return sessionProposedCapacity;
         } else {
-            return ByteBuffer.allocate(buffer.capacity() * 2);
+            return buffer.capacity() * 2;
         }
     }
 }
@@ -436,6 +436,8 @@ protected ResponseBuffer initialValue() {
   private Listener listener = null;
   private Responder responder = null;
   private Handler[] handlers = null;
+  // handlers busy with a call
+  private final AtomicInteger activeHandlers = new AtomicInteger();
 
   private final boolean isSSLEnabled;
   private final CRLValidator crlValidator;
@@ -2724,8 +2726,11 @@ public void run() {
       SERVER.set(Server.this);
       while (running) {
         TraceScope traceScope = null;
+        boolean active = false;
         try {
           final Call call = callQueue.take(); // pop the queue; maybe blocked here
+          activeHandlers.incrementAndGet();
+          active = true;
           if (LOG.isDebugEnabled()) {
             LOG.debug(Thread.currentThread().getName() + ": " + call + " for RpcKind " + call.rpcKind);
           }
@@ -2758,6 +2763,9 @@ public void run() {
                 StringUtils.stringifyException(e));
           }
         } finally {
+          if (active) {
+            activeHandlers.decrementAndGet();
+          }
           CurCall.set(null);
           IOUtils.cleanup(LOG, traceScope);
         }
@@ -3305,6 +3313,22 @@ public int getCallQueueLen() {
     return callQueue.size();
   }
   
+  /**
+   * The number of handlers running a call.
+   * @return The number of handlers running a call.
+   */
+  public int getNumActiveHandlers() {
+    return activeHandlers.get();
+  }
+
+  /**
+   * The number of handler threads for this server.
+   * @return The number of handler threads.
+   */
+  public int getNumHandlers() {
+    return handlerCount;
+  }
+
   /**
    * The maximum size of the rpc call queue of this server.
    * @return The maximum size of the rpc call queue.
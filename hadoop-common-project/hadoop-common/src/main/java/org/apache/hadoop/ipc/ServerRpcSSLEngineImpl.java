@@ -32,10 +32,6 @@
 
 public class ServerRpcSSLEngineImpl extends RpcSSLEngineAbstr {
     private final Log LOG = LogFactory.getLog(ServerRpcSSLEngineImpl.class);
-    private final int KB = 1024;
-    private final int MB = 1024 * KB;
-    
-    private final int MAX_BUFFER_SIZE = 5 * MB;
     private final int maxUnWrappedDataLength;
     
     public ServerRpcSSLEngineImpl(SocketChannel socketChannel, SSLEngine sslEngine, int maxUnwrappedDataLength) {
@@ -46,46 +42,67 @@ public ServerRpcSSLEngineImpl(SocketChannel socketChannel, SSLEngine sslEngine,
     @Override
     public int write(WritableByteChannel channel, ByteBuffer buffer)
             throws IOException {
-        serverAppBuffer.clear();
-        if (serverAppBuffer.capacity() < buffer.capacity()) {
-            LOG.error("ServerAppBuffer capacity: " + serverAppBuffer.capacity()
-                + " Buffer size: " + buffer.capacity());
-            serverAppBuffer = ByteBuffer.allocate(Math.min(buffer.capacity(),
-                MAX_BUFFER_SIZE));
-        }
-        serverAppBuffer.put(buffer);
-        serverAppBuffer.flip();
-
         int bytesWritten = 0;
-        while (serverAppBuffer.hasRemaining()) {
-            serverNetBuffer.clear();
-            SSLEngineResult result = sslEngine.wrap(serverAppBuffer, serverNetBuffer);
-            switch (result.getStatus()) {
-                case OK:
-                    serverNetBuffer.flip();
-                    while (serverNetBuffer.hasRemaining()) {
-                        bytesWritten += channel.write(serverNetBuffer);
+        boolean closed = false;
+        synchronized (writeLock) {
+            serverNetBuffer = borrowPacketBuffer();
+            try {
+                // wrap straight from the caller's buffer, there is no need
+                // to copy it first
+                while (buffer.hasRemaining() && !closed) {
+                    serverNetBuffer.clear();
+                    SSLEngineResult result = sslEngine.wrap(buffer, serverNetBuffer);
+                    switch (result.getStatus()) {
+                        case OK:
+                            serverNetBuffer.flip();
+                            while (serverNetBuffer.hasRemaining()) {
+                                bytesWritten += channel.write(serverNetBuffer);
+                            }
+                            break;
+                        case BUFFER_OVERFLOW:
+                            serverNetBuffer = enlargePacketBuffer(serverNetBuffer);
+                            break;
+                        case BUFFER_UNDERFLOW:
+                            throw new SSLException("Buffer underflow should not happen after wrap");
+                        case CLOSED:
+                            closed = true;
+                            break;
+                        default:
+                            throw new IllegalStateException("Invalid SSL state: " + result.getStatus());
                     }
-                    //return bytesWritten;
-                    break;
-                case BUFFER_OVERFLOW:
-                    serverNetBuffer = enlargePacketBuffer(serverNetBuffer);
-                    break;
-                case BUFFER_UNDERFLOW:
-                    throw new SSLException("Buffer underflow should not happen after wrap");
-                case CLOSED:
-                    sslEngine.closeOutbound();
-                    doHandshake();
-                    return -1;
-                default:
-                    throw new IllegalStateException("Invalid SSL state: " + result.getStatus());
+                }
+            } finally {
+                serverNetBuffer = returnBuffer(serverNetBuffer);
             }
         }
+        if (closed) {
+            // outside of writeLock, the handshake takes readLock first
+            sslEngine.closeOutbound();
+            doHandshake();
+            return -1;
+        }
         return bytesWritten;
     }
     
     @Override
     public int read(ReadableByteChannel channel, ByteBuffer buffer, Server.Connection connection)
+        throws IOException {
+        synchronized (readLock) {
+            if (clientNetBuffer == null) {
+                clientNetBuffer = borrowPacketBuffer();
+            }
+            clientAppBuffer = borrowApplicationBuffer();
+            try {
+                return readInternal(channel, buffer, connection);
+            } finally {
+                clientAppBuffer = returnBuffer(clientAppBuffer);
+                // keep clientNetBuffer only if it holds a partial TLS record
+                releaseClientNetBuffer();
+            }
+        }
+    }
+
+    private int readInternal(ReadableByteChannel channel, ByteBuffer buffer, Server.Connection connection)
         throws IOException {
         int netRead = channel.read(clientNetBuffer);
         if (netRead == -1) {
@@ -122,6 +139,8 @@ public int read(ReadableByteChannel channel, ByteBuffer buffer, Server.Connectio
             } else if (unwrapResult.getStatus().equals(SSLEngineResult.Status
                 .BUFFER_UNDERFLOW)) {
                 read += unwrapResult.bytesProduced();
+                // the packet buffer may be too small for the record
+                clientNetBuffer = handleBufferUnderflow(clientNetBuffer);
                 break;
             } else if (unwrapResult.getStatus().equals(SSLEngineResult.Status
                 .BUFFER_OVERFLOW)) {
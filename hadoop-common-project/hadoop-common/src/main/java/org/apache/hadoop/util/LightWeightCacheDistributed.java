@@ -21,13 +21,22 @@
 
 import com.google.common.annotations.VisibleForTesting;
 import io.hops.exception.StorageException;
+import io.hops.exception.StorageCallPreventedException;
 import io.hops.exception.TransactionContextException;
 import io.hops.metadata.hdfs.entity.RetryCacheEntry;
 import io.hops.transaction.EntityManager;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.LinkedBlockingQueue;
 import org.apache.hadoop.ipc.RetryCache.CacheEntry;
 import org.apache.hadoop.ipc.RetryCacheDistributed;
 import org.apache.hadoop.ipc.RetryCacheDistributed.CacheEntryWithPayload;
+import org.apache.hadoop.ipc.Server;
+import org.apache.hadoop.util.bloom.BloomFilter;
+import org.apache.hadoop.util.bloom.Key;
+import org.apache.hadoop.util.hash.Hash;
 
 /**
  * A low memory footprint Cache which extends {@link LightWeightGSet}.
@@ -56,6 +65,27 @@
 public class LightWeightCacheDistributed extends LightWeightCache<CacheEntry, CacheEntry> {
   
   final private LinkedBlockingQueue<CacheEntry> toRemove = new LinkedBlockingQueue<>();
+
+  /**
+   * Hash functions and bits per expected entry of the Bloom filters, for
+   * about 1% of false positives.
+   */
+  private static final int BLOOM_HASHES = 7;
+  private static final int BLOOM_BITS_PER_ENTRY = 10;
+
+  // the entries are written to the database in batches by the namenode
+  // instead of in the transactions of the operations
+  private final boolean staged;
+  private final LinkedBlockingQueue<CacheEntry> toPersist =
+      new LinkedBlockingQueue<>();
+  // keys this cache wrote to the database, over the current and the previous
+  // expiration period, guarded by themselves
+  private final int bloomCapacity;
+  private final long bloomPeriod;
+  private BloomFilter persisted;
+  private BloomFilter persistedBefore;
+  private int persistedCount;
+  private long persistedSince;
   /**
    * Entries of {@link LightWeightCache}.
    */
@@ -79,8 +109,22 @@ public LightWeightCacheDistributed(final int recommendedLength,
       final int sizeLimit,
       final long creationExpirationPeriod,
       final long accessExpirationPeriod) {
-    super(recommendedLength, sizeLimit,
-        creationExpirationPeriod, accessExpirationPeriod, new Timer());
+    this(recommendedLength, sizeLimit, creationExpirationPeriod,
+        accessExpirationPeriod, false);
+  }
+
+  /**
+   * @param staged whether the entries are written in batches, see
+   *            {@link #drainToPersist(Collection)}, instead of in the
+   *            transactions of the operations
+   */
+  public LightWeightCacheDistributed(final int recommendedLength,
+      final int sizeLimit,
+      final long creationExpirationPeriod,
+      final long accessExpirationPeriod,
+      final boolean staged) {
+    this(recommendedLength, sizeLimit, creationExpirationPeriod,
+        accessExpirationPeriod, new Timer(), staged);
   }
 
   @VisibleForTesting
@@ -89,14 +133,120 @@ public LightWeightCacheDistributed(final int recommendedLength,
       final long creationExpirationPeriod,
       final long accessExpirationPeriod,
       final Timer timer) {
+    this(recommendedLength, sizeLimit, creationExpirationPeriod,
+        accessExpirationPeriod, timer, false);
+  }
+
+  @VisibleForTesting
+  LightWeightCacheDistributed(final int recommendedLength,
+      final int sizeLimit,
+      final long creationExpirationPeriod,
+      final long accessExpirationPeriod,
+      final Timer timer,
+      final boolean staged) {
     super(recommendedLength, sizeLimit, creationExpirationPeriod, accessExpirationPeriod, timer);
+    this.staged = staged;
+    this.bloomCapacity = staged ? Math.max(1024, sizeLimit) : 0;
+    this.bloomPeriod = creationExpirationPeriod;
+    if (staged) {
+      persisted = newBloomFilter();
+      persistedBefore = newBloomFilter();
+      persistedSince = timer.monotonicNowNanos();
+    }
+  }
+
+  private BloomFilter newBloomFilter() {
+    return new BloomFilter(bloomCapacity * BLOOM_BITS_PER_ENTRY, BLOOM_HASHES,
+        Hash.MURMUR_HASH);
+  }
+
+  private static Key toKey(CacheEntry entry) {
+    return toKey(entry.getClientId(), entry.getCallId());
+  }
+
+  private static Key toKey(byte[] clientId, int callId) {
+    return new Key(ByteBuffer.allocate(clientId.length + 4)
+        .put(clientId).putInt(callId).array());
+  }
+
+  public boolean isStaged() {
+    return staged;
+  }
+
+  /**
+   * Queues the entry to be written to the database once it completes.
+   */
+  public void stage(CacheEntry entry) {
+    toPersist.add(entry);
+  }
+
+  /**
+   * Moves the completed entries that are still to be written to the
+   * database to the given collection. The entries still in progress stay
+   * until they complete.
+   */
+  public int drainToPersist(Collection<CacheEntry> entries) {
+    List<CacheEntry> drained = new ArrayList<>();
+    toPersist.drainTo(drained);
+    int count = 0;
+    for (CacheEntry entry : drained) {
+      if (entry.getState() == CacheEntry.INPROGRESS) {
+        toPersist.add(entry);
+      } else {
+        entries.add(entry);
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Called once the entries are in the database.
+   */
+  public void persisted(Collection<CacheEntry> entries) {
+    synchronized (toPersist) {
+      long now = timer.monotonicNowNanos();
+      if (persistedCount + entries.size() > bloomCapacity ||
+          now - persistedSince > bloomPeriod) {
+        // the keys of the previous period expired by now
+        persistedBefore = persisted;
+        persisted = newBloomFilter();
+        persistedCount = 0;
+        persistedSince = now;
+      }
+      for (CacheEntry entry : entries) {
+        persisted.add(toKey(entry));
+      }
+      persistedCount += entries.size();
+    }
+  }
+
+  /**
+   * The entries are only read from the database if this cache may have
+   * written them, or if the call is retried, as it may then have been
+   * processed by another namenode. A first attempt cannot be in the
+   * database.
+   */
+  public boolean mayBePersisted(byte[] clientId, int callId) {
+    if (Server.getCallRetryCount() > 0) {
+      return true;
+    }
+    Key bloomKey = toKey(clientId, callId);
+    synchronized (toPersist) {
+      return persisted.membershipTest(bloomKey) ||
+          persistedBefore.membershipTest(bloomKey);
+    }
   }
 
 
   @Override
   protected CacheEntry evict() {
     CacheEntry polled= super.evict();
-    toRemove.add(polled);
+    if (!staged) {
+      // the staged entries are only removed by the range deletes of the
+      // expired entries
+      toRemove.add(polled);
+    }
     return polled;
   }
 
@@ -104,6 +254,9 @@ protected CacheEntry evict() {
   @Override
   public CacheEntry get(CacheEntry key) {
     CacheEntry entry = super.get(key);
+    if (staged) {
+      return entry != null ? entry : getPersisted(key);
+    }
     try{
     RetryCacheEntry existInDB = EntityManager.find(RetryCacheEntry.Finder.ByClientIdAndCallId, key.getClientId(), key.getCallId());
     if(existInDB != null && existInDB.getExpirationTime()  > timer.monotonicNowNanos()){
@@ -122,9 +275,48 @@ public CacheEntry get(CacheEntry key) {
     return entry;
   }
 
+  /**
+   * The row is read by the lock phase of the transaction when it may be in
+   * the database, see {@link #mayBePersisted(byte[], int)}.
+   */
+  private CacheEntry getPersisted(CacheEntry key) {
+    if (key instanceof CacheEntryWithPayload &&
+        !((CacheEntryWithPayload) key).isReadPersisted()) {
+      return null;
+    }
+    if (!mayBePersisted(key.getClientId(), key.getCallId())) {
+      return null;
+    }
+    try {
+      RetryCacheEntry existInDB = EntityManager.find(
+          RetryCacheEntry.Finder.ByClientIdAndCallId, key.getClientId(),
+          key.getCallId());
+      if (existInDB != null &&
+          existInDB.getExpirationTime() > timer.monotonicNowNanos()) {
+        byte state = existInDB.getState() == CacheEntry.INPROGRESS ?
+            CacheEntry.FAILED : existInDB.getState();
+        CacheEntry exist = new CacheEntryWithPayload(existInDB.getClientId(),
+            existInDB.getCallId(), existInDB.getPayload(),
+            existInDB.getExpirationTime(), state);
+        super.put(exist, accessExpirationPeriod);
+        return exist;
+      }
+    } catch (StorageCallPreventedException ex) {
+      // the lock phase found it could not be in the database
+      LOG.debug("retry cache entry not read by the transaction", ex);
+    } catch (StorageException | TransactionContextException ex) {
+      LOG.error("failed to get entry from DB", ex);
+    }
+    return null;
+  }
+
   @Override
   public CacheEntry put(final CacheEntry entry) {
     final CacheEntry existing = super.put(entry);
+    if (staged) {
+      stage(entry);
+      return existing;
+    }
     try{
     byte[] payload = null;
     if(entry instanceof CacheEntryWithPayload){
@@ -141,7 +333,7 @@ public CacheEntry put(final CacheEntry entry) {
   @Override
   public CacheEntry remove(CacheEntry key) {
     final CacheEntry removed = super.remove(key);
-    if (removed != null) {
+    if (removed != null && !staged) {
       toRemove.add(removed);
     }
     return removed;
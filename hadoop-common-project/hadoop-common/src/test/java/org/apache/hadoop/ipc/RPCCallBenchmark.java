@@ -17,10 +17,13 @@
  */
 package org.apache.hadoop.ipc;
 
+import java.io.File;
 import java.io.IOException;
+import java.lang.management.BufferPoolMXBean;
 import java.lang.management.ManagementFactory;
 import java.lang.management.ThreadMXBean;
 import java.net.InetSocketAddress;
+import java.nio.file.Files;
 import java.security.PrivilegedExceptionAction;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -40,6 +43,8 @@
 import org.apache.hadoop.ipc.protobuf.TestRpcServiceProtos.TestProtobufRpcProto;
 import org.apache.hadoop.net.NetUtils;
 import org.apache.hadoop.security.UserGroupInformation;
+import org.apache.hadoop.security.ssl.HopsSSLTestUtils;
+import org.apache.hadoop.security.ssl.KeyStoreTestUtil;
 import org.apache.hadoop.test.MultithreadedTestUtil;
 import org.apache.hadoop.test.MultithreadedTestUtil.TestContext;
 import org.apache.hadoop.util.Tool;
@@ -67,6 +72,7 @@ private static class MyOptions {
     private int port = 0;
     public int secondsToRun = 15;
     private int msgSize = 1024;
+    private boolean tls = false;
     public Class<? extends RpcEngine> rpcEngine =
       WritableRpcEngine.class;
     
@@ -139,6 +145,11 @@ private Options buildOptions() {
           .withDescription("engine to use")
           .create('e'));
       
+      opts.addOption(
+          OptionBuilder.withLongOpt("tls").hasArg(false)
+          .withDescription("use TLS between the clients and the server")
+          .create('T'));
+
       opts.addOption(
           OptionBuilder.withLongOpt("help").hasArg(false)
           .withDescription("show this screen")
@@ -180,6 +191,9 @@ private void processOptions(CommandLine line, Options opts)
       if (line.hasOption('h')) {
         host = line.getOptionValue('h');
       }
+      if (line.hasOption('T')) {
+        tls = true;
+      }
       if (line.hasOption('e')) {
         String eng = line.getOptionValue('e');
         if ("protobuf".equals(eng)) {
@@ -213,7 +227,8 @@ public String toString() {
       return "rpcEngine=" + rpcEngine + "\nserverThreads=" + serverThreads
           + "\nserverReaderThreads=" + serverReaderThreads + "\nclientThreads="
           + clientThreads + "\nhost=" + host + "\nport=" + getPort()
-          + "\nsecondsToRun=" + secondsToRun + "\nmsgSize=" + msgSize;
+          + "\nsecondsToRun=" + secondsToRun + "\nmsgSize=" + msgSize
+          + "\ntls=" + tls;
     }
   }
 
@@ -268,6 +283,12 @@ public int run(String[] args) throws Exception {
     // Set RPC engine to the configured RPC engine
     RPC.setProtocolEngine(conf, TestRpcService.class, opts.rpcEngine);
 
+    TLSSetup tlsSetup = null;
+    if (opts.tls) {
+      tlsSetup = new TLSSetup();
+      tlsSetup.setup(conf);
+    }
+
     Server server = startServer(opts);
     try {
       
@@ -309,6 +330,8 @@ public int run(String[] args) throws Exception {
             System.out.println("CPU time per call on server: " +
                 (cpuNanosServer / totalCalls) + " ns");
           }
+          // measured while the connections are still open
+          printMemoryUsage();
         } else {
           System.out.println("No calls!");
         }
@@ -323,11 +346,43 @@ public int run(String[] args) throws Exception {
       if (server != null) {
         server.stop();
       }
+      if (tlsSetup != null) {
+        tlsSetup.destroy();
+      }
     }
     
     return 0;
   }
 
+  private static void printMemoryUsage() {
+    System.gc();
+    System.out.println("Heap used: " + ManagementFactory.getMemoryMXBean()
+        .getHeapMemoryUsage().getUsed() / 1024 + " KB");
+    for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(
+        BufferPoolMXBean.class)) {
+      if ("direct".equals(pool.getName())) {
+        System.out.println("Direct buffers used: " + pool.getCount() + " ("
+            + pool.getMemoryUsed() / 1024 + " KB)");
+      }
+    }
+  }
+
+  /**
+   * Creates the crypto material of the server and of the clients and
+   * enables TLS for the RPCs. The certificate of the clients is issued to
+   * the current user.
+   */
+  private static class TLSSetup extends HopsSSLTestUtils {
+
+    private void setup(Configuration conf) throws Exception {
+      String outDir = Files.createTempDirectory("rpc-tls-benchmark")
+          .toString();
+      filesToPurge = prepareCryptoMaterial(conf, outDir);
+      setCryptoConfig(conf, new File(KeyStoreTestUtil.getClasspathDir(
+          RPCCallBenchmark.class)).getAbsolutePath());
+    }
+  }
+
 
   private TestContext setupClientTestContext(final MyOptions opts)
       throws IOException, InterruptedException {
@@ -340,8 +395,13 @@ private TestContext setupClientTestContext(final MyOptions opts)
     int numProxies = opts.clientThreads;
     final RpcServiceWrapper proxies[] = new RpcServiceWrapper[numProxies];
     for (int i = 0; i < numProxies; i++) {
+      // with TLS the user must match the CN of the client certificate, a
+      // distinct UGI still gets its own connection
+      String user = opts.tls
+          ? UserGroupInformation.getCurrentUser().getUserName()
+          : "proxy-" + i;
       proxies[i] =
-        UserGroupInformation.createUserForTesting("proxy-" + i,new String[]{})
+        UserGroupInformation.createUserForTesting(user, new String[]{})
         .doAs(new PrivilegedExceptionAction<RpcServiceWrapper>() {
           @Override
           public RpcServiceWrapper run() throws Exception {
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.ipc;
+
+import org.apache.hadoop.ipc.RPC.RpcKind;
+import org.apache.hadoop.ipc.RetryCache.CacheEntry;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the staged mode of {@link RetryCacheDistributed}, which does not
+ * touch the database for the first attempt of a call.
+ */
+public class TestRetryCacheDistributed {
+  private static final byte[] CLIENT_ID = ClientId.getClientId();
+
+  @After
+  public void tearDown() {
+    Server.getCurCall().set(null);
+  }
+
+  @Test
+  public void testStagedEntries() {
+    RetryCacheDistributed cache = new RetryCacheDistributed("TestStaged", 1,
+        100 * 1000 * 1000 * 1000L, true);
+    assertTrue(cache.isStaged());
+
+    Server.getCurCall().set(newCall(1));
+    CacheEntry first = RetryCacheDistributed.waitForCompletion(cache);
+    Server.getCurCall().set(newCall(2));
+    CacheEntry second = RetryCacheDistributed.waitForCompletion(cache);
+    assertNotSame(first, second);
+
+    // only the completed entries are written
+    RetryCacheDistributed.setState(first, true);
+    List<CacheEntry> toPersist = new ArrayList<>();
+    assertEquals(1, cache.drainToPersist(toPersist));
+    assertSame(first, toPersist.get(0));
+    cache.persisted(toPersist);
+
+    RetryCacheDistributed.setState(second, false);
+    toPersist.clear();
+    assertEquals(1, cache.drainToPersist(toPersist));
+    assertSame(second, toPersist.get(0));
+    toPersist.clear();
+    assertEquals(0, cache.drainToPersist(toPersist));
+
+    // a failed call is run again and its new state written again
+    CacheEntry retried = RetryCacheDistributed.waitForCompletion(cache);
+    assertSame(second, retried);
+    RetryCacheDistributed.setState(retried, true);
+    assertEquals(1, cache.drainToPersist(toPersist));
+
+    // the successful call is answered from memory
+    Server.getCurCall().set(newCall(1));
+    CacheEntry cached = RetryCacheDistributed.waitForCompletion(cache);
+    assertSame(first, cached);
+    assertTrue(cached.isSuccess());
+  }
+
+  private static Server.Call newCall(int callId) {
+    return new Server.Call(callId, 0, null, null, RpcKind.RPC_PROTOCOL_BUFFER,
+        CLIENT_ID);
+  }
+}
@@ -57,6 +57,7 @@ public class EmptyCountersQueueException extends RuntimeException {
   }
   
   private int available;
+  private long taken;
   private Queue<Counter> queue;
 
   public CountersQueue() {
@@ -79,6 +80,7 @@ public synchronized long next() {
     while (c != null) {
       if (c.hasNext()) {
         available--;
+        taken++;
         return c.next();
       } else {
         queue.remove();
@@ -92,6 +94,17 @@ public synchronized boolean has(int expectedNumOfIds) {
     return available >= expectedNumOfIds && expectedNumOfIds != 0;
   }
 
+  public synchronized int getAvailable() {
+    return available;
+  }
+
+  /**
+   * @return the number of ids handed out since the queue was created
+   */
+  public synchronized long getTaken() {
+    return taken;
+  }
+
   @Override
   public String toString() {
     return "CountersQueue{" + "available=" + available + ", queue=" + queue +
@@ -16,35 +16,146 @@
 package io.hops.common;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Hands out ids from ranges reserved in the database. The ranges are fetched
+ * by the {@link IDsMonitor} thread, never by the handler threads, which only
+ * wake it up when the ids available drop below the threshold. A handler
+ * that finds no id left fails right away rather than waiting for the
+ * monitor with its transaction open.
+ * <p>
+ * The size of a range follows the rate at which ids are taken, so that one
+ * range lasts about one check interval of the monitor, and the monitor keeps
+ * reservedBatches ranges available to absorb bursts.
+ */
 public abstract class IDsGenerator{
 
-  private int batchSize;
-  private int threshold;
+  /**
+   * Weight of the last sample in the moving average of the consumption rate.
+   */
+  private static final double RATE_ALPHA = 0.3;
+
+  private final int minBatchSize;
+  private final int maxBatchSize;
+  private final float threshold;
+  private final int reservedBatches;
+  private final long checkInterval;
   private CountersQueue cQ;
 
-  IDsGenerator(int batchSize, float threshold){
-    this.batchSize = batchSize;
-    this.threshold = (int)(threshold * batchSize);
+  private volatile int batchSize;
+  private double rate;
+  private long lastTaken;
+  private long lastRateUpdate;
+
+  private final AtomicBoolean refillRequested = new AtomicBoolean();
+  private final AtomicLong emptyQueue = new AtomicLong();
+  private volatile long refills;
+  private volatile long refillTime;
+
+  IDsGenerator(int minBatchSize, int maxBatchSize, float threshold,
+      int reservedBatches, long checkInterval) {
+    this.minBatchSize = minBatchSize;
+    this.maxBatchSize = Math.max(minBatchSize, maxBatchSize);
+    this.threshold = threshold;
+    this.reservedBatches = Math.max(1, reservedBatches);
+    this.checkInterval = checkInterval;
+    this.batchSize = minBatchSize;
     cQ = new CountersQueue();
+    lastRateUpdate = System.currentTimeMillis();
   }
 
   public long getUniqueID() {
-    return cQ.next();
+    long id;
+    try {
+      id = cQ.next();
+    } catch (CountersQueue.EmptyCountersQueueException e) {
+      emptyQueue.incrementAndGet();
+      requestRefill();
+      throw e;
+    }
+    if (cQ.getAvailable() < getLowWatermark()) {
+      requestRefill();
+    }
+    return id;
+  }
+
+  private void requestRefill() {
+    if (refillRequested.compareAndSet(false, true)) {
+      IDsMonitor.getInstance().wakeUp();
+    }
+  }
+
+  boolean isRefillRequested() {
+    return refillRequested.get();
+  }
+
+  private int getLowWatermark() {
+    return (int) (threshold * batchSize * reservedBatches);
   }
 
+  /**
+   * Called by the monitor thread, fetches ranges until reservedBatches ranges
+   * worth of ids are available.
+   */
   protected synchronized  boolean getMoreIdsIfNeeded()
       throws IOException {
-    if (!cQ.has(threshold)) {
+    refillRequested.set(false);
+    updateBatchSize();
+    int reserve = batchSize * reservedBatches;
+    boolean fetched = false;
+    for (int i = 0; i < reservedBatches && !cQ.has(reserve); i++) {
+      long start = System.currentTimeMillis();
       cQ.addCounter(incrementCounter(batchSize));
-      return true;
+      refillTime += System.currentTimeMillis() - start;
+      refills++;
+      fetched = true;
     }
-    return false;
+    return fetched;
+  }
+
+  private void updateBatchSize() {
+    long now = System.currentTimeMillis();
+    long elapsed = now - lastRateUpdate;
+    if (elapsed <= 0 || checkInterval <= 0) {
+      return;
+    }
+    long taken = cQ.getTaken();
+    double sample = (double) (taken - lastTaken) / elapsed;
+    rate = RATE_ALPHA * sample + (1 - RATE_ALPHA) * rate;
+    lastTaken = taken;
+    lastRateUpdate = now;
+
+    long wanted = (long) Math.ceil(rate * checkInterval);
+    batchSize = (int) Math.max(minBatchSize, Math.min(maxBatchSize, wanted));
   }
 
   protected CountersQueue getCQ() {
     return cQ;
   }
 
+  int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * @return how many times a handler found no id available
+   */
+  long getEmptyQueueCount() {
+    return emptyQueue.get();
+  }
+
+  long getRefills() {
+    return refills;
+  }
+
+  /**
+   * @return the total time spent fetching ranges, in milliseconds
+   */
+  long getRefillTime() {
+    return refillTime;
+  }
+
   abstract CountersQueue.Counter incrementCounter(int inc) throws IOException ;
 }
@@ -29,7 +29,8 @@ public class IDsGeneratorFactory {
 
   private class INodeIDGen extends IDsGenerator{
     INodeIDGen(int batchSize, float threshold) {
-      super(batchSize, threshold);
+      super(batchSize, batchSize * maxBatchSizeMultiplier, threshold,
+          reservedBatches, checkInterval);
     }
 
     @Override
@@ -40,7 +41,8 @@ CountersQueue.Counter incrementCounter(int inc) throws IOException {
 
   private class BlockIDGen extends IDsGenerator{
     BlockIDGen(int batchSize, float threshold) {
-      super(batchSize, threshold);
+      super(batchSize, batchSize * maxBatchSizeMultiplier, threshold,
+          reservedBatches, checkInterval);
     }
 
     @Override
@@ -51,7 +53,8 @@ CountersQueue.Counter incrementCounter(int inc) throws IOException {
 
   private class QuotaUpdateIDGen extends IDsGenerator{
     QuotaUpdateIDGen(int batchSize, float threshold) {
-      super(batchSize, threshold);
+      super(batchSize, batchSize * maxBatchSizeMultiplier, threshold,
+          reservedBatches, checkInterval);
     }
 
     @Override
@@ -73,10 +76,15 @@ public static IDsGeneratorFactory getInstance(){
 
   private List<IDsGenerator> iDsGenerators = Lists.newArrayList();
 
+  private int maxBatchSizeMultiplier = 1;
+  private int reservedBatches = 1;
+  private long checkInterval;
+
   Boolean isConfigured = false;
   void setConfiguration(int inodeIdsBatchSize, int blockIdsBatchSize,
       int quotaUpdateIdsBatchSize, float inodeIdsThreshold,
-      float blockIdsThreshold, float quotaUpdateIdsThreshold) {
+      float blockIdsThreshold, float quotaUpdateIdsThreshold,
+      int maxBatchSizeMultiplier, int reservedBatches, long checkInterval) {
 
     synchronized (isConfigured) {
       if (isConfigured) {
@@ -87,6 +95,10 @@ void setConfiguration(int inodeIdsBatchSize, int blockIdsBatchSize,
       isConfigured = true;
     }
 
+    this.maxBatchSizeMultiplier = Math.max(1, maxBatchSizeMultiplier);
+    this.reservedBatches = reservedBatches;
+    this.checkInterval = checkInterval;
+
     iDsGenerators.add(new INodeIDGen(inodeIdsBatchSize, inodeIdsThreshold));
     iDsGenerators.add(new BlockIDGen(blockIdsBatchSize, blockIdsThreshold));
     iDsGenerators.add(new QuotaUpdateIDGen(quotaUpdateIdsBatchSize,
@@ -112,8 +124,38 @@ void getNewIDs() throws IOException {
     for(IDsGenerator iDsGenerator : iDsGenerators){
       if(iDsGenerator.getMoreIdsIfNeeded()) {
         LOG.debug("get more ids for [" + iDsGenerator.getClass().getSimpleName
-            () + "] " + iDsGenerator.getCQ());
+            () + "] batch size " + iDsGenerator.getBatchSize() + " " +
+            iDsGenerator.getCQ());
       }
     }
   }
+
+  public long getIdsRefills() {
+    long refills = 0;
+    for (IDsGenerator iDsGenerator : iDsGenerators) {
+      refills += iDsGenerator.getRefills();
+    }
+    return refills;
+  }
+
+  /**
+   * @return the average time to fetch a range of ids, in milliseconds
+   */
+  public long getIdsRefillAvgTime() {
+    long refills = 0;
+    long time = 0;
+    for (IDsGenerator iDsGenerator : iDsGenerators) {
+      refills += iDsGenerator.getRefills();
+      time += iDsGenerator.getRefillTime();
+    }
+    return refills == 0 ? 0 : time / refills;
+  }
+
+  public long getIdsEmptyQueueCount() {
+    long count = 0;
+    for (IDsGenerator iDsGenerator : iDsGenerators) {
+      count += iDsGenerator.getEmptyQueueCount();
+    }
+    return count;
+  }
 }
@@ -21,12 +21,14 @@
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 public class IDsMonitor implements Runnable {
 
   private static final Log LOG = LogFactory.getLog(IDsMonitor.class);
   private static IDsMonitor instance = null;
-  private Thread th = null;
+  private volatile Thread th = null;
 
   private int checkInterval;
   private IDsMonitor() {
@@ -40,6 +42,9 @@ public static IDsMonitor getInstance() {
   }
 
   public void setConfiguration(Configuration conf) {
+    checkInterval = conf.getInt(DFSConfigKeys.DFS_NAMENODE_IDSMONITOR_CHECK_INTERVAL_IN_MS,
+        DFSConfigKeys.DFS_NAMENODE_IDSMONITOR_CHECK_INTERVAL_IN_MS_DEFAULT);
+
     IDsGeneratorFactory.getInstance().setConfiguration(conf.getInt
             (DFSConfigKeys.DFS_NAMENODE_INODEID_BATCH_SIZE,
                 DFSConfigKeys.DFS_NAMENODE_INODEID_BATCH_SIZE_DEFAULT),
@@ -53,15 +58,16 @@ public void setConfiguration(Configuration conf) {
             DFSConfigKeys.DFS_NAMENODE_BLOCKID_UPDATE_THRESHOLD_DEFAULT),
         conf.getFloat(
             DFSConfigKeys.DFS_NAMENODE_QUOTA_UPDATE_ID_UPDATE_THRESHOLD,
-            DFSConfigKeys.DFS_NAMENODE_QUOTA_UPDATE_ID_UPDATE_THRESHOLD_DEFAULT)
+            DFSConfigKeys.DFS_NAMENODE_QUOTA_UPDATE_ID_UPDATE_THRESHOLD_DEFAULT),
+        conf.getInt(DFSConfigKeys.DFS_NAMENODE_IDS_MAX_BATCH_SIZE_MULTIPLIER,
+            DFSConfigKeys.DFS_NAMENODE_IDS_MAX_BATCH_SIZE_MULTIPLIER_DEFAULT),
+        conf.getInt(DFSConfigKeys.DFS_NAMENODE_IDS_RESERVED_BATCHES,
+            DFSConfigKeys.DFS_NAMENODE_IDS_RESERVED_BATCHES_DEFAULT),
+        checkInterval
         );
-
-    checkInterval = conf.getInt(DFSConfigKeys.DFS_NAMENODE_IDSMONITOR_CHECK_INTERVAL_IN_MS,
-        DFSConfigKeys.DFS_NAMENODE_IDSMONITOR_CHECK_INTERVAL_IN_MS_DEFAULT);
   }
 
 
-
   public void start() {
     getNewIds(); // Avoid race conditions between operations and the first acquisition of ids
     th = new Thread(this, "IDsMonitor");
@@ -69,21 +75,28 @@ public void start() {
     th.start();
   }
 
+  /**
+   * Makes the monitor check the generators now rather than at the end of the
+   * check interval. Does not block.
+   */
+  void wakeUp() {
+    Thread monitor = th;
+    if (monitor != null) {
+      LockSupport.unpark(monitor);
+    }
+  }
+
   @Override
   public void run() {
     while (true) {
+      LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(checkInterval));
       getNewIds();
     }
   }
 
   private void getNewIds() {
     try {
-
       IDsGeneratorFactory.getInstance().getNewIDs();
-
-      Thread.sleep(checkInterval);
-    } catch (InterruptedException ex) {
-      LOG.warn("IDsMonitor interrupted: " + ex);
     } catch (IOException ex) {
       LOG.warn("IDsMonitor got exception: " + ex);
     }
@@ -18,7 +18,6 @@
 import io.hops.exception.StorageException;
 import io.hops.exception.TransactionContextException;
 import io.hops.metadata.HdfsStorageFactory;
-import io.hops.metadata.adaptor.INodeDALAdaptor;
 import io.hops.metadata.hdfs.dal.AceDataAccess;
 import io.hops.metadata.hdfs.dal.BlockLookUpDataAccess;
 import io.hops.metadata.hdfs.dal.INodeDataAccess;
@@ -206,7 +205,7 @@ public Object performTask() throws IOException {
           return null;
         }
         INodeIdentifier inodeIdent = new INodeIdentifier(blu.getInodeId());
-        INodeDALAdaptor ida = (INodeDALAdaptor) HdfsStorageFactory
+        INodeDataAccess<INode> ida = (INodeDataAccess) HdfsStorageFactory
             .getDataAccess(INodeDataAccess.class);
         INode inode = ida.findInodeByIdFTIS(blu.getInodeId());
         if (inode != null) {
@@ -232,7 +231,7 @@ public static INodeIdentifier resolveINodeFromBlock(final Block b)
     if (b instanceof BlockInfo || b instanceof BlockInfoUnderConstruction) {
       INodeIdentifier inodeIden =
           new INodeIdentifier(((BlockInfo) b).getInodeId());
-      INodeDALAdaptor ida = (INodeDALAdaptor) HdfsStorageFactory
+      INodeDataAccess<INode> ida = (INodeDataAccess) HdfsStorageFactory
           .getDataAccess(INodeDataAccess.class);
       INode inode = ida.findInodeByIdFTIS(((BlockInfo) b).getInodeId());
       if (inode != null) {
@@ -274,7 +273,7 @@ public static INodeIdentifier resolveINodeFromId(final int id)
 
           @Override
           public Object performTask() throws StorageException, IOException {
-            INodeDALAdaptor ida = (INodeDALAdaptor) HdfsStorageFactory
+            INodeDataAccess<INode> ida = (INodeDataAccess) HdfsStorageFactory
                 .getDataAccess(INodeDataAccess.class);
             INode inode = ida.findInodeByIdFTIS(id);
             INodeIdentifier inodeIdent = new INodeIdentifier(id);
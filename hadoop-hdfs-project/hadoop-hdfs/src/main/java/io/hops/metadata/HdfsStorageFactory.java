@@ -120,19 +120,24 @@
 import org.apache.hadoop.hdfs.server.namenode.INodeFile;
 import org.apache.hadoop.hdfs.server.namenode.INodeSymlink;
 import org.apache.hadoop.hdfs.server.namenode.Lease;
+import org.apache.hadoop.hdfs.server.namenode.metrics.TransactionMetrics;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class HdfsStorageFactory {
 
@@ -140,6 +145,9 @@ public class HdfsStorageFactory {
   private static DalStorageFactory dStorageFactory;
   private static Map<Class, EntityDataAccess> dataAccessAdaptors =
       new HashMap<>();
+  // the counting wrappers of the data accesses
+  private static final ConcurrentMap<EntityDataAccess, EntityDataAccess>
+      roundTripCounters = new ConcurrentHashMap<>();
   
   public static StorageConnector getConnector() {
     return dStorageFactory.getConnector();
@@ -165,6 +173,7 @@ public static void setConfiguration(Configuration conf) throws IOException {
                 .DFS_TRANSACTION_STATS_WRITER_ROUND_DEFAULT), conf
             .getBoolean(DFSConfigKeys.DFS_TRANSACTION_STATS_DETAILED_ENABLED,
                 DFSConfigKeys.DFS_TRANSACTION_STATS_DETAILED_ENABLED_DEFAULT));
+    TransactionMetrics.getInstance().setConfiguration(conf);
     if (!isDALInitialized) {
       HdfsVariables.registerDefaultValues(conf);
       addToClassPath(conf.get(DFSConfigKeys.DFS_STORAGE_DRIVER_JAR_FILE,
@@ -335,10 +344,49 @@ public StorageConnector getConnector() {
   }
 
   public static EntityDataAccess getDataAccess(Class type) {
+    EntityDataAccess dataAccess;
     if (dataAccessAdaptors.containsKey(type)) {
-      return dataAccessAdaptors.get(type);
+      dataAccess = dataAccessAdaptors.get(type);
+    } else {
+      dataAccess = dStorageFactory.getDataAccess(type);
     }
-    return dStorageFactory.getDataAccess(type);
+    if (dataAccess != null && type.isInterface() &&
+        TransactionMetrics.getInstance().isCountingRoundTrips()) {
+      return countRoundTrips(type, dataAccess);
+    }
+    return dataAccess;
+  }
+
+  /**
+   * Wraps the data access so that every call to it is counted as a round
+   * trip of the transaction running in the calling thread.
+   */
+  private static EntityDataAccess countRoundTrips(Class type,
+      final EntityDataAccess dataAccess) {
+    EntityDataAccess counting = roundTripCounters.get(dataAccess);
+    if (counting == null) {
+      counting = (EntityDataAccess) Proxy.newProxyInstance(
+          type.getClassLoader(), new Class[]{type}, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args)
+                throws Throwable {
+              if (method.getDeclaringClass() != Object.class) {
+                TransactionMetrics.getInstance().roundTrip();
+              }
+              try {
+                return method.invoke(dataAccess, args);
+              } catch (InvocationTargetException e) {
+                throw e.getCause();
+              }
+            }
+          });
+      EntityDataAccess existing = roundTripCounters.putIfAbsent(dataAccess,
+          counting);
+      if (existing != null) {
+        counting = existing;
+      }
+    }
+    return counting;
   }
   
   public static boolean formatStorage() throws StorageException {
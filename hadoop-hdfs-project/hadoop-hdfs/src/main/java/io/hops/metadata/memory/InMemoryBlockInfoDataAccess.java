@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata.memory;
+
+import com.google.common.base.Predicate;
+import io.hops.exception.StorageException;
+import io.hops.metadata.hdfs.dal.BlockInfoDataAccess;
+import io.hops.metadata.hdfs.entity.BlockInfo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class InMemoryBlockInfoDataAccess
+    implements BlockInfoDataAccess<BlockInfo> {
+
+  private static final int COMPLETE = 0;
+
+  private final InMemoryStorageConnector connector;
+  private final InMemoryTable<List<Object>, BlockInfo> table;
+  private final InMemoryTable.Index<Integer, List<Object>, BlockInfo> byInodeId;
+  private final InMemoryTable.Index<Long, List<Object>, BlockInfo> byBlockId;
+  private final InMemoryEntityTable replicas;
+
+  public InMemoryBlockInfoDataAccess(InMemoryStorageConnector connector,
+      InMemoryEntityTable replicas) {
+    this.connector = connector;
+    this.replicas = replicas;
+    this.table = new InMemoryTable<>("hdfs_block_infos", connector);
+    this.byInodeId = table.addIndex(
+        new InMemoryTable.Index<Integer, List<Object>, BlockInfo>() {
+          @Override
+          Integer valueOf(BlockInfo row) {
+            return row.getInodeId();
+          }
+        });
+    this.byBlockId = table.addIndex(
+        new InMemoryTable.Index<Long, List<Object>, BlockInfo>() {
+          @Override
+          Long valueOf(BlockInfo row) {
+            return row.getBlockId();
+          }
+        });
+  }
+
+  private static List<Object> pk(long blockId, int inodeId) {
+    return InMemoryTable.key(inodeId, blockId);
+  }
+
+  @Override
+  public int countAll() throws StorageException {
+    connector.roundTrip();
+    return table.count();
+  }
+
+  @Override
+  public int countAllCompleteBlocks() throws StorageException {
+    connector.roundTrip();
+    return table.scan(new Predicate<BlockInfo>() {
+      @Override
+      public boolean apply(BlockInfo block) {
+        return block.getBlockUCState() == COMPLETE;
+      }
+    }).size();
+  }
+
+  @Override
+  public BlockInfo findById(long blockId, int inodeId)
+      throws StorageException {
+    connector.roundTrip();
+    return table.find(pk(blockId, inodeId));
+  }
+
+  @Override
+  public List<BlockInfo> findByInodeId(int inodeId) throws StorageException {
+    connector.roundTrip();
+    return table.findByIndex(byInodeId, inodeId);
+  }
+
+  @Override
+  public List<BlockInfo> findByInodeIds(int[] inodeIds)
+      throws StorageException {
+    connector.roundTrip();
+    List<BlockInfo> result = new ArrayList<>();
+    for (int inodeId : inodeIds) {
+      result.addAll(table.findByIndex(byInodeId, inodeId));
+    }
+    return result;
+  }
+
+  @Override
+  public List<BlockInfo> findAllBlocks() throws StorageException {
+    connector.roundTrip();
+    return table.scan(new Predicate<BlockInfo>() {
+      @Override
+      public boolean apply(BlockInfo block) {
+        return true;
+      }
+    });
+  }
+
+  /**
+   * Finds the block of the given id, the way the block lookup table does.
+   */
+  BlockInfo findByBlockId(long blockId) throws StorageException {
+    List<BlockInfo> blocks = table.findByIndex(byBlockId, blockId);
+    return blocks.isEmpty() ? null : blocks.get(0);
+  }
+
+  @Override
+  public List<BlockInfo> findBlockInfosByStorageId(int storageId)
+      throws StorageException {
+    connector.roundTrip();
+    return findByReplicas(replicas.where("getStorageId", storageId));
+  }
+
+  @Override
+  public List<BlockInfo> findBlockInfosBySids(List<Integer> sids)
+      throws StorageException {
+    connector.roundTrip();
+    List<Object> rows = new ArrayList<>();
+    for (Integer sid : sids) {
+      rows.addAll(replicas.where("getStorageId", sid));
+    }
+    return findByReplicas(rows);
+  }
+
+  @Override
+  public Set<Long> findINodeIdsByStorageId(int storageId)
+      throws StorageException {
+    connector.roundTrip();
+    Set<Long> inodeIds = new HashSet<>();
+    for (Object replica : replicas.where("getStorageId", storageId)) {
+      inodeIds.add(((Number) InMemoryEntityTable.column(replica,
+          "getInodeId")).longValue());
+    }
+    return inodeIds;
+  }
+
+  private List<BlockInfo> findByReplicas(List<Object> rows)
+      throws StorageException {
+    List<List<Object>> keys = new ArrayList<>(rows.size());
+    for (Object replica : rows) {
+      keys.add(pk((Long) InMemoryEntityTable.column(replica, "getBlockId"),
+          (Integer) InMemoryEntityTable.column(replica, "getInodeId")));
+    }
+    return table.findAll(new ArrayList<>(new HashSet<>(keys)));
+  }
+
+  @Override
+  public List<BlockInfo> findByIds(long[] blockIds, int[] inodeIds)
+      throws StorageException {
+    connector.roundTrip();
+    List<List<Object>> keys = new ArrayList<>(blockIds.length);
+    for (int i = 0; i < blockIds.length; i++) {
+      keys.add(pk(blockIds[i], inodeIds[i]));
+    }
+    return table.findAll(keys);
+  }
+
+  @Override
+  public boolean existsOnAnyStorage(int inodeId, long blockId,
+      List<Integer> sids) throws StorageException {
+    connector.roundTrip();
+    for (Object replica : replicas.where("getBlockId", blockId)) {
+      if (InMemoryEntityTable.column(replica, "getInodeId").equals(inodeId) &&
+          sids.contains(InMemoryEntityTable.column(replica, "getStorageId"))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public void prepare(Collection<BlockInfo> removed,
+      Collection<BlockInfo> newed, Collection<BlockInfo> modified)
+      throws StorageException {
+    connector.roundTrip();
+    for (BlockInfo block : removed) {
+      table.delete(pk(block.getBlockId(), block.getInodeId()));
+    }
+    for (BlockInfo block : newed) {
+      table.put(pk(block.getBlockId(), block.getInodeId()), block);
+    }
+    for (BlockInfo block : modified) {
+      table.put(pk(block.getBlockId(), block.getInodeId()), block);
+    }
+  }
+}
@@ -0,0 +1,359 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata.memory;
+
+import com.google.common.base.Predicate;
+import io.hops.exception.StorageException;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A table of entities that implements its data access interface through a
+ * dynamic proxy, for the tables that only have to work for the NameNode to
+ * run on the in-memory storage. Columns are named by the getters of the
+ * entity:
+ * <pre>
+ *   new InMemoryEntityTable("hdfs_replicas", connector,
+ *       "getBlockId", "getInodeId", "getStorageId")
+ *       .finder("findReplicasById", "getBlockId", "getInodeId")
+ *       .as(ReplicaDataAccess.class);
+ * </pre>
+ * A finder returns the rows whose columns equal the arguments of the call in
+ * order, an array or collection argument matching any of its elements.
+ * Arguments past the columns of the finder are ignored. What is returned
+ * follows the return type of the method: the rows as a list or a set, their
+ * number, or the first of them.
+ * <p>
+ * Besides the declared calls, prepare, add, insert, update, delete, remove
+ * and addAll of entities, and findAll, countAll, removeAll and deleteAll of
+ * the whole table, work on any table. Any other call throws a
+ * {@link StorageException}. Calls made outside of a transaction run in a
+ * transaction of their own.
+ */
+class InMemoryEntityTable implements InvocationHandler {
+
+  /**
+   * A call of the data access interface implemented by hand.
+   */
+  interface Call {
+    Object call(Object[] args) throws StorageException;
+  }
+
+  /**
+   * Primary key of a row, for entities that have a key class of their own.
+   */
+  interface Key {
+    Object of(Object row);
+  }
+
+  private static final ConcurrentMap<List<Object>, Method> GETTERS =
+      new ConcurrentHashMap<>();
+
+  private final String name;
+  private final InMemoryStorageConnector connector;
+  private final InMemoryTable<Object, Object> table;
+  private final Key key;
+  private final Map<String, InMemoryTable.Index<Object, Object, Object>>
+      indexes = new HashMap<>();
+  private final Map<String, Call> calls = new HashMap<>();
+
+  /**
+   * @param keyColumns getters of the primary key, none if the rows are their
+   * own key
+   */
+  InMemoryEntityTable(String name, InMemoryStorageConnector connector,
+      final String... keyColumns) {
+    this(name, connector, new Key() {
+      @Override
+      public Object of(Object row) {
+        if (keyColumns.length == 0) {
+          return row;
+        }
+        Object[] values = new Object[keyColumns.length];
+        for (int i = 0; i < keyColumns.length; i++) {
+          values[i] = column(row, keyColumns[i]);
+        }
+        return InMemoryTable.key(values);
+      }
+    });
+  }
+
+  InMemoryEntityTable(String name, InMemoryStorageConnector connector,
+      Key key) {
+    this.name = name;
+    this.connector = connector;
+    this.table = new InMemoryTable<>(name, connector);
+    this.key = key;
+  }
+
+  /**
+   * Declares a finder matching the arguments of the call against the given
+   * columns. The rows are looked up by an index of the first column.
+   */
+  InMemoryEntityTable finder(String method, final String... columns) {
+    final InMemoryTable.Index<Object, Object, Object> index =
+        index(columns[0]);
+    return on(method, new Call() {
+      @Override
+      public Object call(Object[] args) throws StorageException {
+        if (args.length == 0) {
+          return all();
+        }
+        List<Object> result = new ArrayList<>();
+        for (Object value : values(args[0])) {
+          for (Object row : table.findByIndex(index, value)) {
+            if (matches(row, columns, args)) {
+              result.add(row);
+            }
+          }
+        }
+        return result;
+      }
+    });
+  }
+
+  InMemoryEntityTable on(String method, Call call) {
+    calls.put(method, call);
+    return this;
+  }
+
+  <T> T as(Class<T> type) {
+    return type.cast(Proxy.newProxyInstance(type.getClassLoader(),
+        new Class[]{type}, this));
+  }
+
+  List<Object> where(Predicate<Object> predicate) throws StorageException {
+    return table.scan(predicate);
+  }
+
+  List<Object> all() throws StorageException {
+    return where(new Predicate<Object>() {
+      @Override
+      public boolean apply(Object row) {
+        return true;
+      }
+    });
+  }
+
+  List<Object> where(final String column, final Object value)
+      throws StorageException {
+    InMemoryTable.Index<Object, Object, Object> index = indexes.get(column);
+    if (index != null) {
+      return table.findByIndex(index, value);
+    }
+    return where(new Predicate<Object>() {
+      @Override
+      public boolean apply(Object row) {
+        return value.equals(column(row, column));
+      }
+    });
+  }
+
+  Object find(Object key) throws StorageException {
+    return table.find(key);
+  }
+
+  void put(Object row) throws StorageException {
+    table.put(key.of(row), row);
+  }
+
+  void delete(Object row) throws StorageException {
+    table.delete(key.of(row));
+  }
+
+  void deleteKey(Object key) throws StorageException {
+    table.delete(key);
+  }
+
+  int deleteAll(List<Object> rows) throws StorageException {
+    for (Object row : rows) {
+      delete(row);
+    }
+    return rows.size();
+  }
+
+  static Object column(Object row, String getter) {
+    List<Object> id = Arrays.<Object>asList(row.getClass(), getter);
+    Method method = GETTERS.get(id);
+    try {
+      if (method == null) {
+        method = row.getClass().getMethod(getter);
+        GETTERS.putIfAbsent(id, method);
+      }
+      return method.invoke(row);
+    } catch (NoSuchMethodException | IllegalAccessException e) {
+      throw new IllegalStateException(row.getClass().getSimpleName() +
+          " has no column " + getter, e);
+    } catch (InvocationTargetException e) {
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /**
+   * @return the elements of an array or collection argument, or the
+   * argument itself
+   */
+  static Collection<Object> values(Object arg) {
+    if (arg == null) {
+      return Collections.emptyList();
+    } else if (arg instanceof Collection) {
+      return (Collection<Object>) arg;
+    } else if (arg.getClass().isArray()) {
+      int length = Array.getLength(arg);
+      List<Object> values = new ArrayList<>(length);
+      for (int i = 0; i < length; i++) {
+        values.add(Array.get(arg, i));
+      }
+      return values;
+    }
+    return Collections.singletonList(arg);
+  }
+
+  private static boolean matches(Object row, String[] columns, Object[] args) {
+    for (int i = 1; i < columns.length; i++) {
+      if (!values(args[i]).contains(column(row, columns[i]))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private InMemoryTable.Index<Object, Object, Object> index(
+      final String column) {
+    InMemoryTable.Index<Object, Object, Object> index = indexes.get(column);
+    if (index == null) {
+      index = table.addIndex(new InMemoryTable.Index<Object, Object, Object>() {
+        @Override
+        Object valueOf(Object row) {
+          return column(row, column);
+        }
+      });
+      indexes.put(column, index);
+    }
+    return index;
+  }
+
+  @Override
+  public Object invoke(Object proxy, Method method, Object[] args)
+      throws Throwable {
+    if (method.getDeclaringClass() == Object.class) {
+      if (method.getName().equals("equals")) {
+        return proxy == args[0];
+      } else if (method.getName().equals("hashCode")) {
+        return System.identityHashCode(proxy);
+      }
+      return name;
+    }
+    if (args == null) {
+      args = new Object[0];
+    }
+    connector.roundTrip();
+    boolean autoCommit = connector.beginAutoCommit();
+    boolean succeeded = false;
+    try {
+      Object result = call(method, args);
+      succeeded = true;
+      return adapt(result, method.getReturnType());
+    } finally {
+      if (autoCommit) {
+        connector.endAutoCommit(succeeded);
+      }
+    }
+  }
+
+  private Object call(Method method, Object[] args) throws StorageException {
+    String call = method.getName();
+    Call declared = calls.get(call);
+    if (declared != null) {
+      return declared.call(args);
+    }
+    if (call.equals("prepare") && (args.length == 2 || args.length == 3)) {
+      // (removed, modified) or (removed, added, modified)
+      for (Object row : values(args[0])) {
+        delete(row);
+      }
+      for (int i = 1; i < args.length; i++) {
+        for (Object row : values(args[i])) {
+          put(row);
+        }
+      }
+      return null;
+    }
+    if (args.length == 0) {
+      switch (call) {
+        case "findAll":
+        case "countAll":
+          return all();
+        case "removeAll":
+        case "deleteAll":
+          deleteAll(all());
+          return null;
+      }
+    } else if (args.length == 1) {
+      switch (call) {
+        case "add":
+        case "addAll":
+        case "insert":
+        case "update":
+          for (Object row : values(args[0])) {
+            put(row);
+          }
+          return null;
+        case "delete":
+        case "remove":
+          for (Object row : values(args[0])) {
+            delete(row);
+          }
+          return null;
+      }
+    }
+    throw new StorageException("The in-memory storage driver does not " +
+        "implement " + method.getDeclaringClass().getSimpleName() + "." +
+        call + " of " + name);
+  }
+
+  private static Object adapt(Object result, Class<?> type) {
+    if (!(result instanceof List) || type.isInstance(result)) {
+      return result;
+    }
+    List<Object> rows = (List<Object>) result;
+    if (type.isAssignableFrom(Set.class)) {
+      return new LinkedHashSet<>(rows);
+    } else if (type == int.class || type == Integer.class) {
+      return rows.size();
+    } else if (type == long.class || type == Long.class) {
+      return (long) rows.size();
+    } else if (type == void.class) {
+      return null;
+    }
+    return rows.isEmpty() ? null : rows.get(0);
+  }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata.memory;
+
+import io.hops.exception.StorageException;
+import io.hops.metadata.hdfs.dal.INodeAttributesDataAccess;
+import io.hops.metadata.hdfs.entity.INodeAttributes;
+import io.hops.metadata.hdfs.entity.INodeCandidatePrimaryKey;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+public class InMemoryINodeAttributesDataAccess
+    implements INodeAttributesDataAccess<INodeAttributes> {
+
+  private final InMemoryStorageConnector connector;
+  private final InMemoryTable<Integer, INodeAttributes> table;
+
+  public InMemoryINodeAttributesDataAccess(
+      InMemoryStorageConnector connector) {
+    this.connector = connector;
+    this.table = new InMemoryTable<>("hdfs_inode_attributes", connector);
+  }
+
+  @Override
+  public INodeAttributes findAttributesByPk(Integer inodeId)
+      throws StorageException {
+    connector.roundTrip();
+    return table.find(inodeId);
+  }
+
+  @Override
+  public Collection<INodeAttributes> findAttributesByPkList(
+      List<INodeCandidatePrimaryKey> inodePks) throws StorageException {
+    connector.roundTrip();
+    List<Integer> keys = new ArrayList<>(inodePks.size());
+    for (INodeCandidatePrimaryKey pk : inodePks) {
+      keys.add(pk.getInodeId());
+    }
+    return table.findAll(keys);
+  }
+
+  @Override
+  public void prepare(Collection<INodeAttributes> modified,
+      Collection<INodeAttributes> removed) throws StorageException {
+    connector.roundTrip();
+    if (removed != null) {
+      for (INodeAttributes attributes : removed) {
+        table.delete(attributes.getInodeId());
+      }
+    }
+    if (modified != null) {
+      for (INodeAttributes attributes : modified) {
+        table.put(attributes.getInodeId(), attributes);
+      }
+    }
+  }
+}
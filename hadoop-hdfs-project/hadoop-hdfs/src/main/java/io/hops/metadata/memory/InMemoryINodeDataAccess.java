@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata.memory;
+
+import com.google.common.base.Predicate;
+import io.hops.exception.StorageException;
+import io.hops.metadata.hdfs.dal.INodeDataAccess;
+import io.hops.metadata.hdfs.entity.INode;
+import io.hops.metadata.hdfs.entity.INodeIdentifier;
+import io.hops.metadata.hdfs.entity.MetadataLogEntry;
+import io.hops.metadata.hdfs.entity.ProjectedINode;
+import io.hops.transaction.context.EntityContext;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+public class InMemoryINodeDataAccess implements INodeDataAccess<INode> {
+
+  private final InMemoryStorageConnector connector;
+  private final InMemoryTable<List<Object>, INode> table;
+  private final InMemoryTable.Index<Integer, List<Object>, INode> byId;
+  private final InMemoryTable.Index<Integer, List<Object>, INode> byParentId;
+
+  public InMemoryINodeDataAccess(InMemoryStorageConnector connector) {
+    this.connector = connector;
+    this.table = new InMemoryTable<>("hdfs_inodes", connector);
+    this.byId = table.addIndex(
+        new InMemoryTable.Index<Integer, List<Object>, INode>() {
+          @Override
+          Integer valueOf(INode row) {
+            return row.getId();
+          }
+        });
+    this.byParentId = table.addIndex(
+        new InMemoryTable.Index<Integer, List<Object>, INode>() {
+          @Override
+          Integer valueOf(INode row) {
+            return row.getParentId();
+          }
+        });
+  }
+
+  private static List<Object> pk(String name, int parentId, int partitionId) {
+    return InMemoryTable.key(partitionId, parentId, name);
+  }
+
+  private static List<Object> pk(INode inode) {
+    return pk(inode.getName(), inode.getParentId(), inode.getPartitionId());
+  }
+
+  private INode findById(int inodeId) throws StorageException {
+    List<INode> inodes = table.findByIndex(byId, inodeId);
+    return inodes.isEmpty() ? null : inodes.get(0);
+  }
+
+  @Override
+  public INode findInodeByIdFTIS(int inodeId) throws StorageException {
+    connector.roundTrip();
+    return findById(inodeId);
+  }
+
+  @Override
+  public List<INode> findInodesByParentIdFTIS(int parentId)
+      throws StorageException {
+    connector.roundTrip();
+    return table.findByIndex(byParentId, parentId);
+  }
+
+  @Override
+  public List<INode> findInodesByParentIdAndPartitionIdPPIS(int parentId,
+      final int partitionId) throws StorageException {
+    connector.roundTrip();
+    List<INode> result = new ArrayList<>();
+    for (INode inode : table.findByIndex(byParentId, parentId)) {
+      if (inode.getPartitionId() == partitionId) {
+        result.add(inode);
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public List<ProjectedINode> findInodesPPISTx(int parentId, int partitionId,
+      EntityContext.LockMode lock) throws StorageException {
+    EntityContext.LockMode previous = connector.swapLockMode(lock);
+    try {
+      return project(findInodesByParentIdAndPartitionIdPPIS(parentId,
+          partitionId));
+    } finally {
+      connector.swapLockMode(previous);
+    }
+  }
+
+  @Override
+  public List<ProjectedINode> findInodesFTISTx(int parentId,
+      EntityContext.LockMode lock) throws StorageException {
+    EntityContext.LockMode previous = connector.swapLockMode(lock);
+    try {
+      return project(findInodesByParentIdFTIS(parentId));
+    } finally {
+      connector.swapLockMode(previous);
+    }
+  }
+
+  public List<INode> lockInodesUsingPkBatchTx(String[] names, int[] parentIds,
+      int[] partitionIds, EntityContext.LockMode lock)
+      throws StorageException {
+    EntityContext.LockMode previous = connector.swapLockMode(lock);
+    try {
+      return getINodesPkBatched(names, parentIds, partitionIds);
+    } finally {
+      connector.swapLockMode(previous);
+    }
+  }
+
+  @Override
+  public INode findInodeByNameParentIdAndPartitionIdPK(String name,
+      int parentId, int partitionId) throws StorageException {
+    connector.roundTrip();
+    return table.find(pk(name, parentId, partitionId));
+  }
+
+  @Override
+  public List<INode> getINodesPkBatched(String[] names, int[] parentIds,
+      int[] partitionIds) throws StorageException {
+    connector.roundTrip();
+    List<List<Object>> keys = new ArrayList<>(names.length);
+    for (int i = 0; i < names.length; i++) {
+      keys.add(pk(names[i], parentIds[i], partitionIds[i]));
+    }
+    return table.findAll(keys);
+  }
+
+  @Override
+  public void prepare(Collection<INode> removed, Collection<INode> newed,
+      Collection<INode> modified) throws StorageException {
+    connector.roundTrip();
+    for (INode inode : removed) {
+      table.delete(pk(inode));
+    }
+    for (INode inode : newed) {
+      table.put(pk(inode), inode);
+    }
+    for (INode inode : modified) {
+      table.put(pk(inode), inode);
+    }
+  }
+
+  @Override
+  public int countAll() throws StorageException {
+    connector.roundTrip();
+    return table.count();
+  }
+
+  @Override
+  public List<INodeIdentifier> getAllINodeFiles(final long startId,
+      final long endId) throws StorageException {
+    connector.roundTrip();
+    List<INodeIdentifier> result = new ArrayList<>();
+    for (INode inode : scanFiles(startId, endId)) {
+      result.add(new INodeIdentifier(inode.getId(), inode.getParentId(),
+          inode.getName(), inode.getPartitionId()));
+    }
+    return result;
+  }
+
+  @Override
+  public boolean haveFilesWithIdsGreaterThan(long id) throws StorageException {
+    connector.roundTrip();
+    return !scanFiles(id + 1, Long.MAX_VALUE).isEmpty();
+  }
+
+  @Override
+  public boolean haveFilesWithIdsBetween(long startId, long endId)
+      throws StorageException {
+    connector.roundTrip();
+    return !scanFiles(startId, endId).isEmpty();
+  }
+
+  @Override
+  public long getMinFileId() throws StorageException {
+    connector.roundTrip();
+    long min = 0;
+    for (INode inode : scanFiles(Long.MIN_VALUE, Long.MAX_VALUE)) {
+      min = min == 0 ? inode.getId() : Math.min(min, inode.getId());
+    }
+    return min;
+  }
+
+  @Override
+  public long getMaxFileId() throws StorageException {
+    connector.roundTrip();
+    long max = 0;
+    for (INode inode : scanFiles(Long.MIN_VALUE, Long.MAX_VALUE)) {
+      max = Math.max(max, inode.getId());
+    }
+    return max;
+  }
+
+  @Override
+  public int countAllFiles() throws StorageException {
+    connector.roundTrip();
+    return scanFiles(Long.MIN_VALUE, Long.MAX_VALUE).size();
+  }
+
+  @Override
+  public boolean hasChildren(int parentId,
+      boolean areChildrenRandomlyPartitioned) throws StorageException {
+    connector.roundTrip();
+    return !table.findByIndex(byParentId, parentId).isEmpty();
+  }
+
+  @Override
+  public List<INode> allINodes() throws StorageException {
+    connector.roundTrip();
+    return table.scan(new Predicate<INode>() {
+      @Override
+      public boolean apply(INode inode) {
+        return true;
+      }
+    });
+  }
+
+  @Override
+  public void deleteInode(final String name) throws StorageException {
+    connector.roundTrip();
+    for (INode inode : table.scan(new Predicate<INode>() {
+      @Override
+      public boolean apply(INode inode) {
+        return inode.getName().equals(name);
+      }
+    })) {
+      table.delete(pk(inode));
+    }
+  }
+
+  @Override
+  public void updateLogicalTime(Collection<MetadataLogEntry> logEntries)
+      throws StorageException {
+    connector.roundTrip();
+    for (MetadataLogEntry logEntry : logEntries) {
+      INode inode = findById(logEntry.getInodeId());
+      if (inode != null) {
+        inode.setLogicalTime(logEntry.getLogicalTime());
+        table.put(pk(inode), inode);
+      }
+    }
+  }
+
+  @Override
+  public int countSubtreeLockedInodes() throws StorageException {
+    connector.roundTrip();
+    return table.scan(new Predicate<INode>() {
+      @Override
+      public boolean apply(INode inode) {
+        return inode.isSubtreeLocked();
+      }
+    }).size();
+  }
+
+  private List<INode> scanFiles(final long startId, final long endId)
+      throws StorageException {
+    return table.scan(new Predicate<INode>() {
+      @Override
+      public boolean apply(INode inode) {
+        return !inode.isDirectory() && inode.getId() >= startId &&
+            inode.getId() <= endId;
+      }
+    });
+  }
+
+  private static List<ProjectedINode> project(List<INode> inodes) {
+    List<ProjectedINode> result = new ArrayList<>(inodes.size());
+    for (INode inode : inodes) {
+      result.add(new ProjectedINode(inode.getId(), inode.getParentId(),
+          inode.getName(), inode.getPartitionId(), inode.isDirectory(),
+          inode.getPermission(), inode.getUserID(), inode.getGroupID(),
+          inode.getHeader(), inode.getSymlink() != null,
+          inode.isDirWithQuota(), inode.isUnderConstruction(),
+          inode.isSubtreeLocked(), inode.getSubtreeLockOwner(),
+          inode.getFileSize(), inode.getLogicalTime(),
+          inode.getStoragePolicy(), inode.getNumAces()));
+    }
+    return result;
+  }
+}
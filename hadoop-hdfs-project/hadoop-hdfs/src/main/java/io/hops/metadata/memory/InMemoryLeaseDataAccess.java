@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata.memory;
+
+import com.google.common.base.Predicate;
+import io.hops.exception.StorageException;
+import io.hops.metadata.hdfs.dal.LeaseDataAccess;
+import io.hops.metadata.hdfs.entity.Lease;
+
+import java.util.Collection;
+import java.util.List;
+
+public class InMemoryLeaseDataAccess implements LeaseDataAccess<Lease> {
+
+  private final InMemoryStorageConnector connector;
+  private final InMemoryTable<String, Lease> table;
+  private final InMemoryTable.Index<Integer, String, Lease> byHolderId;
+
+  public InMemoryLeaseDataAccess(InMemoryStorageConnector connector) {
+    this.connector = connector;
+    this.table = new InMemoryTable<>("hdfs_leases", connector);
+    this.byHolderId = table.addIndex(
+        new InMemoryTable.Index<Integer, String, Lease>() {
+          @Override
+          Integer valueOf(Lease row) {
+            return row.getHolderId();
+          }
+        });
+  }
+
+  @Override
+  public int countAll() throws StorageException {
+    connector.roundTrip();
+    return table.count();
+  }
+
+  @Override
+  public Collection<Lease> findByTimeLimit(final long timeLimit)
+      throws StorageException {
+    connector.roundTrip();
+    return table.scan(new Predicate<Lease>() {
+      @Override
+      public boolean apply(Lease lease) {
+        return lease.getLastUpdate() < timeLimit;
+      }
+    });
+  }
+
+  @Override
+  public Collection<Lease> findAll() throws StorageException {
+    connector.roundTrip();
+    return table.scan(new Predicate<Lease>() {
+      @Override
+      public boolean apply(Lease lease) {
+        return true;
+      }
+    });
+  }
+
+  @Override
+  public Lease findByPKey(String holder, int holderId)
+      throws StorageException {
+    connector.roundTrip();
+    return table.find(holder);
+  }
+
+  @Override
+  public Lease findByHolderId(int holderId) throws StorageException {
+    connector.roundTrip();
+    List<Lease> leases = table.findByIndex(byHolderId, holderId);
+    return leases.isEmpty() ? null : leases.get(0);
+  }
+
+  @Override
+  public void prepare(Collection<Lease> removed, Collection<Lease> newLeases,
+      Collection<Lease> modified) throws StorageException {
+    connector.roundTrip();
+    for (Lease lease : removed) {
+      table.delete(lease.getHolder());
+    }
+    for (Lease lease : newLeases) {
+      table.put(lease.getHolder(), lease);
+    }
+    for (Lease lease : modified) {
+      table.put(lease.getHolder(), lease);
+    }
+  }
+
+  @Override
+  public void removeAll() throws StorageException {
+    connector.roundTrip();
+    for (Lease lease : findAll()) {
+      table.delete(lease.getHolder());
+    }
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata.memory;
+
+import com.google.common.base.Predicate;
+import io.hops.exception.StorageException;
+import io.hops.metadata.hdfs.dal.PendingBlockDataAccess;
+import io.hops.metadata.hdfs.entity.PendingBlockInfo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+public class InMemoryPendingBlockDataAccess
+    implements PendingBlockDataAccess<PendingBlockInfo> {
+
+  private final InMemoryStorageConnector connector;
+  private final InMemoryTable<List<Object>, PendingBlockInfo> table;
+  private final InMemoryTable.Index<Integer, List<Object>, PendingBlockInfo>
+      byInodeId;
+
+  public InMemoryPendingBlockDataAccess(InMemoryStorageConnector connector) {
+    this.connector = connector;
+    this.table = new InMemoryTable<>("hdfs_pending_blocks", connector);
+    this.byInodeId = table.addIndex(
+        new InMemoryTable.Index<Integer, List<Object>, PendingBlockInfo>() {
+          @Override
+          Integer valueOf(PendingBlockInfo row) {
+            return row.getInodeId();
+          }
+        });
+  }
+
+  private static List<Object> pk(PendingBlockInfo pendingBlock) {
+    return InMemoryTable.key(pendingBlock.getInodeId(),
+        pendingBlock.getBlockId());
+  }
+
+  @Override
+  public List<PendingBlockInfo> findByTimeLimitLessThan(final long timeLimit)
+      throws StorageException {
+    connector.roundTrip();
+    return table.scan(new Predicate<PendingBlockInfo>() {
+      @Override
+      public boolean apply(PendingBlockInfo pendingBlock) {
+        return pendingBlock.getTimeStamp() < timeLimit;
+      }
+    });
+  }
+
+  @Override
+  public List<PendingBlockInfo> findAll() throws StorageException {
+    connector.roundTrip();
+    return table.scan(new Predicate<PendingBlockInfo>() {
+      @Override
+      public boolean apply(PendingBlockInfo pendingBlock) {
+        return true;
+      }
+    });
+  }
+
+  @Override
+  public PendingBlockInfo findByBlockAndInodeIds(long blockId, int inodeId)
+      throws StorageException {
+    connector.roundTrip();
+    return table.find(InMemoryTable.key(inodeId, blockId));
+  }
+
+  @Override
+  public int countValidPendingBlocks(final long timeLimit)
+      throws StorageException {
+    connector.roundTrip();
+    return table.scan(new Predicate<PendingBlockInfo>() {
+      @Override
+      public boolean apply(PendingBlockInfo pendingBlock) {
+        return pendingBlock.getTimeStamp() > timeLimit;
+      }
+    }).size();
+  }
+
+  @Override
+  public void prepare(Collection<PendingBlockInfo> removed,
+      Collection<PendingBlockInfo> newed, Collection<PendingBlockInfo> modified)
+      throws StorageException {
+    connector.roundTrip();
+    for (PendingBlockInfo pendingBlock : removed) {
+      table.delete(pk(pendingBlock));
+    }
+    for (PendingBlockInfo pendingBlock : newed) {
+      table.put(pk(pendingBlock), pendingBlock);
+    }
+    for (PendingBlockInfo pendingBlock : modified) {
+      table.put(pk(pendingBlock), pendingBlock);
+    }
+  }
+
+  @Override
+  public void removeAll() throws StorageException {
+    connector.roundTrip();
+    for (PendingBlockInfo pendingBlock : findAll()) {
+      table.delete(pk(pendingBlock));
+    }
+  }
+
+  @Override
+  public List<PendingBlockInfo> findByINodeId(int inodeId)
+      throws StorageException {
+    connector.roundTrip();
+    return table.findByIndex(byInodeId, inodeId);
+  }
+
+  @Override
+  public List<PendingBlockInfo> findByINodeIds(int[] inodeIds)
+      throws StorageException {
+    connector.roundTrip();
+    List<PendingBlockInfo> result = new ArrayList<>();
+    for (int inodeId : inodeIds) {
+      result.addAll(table.findByIndex(byInodeId, inodeId));
+    }
+    return result;
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata.memory;
+
+import io.hops.exception.StorageException;
+import io.hops.metadata.hdfs.dal.ReplicaUnderConstructionDataAccess;
+import io.hops.metadata.hdfs.entity.ReplicaUnderConstruction;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+public class InMemoryReplicaUnderConstructionDataAccess
+    implements ReplicaUnderConstructionDataAccess<ReplicaUnderConstruction> {
+
+  private final InMemoryStorageConnector connector;
+  private final InMemoryTable<List<Object>, ReplicaUnderConstruction> table;
+  private final InMemoryTable.Index<Integer, List<Object>,
+      ReplicaUnderConstruction> byInodeId;
+
+  public InMemoryReplicaUnderConstructionDataAccess(
+      InMemoryStorageConnector connector) {
+    this.connector = connector;
+    this.table = new InMemoryTable<>("hdfs_replica_under_constructions",
+        connector);
+    this.byInodeId = table.addIndex(new InMemoryTable.Index<Integer,
+        List<Object>, ReplicaUnderConstruction>() {
+      @Override
+      Integer valueOf(ReplicaUnderConstruction row) {
+        return row.getInodeId();
+      }
+    });
+  }
+
+  private static List<Object> pk(ReplicaUnderConstruction replica) {
+    return InMemoryTable.key(replica.getInodeId(), replica.getBlockId(),
+        replica.getStorageId());
+  }
+
+  @Override
+  public List<ReplicaUnderConstruction> findReplicaUnderConstructionByINodeId(
+      int inodeId) throws StorageException {
+    connector.roundTrip();
+    return table.findByIndex(byInodeId, inodeId);
+  }
+
+  @Override
+  public List<ReplicaUnderConstruction> findReplicaUnderConstructionByINodeIds(
+      int[] inodeIds) throws StorageException {
+    connector.roundTrip();
+    List<ReplicaUnderConstruction> result = new ArrayList<>();
+    for (int inodeId : inodeIds) {
+      result.addAll(table.findByIndex(byInodeId, inodeId));
+    }
+    return result;
+  }
+
+  @Override
+  public List<ReplicaUnderConstruction> findReplicaUnderConstructionByBlockId(
+      long blockId, int inodeId) throws StorageException {
+    connector.roundTrip();
+    List<ReplicaUnderConstruction> result = new ArrayList<>();
+    for (ReplicaUnderConstruction replica : table
+        .findByIndex(byInodeId, inodeId)) {
+      if (replica.getBlockId() == blockId) {
+        result.add(replica);
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public void prepare(Collection<ReplicaUnderConstruction> removed,
+      Collection<ReplicaUnderConstruction> newed,
+      Collection<ReplicaUnderConstruction> modified) throws StorageException {
+    connector.roundTrip();
+    for (ReplicaUnderConstruction replica : removed) {
+      table.delete(pk(replica));
+    }
+    for (ReplicaUnderConstruction replica : newed) {
+      table.put(pk(replica), replica);
+    }
+    for (ReplicaUnderConstruction replica : modified) {
+      table.put(pk(replica), replica);
+    }
+  }
+
+  @Override
+  public void removeByBlockIdAndInodeId(long blockId, int inodeId)
+      throws StorageException {
+    for (ReplicaUnderConstruction replica :
+        findReplicaUnderConstructionByBlockId(blockId, inodeId)) {
+      table.delete(pk(replica));
+    }
+  }
+}
@@ -0,0 +1,355 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata.memory;
+
+import io.hops.StorageConnector;
+import io.hops.exception.StorageException;
+import io.hops.metadata.common.EntityDataAccess;
+import io.hops.transaction.context.EntityContext;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Connector of the in-memory metadata storage. Every call that would be a
+ * database round trip in NDB goes through {@link #roundTrip()}, which counts
+ * it and optionally sleeps for the configured latency so that the cost of
+ * the lock/context/transaction layers can be measured in isolation.
+ */
+public class InMemoryStorageConnector implements StorageConnector<Object> {
+
+  private static final Log LOG =
+      LogFactory.getLog(InMemoryStorageConnector.class);
+
+  public static final String ROUND_TRIP_LATENCY_MICROS =
+      "io.hops.metadata.memory.roundtrip.latency.micros";
+  public static final long ROUND_TRIP_LATENCY_MICROS_DEFAULT = 0;
+
+  public static final String LOCK_TIMEOUT_MS =
+      "io.hops.metadata.memory.lock.timeout.ms";
+  public static final long LOCK_TIMEOUT_MS_DEFAULT = 1200;
+
+  private final ThreadLocal<InMemoryTransaction> activeTransaction =
+      new ThreadLocal<>();
+  private final List<InMemoryTable> tables = new CopyOnWriteArrayList<>();
+  private final ReadWriteLock commitLock = new ReentrantReadWriteLock();
+  private final AtomicLong totalRoundTrips = new AtomicLong();
+  private final ThreadLocal<long[]> threadRoundTrips =
+      new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+          return new long[1];
+        }
+      };
+  private final AtomicLong totalTransactions = new AtomicLong();
+  private volatile long roundTripLatencyNanos =
+      TimeUnit.MICROSECONDS.toNanos(ROUND_TRIP_LATENCY_MICROS_DEFAULT);
+  private volatile long lockTimeout = LOCK_TIMEOUT_MS_DEFAULT;
+
+  @Override
+  public void setConfiguration(Properties conf) throws StorageException {
+    setRoundTripLatency(Long.parseLong(conf.getProperty(
+        ROUND_TRIP_LATENCY_MICROS,
+        Long.toString(ROUND_TRIP_LATENCY_MICROS_DEFAULT))),
+        TimeUnit.MICROSECONDS);
+    lockTimeout = Long.parseLong(conf.getProperty(LOCK_TIMEOUT_MS,
+        Long.toString(LOCK_TIMEOUT_MS_DEFAULT)));
+    LOG.info("In-memory metadata storage, round trip latency " +
+        TimeUnit.NANOSECONDS.toMicros(roundTripLatencyNanos) + " us, lock " +
+        "timeout " + lockTimeout + " ms");
+  }
+
+  /**
+   * Changes the latency injected for every database round trip. Can be
+   * changed at runtime to compare different database deployments.
+   */
+  public void setRoundTripLatency(long latency, TimeUnit unit) {
+    roundTripLatencyNanos = unit.toNanos(latency);
+  }
+
+  /**
+   * @return the number of round trips issued since startup, over all threads
+   */
+  public long getTotalRoundTrips() {
+    return totalRoundTrips.get();
+  }
+
+  /**
+   * @return the number of round trips issued by the calling thread since
+   * startup, which unlike {@link #getTotalRoundTrips()} is not disturbed by
+   * other threads
+   */
+  public long getThreadRoundTrips() {
+    return threadRoundTrips.get()[0];
+  }
+
+  /**
+   * @return the number of committed or rolled back transactions since startup
+   */
+  public long getTotalTransactions() {
+    return totalTransactions.get();
+  }
+
+  /**
+   * @return the number of round trips of the active transaction of the
+   * calling thread
+   */
+  public int getTransactionRoundTrips() {
+    InMemoryTransaction tx = activeTransaction.get();
+    return tx == null ? 0 : tx.getRoundTrips();
+  }
+
+  long getLockTimeout() {
+    return lockTimeout;
+  }
+
+  /**
+   * Held exclusively while a transaction applies its writes, and shared by
+   * the reads that take no row locks.
+   */
+  ReadWriteLock getCommitLock() {
+    return commitLock;
+  }
+
+  void register(InMemoryTable table) {
+    tables.add(table);
+  }
+
+  InMemoryTransaction currentTransaction() {
+    return activeTransaction.get();
+  }
+
+  void roundTrip() {
+    totalRoundTrips.incrementAndGet();
+    threadRoundTrips.get()[0]++;
+    InMemoryTransaction tx = activeTransaction.get();
+    if (tx != null) {
+      tx.incrementRoundTrips();
+    }
+    long latency = roundTripLatencyNanos;
+    if (latency > 0) {
+      LockSupport.parkNanos(latency);
+    }
+  }
+
+  @Override
+  public Object obtainSession() throws StorageException {
+    return activeTransaction.get();
+  }
+
+  @Override
+  public void beginTransaction() throws StorageException {
+    if (activeTransaction.get() != null) {
+      throw new StorageException("A transaction is already active");
+    }
+    activeTransaction.set(new InMemoryTransaction());
+    roundTrip();
+  }
+
+  @Override
+  public void commit() throws StorageException {
+    InMemoryTransaction tx = activeTransaction.get();
+    if (tx == null) {
+      throw new StorageException("There is no active transaction to commit");
+    }
+    roundTrip();
+    commit(tx);
+  }
+
+  private void commit(InMemoryTransaction tx) throws StorageException {
+    List<InMemoryTable> applied = new ArrayList<>();
+    List<Map<Object, Object>> replaced = new ArrayList<>();
+    commitLock.writeLock().lock();
+    try {
+      for (Map.Entry<InMemoryTable, Map<Object, Object>> writeSet : tx
+          .getWriteSets().entrySet()) {
+        replaced.add(writeSet.getKey().apply(writeSet.getValue()));
+        applied.add(writeSet.getKey());
+      }
+    } catch (RuntimeException e) {
+      // the table that failed restored its own rows
+      for (int i = applied.size() - 1; i >= 0; i--) {
+        applied.get(i).restore(replaced.get(i));
+      }
+      LOG.warn("Failed to commit, the transaction is rolled back", e);
+      throw new StorageException(e);
+    } finally {
+      commitLock.writeLock().unlock();
+      end(tx);
+    }
+  }
+
+  /**
+   * Starts a transaction for a data access call made outside of one, the way
+   * NDB auto commits such calls. Returns false if a transaction is active
+   * already and the call belongs to it.
+   */
+  boolean beginAutoCommit() {
+    if (activeTransaction.get() != null) {
+      return false;
+    }
+    activeTransaction.set(new InMemoryTransaction());
+    return true;
+  }
+
+  void endAutoCommit(boolean succeeded) throws StorageException {
+    InMemoryTransaction tx = activeTransaction.get();
+    if (succeeded) {
+      commit(tx);
+    } else {
+      end(tx);
+    }
+  }
+
+  @Override
+  public void rollback() throws StorageException {
+    InMemoryTransaction tx = activeTransaction.get();
+    if (tx != null) {
+      roundTrip();
+      end(tx);
+    }
+  }
+
+  private void end(InMemoryTransaction tx) {
+    tx.releaseLocks();
+    activeTransaction.remove();
+    totalTransactions.incrementAndGet();
+  }
+
+  @Override
+  public boolean isTransactionActive() throws StorageException {
+    return activeTransaction.get() != null;
+  }
+
+  @Override
+  public void writeLock() throws StorageException {
+    setLockMode(EntityContext.LockMode.WRITE_LOCK);
+  }
+
+  @Override
+  public void readLock() throws StorageException {
+    setLockMode(EntityContext.LockMode.READ_LOCK);
+  }
+
+  @Override
+  public void readCommitted() throws StorageException {
+    setLockMode(EntityContext.LockMode.READ_COMMITTED);
+  }
+
+  private void setLockMode(EntityContext.LockMode mode)
+      throws StorageException {
+    InMemoryTransaction tx = activeTransaction.get();
+    if (tx == null) {
+      throw new StorageException("Lock mode can only be set inside a " +
+          "transaction");
+    }
+    tx.setLockMode(mode);
+  }
+
+  /**
+   * Sets the lock mode of the active transaction, if any, and returns the
+   * previous one so that data accesses taking an explicit lock mode can
+   * restore it.
+   */
+  EntityContext.LockMode swapLockMode(EntityContext.LockMode mode) {
+    InMemoryTransaction tx = activeTransaction.get();
+    if (tx == null) {
+      return mode;
+    }
+    EntityContext.LockMode previous = tx.getLockMode();
+    tx.setLockMode(mode);
+    return previous;
+  }
+
+  @Override
+  public void setPartitionKey(Class className, Object key)
+      throws StorageException {
+    //there is only one partition
+  }
+
+  @Override
+  public void flush() throws StorageException {
+    //writes are kept in the write set until commit
+  }
+
+  @Override
+  public void stopStorage() throws StorageException {
+  }
+
+  @Override
+  public boolean formatStorage() throws StorageException {
+    return formatAllStorageNonTransactional();
+  }
+
+  @Override
+  public boolean formatYarnStorage() throws StorageException {
+    return true;
+  }
+
+  @Override
+  public boolean formatHDFSStorage() throws StorageException {
+    return formatAllStorageNonTransactional();
+  }
+
+  @Override
+  public boolean formatAllStorageNonTransactional() throws StorageException {
+    for (InMemoryTable table : tables) {
+      table.clear();
+    }
+    return true;
+  }
+
+  @Override
+  public boolean formatYarnStorageNonTransactional() throws StorageException {
+    return true;
+  }
+
+  @Override
+  public boolean formatHDFSStorageNonTransactional() throws StorageException {
+    return formatAllStorageNonTransactional();
+  }
+
+  @Override
+  public boolean formatStorage(Class<? extends EntityDataAccess>... das)
+      throws StorageException {
+    return formatAllStorageNonTransactional();
+  }
+
+  @Override
+  public void dropAndRecreateDB() throws StorageException {
+    formatAllStorageNonTransactional();
+  }
+
+  @Override
+  public String getClusterConnectString() {
+    return "memory";
+  }
+
+  @Override
+  public String getDatabaseName() {
+    return "memory";
+  }
+}
@@ -0,0 +1,620 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata.memory;
+
+import com.google.common.base.Predicate;
+import io.hops.DalStorageFactory;
+import io.hops.StorageConnector;
+import io.hops.exception.StorageException;
+import io.hops.exception.StorageInitializtionException;
+import io.hops.metadata.common.EntityDataAccess;
+import io.hops.metadata.election.dal.HdfsLeDescriptorDataAccess;
+import io.hops.metadata.election.dal.YarnLeDescriptorDataAccess;
+import io.hops.metadata.hdfs.dal.AceDataAccess;
+import io.hops.metadata.hdfs.dal.BlockChecksumDataAccess;
+import io.hops.metadata.hdfs.dal.BlockInfoDataAccess;
+import io.hops.metadata.hdfs.dal.BlockLookUpDataAccess;
+import io.hops.metadata.hdfs.dal.CorruptReplicaDataAccess;
+import io.hops.metadata.hdfs.dal.EncodingStatusDataAccess;
+import io.hops.metadata.hdfs.dal.ExcessReplicaDataAccess;
+import io.hops.metadata.hdfs.dal.HashBucketDataAccess;
+import io.hops.metadata.hdfs.dal.INodeAttributesDataAccess;
+import io.hops.metadata.hdfs.dal.INodeDataAccess;
+import io.hops.metadata.hdfs.dal.InMemoryInodeDataAccess;
+import io.hops.metadata.hdfs.dal.InvalidateBlockDataAccess;
+import io.hops.metadata.hdfs.dal.LargeOnDiskInodeDataAccess;
+import io.hops.metadata.hdfs.dal.LeaseDataAccess;
+import io.hops.metadata.hdfs.dal.LeasePathDataAccess;
+import io.hops.metadata.hdfs.dal.MediumOnDiskInodeDataAccess;
+import io.hops.metadata.hdfs.dal.MetadataLogDataAccess;
+import io.hops.metadata.hdfs.dal.MisReplicatedRangeQueueDataAccess;
+import io.hops.metadata.hdfs.dal.OngoingSubTreeOpsDataAccess;
+import io.hops.metadata.hdfs.dal.PendingBlockDataAccess;
+import io.hops.metadata.hdfs.dal.QuotaUpdateDataAccess;
+import io.hops.metadata.hdfs.dal.ReplicaDataAccess;
+import io.hops.metadata.hdfs.dal.ReplicaUnderConstructionDataAccess;
+import io.hops.metadata.hdfs.dal.RetryCacheEntryDataAccess;
+import io.hops.metadata.hdfs.dal.SafeBlocksDataAccess;
+import io.hops.metadata.hdfs.dal.SmallOnDiskInodeDataAccess;
+import io.hops.metadata.hdfs.dal.StorageDataAccess;
+import io.hops.metadata.hdfs.dal.StorageIdMapDataAccess;
+import io.hops.metadata.hdfs.dal.UnderReplicatedBlockDataAccess;
+import io.hops.metadata.hdfs.dal.VariableDataAccess;
+import io.hops.metadata.hdfs.entity.BlockInfo;
+import io.hops.metadata.hdfs.entity.BlockLookUp;
+import io.hops.metadata.hdfs.entity.RetryCacheEntry;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A metadata storage driver that keeps all the tables in the heap of the
+ * NameNode. It is meant for benchmarking the lock, entity context and
+ * transaction layers without a database cluster, and is selected with
+ * <pre>
+ *   dfs.storage.driver.class = io.hops.metadata.memory.InMemoryStorageFactory
+ * </pre>
+ * The injected latency per database round trip is set with
+ * {@link InMemoryStorageConnector#ROUND_TRIP_LATENCY_MICROS} in the driver
+ * configuration file.
+ * <p>
+ * All the instances of the driver share one database, so that the leader
+ * election, which loads a driver of its own, and the NameNodes of a mini
+ * cluster see the same tables. The tables of the namespace path have their
+ * own data accesses; the other tables the NameNode uses are
+ * {@link InMemoryEntityTable}s. The users and groups tables, the queries of
+ * the erasure coding manager and the YARN tables are not implemented, their
+ * data accesses throw a {@link StorageException} naming the table and the
+ * call as soon as they are used, so hops groups and erasure coding have to
+ * be disabled.
+ */
+public class InMemoryStorageFactory implements DalStorageFactory {
+
+  private static final Log LOG =
+      LogFactory.getLog(InMemoryStorageFactory.class);
+
+  private static final InMemoryStorageConnector connector =
+      new InMemoryStorageConnector();
+  private static final ConcurrentMap<Class, EntityDataAccess> dataAccessMap =
+      new ConcurrentHashMap<>();
+
+  static {
+    InMemoryEntityTable replicas = replicas();
+    InMemoryBlockInfoDataAccess blocks =
+        new InMemoryBlockInfoDataAccess(connector, replicas);
+    dataAccessMap.put(INodeDataAccess.class,
+        new InMemoryINodeDataAccess(connector));
+    dataAccessMap.put(INodeAttributesDataAccess.class,
+        new InMemoryINodeAttributesDataAccess(connector));
+    dataAccessMap.put(BlockInfoDataAccess.class, blocks);
+    dataAccessMap.put(ReplicaUnderConstructionDataAccess.class,
+        new InMemoryReplicaUnderConstructionDataAccess(connector));
+    dataAccessMap.put(PendingBlockDataAccess.class,
+        new InMemoryPendingBlockDataAccess(connector));
+    dataAccessMap.put(LeaseDataAccess.class,
+        new InMemoryLeaseDataAccess(connector));
+    dataAccessMap.put(VariableDataAccess.class,
+        new InMemoryVariableDataAccess(connector));
+
+    dataAccessMap.put(ReplicaDataAccess.class,
+        replicas.as(ReplicaDataAccess.class));
+    dataAccessMap.put(BlockLookUpDataAccess.class, blockLookUp(blocks));
+    dataAccessMap.put(InvalidateBlockDataAccess.class, invalidatedBlocks());
+    dataAccessMap.put(ExcessReplicaDataAccess.class,
+        new InMemoryEntityTable("hdfs_excess_replicas", connector,
+            "getBlockId", "getInodeId", "getStorageId")
+            .finder("findByPK", "getBlockId", "getStorageId", "getInodeId")
+            .finder("findExcessReplicaByBlockId", "getBlockId", "getInodeId")
+            .finder("findExcessReplicaByINodeId", "getInodeId")
+            .finder("findExcessReplicaByINodeIds", "getInodeId")
+            .finder("findExcessReplicaBySid", "getStorageId")
+            .as(ExcessReplicaDataAccess.class));
+    dataAccessMap.put(CorruptReplicaDataAccess.class, corruptReplicas());
+    dataAccessMap.put(UnderReplicatedBlockDataAccess.class,
+        underReplicatedBlocks());
+    dataAccessMap.put(HashBucketDataAccess.class,
+        new InMemoryEntityTable("hdfs_hash_buckets", connector,
+            "getStorageId", "getBucketId")
+            .finder("findBucket", "getStorageId", "getBucketId")
+            .finder("findBucketsByStorageId", "getStorageId")
+            .as(HashBucketDataAccess.class));
+    dataAccessMap.put(StorageDataAccess.class,
+        new InMemoryEntityTable("hdfs_storages", connector, "getStorageID")
+            .finder("findByPk", "getStorageID")
+            .as(StorageDataAccess.class));
+    dataAccessMap.put(StorageIdMapDataAccess.class,
+        new InMemoryEntityTable("hdfs_storage_id_map", connector,
+            "getStorageId")
+            .finder("findByPk", "getStorageId")
+            .as(StorageIdMapDataAccess.class));
+    dataAccessMap.put(SafeBlocksDataAccess.class,
+        new InMemoryEntityTable("hdfs_safe_blocks", connector)
+            .as(SafeBlocksDataAccess.class));
+    dataAccessMap.put(MisReplicatedRangeQueueDataAccess.class,
+        misReplicatedRanges());
+
+    dataAccessMap.put(LeasePathDataAccess.class, leasePaths());
+    dataAccessMap.put(OngoingSubTreeOpsDataAccess.class, subTreeOperations());
+    dataAccessMap.put(QuotaUpdateDataAccess.class, quotaUpdates());
+    dataAccessMap.put(RetryCacheEntryDataAccess.class, retryCacheEntries());
+    dataAccessMap.put(AceDataAccess.class,
+        new InMemoryEntityTable("hdfs_aces", connector,
+            "getInodeId", "getIndex")
+            .finder("getAcesByPKBatched", "getInodeId", "getIndex")
+            .as(AceDataAccess.class));
+    dataAccessMap.put(MetadataLogDataAccess.class,
+        new InMemoryEntityTable("hdfs_metadata_log", connector,
+            "getDatasetId", "getInodeId", "getLogicalTime")
+            .as(MetadataLogDataAccess.class));
+    dataAccessMap.put(EncodingStatusDataAccess.class,
+        new InMemoryEntityTable("hdfs_encoding_status", connector,
+            "getInodeId")
+            .finder("findByInodeId", "getInodeId")
+            .finder("findByParityInodeId", "getParityInodeId")
+            .as(EncodingStatusDataAccess.class));
+    dataAccessMap.put(BlockChecksumDataAccess.class, blockChecksums());
+    dataAccessMap.put(InMemoryInodeDataAccess.class,
+        fileData("hdfs_inmemory_file_inode_data")
+            .as(InMemoryInodeDataAccess.class));
+    dataAccessMap.put(SmallOnDiskInodeDataAccess.class,
+        fileData("hdfs_ondisk_small_file_inode_data")
+            .as(SmallOnDiskInodeDataAccess.class));
+    dataAccessMap.put(MediumOnDiskInodeDataAccess.class,
+        fileData("hdfs_ondisk_medium_file_inode_data")
+            .as(MediumOnDiskInodeDataAccess.class));
+    dataAccessMap.put(LargeOnDiskInodeDataAccess.class,
+        fileData("hdfs_ondisk_large_file_inode_data")
+            .as(LargeOnDiskInodeDataAccess.class));
+
+    dataAccessMap.put(HdfsLeDescriptorDataAccess.class,
+        new InMemoryEntityTable("hdfs_le_descriptors", connector, "getId")
+            .finder("findByPkey", "getId")
+            .as(HdfsLeDescriptorDataAccess.class));
+    dataAccessMap.put(YarnLeDescriptorDataAccess.class,
+        new InMemoryEntityTable("yarn_le_descriptors", connector, "getId")
+            .finder("findByPkey", "getId")
+            .as(YarnLeDescriptorDataAccess.class));
+  }
+
+  private static InMemoryEntityTable replicas() {
+    final InMemoryEntityTable table = new InMemoryEntityTable("hdfs_replicas",
+        connector, "getBlockId", "getInodeId", "getStorageId");
+    return table
+        .finder("findReplicasById", "getBlockId", "getInodeId")
+        .finder("findReplicasByINodeId", "getInodeId")
+        .finder("findReplicasByINodeIds", "getInodeId")
+        .finder("countAllReplicasForStorageId", "getStorageId")
+        .on("findBlockAndInodeIdsByStorageId", new InMemoryEntityTable.Call() {
+          @Override
+          public Object call(Object[] args) throws StorageException {
+            return blockToInode(table.where("getStorageId", args[0]), null);
+          }
+        })
+        .on("findBlockAndInodeIdsByStorageIdAndBucketIds",
+            new InMemoryEntityTable.Call() {
+              @Override
+              public Object call(Object[] args) throws StorageException {
+                return blockToInode(table.where("getStorageId", args[0]),
+                    InMemoryEntityTable.values(args[1]));
+              }
+            });
+  }
+
+  private static Map<Long, Integer> blockToInode(List<Object> replicas,
+      Collection<Object> buckets) {
+    Map<Long, Integer> result = new HashMap<>();
+    for (Object replica : replicas) {
+      if (buckets == null || buckets.contains(
+          InMemoryEntityTable.column(replica, "getBucketId"))) {
+        result.put((Long) InMemoryEntityTable.column(replica, "getBlockId"),
+            (Integer) InMemoryEntityTable.column(replica, "getInodeId"));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * The block lookup table maps the block ids to their inodes, which the
+   * block table has already.
+   */
+  private static BlockLookUpDataAccess blockLookUp(
+      final InMemoryBlockInfoDataAccess blocks) {
+    return new InMemoryEntityTable("hdfs_block_lookup_table", connector)
+        .on("findByBlockId", new InMemoryEntityTable.Call() {
+          @Override
+          public Object call(Object[] args) throws StorageException {
+            BlockInfo block = blocks.findByBlockId((Long) args[0]);
+            return block == null ? null :
+                new BlockLookUp(block.getBlockId(), block.getInodeId());
+          }
+        })
+        .on("findINodeIdsByBlockIds", new InMemoryEntityTable.Call() {
+          @Override
+          public Object call(Object[] args) throws StorageException {
+            long[] blockIds = (long[]) args[0];
+            int[] inodeIds = new int[blockIds.length];
+            for (int i = 0; i < blockIds.length; i++) {
+              BlockInfo block = blocks.findByBlockId(blockIds[i]);
+              inodeIds[i] = block == null ? org.apache.hadoop.hdfs.server
+                  .blockmanagement.BlockInfo.NON_EXISTING_ID :
+                  block.getInodeId();
+            }
+            return inodeIds;
+          }
+        })
+        .as(BlockLookUpDataAccess.class);
+  }
+
+  private static InvalidateBlockDataAccess invalidatedBlocks() {
+    final InMemoryEntityTable table = new InMemoryEntityTable(
+        "hdfs_invalidated_blocks", connector,
+        "getBlockId", "getInodeId", "getStorageId");
+    return table
+        .finder("findInvBlockByPkey", "getBlockId", "getStorageId",
+            "getInodeId")
+        .finder("findInvalidatedBlocksByBlockId", "getBlockId", "getInodeId")
+        .finder("findInvalidatedBlocksByINodeId", "getInodeId")
+        .finder("findInvalidatedBlocksByINodeIds", "getInodeId")
+        .finder("findInvalidatedBlockByStorageId", "getStorageId")
+        .finder("countAllReplicasForStorageId", "getStorageId")
+        .on("findAllInvalidatedBlocks", new InMemoryEntityTable.Call() {
+          @Override
+          public Object call(Object[] args) throws StorageException {
+            return table.all();
+          }
+        })
+        .on("findInvalidatedBlockBySidUsingMySQLServer",
+            new InMemoryEntityTable.Call() {
+              @Override
+              public Object call(Object[] args) throws StorageException {
+                Map<Long, Long> result = new HashMap<>();
+                for (Object row : table.where("getStorageId", args[0])) {
+                  result.put(
+                      (Long) InMemoryEntityTable.column(row, "getBlockId"),
+                      (Long) InMemoryEntityTable.column(row,
+                          "getGenerationStamp"));
+                }
+                return result;
+              }
+            })
+        .on("removeAllByStorageId", new InMemoryEntityTable.Call() {
+          @Override
+          public Object call(Object[] args) throws StorageException {
+            table.deleteAll(table.where("getStorageId", args[0]));
+            return null;
+          }
+        })
+        .on("removeByBlockIdAndStorageId", new InMemoryEntityTable.Call() {
+          @Override
+          public Object call(Object[] args) throws StorageException {
+            for (Object row : table.where("getBlockId", args[0])) {
+              if (args[1].equals(
+                  InMemoryEntityTable.column(row, "getStorageId"))) {
+                table.delete(row);
+              }
+            }
+            return null;
+          }
+        })
+        .as(InvalidateBlockDataAccess.class);
+  }
+
+  private static CorruptReplicaDataAccess corruptReplicas() {
+    final InMemoryEntityTable table = new InMemoryEntityTable(
+        "hdfs_corrupt_replicas", connector,
+        "getBlockId", "getInodeId", "getStorageId");
+    return table
+        .finder("findByBlockId", "getBlockId", "getInodeId")
+        .finder("findByINodeId", "getInodeId")
+        .finder("findByINodeIds", "getInodeId")
+        .on("countAllUniqueBlk", new InMemoryEntityTable.Call() {
+          @Override
+          public Object call(Object[] args) throws StorageException {
+            Set<Object> blocks = new HashSet<>();
+            for (Object row : table.all()) {
+              blocks.add(InMemoryEntityTable.column(row, "getBlockId"));
+            }
+            return blocks.size();
+          }
+        })
+        .as(CorruptReplicaDataAccess.class);
+  }
+
+  private static UnderReplicatedBlockDataAccess underReplicatedBlocks() {
+    final InMemoryEntityTable table = new InMemoryEntityTable(
+        "hdfs_under_replicated_blocks", connector, "getBlockId", "getInodeId");
+    return table
+        .finder("findByPk", "getBlockId", "getInodeId")
+        .finder("findByINodeId", "getInodeId")
+        .finder("findByINodeIds", "getInodeId")
+        .finder("countByLevel", "getLevel")
+        .on("findByLevel", new InMemoryEntityTable.Call() {
+          @Override
+          public Object call(Object[] args) throws StorageException {
+            List<Object> rows = table.where("getLevel", args[0]);
+            if (args.length < 3) {
+              return rows;
+            }
+            // pages have to be stable from one call to the next
+            Collections.sort(rows, new Comparator<Object>() {
+              @Override
+              public int compare(Object a, Object b) {
+                return Long.compare(
+                    (Long) InMemoryEntityTable.column(a, "getBlockId"),
+                    (Long) InMemoryEntityTable.column(b, "getBlockId"));
+              }
+            });
+            int offset = Math.min((Integer) args[1], rows.size());
+            int count = Math.min((Integer) args[2], rows.size() - offset);
+            return new ArrayList<>(rows.subList(offset, offset + count));
+          }
+        })
+        .on("countLessThanALevel", new InMemoryEntityTable.Call() {
+          @Override
+          public Object call(Object[] args) throws StorageException {
+            final int level = (Integer) args[0];
+            return table.where(new Predicate<Object>() {
+              @Override
+              public boolean apply(Object row) {
+                return (Integer) InMemoryEntityTable.column(row, "getLevel") <
+                    level;
+              }
+            }).size();
+          }
+        })
+        .as(UnderReplicatedBlockDataAccess.class);
+  }
+
+  private static MisReplicatedRangeQueueDataAccess misReplicatedRanges() {
+    // the rows are the (start, end) ranges
+    final InMemoryEntityTable table =
+        new InMemoryEntityTable("hdfs_misreplicated_range_queue", connector);
+    return table
+        .on("insert", new InMemoryEntityTable.Call() {
+          @Override
+          public Object call(Object[] args) throws StorageException {
+            table.put(InMemoryTable.key(args[0], args[1]));
+            return null;
+          }
+        })
+        .on("remove", new InMemoryEntityTable.Call() {
+          @Override
+          public Object call(Object[] args) throws StorageException {
+            table.deleteKey(InMemoryTable.key(args[0], args[1]));
+            return null;
+          }
+        })
+        .as(MisReplicatedRangeQueueDataAccess.class);
+  }
+
+  private static LeasePathDataAccess leasePaths() {
+    final InMemoryEntityTable table = new InMemoryEntityTable(
+        "hdfs_lease_paths", connector, "getPath", "getHolderId");
+    return table
+        .finder("findByHolderId", "getHolderId")
+        .finder("findByPath", "getPath")
+        .on("findByPrefix", new InMemoryEntityTable.Call() {
+          @Override
+          public Object call(Object[] args) throws StorageException {
+            return table.where(startsWith("getPath", (String) args[0]));
+          }
+        })
+        .as(LeasePathDataAccess.class);
+  }
+
+  private static OngoingSubTreeOpsDataAccess subTreeOperations() {
+    final InMemoryEntityTable table = new InMemoryEntityTable(
+        "hdfs_on_going_sub_tree_ops", connector, "getPath");
+    return table
+        .finder("allOpsByNN", "getNameNodeId")
+        .on("findByPathsByPrefix", new InMemoryEntityTable.Call() {
+          @Override
+          public Object call(Object[] args) throws StorageException {
+            return table.where(startsWith("getPath", (String) args[0]));
+          }
+        })
+        .as(OngoingSubTreeOpsDataAccess.class);
+  }
+
+  private static QuotaUpdateDataAccess quotaUpdates() {
+    final InMemoryEntityTable table = new InMemoryEntityTable(
+        "hdfs_quota_update", connector, "getId");
+    return table
+        .finder("findByInodeId", "getInodeId")
+        .on("prepare", new InMemoryEntityTable.Call() {
+          @Override
+          public Object call(Object[] args) throws StorageException {
+            // (modified, removed)
+            for (Object row : InMemoryEntityTable.values(args[1])) {
+              table.delete(row);
+            }
+            for (Object row : InMemoryEntityTable.values(args[0])) {
+              table.put(row);
+            }
+            return null;
+          }
+        })
+        .on("getCount", new InMemoryEntityTable.Call() {
+          @Override
+          public Object call(Object[] args) throws StorageException {
+            return table.all().size();
+          }
+        })
+        .on("findLimited", new InMemoryEntityTable.Call() {
+          @Override
+          public Object call(Object[] args) throws StorageException {
+            List<Object> rows = table.all();
+            Collections.sort(rows, new Comparator<Object>() {
+              @Override
+              public int compare(Object a, Object b) {
+                return Integer.compare(
+                    (Integer) InMemoryEntityTable.column(a, "getId"),
+                    (Integer) InMemoryEntityTable.column(b, "getId"));
+              }
+            });
+            int limit = Math.min((Integer) args[0], rows.size());
+            return new ArrayList<>(rows.subList(0, limit));
+          }
+        })
+        .as(QuotaUpdateDataAccess.class);
+  }
+
+  private static RetryCacheEntryDataAccess retryCacheEntries() {
+    final InMemoryEntityTable table = new InMemoryEntityTable(
+        "hdfs_retry_cache_entry", connector, new InMemoryEntityTable.Key() {
+          @Override
+          public Object of(Object row) {
+            RetryCacheEntry entry = (RetryCacheEntry) row;
+            return new RetryCacheEntry.PrimaryKey(entry.getClientId(),
+                entry.getCallId());
+          }
+        });
+    return table
+        .on("find", new InMemoryEntityTable.Call() {
+          @Override
+          public Object call(Object[] args) throws StorageException {
+            return table.find(args[0]);
+          }
+        })
+        .on("removeOlds", new InMemoryEntityTable.Call() {
+          @Override
+          public Object call(Object[] args) throws StorageException {
+            final long time = (Long) args[0];
+            table.deleteAll(table.where(new Predicate<Object>() {
+              @Override
+              public boolean apply(Object row) {
+                return ((RetryCacheEntry) row).getExpirationTime() < time;
+              }
+            }));
+            return null;
+          }
+        })
+        .as(RetryCacheEntryDataAccess.class);
+  }
+
+  private static BlockChecksumDataAccess blockChecksums() {
+    final InMemoryEntityTable table = new InMemoryEntityTable(
+        "hdfs_block_checksum", connector, "getInodeId", "getBlockIndex");
+    return table
+        .finder("find", "getInodeId", "getBlockIndex")
+        .finder("findAll", "getInodeId")
+        .on("deleteAll", new InMemoryEntityTable.Call() {
+          @Override
+          public Object call(Object[] args) throws StorageException {
+            table.deleteAll(args.length == 0 ? table.all() :
+                table.where("getInodeId", args[0]));
+            return null;
+          }
+        })
+        .as(BlockChecksumDataAccess.class);
+  }
+
+  private static InMemoryEntityTable fileData(String name) {
+    final InMemoryEntityTable table =
+        new InMemoryEntityTable(name, connector, "getInodeId");
+    return table.on("get", new InMemoryEntityTable.Call() {
+      @Override
+      public Object call(Object[] args) throws StorageException {
+        return table.find(InMemoryTable.key(args[0]));
+      }
+    });
+  }
+
+  private static Predicate<Object> startsWith(final String column,
+      final String prefix) {
+    return new Predicate<Object>() {
+      @Override
+      public boolean apply(Object row) {
+        return ((String) InMemoryEntityTable.column(row, column))
+            .startsWith(prefix);
+      }
+    };
+  }
+
+  @Override
+  public void setConfiguration(Properties conf)
+      throws StorageInitializtionException {
+    try {
+      connector.setConfiguration(conf);
+    } catch (StorageException e) {
+      throw new StorageInitializtionException(e);
+    }
+  }
+
+  @Override
+  public StorageConnector getConnector() {
+    return connector;
+  }
+
+  @Override
+  public EntityDataAccess getDataAccess(Class type) {
+    EntityDataAccess dataAccess = dataAccessMap.get(type);
+    if (dataAccess == null) {
+      LOG.debug("No in-memory implementation of " + type.getSimpleName());
+      EntityDataAccess unsupported = unsupported(type);
+      dataAccess = dataAccessMap.putIfAbsent(type, unsupported);
+      if (dataAccess == null) {
+        dataAccess = unsupported;
+      }
+    }
+    return dataAccess;
+  }
+
+  private static EntityDataAccess unsupported(final Class type) {
+    if (!type.isInterface()) {
+      throw new IllegalArgumentException(type.getName() +
+          " is not a data access interface");
+    }
+    return (EntityDataAccess) Proxy.newProxyInstance(type.getClassLoader(),
+        new Class[]{type}, new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args)
+              throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+              if (method.getName().equals("equals")) {
+                return proxy == args[0];
+              } else if (method.getName().equals("hashCode")) {
+                return System.identityHashCode(proxy);
+              }
+              return "unsupported " + type.getSimpleName();
+            }
+            String message = "The in-memory storage driver does not " +
+                "implement " + type.getSimpleName() + "." + method.getName();
+            if (Arrays.asList(method.getExceptionTypes())
+                .contains(StorageException.class)) {
+              throw new StorageException(message);
+            }
+            throw new UnsupportedOperationException(message);
+          }
+        });
+  }
+}
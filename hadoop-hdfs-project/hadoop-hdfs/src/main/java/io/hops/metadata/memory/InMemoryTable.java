@@ -0,0 +1,336 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata.memory;
+
+import com.google.common.base.Predicate;
+import io.hops.exception.StorageException;
+import io.hops.transaction.context.EntityContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * A concurrent, transactional table with row level locking. Committed rows
+ * live in a concurrent map; writes are buffered in the write set of the
+ * calling thread's transaction and become visible on commit. Reads take
+ * shared or exclusive row locks according to the lock mode set on the
+ * connector, and read their own uncommitted writes. Reads that take no row
+ * locks hold the commit lock of the connector, so that they never see a
+ * transaction half committed.
+ */
+class InMemoryTable<K, V> {
+
+  private static final Object DELETED = new Object();
+
+  private final String name;
+  private final InMemoryStorageConnector connector;
+  private final ConcurrentMap<K, V> rows = new ConcurrentHashMap<>();
+  private final ConcurrentMap<K, RowLock> locks = new ConcurrentHashMap<>();
+  private final List<Index<?, K, V>> indexes = new ArrayList<>();
+
+  /**
+   * Non unique secondary index over committed rows.
+   */
+  abstract static class Index<I, K, V> {
+    private final ConcurrentMap<I, Set<K>> entries = new ConcurrentHashMap<>();
+
+    abstract I valueOf(V row);
+
+    private void add(K key, V row) {
+      I value = valueOf(row);
+      Set<K> keys = entries.get(value);
+      if (keys == null) {
+        Set<K> newKeys =
+            Collections.newSetFromMap(new ConcurrentHashMap<K, Boolean>());
+        keys = entries.putIfAbsent(value, newKeys);
+        if (keys == null) {
+          keys = newKeys;
+        }
+      }
+      keys.add(key);
+    }
+
+    private void remove(K key, V row) {
+      Set<K> keys = entries.get(valueOf(row));
+      if (keys != null) {
+        keys.remove(key);
+      }
+    }
+
+    private Set<K> keys(I value) {
+      Set<K> keys = entries.get(value);
+      return keys == null ? Collections.<K>emptySet() : keys;
+    }
+
+    private void clear() {
+      entries.clear();
+    }
+  }
+
+  InMemoryTable(String name, InMemoryStorageConnector connector) {
+    this.name = name;
+    this.connector = connector;
+    connector.register(this);
+  }
+
+  static List<Object> key(Object... parts) {
+    return Arrays.asList(parts);
+  }
+
+  String getName() {
+    return name;
+  }
+
+  <I> Index<I, K, V> addIndex(Index<I, K, V> index) {
+    indexes.add(index);
+    return index;
+  }
+
+  V find(K key) throws StorageException {
+    InMemoryTransaction tx = connector.currentTransaction();
+    if (tx == null) {
+      return rows.get(key);
+    }
+    lock(tx, key, tx.getLockMode());
+    return visibleRow(tx, key);
+  }
+
+  List<V> findAll(Collection<K> keys) throws StorageException {
+    List<V> result = new ArrayList<>(keys.size());
+    Lock commitLock = lockCommits(connector.currentTransaction());
+    try {
+      for (K key : keys) {
+        V row = find(key);
+        if (row != null) {
+          result.add(row);
+        }
+      }
+    } finally {
+      if (commitLock != null) {
+        commitLock.unlock();
+      }
+    }
+    return result;
+  }
+
+  <I> List<V> findByIndex(final Index<I, K, V> index, final I value)
+      throws StorageException {
+    Set<K> candidates = new LinkedHashSet<>(index.keys(value));
+    InMemoryTransaction tx = connector.currentTransaction();
+    Map<Object, Object> writeSet = tx == null ? null : tx.peekWriteSet(this);
+    if (writeSet != null) {
+      for (Map.Entry<Object, Object> entry : writeSet.entrySet()) {
+        if (entry.getValue() != DELETED &&
+            value.equals(index.valueOf((V) entry.getValue()))) {
+          candidates.add((K) entry.getKey());
+        }
+      }
+    }
+    return filter(candidates, new Predicate<V>() {
+      @Override
+      public boolean apply(V row) {
+        return value.equals(index.valueOf(row));
+      }
+    });
+  }
+
+  List<V> scan(Predicate<V> predicate) throws StorageException {
+    Set<K> candidates = new LinkedHashSet<>(rows.keySet());
+    InMemoryTransaction tx = connector.currentTransaction();
+    Map<Object, Object> writeSet = tx == null ? null : tx.peekWriteSet(this);
+    if (writeSet != null) {
+      candidates.addAll((Set<K>) writeSet.keySet());
+    }
+    return filter(candidates, predicate);
+  }
+
+  private List<V> filter(Collection<K> candidates, Predicate<V> predicate)
+      throws StorageException {
+    InMemoryTransaction tx = connector.currentTransaction();
+    List<V> result = new ArrayList<>();
+    Lock commitLock = lockCommits(tx);
+    try {
+      for (K key : candidates) {
+        V row = tx == null ? rows.get(key) : visibleRow(tx, key);
+        if (row == null || !predicate.apply(row)) {
+          continue;
+        }
+        if (commitLock == null) {
+          // lock the row and re-read it, it might have changed meanwhile
+          lock(tx, key, tx.getLockMode());
+          row = visibleRow(tx, key);
+          if (row == null || !predicate.apply(row)) {
+            continue;
+          }
+        }
+        result.add(row);
+      }
+    } finally {
+      if (commitLock != null) {
+        commitLock.unlock();
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Holds back commits while a read that takes no row locks goes over
+   * several rows. Reads taking row locks must not hold it, a committing
+   * transaction holds its row locks while it waits for the commit lock.
+   *
+   * @return the lock to release, or null when the read takes row locks
+   */
+  private Lock lockCommits(InMemoryTransaction tx) {
+    if (tx != null &&
+        tx.getLockMode() != EntityContext.LockMode.READ_COMMITTED) {
+      return null;
+    }
+    Lock lock = connector.getCommitLock().readLock();
+    lock.lock();
+    return lock;
+  }
+
+  void put(K key, V row) throws StorageException {
+    InMemoryTransaction tx = requireTransaction();
+    lock(tx, key, EntityContext.LockMode.WRITE_LOCK);
+    tx.getWriteSet(this).put(key, row);
+  }
+
+  void delete(K key) throws StorageException {
+    InMemoryTransaction tx = requireTransaction();
+    lock(tx, key, EntityContext.LockMode.WRITE_LOCK);
+    tx.getWriteSet(this).put(key, DELETED);
+  }
+
+  int count() {
+    return rows.size();
+  }
+
+  void clear() {
+    rows.clear();
+    locks.clear();
+    for (Index<?, K, V> index : indexes) {
+      index.clear();
+    }
+  }
+
+  /**
+   * Applies the write set of a committing transaction. Either all the rows
+   * are applied or none is.
+   *
+   * @return the rows replaced, to {@link #restore} them if another table of
+   * the same transaction fails to apply
+   */
+  Map<Object, Object> apply(Map<Object, Object> writeSet) {
+    Map<Object, Object> previous = new LinkedHashMap<>();
+    try {
+      for (Map.Entry<Object, Object> entry : writeSet.entrySet()) {
+        K key = (K) entry.getKey();
+        V row = entry.getValue() == DELETED ? null : (V) entry.getValue();
+        V old = row == null ? rows.remove(key) : rows.put(key, row);
+        previous.put(key, old == null ? DELETED : old);
+        reindex(key, old, row);
+      }
+    } catch (RuntimeException e) {
+      restore(previous);
+      throw e;
+    }
+    return previous;
+  }
+
+  void restore(Map<Object, Object> previous) {
+    for (Map.Entry<Object, Object> entry : previous.entrySet()) {
+      K key = (K) entry.getKey();
+      V old = entry.getValue() == DELETED ? null : (V) entry.getValue();
+      V current = old == null ? rows.remove(key) : rows.put(key, old);
+      reindex(key, current, old);
+    }
+  }
+
+  private void reindex(K key, V old, V row) {
+    for (Index<?, K, V> index : indexes) {
+      if (old != null) {
+        index.remove(key, old);
+      }
+      if (row != null) {
+        index.add(key, row);
+      }
+    }
+  }
+
+  void release(InMemoryTransaction tx, Object key, RowLock lock) {
+    if (lock.release(tx)) {
+      locks.remove(key, lock);
+    }
+  }
+
+  private V visibleRow(InMemoryTransaction tx, K key) {
+    Map<Object, Object> writeSet = tx.peekWriteSet(this);
+    if (writeSet != null && writeSet.containsKey(key)) {
+      Object row = writeSet.get(key);
+      return row == DELETED ? null : (V) row;
+    }
+    return rows.get(key);
+  }
+
+  private void lock(InMemoryTransaction tx, K key, EntityContext.LockMode mode)
+      throws StorageException {
+    if (mode == EntityContext.LockMode.READ_COMMITTED) {
+      return;
+    }
+    boolean exclusive = mode == EntityContext.LockMode.WRITE_LOCK;
+    Map<Object, RowLock> held = tx.getHeldLocks(this);
+    RowLock lock = held.get(key);
+    if (lock != null) {
+      // we hold it already, so it can not be retired under our feet
+      lock.acquire(tx, exclusive, connector.getLockTimeout());
+      return;
+    }
+    while (true) {
+      lock = locks.get(key);
+      if (lock == null) {
+        RowLock newLock = new RowLock();
+        lock = locks.putIfAbsent(key, newLock);
+        if (lock == null) {
+          lock = newLock;
+        }
+      }
+      if (lock.acquire(tx, exclusive, connector.getLockTimeout())) {
+        held.put(key, lock);
+        return;
+      }
+    }
+  }
+
+  private InMemoryTransaction requireTransaction() throws StorageException {
+    InMemoryTransaction tx = connector.currentTransaction();
+    if (tx == null) {
+      throw new StorageException("Writing to " + name + " requires an active" +
+          " transaction");
+    }
+    return tx;
+  }
+}
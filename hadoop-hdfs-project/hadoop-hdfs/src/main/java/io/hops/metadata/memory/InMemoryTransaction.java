@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata.memory;
+
+import io.hops.transaction.context.EntityContext;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * State of one in-memory transaction. Transactions are bound to the thread
+ * that started them, the same way NDB sessions are used by the request
+ * handlers.
+ */
+class InMemoryTransaction {
+
+  private final Map<InMemoryTable, Map<Object, Object>> writeSets =
+      new LinkedHashMap<>();
+  private final Map<InMemoryTable, Map<Object, RowLock>> heldLocks =
+      new LinkedHashMap<>();
+  private EntityContext.LockMode lockMode =
+      EntityContext.LockMode.READ_COMMITTED;
+  private int roundTrips = 0;
+
+  EntityContext.LockMode getLockMode() {
+    return lockMode;
+  }
+
+  void setLockMode(EntityContext.LockMode lockMode) {
+    this.lockMode = lockMode;
+  }
+
+  int getRoundTrips() {
+    return roundTrips;
+  }
+
+  void incrementRoundTrips() {
+    roundTrips++;
+  }
+
+  Map<Object, Object> getWriteSet(InMemoryTable table) {
+    Map<Object, Object> writeSet = writeSets.get(table);
+    if (writeSet == null) {
+      writeSet = new LinkedHashMap<>();
+      writeSets.put(table, writeSet);
+    }
+    return writeSet;
+  }
+
+  Map<Object, Object> peekWriteSet(InMemoryTable table) {
+    return writeSets.get(table);
+  }
+
+  Map<InMemoryTable, Map<Object, Object>> getWriteSets() {
+    return writeSets;
+  }
+
+  Map<Object, RowLock> getHeldLocks(InMemoryTable table) {
+    Map<Object, RowLock> locks = heldLocks.get(table);
+    if (locks == null) {
+      locks = new LinkedHashMap<>();
+      heldLocks.put(table, locks);
+    }
+    return locks;
+  }
+
+  void releaseLocks() {
+    for (Map.Entry<InMemoryTable, Map<Object, RowLock>> entry : heldLocks
+        .entrySet()) {
+      for (Map.Entry<Object, RowLock> lock : entry.getValue().entrySet()) {
+        entry.getKey().release(this, lock.getKey(), lock.getValue());
+      }
+    }
+    heldLocks.clear();
+  }
+}
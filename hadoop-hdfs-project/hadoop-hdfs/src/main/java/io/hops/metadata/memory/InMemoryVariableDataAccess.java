@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata.memory;
+
+import io.hops.exception.StorageException;
+import io.hops.metadata.common.entity.Variable;
+import io.hops.metadata.hdfs.dal.VariableDataAccess;
+
+import java.util.Collection;
+
+public class InMemoryVariableDataAccess
+    implements VariableDataAccess<Variable, Variable.Finder> {
+
+  private final InMemoryStorageConnector connector;
+  private final InMemoryTable<Variable.Finder, Variable> table;
+
+  public InMemoryVariableDataAccess(InMemoryStorageConnector connector) {
+    this.connector = connector;
+    this.table = new InMemoryTable<>("hdfs_variables", connector);
+  }
+
+  @Override
+  public Variable getVariable(Variable.Finder varType)
+      throws StorageException {
+    connector.roundTrip();
+    Variable variable = table.find(varType);
+    if (variable == null) {
+      // like in the database, unset variables have their registered default
+      variable = Variable.initVariable(varType,
+          Variable.getDefaultValue(varType));
+    }
+    return variable;
+  }
+
+  @Override
+  public void setVariable(Variable var) throws StorageException {
+    connector.roundTrip();
+    table.put(var.getType(), var);
+  }
+
+  @Override
+  public void prepare(Collection<Variable> newVariables,
+      Collection<Variable> updatedVariables,
+      Collection<Variable> removedVariables) throws StorageException {
+    connector.roundTrip();
+    if (removedVariables != null) {
+      for (Variable var : removedVariables) {
+        table.delete(var.getType());
+      }
+    }
+    if (newVariables != null) {
+      for (Variable var : newVariables) {
+        table.put(var.getType(), var);
+      }
+    }
+    if (updatedVariables != null) {
+      for (Variable var : updatedVariables) {
+        table.put(var.getType(), var);
+      }
+    }
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata.memory;
+
+import io.hops.exception.TransientStorageException;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A row lock owned by transactions rather than threads. Shared locks can be
+ * upgraded to exclusive locks by their only holder, like in NDB. Waiters give
+ * up after the configured timeout with a {@link TransientStorageException} so
+ * that the request handlers retry the transaction, which is how deadlocks are
+ * resolved in the real database as well.
+ */
+class RowLock {
+
+  private final Set<InMemoryTransaction> sharedHolders = new HashSet<>();
+  private InMemoryTransaction exclusiveHolder;
+  private boolean retired = false;
+
+  /**
+   * @return false if this lock was retired from the lock table while waiting
+   * and the caller has to look up a fresh one
+   */
+  synchronized boolean acquire(InMemoryTransaction tx, boolean exclusive,
+      long timeoutMs) throws TransientStorageException {
+    long deadline = System.currentTimeMillis() + timeoutMs;
+    while (true) {
+      if (retired) {
+        return false;
+      }
+      if (canAcquire(tx, exclusive)) {
+        if (exclusive) {
+          exclusiveHolder = tx;
+          sharedHolders.remove(tx);
+        } else if (exclusiveHolder != tx) {
+          sharedHolders.add(tx);
+        }
+        return true;
+      }
+      long remaining = deadline - System.currentTimeMillis();
+      if (remaining <= 0) {
+        throw new TransientStorageException("Timed out after " + timeoutMs +
+            " ms waiting for a " + (exclusive ? "write" : "read") + " lock");
+      }
+      try {
+        wait(remaining);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new TransientStorageException("Interrupted while waiting for a " +
+            "row lock");
+      }
+    }
+  }
+
+  private boolean canAcquire(InMemoryTransaction tx, boolean exclusive) {
+    if (exclusiveHolder != null) {
+      return exclusiveHolder == tx;
+    }
+    if (!exclusive) {
+      return true;
+    }
+    return sharedHolders.isEmpty() ||
+        (sharedHolders.size() == 1 && sharedHolders.contains(tx));
+  }
+
+  /**
+   * @return true if nobody holds the lock any more, in which case it has been
+   * retired and can be dropped from the lock table
+   */
+  synchronized boolean release(InMemoryTransaction tx) {
+    if (exclusiveHolder == tx) {
+      exclusiveHolder = null;
+    }
+    sharedHolders.remove(tx);
+    notifyAll();
+    if (exclusiveHolder == null && sharedHolders.isEmpty()) {
+      retired = true;
+    }
+    return retired;
+  }
+}
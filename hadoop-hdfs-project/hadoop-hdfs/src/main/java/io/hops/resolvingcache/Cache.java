@@ -23,10 +23,14 @@
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.server.namenode.INode;
+import org.apache.hadoop.hdfs.server.namenode.metrics.TransactionMetrics;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
 import static io.hops.transaction.context.TransactionsStats.ResolvingCacheStat;
 
 public abstract class Cache {
@@ -38,6 +42,18 @@ public abstract class Cache {
   private boolean isStarted;
   private boolean isEnabled;
 
+  private static final ThreadLocal<List<INode>> removedInTransaction =
+      new ThreadLocal<List<INode>>() {
+        @Override
+        protected List<INode> initialValue() {
+          return new ArrayList<>();
+        }
+      };
+
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong verificationFailures = new AtomicLong();
+
   protected Cache() {
   }
 
@@ -53,11 +69,12 @@ public static Cache getInstance(Configuration conf) throws IOException {
         instance = new InMemoryCache();
       }else if(memType.equals("optimal")){
         instance = new OptimalMemcache();
+      }else if(memType.equals("trie")){
+        instance = new TrieCache();
       }else {
-        throw new IllegalArgumentException("Cache has only two " +
-            "Memcache implementations, Inode based and Path based: wrong " +
-            "parameter " +
-            memType);
+        throw new IllegalArgumentException("Unknown resolving cache type " +
+            memType + ", it should be one of INode, Path, InMemory, " +
+            "Optimal or Trie");
       }
       instance.setConfiguration(conf);
     }
@@ -126,7 +143,7 @@ public final void set(final String path, final List<INode> inodes){
 
   public final void set(final INode inode){
     if(isStarted){
-
+      setInternal(inode);
     }
   }
 
@@ -134,6 +151,12 @@ public final int[] get(final String path) throws IOException{
     if(isStarted){
       final long startTime = System.currentTimeMillis();
       int[] result = getInternal(path);
+      if (result == null) {
+        misses.incrementAndGet();
+      } else {
+        hits.incrementAndGet();
+      }
+      TransactionMetrics.getInstance().resolvingCacheLookup(result != null);
       final long elapsed =  (System.currentTimeMillis() - startTime);
       LOG.debug("GET for path (" + path + ")  got value = " + Arrays.toString
           (result) + " in " + elapsed + " " +
@@ -161,6 +184,44 @@ public final void delete(final INode inode){
     }
   }
 
+  /**
+   * Deletes the inode once the transaction of the calling thread commits, so
+   * that a rename or a delete that is rolled back leaves the cache as it was.
+   */
+  public final void deleteOnCommit(final INode inode) {
+    if (isStarted) {
+      removedInTransaction.get().add(inode);
+    }
+  }
+
+  /**
+   * Called by the request handler when the transaction of the calling thread
+   * committed.
+   */
+  public static void transactionCommitted() {
+    List<INode> removed = removedInTransaction.get();
+    if (removed.isEmpty()) {
+      return;
+    }
+    try {
+      if (instance != null) {
+        for (INode inode : removed) {
+          instance.delete(inode);
+        }
+      }
+    } finally {
+      removed.clear();
+    }
+  }
+
+  /**
+   * Called by the request handler when a transaction attempt starts, to drop
+   * what a rolled back attempt left.
+   */
+  public static void transactionStarted() {
+    removedInTransaction.get().clear();
+  }
+
   public final void flush(){
     if(isStarted){
      flushInternal();
@@ -168,6 +229,26 @@ public final void flush(){
   }
 
 
+  /**
+   * Called by the path resolvers when a cached entry does not match the
+   * inodes read from the database.
+   */
+  public final void verificationFailed() {
+    verificationFailures.incrementAndGet();
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getVerificationFailures() {
+    return verificationFailures.get();
+  }
+
   protected abstract void startInternal() throws IOException;
   protected abstract void stopInternal();
 
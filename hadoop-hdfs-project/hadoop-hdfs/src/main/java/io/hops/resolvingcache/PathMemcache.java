@@ -101,9 +101,13 @@ public void onComplete(OperationFuture<?> f) throws Exception {
     });
   }
 
+  /**
+   * The entries are keyed by the hash of their path, which can not be found
+   * from the inode. Stale entries are dropped by the path resolver when the
+   * cached ids do not match the database.
+   */
   @Override
   protected void deleteInternal(MemcachedClient mc, INode inode) {
-    throw new UnsupportedOperationException();
   }
 
   private String getKey(String path) {
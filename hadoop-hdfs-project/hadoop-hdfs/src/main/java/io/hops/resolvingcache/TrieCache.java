@@ -0,0 +1,323 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.resolvingcache;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.server.namenode.INode;
+import org.apache.hadoop.hdfs.server.namenode.INodeDirectory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Resolving cache that keeps the cached part of the namespace as a tree of
+ * path components, each node holding the id of its inode. The parent id of an
+ * inode is the id of the parent node, and the partition id follows from the
+ * parent id, the name and the depth, so a cached path gives everything needed
+ * to read all of its inodes in one batched primary key read.
+ * <p>
+ * Removing a node removes everything below it, so a rename or a delete
+ * invalidates exactly the subtree that moved, and an entry found stale by the
+ * path resolvers takes its stale descendants with it. The size is bounded by
+ * an estimate of the heap used; when it is exceeded the subtrees that were
+ * not used since the previous sweep are evicted (clock algorithm).
+ * <p>
+ * The entries are only hints, the path resolvers check every inode against
+ * the database, so races between concurrent updates of the trie at most cost
+ * a verification failure.
+ */
+public class TrieCache extends Cache {
+
+  /**
+   * Rough heap cost of a node: the node itself, the entry in the children map
+   * of its parent, the entry in the id index and the name, without its chars.
+   */
+  static final int NODE_OVERHEAD = 160;
+
+  private long maxMemory;
+  private long lowWatermark;
+
+  private volatile Node top;
+  private volatile ConcurrentMap<Integer, Node> byId;
+  private final AtomicLong memory = new AtomicLong();
+  private final ReentrantLock evictionLock = new ReentrantLock();
+
+  @Override
+  protected void setConfiguration(Configuration conf) throws IOException {
+    maxMemory = conf.getLong(DFSConfigKeys.DFS_RESOLVING_CACHE_TRIE_MAX_MEMORY,
+        DFSConfigKeys.DFS_RESOLVING_CACHE_TRIE_MAX_MEMORY_DEFAULT);
+    lowWatermark = maxMemory - maxMemory / 10;
+    super.setConfiguration(conf);
+  }
+
+  @Override
+  protected void startInternal() throws IOException {
+    clear();
+  }
+
+  private void clear() {
+    byId = new ConcurrentHashMap<>();
+    // the parent of the root
+    top = new Node(null, INodeDirectory.ROOT_PARENT_ID, "");
+    memory.set(0);
+  }
+
+  @Override
+  protected void stopInternal() {
+  }
+
+  /**
+   * The inodes are attached to their parents through the id index, so this
+   * also works for the sub paths the partial path resolver passes in.
+   */
+  @Override
+  protected void setInternal(String path, List<INode> inodes) {
+    for (INode inode : inodes) {
+      if (inode != null) {
+        add(inode);
+      }
+    }
+    evictIfNeeded();
+  }
+
+  @Override
+  protected void setInternal(INode inode) {
+    add(inode);
+    evictIfNeeded();
+  }
+
+  private void add(INode inode) {
+    Node parent = getNode(inode.getParentId());
+    if (parent == null) {
+      return;
+    }
+    String name = inode.getLocalName();
+    Node child = parent.getChild(name);
+    if (child != null) {
+      if (child.id == inode.getId()) {
+        child.referenced = true;
+        return;
+      }
+      // the name now points to another inode
+      detach(child);
+    }
+    Node node = new Node(parent, inode.getId(), name);
+    Node previous = parent.children().putIfAbsent(name, node);
+    if (previous != null) {
+      // lost against a concurrent set, the verification sorts it out
+      return;
+    }
+    Node replaced = byId.put(node.id, node);
+    if (replaced != null && replaced != node) {
+      // the inode was moved, drop what was cached under its old path
+      detach(replaced);
+    }
+    memory.addAndGet(node.size());
+    if (parent.detached) {
+      // the parent was invalidated while we were adding
+      detach(node);
+    }
+  }
+
+  @Override
+  protected int[] getInternal(String path) throws IOException {
+    String[] pathComponents = INode.getPathNames(path);
+    int[] inodeIds = new int[pathComponents.length];
+    Node node = top;
+    int index = 0;
+    while (index < pathComponents.length) {
+      node = node.getChild(pathComponents[index]);
+      if (node == null) {
+        break;
+      }
+      node.referenced = true;
+      inodeIds[index] = node.id;
+      index++;
+    }
+
+    //only the root was found
+    if (index <= 1) {
+      return null;
+    }
+
+    return index == inodeIds.length ? inodeIds : Arrays.copyOf(inodeIds,
+        index);
+  }
+
+  @Override
+  protected void deleteInternal(String path) {
+    String[] pathComponents = INode.getPathNames(path);
+    Node node = top;
+    for (String component : pathComponents) {
+      node = node.getChild(component);
+      if (node == null) {
+        return;
+      }
+    }
+    detach(node);
+  }
+
+  /**
+   * Removes the inode, wherever it is cached, and whatever is cached under
+   * its current name, together with their subtrees.
+   */
+  @Override
+  protected void deleteInternal(INode inode) {
+    Node node = byId.get(inode.getId());
+    if (node != null) {
+      detach(node);
+    }
+    Node parent = getNode(inode.getParentId());
+    if (parent != null) {
+      node = parent.getChild(inode.getLocalName());
+      if (node != null) {
+        detach(node);
+      }
+    }
+  }
+
+  @Override
+  protected void flushInternal() {
+    Node oldTop = top;
+    clear();
+    oldTop.detached = true;
+  }
+
+  @Override
+  protected int getRoundTrips(String path) {
+    return INode.getPathNames(path).length;
+  }
+
+  @Override
+  protected int getRoundTrips(List<INode> inodes) {
+    return inodes.size();
+  }
+
+  /**
+   * @return the estimated heap used by the cached entries, in bytes
+   */
+  public long getMemoryUsed() {
+    return memory.get();
+  }
+
+  private Node getNode(int id) {
+    if (id == INodeDirectory.ROOT_PARENT_ID) {
+      return top;
+    }
+    return byId.get(id);
+  }
+
+  private void detach(Node node) {
+    if (node.parent != null) {
+      node.parent.children().remove(node.name, node);
+    }
+    removeSubtree(node);
+  }
+
+  private void removeSubtree(Node node) {
+    if (node.detached) {
+      return;
+    }
+    node.detached = true;
+    byId.remove(node.id, node);
+    memory.addAndGet(-node.size());
+    ConcurrentHashMap<String, Node> children = node.children;
+    if (children != null) {
+      for (Node child : children.values()) {
+        removeSubtree(child);
+      }
+    }
+  }
+
+  private void evictIfNeeded() {
+    if (memory.get() <= maxMemory || !evictionLock.tryLock()) {
+      return;
+    }
+    try {
+      // a sweep over recently used entries only clears their reference bits,
+      // they are evicted by the next one if they are not used in between
+      evict(top);
+      LOG.debug("resolving cache evicted down to " + memory.get() + " bytes");
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  private void evict(Node node) {
+    ConcurrentHashMap<String, Node> children = node.children;
+    if (children == null) {
+      return;
+    }
+    for (Node child : children.values()) {
+      if (memory.get() <= lowWatermark) {
+        return;
+      }
+      if (node == top) {
+        // never evict the root
+        evict(child);
+      } else if (child.referenced) {
+        child.referenced = false;
+        evict(child);
+      } else {
+        detach(child);
+      }
+    }
+  }
+
+  private static class Node {
+    private final Node parent;
+    private final int id;
+    private final String name;
+    private volatile ConcurrentHashMap<String, Node> children;
+    private volatile boolean referenced = true;
+    private volatile boolean detached = false;
+
+    Node(Node parent, int id, String name) {
+      this.parent = parent;
+      this.id = id;
+      this.name = name;
+    }
+
+    Node getChild(String name) {
+      ConcurrentHashMap<String, Node> children = this.children;
+      return children == null ? null : children.get(name);
+    }
+
+    ConcurrentHashMap<String, Node> children() {
+      ConcurrentHashMap<String, Node> children = this.children;
+      if (children == null) {
+        synchronized (this) {
+          children = this.children;
+          if (children == null) {
+            children = new ConcurrentHashMap<>(4);
+            this.children = children;
+          }
+        }
+      }
+      return children;
+    }
+
+    int size() {
+      return NODE_OVERHEAD + 2 * name.length();
+    }
+  }
+}
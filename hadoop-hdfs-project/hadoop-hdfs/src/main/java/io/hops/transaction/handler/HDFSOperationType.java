@@ -27,6 +27,7 @@ public enum HDFSOperationType implements OperationType {
   SET_OWNER,
   SET_OWNER_SUBTREE,
   GET_BLOCK_LOCATIONS,
+  GET_BATCHED_BLOCK_LOCATIONS,
   GET_STATS,
   CONCAT,
   SET_TIMES,
@@ -36,6 +37,7 @@ public enum HDFSOperationType implements OperationType {
   SET_REPLICATION,
   SET_META_ENABLED,
   START_FILE,
+  CREATE_SMALL_FILES,
   RECOVER_LEASE,
   APPEND_FILE,
   GET_ADDITIONAL_BLOCK,
@@ -46,13 +48,16 @@ public enum HDFSOperationType implements OperationType {
   RENAME,
   DELETE,
   GET_FILE_INFO,
+  GET_BATCHED_FILE_INFO,
   MKDIRS,
   GET_CONTENT_SUMMARY,
   SET_QUOTA,
   FSYNC,
   COMMIT_BLOCK_SYNCHRONIZATION,
   RENEW_LEASE,
+  RENEW_LEASE_BATCH,
   GET_LISTING,
+  GET_LISTING_PAGE,
   REGISTER_DATANODE,
   HANDLE_HEARTBEAT,
   GET_MISSING_BLOCKS_COUNT,
@@ -84,6 +89,7 @@ public enum HDFSOperationType implements OperationType {
   PROCESS_REPORT,
   AFTER_PROCESS_REPORT,
   BLOCK_RECEIVED_AND_DELETED_INC_BLK_REPORT,
+  BLOCK_RECEIVED_AND_DELETED_INC_BLK_REPORT_BATCH,
   RESCAN_MISREPLICATED_BLOCKS,
   PROCESS_MIS_REPLICATED_BLOCKS,
   GET_ALL_MACHINE_BLOCKS,
@@ -340,7 +346,10 @@ public enum HDFSOperationType implements OperationType {
   //retry cache
   RETRY_CACHE,
   CLEAN_RETRY_CACHE,
+  PERSIST_RETRY_CACHE,
 
   //Metadata GC
-  MDCLEANER
+  MDCLEANER,
+
+  GET_SUBTREE_OPS
 }
@@ -15,23 +15,33 @@
  */
 package io.hops.transaction.handler;
 
+import io.hops.resolvingcache.Cache;
 import io.hops.transaction.TransactionInfo;
 import io.hops.transaction.lock.HdfsTransactionalLockAcquirer;
+import io.hops.transaction.lock.SubtreeLockedException;
 import io.hops.transaction.lock.TransactionLockAcquirer;
 import org.apache.hadoop.hdfs.protocol.RecoveryInProgressException;
 import org.apache.hadoop.hdfs.server.namenode.FSNamesystem;
+import org.apache.hadoop.hdfs.server.namenode.metrics.TransactionMetrics;
 
 import java.io.IOException;
 
 public abstract class HopsTransactionalRequestHandler
     extends TransactionalRequestHandler {
 
+  // set while a request runs in the thread, nested requests never wait
+  private static final ThreadLocal<Boolean> running = new ThreadLocal<>();
+
   private final String path;
   
   public HopsTransactionalRequestHandler(HDFSOperationType opType) {
     this(opType, null);
   }
   
+  /**
+   * For the operations of the clients on a path, which may wait for a
+   * subtree operation of this namenode to be done instead of failing.
+   */
   public HopsTransactionalRequestHandler(HDFSOperationType opType,
       String path) {
     super(opType);
@@ -46,7 +56,46 @@ protected TransactionLockAcquirer newLockAcquirer() {
   
   @Override
   protected Object execute(final Object namesystem) throws IOException {
+    boolean nested = running.get() != null;
+    boolean mayWait = !nested && path != null &&
+        namesystem instanceof FSNamesystem &&
+        ((FSNamesystem) namesystem).isWaitingForSubtreeUnlock();
+    if (!nested) {
+      running.set(Boolean.TRUE);
+    }
+    try {
+      long start = System.currentTimeMillis();
+      boolean retried = false;
+      while (true) {
+        SubtreeLockedException locked;
+        TransactionMetrics.Sample sample =
+            TransactionMetrics.getInstance().begin(opType);
+        try {
+          return executeInternal(namesystem);
+        } catch (SubtreeLockedException e) {
+          if (!mayWait) {
+            throw e;
+          }
+          locked = e;
+        } finally {
+          TransactionMetrics.getInstance().end(sample);
+        }
+        // wait for the subtree to be unlocked and run again instead of
+        // sending the client to back off. The wait is not sampled.
+        if (!((FSNamesystem) namesystem).awaitSubtreeUnlock(locked,
+            System.currentTimeMillis() - start, retried)) {
+          throw locked;
+        }
+        retried = true;
+      }
+    } finally {
+      if (!nested) {
+        running.remove();
+      }
+    }
+  }
 
+  private Object executeInternal(final Object namesystem) throws IOException {
     return super.execute(new TransactionInfo() {
       @Override
       public String getContextName(OperationType opType) {
@@ -60,6 +109,8 @@ public String getContextName(OperationType opType) {
 
       @Override
       public void performPostTransactionAction() throws IOException {
+        TransactionMetrics.getInstance().committed();
+        Cache.transactionCommitted();
         if (namesystem != null && namesystem instanceof FSNamesystem) {
           ((FSNamesystem) namesystem).performPendingSafeModeOperation();
         }
@@ -69,6 +120,8 @@ public void performPostTransactionAction() throws IOException {
 
   @Override
   protected final void preTransactionSetup() throws IOException {
+    TransactionMetrics.getInstance().attemptStarted();
+    Cache.transactionStarted();
     setUp();
   }
 
@@ -16,6 +16,7 @@
 package io.hops.transaction.lock;
 
 import com.google.common.collect.Iterables;
+import com.google.common.primitives.Ints;
 import io.hops.exception.StorageException;
 import io.hops.exception.TransactionContextException;
 import io.hops.metadata.hdfs.dal.INodeDataAccess;
@@ -28,10 +29,12 @@
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import org.apache.hadoop.hdfs.server.namenode.INodeDirectory;
 
 public abstract class BaseINodeLock extends Lock {
@@ -158,6 +161,20 @@ Iterable<INode> getAllResolvedINodes() {
     return resolvedINodesMap.getAll();
   }
 
+  /**
+   * @return the ids of the resolved files whose blocks are stored on the
+   * datanodes, so that their blocks can be read in one batch
+   */
+  int[] getResolvedFileIds() {
+    Set<Integer> ids = new LinkedHashSet<>();
+    for (INode inode : getAllResolvedINodes()) {
+      if (inode instanceof INodeFile && !isStoredInDB(inode)) {
+        ids.add(inode.getId());
+      }
+    }
+    return Ints.toArray(ids);
+  }
+
   void addPathINodesAndUpdateResolvingCache(String path, List<INode> iNodes) {
     addPathINodes(path, iNodes);
     updateResolvingCache(path, iNodes);
@@ -15,6 +15,9 @@
  */
 package io.hops.transaction.lock;
 
+import io.hops.exception.TransactionContextException;
+import io.hops.transaction.EntityManager;
+import io.hops.transaction.context.HdfsTransactionContextMaintenanceCmds;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfo;
 
 import java.util.ArrayList;
@@ -33,6 +36,12 @@ Collection<BlockInfo> getBlocks() {
     return blocks;
   }
 
+  protected void announceBlockDoesNotExist(long blockId, int inodeId)
+      throws TransactionContextException {
+    EntityManager.snapshotMaintenance
+        (HdfsTransactionContextMaintenanceCmds.BlockDoesNotExist, blockId, inodeId);
+  }
+
   @Override
   protected Lock.Type getType() {
     return Lock.Type.Block;
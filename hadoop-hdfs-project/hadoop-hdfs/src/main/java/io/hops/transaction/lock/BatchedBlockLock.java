@@ -20,6 +20,10 @@
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfo;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
 import org.apache.commons.lang.ArrayUtils;
 
 final class BatchedBlockLock extends BaseIndividualBlockLock {
@@ -44,8 +48,20 @@ protected void acquire(TransactionLocks locks) throws IOException {
       inodeIds = ArrayUtils.addAll(inodeIds, inodeIdsForURBlks);
     }
     
-    blocks.addAll(acquireLockList(DEFAULT_LOCK_TYPE,
-        BlockInfo.Finder.ByBlockIdsAndINodeIds, blockIds, inodeIds));
+    Collection<BlockInfo> found = acquireLockList(DEFAULT_LOCK_TYPE,
+        BlockInfo.Finder.ByBlockIdsAndINodeIds, blockIds, inodeIds);
+    blocks.addAll(found);
+
+    // as for a single block, the blocks that are not there have no replicas
+    Set<Long> foundIds = new HashSet<>();
+    for (BlockInfo block : found) {
+      foundIds.add(block.getBlockId());
+    }
+    for (int i = 0; i < blockIds.length; i++) {
+      if (!foundIds.contains(blockIds[i])) {
+        announceBlockDoesNotExist(blockIds[i], inodeIds[i]);
+      }
+    }
   }
   
   Pair<int[], long[]> getINodeBlockIds() {
@@ -15,6 +15,8 @@
  */
 package io.hops.transaction.lock;
 
+import org.apache.hadoop.hdfs.server.namenode.metrics.TransactionMetrics;
+
 import java.io.IOException;
 
 public final class HdfsTransactionalLockAcquirer
@@ -28,9 +30,11 @@ public HdfsTransactionalLockAcquirer() {
 
   @Override
   public void acquire() throws IOException {
+    TransactionMetrics.getInstance().lockAcquisitionStarted();
     for (Lock lock : locks.getSortedLocks()) {
       lock.acquire(locks);
     }
+    TransactionMetrics.getInstance().lockAcquisitionFinished();
   }
 
   @Override
@@ -184,6 +184,7 @@ List<INode> fetchINodes(String path) throws IOException {
             addPathINodes(path, inodes);
             return inodes;
           } else {
+            Cache.getInstance().verificationFailed();
             Cache.getInstance().delete(path);
           }
         }
@@ -290,6 +291,9 @@ List<INode> fetchINodes(String path) throws
               parentIds, inodeIds);
 
           int diff = inodes.size() - unverifiedInode;
+          if (diff > 0) {
+            Cache.getInstance().verificationFailed();
+          }
           while (diff > 0){
             INode node = inodes.remove(inodes.size() - 1);
             Cache.getInstance().delete(node);
@@ -418,10 +422,11 @@ private List<INode> resolveUsingMemcache(String path) throws IOException {
       return null;
     List<INode> resolvedINodes = memcacheResolver.fetchINodes(path);
     if (resolvedINodes != null) {
-      for (INode iNode : resolvedINodes) {
-        checkSubtreeLock(iNode);
+      byte[][] components = INode.getPathComponents(path);
+      for (int i = 0; i < resolvedINodes.size(); i++) {
+        checkSubtreeLock(resolvedINodes.get(i), components, i);
       }
-      handleLockUpgrade(resolvedINodes, INode.getPathComponents(path), path);
+      handleLockUpgrade(resolvedINodes, components, path);
     }
     return resolvedINodes;
   }
@@ -453,7 +458,7 @@ private List<INode> acquireINodeLockByPath(String path)
       currentINode = resolver.next();
       if (currentINode != null) {
         addLockedINodes(currentINode, currentINodeLock);
-        checkSubtreeLock(currentINode);
+        checkSubtreeLock(currentINode, components, resolvedINodes.size());
         resolvedINodes.add(currentINode);
       }
     }
@@ -492,11 +497,19 @@ private boolean isParent(int count, byte[][] components) {
     return count == components.length - 2;
   }
 
-  private void checkSubtreeLock(INode iNode) throws SubtreeLockedException {
+  /**
+   * @param index
+   *     the position of the inode in the path components
+   */
+  private void checkSubtreeLock(INode iNode, byte[][] components, int index)
+      throws SubtreeLockedException {
     if (SubtreeLockHelper.isSTOLocked(iNode.isSTOLocked(),
             iNode.getSTOLockOwner(), activeNamenodes)) {
       if (!ignoredSTOInodes.contains(iNode.getId())) {
-        throw new SubtreeLockedException(iNode.getLocalName(), activeNamenodes);
+        String lockedPath = index < components.length ? DFSUtil
+            .byteArray2PathString(Arrays.copyOf(components, index + 1)) : null;
+        throw new SubtreeLockedException(iNode.getLocalName(), lockedPath,
+            activeNamenodes);
       } else {
         LOG.debug("Ignoring subtree lock for inode id: "+iNode.getId());
       }
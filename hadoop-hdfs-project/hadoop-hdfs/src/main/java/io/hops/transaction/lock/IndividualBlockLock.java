@@ -45,11 +45,6 @@ protected void acquire(TransactionLocks locks) throws IOException {
     readBlock(blockId, inodeId);
   }
 
-  private void announceBlockDoesNotExist() throws TransactionContextException {
-    EntityManager.snapshotMaintenance
-        (HdfsTransactionContextMaintenanceCmds.BlockDoesNotExist, blockId, inodeId);
-  }
-
   protected void announceEmptyFile(int inodeFileId) throws TransactionContextException {
     EntityManager.snapshotMaintenance
         (HdfsTransactionContextMaintenanceCmds.EmptyFile, inodeFileId);
@@ -64,7 +59,7 @@ protected void readBlock(long blkId, int indeId)
       if (result != null) {
         blocks.add(result);
       } else {
-        announceBlockDoesNotExist();
+        announceBlockDoesNotExist(blockId, inodeId);
       }
     }
   }
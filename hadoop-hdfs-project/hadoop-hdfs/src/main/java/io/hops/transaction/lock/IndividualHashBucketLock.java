@@ -21,23 +21,36 @@
 import io.hops.transaction.EntityManager;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 public class IndividualHashBucketLock extends Lock {
   private final int storageId;
-  private final int bucketId;
+  private final int[] bucketIds;
   
   IndividualHashBucketLock(int storageId, int bucketId) {
+    this(storageId, new int[]{bucketId});
+  }
+
+  IndividualHashBucketLock(int storageId, int[] bucketIds) {
     this.storageId = storageId;
-    this.bucketId = bucketId;
+    // always in the same order so that transactions locking several buckets
+    // do not deadlock
+    this.bucketIds = bucketIds.clone();
+    Arrays.sort(this.bucketIds);
   }
   
   @Override
   protected void acquire(TransactionLocks locks) throws IOException {
     setLockMode(TransactionLockTypes.LockType.WRITE);
-    if (EntityManager.find(HashBucket.Finder.ByStorageIdAndBucketId,
-        storageId, bucketId) == null){
-      EntityManager.update(new HashBucket(storageId, bucketId, 0));
-      LOG.warn("The accessed bucket had not been initialized. There might be a misconfiguration.");
+    for (int i = 0; i < bucketIds.length; i++) {
+      if (i > 0 && bucketIds[i] == bucketIds[i - 1]) {
+        continue;
+      }
+      if (EntityManager.find(HashBucket.Finder.ByStorageIdAndBucketId,
+          storageId, bucketIds[i]) == null){
+        EntityManager.update(new HashBucket(storageId, bucketIds[i], 0));
+        LOG.warn("The accessed bucket had not been initialized. There might be a misconfiguration.");
+      }
     }
   }
   
@@ -46,4 +59,3 @@ protected Type getType() {
     return Type.HashBucket;
   }
 }
-
@@ -26,6 +26,7 @@
 import java.util.Collection;
 import java.util.List;
 import org.apache.hadoop.ipc.RetryCache;
+import org.apache.hadoop.ipc.RetryCacheDistributed;
 
 public class LockFactory {
 
@@ -147,6 +148,10 @@ public Lock getIndividualBlockLock(long blockId, INodeIdentifier inode) {
     return new IndividualBlockLock(blockId, inode);
   }
 
+  public Lock getBatchedBlocksLock(long[] blockIds, int[] inodeIds) {
+    return new BatchedBlockLock(blockIds, inodeIds, null);
+  }
+
   public Lock getBatchedINodesLock(List<INodeIdentifier> inodeIdentifiers) {
     return new BatchedINodeLock(inodeIdentifiers);
   }
@@ -190,6 +195,11 @@ public Lock getLeaseLock(TransactionLockTypes.LockType lockType,
     return new LeaseLock(lockType, leaseHolder);
   }
 
+  public Lock getLeasesLock(TransactionLockTypes.LockType lockType,
+      Collection<String> leaseHolders) {
+    return new LeaseLock(lockType, leaseHolders);
+  }
+
   public Lock getLeaseLock(TransactionLockTypes.LockType lockType) {
     return new LeaseLock(lockType);
   }
@@ -267,13 +277,22 @@ public Lock getSubTreeOpsLock(TransactionLockTypes.LockType lockType,
   public Lock getIndividualHashBucketLock(int storageId, int bucketId) {
     return new IndividualHashBucketLock(storageId, bucketId);
   }
+
+  public Lock getIndividualHashBucketsLock(int storageId, int[] bucketIds) {
+    return new IndividualHashBucketLock(storageId, bucketIds);
+  }
   
   public Lock getLastBlockHashBucketsLock(){
     return new LastBlockReplicasHashBucketLock();
   }
   
   public Lock getRetryCacheEntryLock(byte[] clientId, int callId){
-    return new RetryCacheEntryLock(clientId, callId);
+    return getRetryCacheEntryLock(clientId, callId, null);
+  }
+
+  public Lock getRetryCacheEntryLock(byte[] clientId, int callId,
+      RetryCacheDistributed retryCache) {
+    return new RetryCacheEntryLock(clientId, callId, retryCache);
   }
   
   public Lock getRetryCacheEntryLock(List<RetryCache.CacheEntry> entries){
@@ -23,18 +23,24 @@
 import java.util.ArrayList;
 import java.util.List;
 import org.apache.hadoop.ipc.RetryCache;
+import org.apache.hadoop.ipc.RetryCacheDistributed;
 
 public class RetryCacheEntryLock extends Lock {
 
   private final List<byte[]> clientId  = new ArrayList<>();
   private final List<Integer> callId = new ArrayList<>();
+  // a staged cache writes the entries of the operations itself
+  private final RetryCacheDistributed retryCache;
 
-  RetryCacheEntryLock(byte[] clientId, int callId) {
+  RetryCacheEntryLock(byte[] clientId, int callId,
+      RetryCacheDistributed retryCache) {
     this.clientId.add(clientId);
     this.callId.add(callId);
+    this.retryCache = retryCache;
   }
 
   RetryCacheEntryLock(List<RetryCache.CacheEntry> entries) {
+    this.retryCache = null;
     for(RetryCache.CacheEntry entry : entries){
       this.clientId.add(entry.getClientId());
       this.callId.add(entry.getCallId());
@@ -43,6 +49,18 @@ public class RetryCacheEntryLock extends Lock {
   
   @Override
   protected void acquire(TransactionLocks locks) throws IOException {
+    if (retryCache != null && retryCache.isStaged()) {
+      // the entry is only read, if the call may have been served already by
+      // this or another namenode
+      byte[] cid = clientId.get(0);
+      int clid = callId.get(0);
+      if (retryCache.mayBePersisted(cid, clid)) {
+        setLockMode(TransactionLockTypes.LockType.READ_COMMITTED);
+        EntityManager.find(RetryCacheEntry.Finder.ByClientIdAndCallId, cid,
+            clid);
+      }
+      return;
+    }
     setLockMode(TransactionLockTypes.LockType.WRITE);
     for (int i = 0; i < clientId.size(); i++) {
       byte[] cid = clientId.get(i);
@@ -15,24 +15,54 @@
  */
 package io.hops.transaction.lock;
 
+import io.hops.transaction.EntityManager;
+import io.hops.transaction.context.HdfsTransactionContextMaintenanceCmds;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfo;
 
 import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
 
+/**
+ * Reads the blocks of all the inodes locked by a {@link BatchedINodeLock}, or
+ * of all the files resolved by an {@link INodeLock}, in one batch.
+ */
 public final class SqlBatchedBlocksLock extends BaseIndividualBlockLock {
 
   @Override
   protected void acquire(TransactionLocks locks) throws IOException {
+    int[] inodeIds = getBatchedINodeIds(locks);
+    if (inodeIds.length == 0) {
+      return;
+    }
+    Collection<BlockInfo> inodeBlocks =
+        acquireLockList(DEFAULT_LOCK_TYPE, BlockInfo.Finder.ByINodeIds,
+            inodeIds);
+    blocks.addAll(inodeBlocks);
+
+    Set<Integer> nonEmptyFiles = new HashSet<>();
+    for (BlockInfo block : inodeBlocks) {
+      nonEmptyFiles.add(block.getInodeId());
+    }
+    for (int inodeId : inodeIds) {
+      if (!nonEmptyFiles.contains(inodeId)) {
+        EntityManager.snapshotMaintenance(
+            HdfsTransactionContextMaintenanceCmds.EmptyFile, inodeId);
+      }
+    }
+  }
+
+  static int[] getBatchedINodeIds(TransactionLocks locks)
+      throws TransactionLocks.LockNotAddedException {
     Lock inodeLock = locks.getLock(Type.INode);
     if (inodeLock instanceof BatchedINodeLock) {
-      int[] inodeIds = ((BatchedINodeLock) inodeLock).getINodeIds();
-      blocks.addAll(
-          acquireLockList(DEFAULT_LOCK_TYPE, BlockInfo.Finder.ByINodeIds,
-              inodeIds));
+      return ((BatchedINodeLock) inodeLock).getINodeIds();
+    } else if (inodeLock instanceof INodeLock) {
+      return ((INodeLock) inodeLock).getResolvedFileIds();
     } else {
       throw new TransactionLocks.LockNotAddedException(
-          "HopsBatchedINodeLock wasn't added");
+          "Neither a batched nor a path INode lock was added");
     }
   }
-
 }
@@ -34,13 +34,9 @@ final class SqlBatchedBlocksRelatedLock extends LockWithType {
 
   @Override
   protected void acquire(TransactionLocks locks) throws IOException {
-    Lock inodeLock = locks.getLock(Type.INode);
-    if (inodeLock instanceof BatchedINodeLock) {
-      int[] inodeIds = ((BatchedINodeLock) inodeLock).getINodeIds();
+    int[] inodeIds = SqlBatchedBlocksLock.getBatchedINodeIds(locks);
+    if (inodeIds.length > 0) {
       acquireLockList(DEFAULT_LOCK_TYPE, getFinderType(), inodeIds);
-    } else {
-      throw new TransactionLocks.LockNotAddedException(
-          "Batched Inode Lock wasn't added");
     }
   }
 
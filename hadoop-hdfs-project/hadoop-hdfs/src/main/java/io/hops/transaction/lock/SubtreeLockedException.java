@@ -23,13 +23,31 @@
 
 public class SubtreeLockedException extends SubtreeRetriableException /*client retires*/ {
 
+  // the root of the locked subtree, if known
+  private final String lockedPath;
+
   public SubtreeLockedException(String inodeName,
       Collection<ActiveNode> namenodes) {
+    this(inodeName, null, namenodes);
+  }
+
+  public SubtreeLockedException(String inodeName, String lockedPath,
+      Collection<ActiveNode> namenodes) {
     super(createMessage(inodeName, namenodes));
+    this.lockedPath = lockedPath;
   }
 
   public SubtreeLockedException(String message) {
+    this(message, (String) null);
+  }
+
+  public SubtreeLockedException(String message, String lockedPath) {
     super(message);
+    this.lockedPath = lockedPath;
+  }
+
+  public String getLockedPath() {
+    return lockedPath;
   }
   
   private static String createMessage(String inodeName,
@@ -3,7 +3,7 @@
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
-import java.io.*;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.EnumSet;
 import org.apache.hadoop.fs.ReadOption;
@@ -11,26 +11,32 @@
 
 /**
  * Created by salman on 3/29/16.
+ *
+ * Reads the content of a file stored in the database, which comes with the
+ * located block. The content is read in place, the reads copy it straight
+ * to the buffers of the caller.
  */
 public class BlockReaderDB implements  BlockReader{
     public static final Log LOG = LogFactory.getLog(BlockReaderDB.class);
 
-    private  final ByteArrayInputStream bis;
+    private final ByteBuffer data;
 
   public BlockReaderDB(byte[] data, final int startOffset) {
-    bis = new ByteArrayInputStream(data);
-
-    if (startOffset > 0) {
-      long skipped = bis.skip(startOffset);
-      assert skipped == startOffset;
-    }
-
+    this.data = ByteBuffer.wrap(data).asReadOnlyBuffer();
+    this.data.position(Math.min(startOffset, data.length));
   }
 
     @Override
     public int read(byte[] buf, int off, int len) throws IOException {
-//      LOG.debug("Stuffed Inode:  BlockReaderDB Read called. Off: "+off+" len: "+len);
-      return bis.read(buf, off, len);
+      if (len == 0) {
+        return 0;
+      }
+      if (!data.hasRemaining()) {
+        return -1;
+      }
+      int n = Math.min(len, data.remaining());
+      data.get(buf, off, n);
+      return n;
     }
 
     /**
@@ -40,13 +46,16 @@ public int read(byte[] buf, int off, int len) throws IOException {
      */
     @Override
     public long skip(long n) throws IOException {
-        return bis.skip(n);
+      if (n <= 0) {
+        return 0;
+      }
+      int skipped = (int) Math.min(n, data.remaining());
+      data.position(data.position() + skipped);
+      return skipped;
     }
 
     @Override
     public void close() throws IOException {
-//      LOG.debug("Stuffed Inode:  closing the BlockReaderDB");
-      bis.close();
     }
 
     /**
@@ -59,11 +68,10 @@ public void close() throws IOException {
      */
     @Override
     public void readFully(byte[] buf, int readOffset, int amtToRead) throws IOException {
-//      LOG.debug("Stuffed Inode:  BlockReader readFully called. readOffset: "+readOffset+" amtToRead: "+amtToRead);
-      int amountRead = bis.read(buf, readOffset, amtToRead);
-      if(amountRead < amtToRead){
+      if (amtToRead > data.remaining()) {
         throw new IOException("Premature EOF from inputStream");
       }
+      data.get(buf, readOffset, amtToRead);
     }
 
     /**
@@ -80,8 +88,7 @@ public void readFully(byte[] buf, int readOffset, int amtToRead) throws IOExcept
      */
     @Override
     public int readAll(byte[] buf, int offset, int len) throws IOException {
-//      LOG.debug("Stuffed Inode:  BlockReaderDB readAll called. Offset: "+offset+" len: "+len);
-      return bis.read(buf, offset, len);
+      return read(buf, offset, len);
     }
 
     /**
@@ -110,15 +117,18 @@ public int readAll(byte[] buf, int offset, int len) throws IOException {
      */
     @Override
     public int read(ByteBuffer buf) throws IOException {
-      int amountToRead = buf.remaining();
-      int initialPosition = buf.position();
-      byte buffer[] = new byte[amountToRead];
-      int actuallyRead = bis.read(buffer);
-      if(actuallyRead > 0){
-        buf.put(buffer);
-        buf.position(initialPosition+actuallyRead);
+      if (!buf.hasRemaining()) {
+        return 0;
+      }
+      if (!data.hasRemaining()) {
+        return -1;
       }
-      return actuallyRead;
+      int n = Math.min(buf.remaining(), data.remaining());
+      ByteBuffer slice = data.duplicate();
+      slice.limit(slice.position() + n);
+      buf.put(slice);
+      data.position(data.position() + n);
+      return n;
     }
 
   public int available() throws IOException {
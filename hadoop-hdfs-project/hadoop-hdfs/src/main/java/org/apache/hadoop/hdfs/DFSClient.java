@@ -62,6 +62,7 @@
 import org.apache.hadoop.hdfs.protocol.AclException;
 import org.apache.hadoop.hdfs.protocol.ClientProtocol;
 import org.apache.hadoop.hdfs.protocol.CorruptFileBlocks;
+import org.apache.hadoop.hdfs.protocol.CursorDirectoryListing;
 import org.apache.hadoop.hdfs.protocol.DSQuotaExceededException;
 import org.apache.hadoop.hdfs.protocol.DatanodeID;
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
@@ -73,6 +74,7 @@
 import org.apache.hadoop.hdfs.protocol.HdfsConstants.SafeModeAction;
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
 import org.apache.hadoop.hdfs.protocol.LastUpdatedContentSummary;
+import org.apache.hadoop.hdfs.protocol.ListingCursorExpiredException;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
 import org.apache.hadoop.hdfs.protocol.NSQuotaExceededException;
@@ -127,13 +129,16 @@
 import java.net.URI;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -290,6 +295,8 @@ public static class Conf {
     //small delay before closing the file ensures that incremental block reporst are processed by the
     //namenodes before the file close operation.
     final int delayBeforeClose;
+    final int batchedMetadataOpsMaxPaths;
+    final int smallFilesBatchMaxBytes;
     //only for testing
     final boolean hdfsClientEmulationForSF;
     
@@ -450,6 +457,13 @@ public Conf(Configuration conf) {
 
       delayBeforeClose = conf.getInt(DFSConfigKeys.DFS_CLIENT_DELAY_BEFORE_FILE_CLOSE_KEY,
               DFSConfigKeys.DFS_CLIENT_DELAY_BEFORE_FILE_CLOSE_DEFAULT);
+
+      batchedMetadataOpsMaxPaths = conf.getInt(
+          DFSConfigKeys.DFS_BATCHED_METADATA_OPS_MAX_PATHS_KEY,
+          DFSConfigKeys.DFS_BATCHED_METADATA_OPS_MAX_PATHS_DEFAULT);
+      smallFilesBatchMaxBytes = conf.getInt(
+          DFSConfigKeys.DFS_CLIENT_SMALL_FILES_BATCH_MAX_BYTES_KEY,
+          DFSConfigKeys.DFS_CLIENT_SMALL_FILES_BATCH_MAX_BYTES_DEFAULT);
     }
 
     private DataChecksum.Type getChecksumType(Configuration conf) {
@@ -1249,6 +1263,55 @@ public Object doAction(ClientProtocol namenode)
     return (LocatedBlocks) doClientActionWithRetry(handler, "getLocatedBlocks");
   }
 
+  /**
+   * Get block location info of many files within the same range. Requests
+   * with more paths than dfs.batched.metadata.ops.max.paths are sent to the
+   * namenode in several calls.
+   *
+   * @return the block locations of each file, null for the paths that do not
+   * exist or are not files
+   * @see ClientProtocol#getBatchedBlockLocations(String[], long, long)
+   */
+  public BlockLocation[][] getBatchedBlockLocations(final String[] srcs,
+      final long start, final long length) throws IOException {
+    checkOpen();
+    BlockLocation[][] result = new BlockLocation[srcs.length][];
+    int batchSize = dfsClientConf.batchedMetadataOpsMaxPaths;
+    for (int first = 0; first < srcs.length; first += batchSize) {
+      final String[] batch = Arrays.copyOfRange(srcs, first,
+          Math.min(srcs.length, first + batchSize));
+      ClientActionHandler handler = new ClientActionHandler() {
+        @Override
+        public Object doAction(ClientProtocol namenode)
+            throws RemoteException, IOException {
+          return namenode.getBatchedBlockLocations(batch, start, length);
+        }
+      };
+      LocatedBlocks[] blocks;
+      try {
+        blocks = (LocatedBlocks[]) doClientActionWithRetry(handler,
+            "getBatchedBlockLocations");
+      } catch (RemoteException re) {
+        throw re.unwrapRemoteException(AccessControlException.class,
+            UnresolvedPathException.class);
+      }
+      for (int i = 0; i < blocks.length; i++) {
+        if (blocks[i] == null) {
+          continue;
+        }
+        BlockLocation[] locations = DFSUtil.locatedBlocks2Locations(blocks[i]);
+        HdfsBlockLocation[] hdfsLocations =
+            new HdfsBlockLocation[locations.length];
+        for (int j = 0; j < locations.length; j++) {
+          hdfsLocations[j] =
+              new HdfsBlockLocation(locations[j], blocks[i].get(j));
+        }
+        result[first + i] = hdfsLocations;
+      }
+    }
+    return result;
+  }
+
   /**
    * @see ClientProtocol#getBlockLocations(String, long, long)
    */
@@ -1737,6 +1800,87 @@ public DFSOutputStream primitiveCreate(String src, FsPermission absPermission,
     return result;
   }
   
+  /**
+   * Create many small files, with their content, without opening an output
+   * stream for each of them. The data of the files is stored in the database.
+   * The files are sent to the namenode in calls of at most
+   * dfs.batched.metadata.ops.max.paths files and
+   * dfs.client.small.files.batch.max.bytes of data, each call creating its
+   * files in one transaction. If a call fails the files of the previous
+   * calls stay created.
+   *
+   * @param srcs
+   *     paths of the files, none of them may exist already
+   * @param data
+   *     the content of each file, at most dfs.db.file.max.size bytes
+   * @param permission
+   *     permission of the files, {@link FsPermission#getFileDefault()} if null
+   * @param createParent
+   *     create missing parent directories if true
+   * @param replication
+   *     replication factor of the files
+   * @see ClientProtocol#createSmallFiles(String[], byte[][], FsPermission,
+   * String, boolean, short, long)
+   */
+  public void createSmallFiles(String[] srcs, byte[][] data,
+      FsPermission permission, final boolean createParent,
+      final short replication) throws IOException {
+    checkOpen();
+    if (!isStoreSmallFilesInDB()) {
+      throw new IOException("Storing small files in the database is " +
+          "disabled, see " + DFSConfigKeys.DFS_STORE_SMALL_FILES_IN_DB_KEY);
+    }
+    if (srcs.length != data.length) {
+      throw new IllegalArgumentException("Got " + srcs.length +
+          " paths but the data of " + data.length + " files");
+    }
+    if (permission == null) {
+      permission = FsPermission.getFileDefault();
+    }
+    final FsPermission masked = permission.applyUMask(dfsClientConf.uMask);
+    final long blockSize = dfsClientConf.defaultBlockSize;
+    int first = 0;
+    while (first < srcs.length) {
+      int end = first;
+      long bytes = 0;
+      while (end < srcs.length &&
+          end - first < dfsClientConf.batchedMetadataOpsMaxPaths) {
+        if (data[end].length > getDBFileMaxSize()) {
+          throw new IOException("The file " + srcs[end] + " is too large " +
+              "to be stored in the database: " + data[end].length + " > " +
+              getDBFileMaxSize());
+        }
+        bytes += data[end].length;
+        // a file is always sent, even if it is bigger than the cap by itself
+        if (end > first && bytes > dfsClientConf.smallFilesBatchMaxBytes) {
+          break;
+        }
+        end++;
+      }
+      final String[] batch = Arrays.copyOfRange(srcs, first, end);
+      final byte[][] batchData = Arrays.copyOfRange(data, first, end);
+      ClientActionHandler handler = new ClientActionHandler() {
+        @Override
+        public Object doAction(ClientProtocol namenode)
+            throws RemoteException, IOException {
+          namenode.createSmallFiles(batch, batchData, masked, clientName,
+              createParent, replication, blockSize);
+          return null;
+        }
+      };
+      try {
+        doClientActionWithRetry(handler, "createSmallFiles");
+      } catch (RemoteException re) {
+        throw re.unwrapRemoteException(AccessControlException.class,
+            FileAlreadyExistsException.class, FileNotFoundException.class,
+            ParentNotDirectoryException.class, NSQuotaExceededException.class,
+            DSQuotaExceededException.class, SafeModeException.class,
+            UnresolvedPathException.class);
+      }
+      first = end;
+    }
+  }
+
   /**
    * Creates a symbolic link.
    *
@@ -2130,6 +2274,77 @@ public Object doAction(ClientProtocol namenode)
     }
   }
 
+  /**
+   * The state of a listing through a namenode side cursor. The cursor only
+   * lives on the namenode that opened it, so the following pages are asked
+   * for to that namenode.
+   */
+  public static class ListingCursor {
+    private long id = 0;
+    private NamenodeHandle namenode;
+
+    public boolean isOpen() {
+      return id != 0;
+    }
+  }
+
+  /**
+   * Get a partial listing of the indicated directory through a namenode
+   * side cursor. The first call opens the cursor, the following ones get
+   * the next pages from it.
+   *
+   * @param cursor
+   *     the state of the listing, updated with the cursor returned by the
+   *     namenode. If it is not open after the call and there are more
+   *     entries, the listing goes on with {@link #listPaths}.
+   * @throws ListingCursorExpiredException
+   *     if the cursor expired or its namenode is gone, the listing goes on
+   *     with {@link #listPaths}
+   * @see ClientProtocol#getListingCursor
+   */
+  public CursorDirectoryListing listPaths(final String src,
+      final byte[] startAfter, final boolean needLocation,
+      final boolean namesOnly, final ListingCursor cursor)
+      throws IOException {
+    checkOpen();
+    final long cursorId = cursor.id;
+    NameNodeFetcher fetcher = new NameNodeFetcher() {
+      @Override
+      public NamenodeHandle getNextNameNode(List<ActiveNode> blackList)
+          throws IOException {
+        if (cursorId == 0) {
+          cursor.namenode = defaultNameNodeFetcher.getNextNameNode(blackList);
+        } else if (blackList.contains(cursor.namenode.getNamenode())) {
+          throw new ListingCursorExpiredException("The namenode of the " +
+              "listing cursor " + cursorId + " of " + src + " is gone");
+        }
+        return cursor.namenode;
+      }
+    };
+    try {
+      ClientActionHandler handler = new ClientActionHandler() {
+        @Override
+        public Object doAction(ClientProtocol namenode)
+            throws RemoteException, IOException {
+          return namenode.getListingCursor(src, cursorId, startAfter,
+              needLocation, namesOnly);
+        }
+      };
+      CursorDirectoryListing listing = (CursorDirectoryListing)
+          doClientActionWithRetry(handler, "listPaths", fetcher);
+      cursor.id = listing == null ? 0 : listing.getCursorId();
+      return listing;
+    } catch (RemoteException re) {
+      cursor.id = 0;
+      throw re.unwrapRemoteException(AccessControlException.class,
+          FileNotFoundException.class, UnresolvedPathException.class,
+          ListingCursorExpiredException.class);
+    } catch (IOException e) {
+      cursor.id = 0;
+      throw e;
+    }
+  }
+
   /**
    * Get the file info for a specific file or directory.
    *
@@ -2156,6 +2371,42 @@ public Object doAction(ClientProtocol namenode)
     }
   }
 
+  /**
+   * Get the file info of many files or directories. Requests with more paths
+   * than dfs.batched.metadata.ops.max.paths are sent to the namenode in
+   * several calls.
+   *
+   * @return the file info of each path, null for the paths that are not
+   * found
+   * @see ClientProtocol#getBatchedFileInfo(String[])
+   */
+  public HdfsFileStatus[] getBatchedFileInfo(final String[] srcs)
+      throws IOException {
+    checkOpen();
+    HdfsFileStatus[] result = new HdfsFileStatus[srcs.length];
+    int batchSize = dfsClientConf.batchedMetadataOpsMaxPaths;
+    for (int first = 0; first < srcs.length; first += batchSize) {
+      final String[] batch = Arrays.copyOfRange(srcs, first,
+          Math.min(srcs.length, first + batchSize));
+      ClientActionHandler handler = new ClientActionHandler() {
+        @Override
+        public Object doAction(ClientProtocol namenode)
+            throws RemoteException, IOException {
+          return namenode.getBatchedFileInfo(batch);
+        }
+      };
+      try {
+        HdfsFileStatus[] stats = (HdfsFileStatus[]) doClientActionWithRetry(
+            handler, "getBatchedFileInfo");
+        System.arraycopy(stats, 0, result, first, stats.length);
+      } catch (RemoteException re) {
+        throw re.unwrapRemoteException(AccessControlException.class,
+            UnresolvedPathException.class);
+      }
+    }
+    return result;
+  }
+
   /**
    * Close status of a file
    * @return true if file is already closed
@@ -2993,6 +3244,33 @@ public NamenodeHandle getNextNameNode(List<ActiveNode> blackList)
     }
   };
 
+  /**
+   * NameNodeFetcher for the calls of the files being written. The
+   * NamenodeSelector may keep them on the same namenode.
+   * @see NamenodeSelector#getNextNamenodeForWrite()
+   */
+  private final NameNodeFetcher writeNameNodeFetcher = new NameNodeFetcher() {
+    public NamenodeHandle getNextNameNode(List<ActiveNode> blackList)
+        throws IOException {
+      NamenodeSelector.NamenodeHandle handle = null;
+      for (int i = 0; i < 10; i++) {
+        handle = namenodeSelector.getNextNamenodeForWrite();
+        if (!blackList.contains(handle.getNamenode())) {
+          return handle;
+        }
+      }
+      return handle;
+    }
+  };
+
+  /**
+   * Calls, upper case, that go through the writeNameNodeFetcher.
+   */
+  private static final Set<String> WRITE_CALLS = new HashSet<>(Arrays.asList(
+      "CREATE", "CALLAPPEND", "ADDBLOCK", "ABANDONBLOCK",
+      "GETADDITIONALDATANODE", "UPDATEBLOCKFORPIPELINE", "UPDATEPIPELINE",
+      "FSYNC", "COMPLETE", "RENEWLEASE"));
+
   /**
    * Returns the leader namenode if it's not blacklisted, otherwise it will
    * return null.
@@ -3039,6 +3317,9 @@ private Object doClientActionOnLeader(ClientActionHandler handler,
    */
   private Object doClientActionWithRetry(ClientActionHandler handler,
       String callerID) throws RemoteException, IOException {
+    if (WRITE_CALLS.contains(callerID.toUpperCase())) {
+      return doClientActionWithRetry(handler, callerID, writeNameNodeFetcher);
+    }
     return doClientActionWithRetry(handler, callerID, defaultNameNodeFetcher);
   }
 
@@ -3088,9 +3369,20 @@ private Object doClientActionWithRetry(ClientActionHandler handler,
 
         LOG.trace(thisFnID + ") " + callerID + " sending RPC to " +
                 handle.getNamenode() + " tries left (" + (MAX_RPC_RETRIES - i) + ")");
-        Object obj = handler.doAction(handle.getRPCHandle());
-        //no exception
-        return obj;
+        handle.callStarted();
+        long start = System.nanoTime();
+        boolean answered = false;
+        try {
+          Object obj = handler.doAction(handle.getRPCHandle());
+          answered = true;
+          //no exception
+          return obj;
+        } catch (RemoteException e) {
+          answered = true;
+          throw e;
+        } finally {
+          handle.callFinished(answered ? System.nanoTime() - start : -1);
+        }
       } catch (IOException e) {
         exception = e;
         LOG.debug(thisFnID + ") " + callerID + " RPC failed. Retries left (" +
@@ -60,6 +60,10 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       "dfs.namenode.quota.update.limit";
   public static final int DFS_NAMENODE_QUOTA_UPDATE_LIMIT_DEFAULT = 100000;
 
+  public static final String DFS_NAMENODE_QUOTA_UPDATE_THREADS_KEY =
+      "dfs.namenode.quota.update.threads";
+  public static final int DFS_NAMENODE_QUOTA_UPDATE_THREADS_DEFAULT = 4;
+
   public static final String DFS_NAMENODE_QUOTA_UPDATE_ID_BATCH_SIZE =
       "dfs.namenode.quota.update.id.batchsize";
   public static final int DFS_NAMENODE_QUOTA_UPDATE_ID_BATCH_SIZ_DEFAULT =
@@ -93,6 +97,16 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final int DFS_NAMENODE_IDSMONITOR_CHECK_INTERVAL_IN_MS_DEFAULT =
       1000;
 
+  //the id batch sizes above are the minimum, they grow with the id usage
+  public static final String DFS_NAMENODE_IDS_MAX_BATCH_SIZE_MULTIPLIER =
+      "dfs.namenode.ids.max.batchsize.multiplier";
+  public static final int DFS_NAMENODE_IDS_MAX_BATCH_SIZE_MULTIPLIER_DEFAULT =
+      32;
+
+  public static final String DFS_NAMENODE_IDS_RESERVED_BATCHES =
+      "dfs.namenode.ids.reserved.batches";
+  public static final int DFS_NAMENODE_IDS_RESERVED_BATCHES_DEFAULT = 3;
+
   public static final String DFS_NAMENODE_PROCESS_REPORT_BATCH_SIZE =
       "dfs.namenode.processReport.batchsize";
   public static final int DFS_NAMENODE_PROCESS_REPORT_BATCH_SIZE_DEFAULT =
@@ -112,6 +126,31 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       "dfs.namenode.misreplicated.noofbatches";
   public static final int
       DFS_NAMENODE_PROCESS_MISREPLICATED_NO_OF_THREADS_DEFAULT = 10;
+
+  // all the namenodes replicate their part of the under replicated blocks,
+  // instead of only the leader
+  public static final String DFS_NAMENODE_REPLICATION_DISTRIBUTED_KEY =
+      "dfs.namenode.replication.distributed";
+  public static final boolean DFS_NAMENODE_REPLICATION_DISTRIBUTED_DEFAULT =
+      false;
+
+  // lease renewals of the clients are written in batches every interval ms,
+  // 0 writes each renewal when it comes
+  public static final String DFS_NAMENODE_LEASE_RENEWAL_FLUSH_INTERVAL_KEY =
+      "dfs.namenode.lease.renewal.flush.interval.ms";
+  public static final long
+      DFS_NAMENODE_LEASE_RENEWAL_FLUSH_INTERVAL_DEFAULT = 0;
+  public static final String DFS_NAMENODE_LEASE_RENEWAL_FLUSH_BATCH_SIZE_KEY =
+      "dfs.namenode.lease.renewal.flush.batchsize";
+  public static final int DFS_NAMENODE_LEASE_RENEWAL_FLUSH_BATCH_SIZE_DEFAULT =
+      500;
+
+  // blocks of an incremental block report, all of the same file, applied in
+  // one transaction
+  public static final String DFS_NAMENODE_INCREMENTAL_BR_BATCH_SIZE =
+      "dfs.namenode.incremental.blockreport.batchsize";
+  public static final int DFS_NAMENODE_INCREMENTAL_BR_BATCH_SIZE_DEFAULT =
+      100;
   
   public static final String DFS_TRANSACTION_STATS_ENABLED =
       "dfs.transaction.stats.enabled";
@@ -131,9 +170,66 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
       "dfs.transaction.stats.writerround";
   public static final int DFS_TRANSACTION_STATS_WRITER_ROUND_DEFAULT = 120;
 
+  // live per operation type breakdown of the transactions, published as the
+  // TransactionMetrics metrics source
+  public static final String DFS_TRANSACTION_METRICS_ENABLED =
+      "dfs.transaction.metrics.enabled";
+  public static final boolean DFS_TRANSACTION_METRICS_ENABLED_DEFAULT = true;
+
+  // also count the database round trips, which wraps every data access
+  public static final String DFS_TRANSACTION_METRICS_ROUND_TRIPS_ENABLED =
+      "dfs.transaction.metrics.roundtrips.enabled";
+  public static final boolean
+      DFS_TRANSACTION_METRICS_ROUND_TRIPS_ENABLED_DEFAULT = false;
+
   public static final String  DFS_DIR_DELETE_BATCH_SIZE=
       "dfs.dir.delete.batch.size";
   public static final int DFS_DIR_DELETE_BATCH_SIZE_DEFAULT = 50;
+  // delete transactions of one subtree delete that are queued or running at
+  // a time
+  public static final String DFS_SUBTREE_DELETE_MAX_IN_FLIGHT_KEY =
+      "dfs.namenode.subtree.delete.max.inflight";
+  public static final int DFS_SUBTREE_DELETE_MAX_IN_FLIGHT_DEFAULT = 160;
+  // directories whose children are listed in one transaction when reading a
+  // subtree, and the max number of such transactions running at a time
+  public static final String DFS_SUBTREE_LISTING_BATCH_SIZE_KEY =
+      "dfs.namenode.subtree.listing.batch.size";
+  public static final int DFS_SUBTREE_LISTING_BATCH_SIZE_DEFAULT = 64;
+  public static final String DFS_SUBTREE_LISTING_MAX_IN_FLIGHT_KEY =
+      "dfs.namenode.subtree.listing.max.inflight";
+  public static final int DFS_SUBTREE_LISTING_MAX_IN_FLIGHT_DEFAULT = 80;
+
+  // max number of paths resolved in one batched getFileInfo or
+  // getBlockLocations call, the client splits bigger requests
+  public static final String DFS_BATCHED_METADATA_OPS_MAX_PATHS_KEY =
+      "dfs.batched.metadata.ops.max.paths";
+  public static final int DFS_BATCHED_METADATA_OPS_MAX_PATHS_DEFAULT = 1000;
+
+  // children returned per page of a cursor listing, capped by dfs.ls.limit
+  public static final String DFS_LISTING_CURSOR_PAGE_SIZE_KEY =
+      "dfs.namenode.listing.cursor.page.size";
+  public static final int DFS_LISTING_CURSOR_PAGE_SIZE_DEFAULT = 1000;
+  // max number of open listing cursors, the listings fall back to the
+  // classic ones beyond it
+  public static final String DFS_LISTING_CURSOR_MAX_KEY =
+      "dfs.namenode.listing.cursor.max";
+  public static final int DFS_LISTING_CURSOR_MAX_DEFAULT = 1024;
+  // the directories with more children are listed the classic way
+  public static final String DFS_LISTING_CURSOR_MAX_CHILDREN_KEY =
+      "dfs.namenode.listing.cursor.max.children";
+  public static final int DFS_LISTING_CURSOR_MAX_CHILDREN_DEFAULT = 1000000;
+  // max heap taken by the name snapshots of all the open listing cursors
+  public static final String DFS_LISTING_CURSOR_MAX_MEMORY_KEY =
+      "dfs.namenode.listing.cursor.max.memory";
+  public static final long DFS_LISTING_CURSOR_MAX_MEMORY_DEFAULT =
+      256 * 1024 * 1024;
+  public static final String DFS_LISTING_CURSOR_EXPIRY_MS_KEY =
+      "dfs.namenode.listing.cursor.expiry.ms";
+  public static final long DFS_LISTING_CURSOR_EXPIRY_MS_DEFAULT = 60 * 1000;
+  // threads reading ahead the next page of the listing cursors
+  public static final String DFS_LISTING_CURSOR_PREFETCH_THREADS_KEY =
+      "dfs.namenode.listing.cursor.prefetch.threads";
+  public static final int DFS_LISTING_CURSOR_PREFETCH_THREADS_DEFAULT = 4;
 
   /*for client failover api*/
   // format {ip:port, ip:port, ip:port} comma separated
@@ -148,7 +244,7 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String DFS_NAMENODE_SELECTOR_POLICY_KEY =
       "dfs.namenode.selector-policy";
   public static final String DFS_NAMENODE_SELECTOR_POLICY_DEFAULT =
-      "RANDOM_STICKY";     //RANDOM ROUND_ROBIN RANDOM_STICKY
+      "RANDOM_STICKY";     //RANDOM ROUND_ROBIN RANDOM_STICKY LOAD_AWARE
   
   public static final String DFS_BLOCK_POOL_ID_KEY = "dfs.block.pool.id";
   public static final String DFS_BLOCK_POOL_ID_DEFAULT = "HOP_BLOCK_POOL_123";
@@ -210,12 +306,18 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String DFS_RESOLVING_CACHE_TYPE = "dfs.resolvingcache" +
       ".type";
 
-  //INode, Path, InMemory, Optimal
-  public static final String DFS_RESOLVING_CACHE_TYPE_DEFAULT = "InMemory";
+  //INode, Path, InMemory, Optimal, Trie
+  public static final String DFS_RESOLVING_CACHE_TYPE_DEFAULT = "Trie";
 
   public static final String DFS_INMEMORY_CACHE_MAX_SIZE = "dfs" +
       ".resolvingcache.inmemory.maxsize";
   public static final int DFS_INMEMORY_CACHE_MAX_SIZE_DEFAULT = 100000;
+
+  //estimated heap used by the trie cache, in bytes
+  public static final String DFS_RESOLVING_CACHE_TRIE_MAX_MEMORY = "dfs" +
+      ".resolvingcache.trie.maxmemory";
+  public static final long DFS_RESOLVING_CACHE_TRIE_MAX_MEMORY_DEFAULT =
+      64 * 1024 * 1024;
   
   public static final String DFS_NDC_ENABLED_KEY = "dfs.ndc.enable";
   public static final boolean DFS_NDC_ENABLED_DEFAULT = false;
@@ -229,6 +331,18 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final long DFS_SUBTREE_CLEAN_FAILED_OPS_LOCKS_DELAY_DEFAULT =
           10*1000*60; //Reclaim locks after 10 mins
 
+  // how long a client path operation blocked by a subtree operation of this
+  // namenode waits for the subtree to be unlocked before the client is told
+  // to retry, 0 to not wait. The wait holds an RPC handler.
+  public static final String DFS_SUBTREE_LOCK_MAX_WAIT_KEY =
+      "dfs.namenode.subtree.lock.max.wait.ms";
+  public static final long DFS_SUBTREE_LOCK_MAX_WAIT_DEFAULT = 0;
+  // how often the subtree operations of the other namenodes are read
+  public static final String DFS_SUBTREE_LOCK_INDEX_REFRESH_INTERVAL_KEY =
+      "dfs.namenode.subtree.lock.index.refresh.interval.ms";
+  public static final long DFS_SUBTREE_LOCK_INDEX_REFRESH_INTERVAL_DEFAULT =
+      1000;
+
   public static final String DFS_SUBTREE_HIERARCHICAL_LOCKING_KEY =
           "dfs.namenode.subtree.hierarchical.locking";
   public static final boolean DFS_SUBTREE_HIERARCHICAL_LOCKING_KEY_DEFAULT = true;
@@ -281,6 +395,18 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final String DFS_BR_LB_DB_VAR_UPDATE_THRESHOLD =
           "dfs.blk.report.load.balancing.db.var.update.threashold";
   public static final long DFS_BR_LB_DB_VAR_UPDATE_THRESHOLD_DEFAULT = 60*1000;
+
+  // how much the block report latencies may grow over their baseline before
+  // the leader admits fewer blocks
+  public static final String DFS_BR_LB_LATENCY_TOLERANCE =
+          "dfs.block.report.load.balancing.latency.tolerance";
+  public static final float DFS_BR_LB_LATENCY_TOLERANCE_DEFAULT = 2.0f;
+
+  // share of the blocks in flight kept for the first reports of datanodes
+  // while the namenodes are in safe mode
+  public static final String DFS_BR_LB_FIRST_REPORT_RESERVE =
+          "dfs.block.report.load.balancing.first.report.reserve";
+  public static final float DFS_BR_LB_FIRST_REPORT_RESERVE_DEFAULT = 0.25f;
   
   public static final String DFS_STORE_SMALL_FILES_IN_DB_KEY =
           "dfs.store.small.files.in.db";
@@ -306,6 +432,24 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
           "dfs.db.inmemory.file.max.size";
   public static final int DFS_DB_INMEMORY_FILE_MAX_SIZE_DEFAULT = 1*1024; // 1KB
 
+  // max total size of the content of the database stored files cached by
+  // the namenode and by the datanode, 0 disables the caches
+  public static final String DFS_NAMENODE_SMALL_FILE_CACHE_SIZE_KEY =
+      "dfs.namenode.small.file.cache.size";
+  public static final long DFS_NAMENODE_SMALL_FILE_CACHE_SIZE_DEFAULT =
+      64 * 1024 * 1024;
+  public static final String DFS_DATANODE_SMALL_FILE_CACHE_SIZE_KEY =
+      "dfs.datanode.small.file.cache.size";
+  public static final long DFS_DATANODE_SMALL_FILE_CACHE_SIZE_DEFAULT =
+      64 * 1024 * 1024;
+
+  // max size of the data sent in one createSmallFiles call, the client
+  // splits bigger requests
+  public static final String DFS_CLIENT_SMALL_FILES_BATCH_MAX_BYTES_KEY =
+      "dfs.client.small.files.batch.max.bytes";
+  public static final int DFS_CLIENT_SMALL_FILES_BATCH_MAX_BYTES_DEFAULT =
+      16 * 1024 * 1024;
+
   public static final String DFS_DN_INCREMENTAL_BR_DISPATCHER_THREAD_POOL_SIZE_KEY =
           "dfs.dn.incremental.br.thread.pool.size";
   public static final int DFS_DN_INCREMENTAL_BR_DISPATCHER_THREAD_POOL_SIZE_DEFAULT = 256;
@@ -921,6 +1065,15 @@ public class DFSConfigKeys extends CommonConfigurationKeys {
   public static final long DFS_NAMENODE_RETRY_CACHE_EXPIRYTIME_MILLIS_DEFAULT = 600000; // 10 minutes
   public static final String DFS_NAMENODE_RETRY_CACHE_HEAP_PERCENT_KEY = "dfs.namenode.retrycache.heap.percent";
   public static final float DFS_NAMENODE_RETRY_CACHE_HEAP_PERCENT_DEFAULT = 0.03f;
+  // the retry cache entries are written in batches every interval ms instead
+  // of in the transaction of each operation, the entries of the last interval
+  // are lost if the namenode fails
+  public static final String DFS_NAMENODE_RETRY_CACHE_ASYNC_KEY = "dfs.namenode.retrycache.async";
+  public static final boolean DFS_NAMENODE_RETRY_CACHE_ASYNC_DEFAULT = false;
+  public static final String DFS_NAMENODE_RETRY_CACHE_FLUSH_INTERVAL_KEY = "dfs.namenode.retrycache.flush.interval.ms";
+  public static final long DFS_NAMENODE_RETRY_CACHE_FLUSH_INTERVAL_DEFAULT = 100;
+  public static final String DFS_NAMENODE_RETRY_CACHE_FLUSH_BATCH_SIZE_KEY = "dfs.namenode.retrycache.flush.batchsize";
+  public static final int DFS_NAMENODE_RETRY_CACHE_FLUSH_BATCH_SIZE_DEFAULT = 1000;
   
   // The number of NN response dropped by client proactively in each RPC call.
   // For testing NN retry cache, we can set this property with positive value.
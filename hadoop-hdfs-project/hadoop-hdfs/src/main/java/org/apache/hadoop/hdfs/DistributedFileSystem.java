@@ -58,6 +58,7 @@
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
 import org.apache.hadoop.hdfs.protocol.HdfsLocatedFileStatus;
 import org.apache.hadoop.hdfs.protocol.LastUpdatedContentSummary;
+import org.apache.hadoop.hdfs.protocol.ListingCursorExpiredException;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.security.token.block.InvalidBlockTokenException;
 import org.apache.hadoop.hdfs.security.token.delegation.DelegationTokenIdentifier;
@@ -205,6 +206,68 @@ public BlockLocation[] getFileBlockLocations(Path p, long start, long len)
 
   }
 
+  /**
+   * Get the block locations of many files within the same range, resolving
+   * the paths together on the namenode instead of one call per file.
+   *
+   * @return the block locations of each path, in the order of
+   * <code>paths</code>, with null for the paths that do not exist or are not
+   * files
+   */
+  public BlockLocation[][] getBatchedFileBlockLocations(Path[] paths,
+      long start, long len) throws IOException {
+    statistics.incrementLargeReadOps(1);
+    return dfs.getBatchedBlockLocations(getPathNames(paths), start, len);
+  }
+
+  /**
+   * Create many small files with their content, storing it in the database.
+   * The namenode creates and closes the files in batches, one transaction
+   * per batch, instead of the create, addBlock and complete calls of an
+   * output stream per file. It requires dfs.store.small.files.in.db.
+   *
+   * @param paths
+   *     paths of the files, none of them may exist already
+   * @param data
+   *     the content of each file, in the order of <code>paths</code>
+   */
+  public void createSmallFiles(Path[] paths, byte[][] data)
+      throws IOException {
+    createSmallFiles(paths, data, null, false, getDefaultReplication());
+  }
+
+  /**
+   * Create many small files with their content, see
+   * {@link #createSmallFiles(Path[], byte[][])}.
+   *
+   * @param permission
+   *     permission of the files, the default one if null
+   * @param createParent
+   *     create missing parent directories if true
+   * @param replication
+   *     replication factor of the files
+   */
+  public void createSmallFiles(Path[] paths, byte[][] data,
+      FsPermission permission, boolean createParent, short replication)
+      throws IOException {
+    statistics.incrementWriteOps(1);
+    long bytes = 0;
+    for (byte[] content : data) {
+      bytes += content.length;
+    }
+    dfs.createSmallFiles(getPathNames(paths), data, permission, createParent,
+        replication);
+    statistics.incrementBytesWritten(bytes);
+  }
+
+  private String[] getPathNames(Path[] paths) {
+    String[] srcs = new String[paths.length];
+    for (int i = 0; i < paths.length; i++) {
+      srcs[i] = getPathName(paths[i]);
+    }
+    return srcs;
+  }
+
   /**
    * Used to query storage location information for a list of blocks. This list
    * of blocks is normally constructed via a series of calls to
@@ -765,6 +828,88 @@ public LocatedFileStatus next() throws IOException {
       }
     };
   }
+
+  /**
+   * List the entries of a directory page by page, through a namenode side
+   * cursor.
+   */
+  @Override
+  public RemoteIterator<FileStatus> listStatusIterator(Path p)
+      throws IOException {
+    return listStatusIterator(p, false);
+  }
+
+  /**
+   * List the entries of a directory page by page, through a namenode side
+   * cursor. The namenode reads the next page while the current one is
+   * consumed. If the cursor can not be used, the listing goes on with the
+   * classic partial listings.
+   * <p/>
+   * Like {@link #listStatus(Path)}, this operation is not atomic.
+   *
+   * @param namesOnly
+   *     if only the paths of the entries and whether they are directories
+   *     are needed. The namenode does not read the entries then: the other
+   *     fields of the statuses are not set, and the entries deleted or
+   *     renamed while listing may be returned.
+   */
+  public RemoteIterator<FileStatus> listStatusIterator(final Path p,
+      final boolean namesOnly) throws IOException {
+    final Path absF = fixRelativePart(p);
+    return new RemoteIterator<FileStatus>() {
+      private final DFSClient.ListingCursor cursor =
+          new DFSClient.ListingCursor();
+      private DirectoryListing thisListing;
+      private int i;
+      private String src;
+
+      { // initializer
+        src = getPathName(absF);
+        // fetch the first batch of entries in the directory
+        thisListing = fetch(HdfsFileStatus.EMPTY_NAME);
+        if (thisListing == null) { // the directory does not exist
+          throw new FileNotFoundException("File " + p + " does not exist.");
+        }
+      }
+
+      private DirectoryListing fetch(byte[] startAfter) throws IOException {
+        statistics.incrementReadOps(1);
+        if (startAfter.length == 0 || cursor.isOpen()) {
+          try {
+            return dfs.listPaths(src, startAfter, false, namesOnly, cursor);
+          } catch (ListingCursorExpiredException e) {
+            // go on with the classic listing
+          }
+        }
+        return dfs.listPaths(src, startAfter);
+      }
+
+      @Override
+      public boolean hasNext() throws IOException {
+        if (thisListing == null) {
+          return false;
+        }
+        if (i >= thisListing.getPartialListing().length &&
+            thisListing.hasMore()) {
+          // current listing is exhausted & fetch a new listing
+          thisListing = fetch(thisListing.getLastName());
+          if (thisListing == null) {
+            return false;
+          }
+          i = 0;
+        }
+        return (i < thisListing.getPartialListing().length);
+      }
+
+      @Override
+      public FileStatus next() throws IOException {
+        if (hasNext()) {
+          return makeQualified(thisListing.getPartialListing()[i++], absF);
+        }
+        throw new java.util.NoSuchElementException("No more entry in " + p);
+      }
+    };
+  }
   
   /**
    * Create a directory, only when the parent directories exist.
@@ -1053,6 +1198,25 @@ public FileStatus getFileStatus(Path f) throws IOException {
     }
   }
 
+  /**
+   * Get the status of many files or directories, resolving the paths
+   * together on the namenode instead of one call per path.
+   *
+   * @return the status of each path, in the order of <code>paths</code>, with
+   * null for the paths that do not exist
+   */
+  public FileStatus[] getBatchedFileStatus(Path[] paths) throws IOException {
+    statistics.incrementLargeReadOps(1);
+    HdfsFileStatus[] stats = dfs.getBatchedFileInfo(getPathNames(paths));
+    FileStatus[] result = new FileStatus[stats.length];
+    for (int i = 0; i < stats.length; i++) {
+      if (stats[i] != null) {
+        result[i] = makeQualified(stats[i], paths[i]);
+      }
+    }
+    return result;
+  }
+
   @Override
   public MD5MD5CRC32FileChecksum getFileChecksum(Path f) throws IOException {
     statistics.incrementReadOps(1);
@@ -36,6 +36,7 @@
 import java.net.URI;
 import java.util.*;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * This class keep track of all namenodes in the cluster. At the start, It
@@ -47,14 +48,23 @@ public class NamenodeSelector {
 
   /**
    * Policy for selection next namenode to be used by the client. Current
-   * supported policies are ROUND_ROBIN and RANDOM. RANDOM is the default
-   * policy used if no policy set in the configuation file.
+   * supported policies are ROUND_ROBIN, RANDOM, RANDOM_STICKY and LOAD_AWARE.
+   * RANDOM_STICKY is the default policy used if no policy set in the
+   * configuation file.
+   * <p>
+   * LOAD_AWARE picks two random namenodes and uses the one with the lowest
+   * expected latency: the moving average of the latency of the calls of this
+   * client to it, times its calls in flight plus one, times one plus the
+   * utilization of its rpc handlers as last reported by the namenode. The
+   * calls of the files being written stick to one namenode as long as it is
+   * not much more loaded than the others, see {@link #getNextNamenodeForWrite()}.
    */
   enum NNSelectionPolicy {
 
     RANDOM("RANDOM"),
     RANDOM_STICKY("RANDOM_STICKY"),
-    ROUND_ROBIN("ROUND_ROBIN");
+    ROUND_ROBIN("ROUND_ROBIN"),
+    LOAD_AWARE("LOAD_AWARE");
     private String description = null;
 
     private NNSelectionPolicy(String arg) {
@@ -72,6 +82,15 @@ public static class NamenodeHandle {
     final private ClientProtocol namenodeRPCHandle;
     final private ActiveNode namenode;
 
+    // moving average of the latency of the calls, in ns, 0 until measured
+    private volatile double latency = 0;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    // load last reported by the namenode
+    private volatile int callQueueLength = -1;
+    private volatile int activeHandlers;
+    private volatile int handlers;
+    private volatile long loadReportedAt;
+
     public NamenodeHandle(ClientProtocol proto, ActiveNode an) {
       this.namenode = an;
       this.namenodeRPCHandle = proto;
@@ -85,6 +104,79 @@ public ActiveNode getNamenode() {
       return this.namenode;
     }
 
+    /**
+     * Called before a call is sent to the namenode.
+     */
+    public void callStarted() {
+      outstanding.incrementAndGet();
+    }
+
+    /**
+     * Called when a call is done.
+     * @param elapsed
+     *      time in ns the namenode took to answer, or a negative value if it
+     *      did not answer
+     */
+    public void callFinished(long elapsed) {
+      outstanding.decrementAndGet();
+      if (elapsed >= 0) {
+        addLatency(elapsed);
+      }
+    }
+
+    private synchronized void addLatency(long elapsed) {
+      if (latency == 0) {
+        latency = Math.max(1, elapsed);
+        return;
+      }
+      // a few calls, like deleting a big directory, take much longer than
+      // the others whatever the load of the namenode
+      double sample = Math.min(elapsed, latency * MAX_LATENCY_FACTOR);
+      latency = LATENCY_ALPHA * sample + (1 - LATENCY_ALPHA) * latency;
+    }
+
+    double getLatency() {
+      return latency;
+    }
+
+    int getOutstandingCalls() {
+      return outstanding.get();
+    }
+
+    void setLoad(ActiveNode an) {
+      setLoad(an, System.currentTimeMillis());
+    }
+
+    /**
+     * Keeps the load reported in the entry, if any. An entry without load
+     * leaves the last report in place.
+     */
+    void setLoad(ActiveNode an, long reportedAt) {
+      if (an.getCallQueueLength() >= 0) {
+        callQueueLength = an.getCallQueueLength();
+        activeHandlers = an.getActiveHandlers();
+        handlers = an.getHandlers();
+        loadReportedAt = reportedAt;
+      }
+    }
+
+    double getUtilization(long validity) {
+      return getUtilization(validity, System.currentTimeMillis());
+    }
+
+    /**
+     * @return the part of the handlers of the namenode that are busy, plus the
+     * calls waiting for one, per handler, or 0 if the namenode did not report
+     * its load in the validity period before now
+     */
+    double getUtilization(long validity, long now) {
+      if (callQueueLength < 0 || handlers <= 0 ||
+          now - loadReportedAt > validity) {
+        return 0;
+      }
+      return (double) (activeHandlers + callQueueLength) / handlers;
+    }
+
     @Override
     public String toString() {
       return "[RPC handle connected to " + namenode.getRpcServerAddressForClients() +
@@ -110,10 +202,23 @@ public boolean equals(Object obj) {
   private List<NamenodeSelector.NamenodeHandle> blackListedNamenodes =
       new CopyOnWriteArrayList<>();
   private static Log LOG = LogFactory.getLog(NamenodeSelector.class);
+  /**
+   * Weight of the last call in the moving average of the latency.
+   */
+  private static final double LATENCY_ALPHA = 0.2;
+  private static final double MAX_LATENCY_FACTOR = 10;
+  /**
+   * The calls of the files being written move to another namenode only when
+   * the current one is expected to be that many times slower.
+   */
+  private static final double WRITE_STICKINESS = 2;
   private final URI defaultUri;
   private final NamenodeSelector.NNSelectionPolicy policy;
   private NamenodeSelector.NamenodeHandle stickyHandle = null; //only used if
   // RANDOM_STICKY policy is used
+  private NamenodeSelector.NamenodeHandle writeHandle = null; //only used if
+  // LOAD_AWARE policy is used
+  private int refreshIndex = 0;
   protected final Configuration conf;
   private final int namenodeListUpdateTimePeriod;
   private long lastUpdate=0;
@@ -156,6 +261,8 @@ public NamenodeSelector(Configuration conf, URI defaultUri,
       policy = NamenodeSelector.NNSelectionPolicy.ROUND_ROBIN;
     }else if (policyName.equals(NamenodeSelector.NNSelectionPolicy.RANDOM_STICKY.toString())) {
       policy = NamenodeSelector.NNSelectionPolicy.RANDOM_STICKY;
+    } else if (policyName.equals(NamenodeSelector.NNSelectionPolicy.LOAD_AWARE.toString())) {
+      policy = NamenodeSelector.NNSelectionPolicy.LOAD_AWARE;
     } else {
       policy = NamenodeSelector.NNSelectionPolicy.RANDOM_STICKY;
     }
@@ -249,6 +356,33 @@ public NamenodeSelector.NamenodeHandle getNextNamenode() throws IOException {
     return handle;
   }
 
+  /**
+   * Get the namenode to be used for the calls of the files being written:
+   * create, addBlock, complete, renewLease and the like. With the LOAD_AWARE
+   * policy they stick to one namenode until it dies or becomes much more
+   * loaded than the others, with the other policies this is
+   * {@link #getNextNamenode()}.
+   * @return a namenode
+   * @throws IOException
+   */
+  public NamenodeSelector.NamenodeHandle getNextNamenodeForWrite()
+      throws IOException {
+    if (policy != NamenodeSelector.NNSelectionPolicy.LOAD_AWARE) {
+      return getNextNamenode();
+    }
+
+    updateNamenodesList();
+    if (nnList == null || nnList.isEmpty()) {
+      throw new NoAliveNamenodeException("No NameNode is active");
+    }
+
+    NamenodeSelector.NamenodeHandle handle = getWriteNNInternal();
+    if (handle == null || handle.getRPCHandle() == null) {
+      throw new NoAliveNamenodeException( "There are no alive namenodes");
+    }
+    return handle;
+  }
+
   private synchronized NamenodeSelector.NamenodeHandle getNextNNBasedOnPolicy() {
     if (policy == NamenodeSelector.NNSelectionPolicy.RANDOM) {
       return getRandomNNInternal();
@@ -262,6 +396,8 @@ private synchronized NamenodeSelector.NamenodeHandle getNextNNBasedOnPolicy() {
         }
       }
       return null;
+    } else if (policy == NamenodeSelector.NNSelectionPolicy.LOAD_AWARE) {
+      return getLeastLoadedNNInternal();
     }  else if( policy == NamenodeSelector.NNSelectionPolicy.RANDOM_STICKY) {
       // stick to a random NN untill the NN dies
       //stickyHandle
@@ -293,6 +429,97 @@ private NamenodeSelector.NamenodeHandle getRandomNNInternal(){
     return null;
   }
 
+  // synchronize by the calling method
+  private NamenodeSelector.NamenodeHandle getLeastLoadedNNInternal() {
+    List<NamenodeSelector.NamenodeHandle> alive =
+        new ArrayList<>(nnList.size());
+    for (NamenodeSelector.NamenodeHandle handle : nnList) {
+      if (!this.blackListedNamenodes.contains(handle)) {
+        alive.add(handle);
+      }
+    }
+    if (alive.isEmpty()) {
+      return null;
+    }
+    if (alive.size() == 1) {
+      return alive.get(0);
+    }
+
+    // power of two choices, avoids sending everything to the namenode that
+    // looked the least loaded the last time we heard of it
+    int first = rand.nextInt(alive.size());
+    int second = rand.nextInt(alive.size() - 1);
+    if (second >= first) {
+      second++;
+    }
+    NamenodeSelector.NamenodeHandle handle = alive.get(first);
+    NamenodeSelector.NamenodeHandle other = alive.get(second);
+    double defaultLatency = getAverageLatency();
+    if (getExpectedLatency(other, defaultLatency) <
+        getExpectedLatency(handle, defaultLatency)) {
+      handle = other;
+    }
+    LOG.debug("LOAD_AWARE returning " + handle);
+    return handle;
+  }
+
+  // synchronize by the calling method
+  private NamenodeSelector.NamenodeHandle getWriteNNInternal() {
+    NamenodeSelector.NamenodeHandle best = getLeastLoadedNNInternal();
+    if (best != null && writeHandle != null && writeHandle != best &&
+        nnList.contains(writeHandle) &&
+        !blackListedNamenodes.contains(writeHandle)) {
+      double defaultLatency = getAverageLatency();
+      if (getExpectedLatency(writeHandle, defaultLatency) <=
+          WRITE_STICKINESS * getExpectedLatency(best, defaultLatency)) {
+        return writeHandle;
+      }
+    }
+    writeHandle = best;
+    return best;
+  }
+
+  /**
+   * @return the expected latency of the next call to the namenode, in ns
+   */
+  double getExpectedLatency(NamenodeSelector.NamenodeHandle handle,
+      double defaultLatency) {
+    double latency = handle.getLatency() > 0 ? handle.getLatency() :
+        defaultLatency;
+    return latency * (1 + handle.getOutstandingCalls()) *
+        (1 + handle.getUtilization(getLoadValidity()));
+  }
+
+  /**
+   * Each namenode only reports its own load and they are asked in turn, so
+   * the load of a namenode is refreshed once every as many list updates as
+   * there are namenodes. It is used for that long, plus one update.
+   *
+   * @return how long the load reported by a namenode is used, in ms
+   */
+  long getLoadValidity() {
+    long period = namenodeListUpdateTimePeriod > 0 ?
+        namenodeListUpdateTimePeriod :
+        DFSConfigKeys.DFS_CLIENT_REFRESH_NAMENODE_LIST_IN_MS_DEFAULT;
+    return period * (nnList.size() + 1);
+  }
+
+  /**
+   * @return the average latency of the namenodes that were measured, used
+   * for the ones that were not, or 1 if none was
+   */
+  private double getAverageLatency() {
+    double total = 0;
+    int measured = 0;
+    for (NamenodeSelector.NamenodeHandle handle : nnList) {
+      if (handle.getLatency() > 0) {
+        total += handle.getLatency();
+        measured++;
+      }
+    }
+    return measured == 0 ? 1 : total / measured;
+  }
+
   String printNamenodes() {
     try {
       updateNamenodesList();
@@ -404,7 +631,13 @@ private synchronized void namenodeClientsUpdate() throws IOException {
     SortedActiveNodeList anl = null;
     LOG.debug("Fetching new list of namenodes");
     if (!nnList.isEmpty()) {
-      for (NamenodeSelector.NamenodeHandle namenode : nnList) { //TODO dont try with black listed nodes
+      List<NamenodeSelector.NamenodeHandle> namenodes = nnList;
+      if (policy == NamenodeSelector.NNSelectionPolicy.LOAD_AWARE) {
+        // each namenode only reports its own load, ask them in turn
+        namenodes = new ArrayList<>(nnList);
+        Collections.rotate(namenodes, -(refreshIndex++ % namenodes.size()));
+      }
+      for (NamenodeSelector.NamenodeHandle namenode : namenodes) { //TODO dont try with black listed nodes
         try {
           ClientProtocol handle = namenode.getRPCHandle();
           anl = handle.getActiveNamenodesForClient();
@@ -470,6 +703,14 @@ private synchronized void refreshNamenodeList(SortedActiveNodeList anl) {
     }
 
 
+    for (NamenodeSelector.NamenodeHandle handle : nnList) {
+      ActiveNode ann = anl.getActiveNode(
+          handle.getNamenode().getRpcServerAddressForClients());
+      if (ann != null) {
+        handle.setLoad(ann);
+      }
+    }
+
     LOG.debug("nnList Size:"+nnList.size()+"  Handles: " + Arrays.toString(nnList.toArray()));
     //clear black listed nodes
     this.blackListedNamenodes.clear();
@@ -541,6 +782,10 @@ public synchronized void blackListNamenode(NamenodeSelector.NamenodeHandle handl
       stickyHandle = null;
     }
 
+    if (writeHandle == handle) {
+      writeHandle = null;
+    }
+
   }
 
   public int getNameNodesCount() throws IOException {
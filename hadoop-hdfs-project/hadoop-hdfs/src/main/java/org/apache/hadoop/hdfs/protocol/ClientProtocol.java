@@ -134,6 +134,31 @@ public LocatedBlocks getBlockLocations(String src, long offset, long length)
       throws AccessControlException, FileNotFoundException,
       UnresolvedLinkException, IOException;
 
+  /**
+   * Get locations of the blocks of many files within the same range in one
+   * call, see {@link #getBlockLocations(String, long, long)}. The paths are
+   * resolved together in one namenode transaction.
+   *
+   * @param srcs
+   *     file names, at most dfs.batched.metadata.ops.max.paths of them
+   * @param offset
+   *     range start offset
+   * @param length
+   *     range length
+   * @return the blocks of each file, in the order of <code>srcs</code>, with
+   * null for the paths that do not exist or are not files
+   * @throws AccessControlException
+   *     If access is denied for any of the files
+   * @throws UnresolvedLinkException
+   *     If any of the paths contains a symlink
+   * @throws IOException
+   *     If an I/O error occurred
+   */
+  @Idempotent
+  public LocatedBlocks[] getBatchedBlockLocations(String[] srcs, long offset,
+      long length)
+      throws AccessControlException, UnresolvedLinkException, IOException;
+
   /**
    * Get the collection of missing or corrupted blocks for the given
    * erasure-coded file. This might not necessarily be up-to-date as it depends
@@ -345,6 +370,59 @@ public HdfsFileStatus create(String src, FsPermission masked,
       ParentNotDirectoryException, SafeModeException, UnresolvedLinkException,
       IOException;
 
+  /**
+   * Create many small files and store their data in the database, in one
+   * namenode transaction. This replaces the create, addBlock and complete
+   * calls of each file. The files are closed once the call returns, and
+   * either all of them are created or none is.
+   * <p/>
+   * It requires dfs.store.small.files.in.db to be enabled on the namenode.
+   *
+   * @param srcs
+   *     paths of the files, at most dfs.batched.metadata.ops.max.paths of
+   *     them. None of them may exist already.
+   * @param data
+   *     the content of each file, in the order of <code>srcs</code>
+   * @param masked
+   *     masked permission of the files.
+   * @param clientName
+   *     name of the current client.
+   * @param createParent
+   *     create missing parent directories if true
+   * @param replication
+   *     replication factor of the files.
+   * @param blockSize
+   *     maximum block size of the files.
+   * @throws AccessControlException
+   *     If access is denied for any of the files
+   * @throws DSQuotaExceededException
+   *     If the files violate disk space quota restriction
+   * @throws FileAlreadyExistsException
+   *     If any of the files already exists
+   * @throws FileNotFoundException
+   *     If the parent of a file does not exist and
+   *     <code>createParent</code> is false
+   * @throws NSQuotaExceededException
+   *     If the files violate name space quota restriction
+   * @throws ParentNotDirectoryException
+   *     If the parent of a file is not a directory.
+   * @throws SafeModeException
+   *     create not allowed in safemode
+   * @throws UnresolvedLinkException
+   *     If any of the paths contains a symlink
+   * @throws IOException
+   *     If a file is too big to be stored in the database, or an I/O error
+   *     occurred
+   */
+  @AtMostOnce
+  public void createSmallFiles(String[] srcs, byte[][] data,
+      FsPermission masked, String clientName, boolean createParent,
+      short replication, long blockSize)
+      throws AccessControlException, DSQuotaExceededException,
+      FileAlreadyExistsException, FileNotFoundException,
+      NSQuotaExceededException, ParentNotDirectoryException,
+      SafeModeException, UnresolvedLinkException, IOException;
+
   /**
    * Append to the end of the file.
    *
@@ -833,6 +911,53 @@ public DirectoryListing getListing(String src, byte[] startAfter,
       throws AccessControlException, FileNotFoundException,
       UnresolvedLinkException, IOException;
 
+  /**
+   * Get a partial listing of the indicated directory through a server side
+   * cursor. The first call opens the cursor, which reads the names of the
+   * children of the directory once; the following calls pass the returned
+   * cursor id and only read the children of their page. The namenode reads
+   * the next page while the client consumes the current one.
+   * <p/>
+   * Like {@link #getListing}, the listing is not atomic: children created
+   * after the cursor was opened are not listed, and deleted ones are
+   * skipped.
+   *
+   * @param src
+   *     the directory name
+   * @param cursorId
+   *     the cursor returned by the previous call, or 0 to open one
+   * @param startAfter
+   *     the name to start listing after encoded in java UTF8
+   * @param needLocation
+   *     if the FileStatus should contain block locations
+   * @param namesOnly
+   *     if only the names, the inode ids and whether the children are
+   *     directories are needed. The namenode does not read the children
+   *     then: the statuses are built from the names read when the cursor
+   *     was opened, with the default permission, an empty owner and group
+   *     and no length or times, and the children deleted or renamed since
+   *     are still listed. The pages served by {@link #getListing} when no
+   *     cursor could be opened are complete.
+   * @return a partial listing starting after startAfter and the cursor to
+   * get the next one with. If the cursor id is 0 and there are more
+   * entries, they are fetched with {@link #getListing}.
+   * @throws AccessControlException
+   *     permission denied
+   * @throws FileNotFoundException
+   *     file <code>src</code> is not found
+   * @throws ListingCursorExpiredException
+   *     if the cursor expired, the listing goes on with {@link #getListing}
+   * @throws UnresolvedLinkException
+   *     If <code>src</code> contains a symlink
+   * @throws IOException
+   *     If an I/O error occurred
+   */
+  @Idempotent
+  public CursorDirectoryListing getListingCursor(String src, long cursorId,
+      byte[] startAfter, boolean needLocation, boolean namesOnly)
+      throws AccessControlException, FileNotFoundException,
+      ListingCursorExpiredException, UnresolvedLinkException, IOException;
+
   ///////////////////////////////////////
   // System issues and management
   ///////////////////////////////////////
@@ -1052,6 +1177,26 @@ public HdfsFileStatus getFileInfo(String src)
       throws AccessControlException, FileNotFoundException,
       UnresolvedLinkException, IOException;
 
+  /**
+   * Get the file info of many files or directories in one call. The paths
+   * are resolved together in one namenode transaction.
+   *
+   * @param srcs
+   *     The string representation of the paths, at most
+   *     dfs.batched.metadata.ops.max.paths of them
+   * @return the file info of each path, in the order of <code>srcs</code>,
+   * with null for the paths that are not found
+   * @throws AccessControlException
+   *     permission denied for any of the paths
+   * @throws UnresolvedLinkException
+   *     if any of the paths contains a symlink.
+   * @throws IOException
+   *     If an I/O error occurred
+   */
+  @Idempotent
+  public HdfsFileStatus[] getBatchedFileInfo(String[] srcs)
+      throws AccessControlException, UnresolvedLinkException, IOException;
+
   /**
    * Get the close status of a file
    * @param src The string representation of the path to the file
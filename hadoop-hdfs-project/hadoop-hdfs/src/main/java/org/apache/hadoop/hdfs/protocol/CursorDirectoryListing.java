@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.protocol;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+/**
+ * A partial listing of a directory together with the namenode side cursor
+ * to get the next one with.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public class CursorDirectoryListing extends DirectoryListing {
+  private final long cursorId;
+
+  /**
+   * @param partialListing
+   *     a partial listing of a directory
+   * @param remainingEntries
+   *     number of entries that are left to be listed
+   * @param cursorId
+   *     the cursor to get the next partial listing with, 0 if there is none
+   */
+  public CursorDirectoryListing(HdfsFileStatus[] partialListing,
+      int remainingEntries, long cursorId) {
+    super(partialListing, remainingEntries);
+    this.cursorId = cursorId;
+  }
+
+  public long getCursorId() {
+    return cursorId;
+  }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.protocol;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+import org.apache.hadoop.classification.InterfaceStability;
+
+import java.io.IOException;
+
+/**
+ * The exception that happens when a directory listing cursor expired or is
+ * unknown to the namenode, which is the case after a failover.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public class ListingCursorExpiredException extends IOException {
+  static final long serialVersionUID = 1L;
+
+  public ListingCursorExpiredException(String msg) {
+    super(msg);
+  }
+}
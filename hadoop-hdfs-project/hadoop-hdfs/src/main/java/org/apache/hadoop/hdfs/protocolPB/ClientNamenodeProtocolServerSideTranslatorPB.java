@@ -32,6 +32,7 @@
 import org.apache.hadoop.hdfs.protocol.BlockStoragePolicy;
 import org.apache.hadoop.hdfs.protocol.ClientProtocol;
 import org.apache.hadoop.hdfs.protocol.CorruptFileBlocks;
+import org.apache.hadoop.hdfs.protocol.CursorDirectoryListing;
 import org.apache.hadoop.hdfs.protocol.DirectoryListing;
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
 import org.apache.hadoop.hdfs.protocol.LastUpdatedContentSummary;
@@ -173,6 +174,10 @@
   private static final CreateResponseProto VOID_CREATE_RESPONSE =
       CreateResponseProto.newBuilder().build();
 
+  private static final ClientNamenodeProtocolProtos.CreateSmallFilesResponseProto
+      VOID_CREATE_SMALL_FILES_RESPONSE = ClientNamenodeProtocolProtos
+      .CreateSmallFilesResponseProto.newBuilder().build();
+
   private static final AppendResponseProto VOID_APPEND_RESPONSE =
       AppendResponseProto.newBuilder().build();
 
@@ -303,6 +308,32 @@ public GetBlockLocationsResponseProto getBlockLocations(
     }
   }
 
+  @Override
+  public ClientNamenodeProtocolProtos.GetBatchedBlockLocationsResponseProto getBatchedBlockLocations(
+      RpcController controller,
+      ClientNamenodeProtocolProtos.GetBatchedBlockLocationsRequestProto req)
+      throws ServiceException {
+    try {
+      List<String> srcs = req.getSrcsList();
+      LocatedBlocks[] result = server.getBatchedBlockLocations(
+          srcs.toArray(new String[srcs.size()]), req.getOffset(),
+          req.getLength());
+      ClientNamenodeProtocolProtos.GetBatchedBlockLocationsResponseProto.Builder
+          builder = ClientNamenodeProtocolProtos
+          .GetBatchedBlockLocationsResponseProto.newBuilder();
+      for (LocatedBlocks b : result) {
+        Builder locations = GetBlockLocationsResponseProto.newBuilder();
+        if (b != null) {
+          locations.setLocations(PBHelper.convert(b));
+        }
+        builder.addResults(locations);
+      }
+      return builder.build();
+    } catch (IOException e) {
+      throw new ServiceException(e);
+    }
+  }
+
   @Override
   public ClientNamenodeProtocolProtos.GetMissingBlockLocationsResponseProto getMissingBlockLocations(
       RpcController controller,
@@ -394,6 +425,27 @@ public CreateResponseProto create(RpcController controller,
       throw new ServiceException(e);
     }
   }
+
+  @Override
+  public ClientNamenodeProtocolProtos.CreateSmallFilesResponseProto createSmallFiles(
+      RpcController controller,
+      ClientNamenodeProtocolProtos.CreateSmallFilesRequestProto req)
+      throws ServiceException {
+    try {
+      List<String> srcs = req.getSrcsList();
+      byte[][] data = new byte[req.getDataCount()][];
+      for (int i = 0; i < data.length; i++) {
+        data[i] = req.getData(i).toByteArray();
+      }
+      server.createSmallFiles(srcs.toArray(new String[srcs.size()]), data,
+          PBHelper.convert(req.getMasked()), req.getClientName(),
+          req.getCreateParent(), (short) req.getReplication(),
+          req.getBlockSize());
+      return VOID_CREATE_SMALL_FILES_RESPONSE;
+    } catch (IOException e) {
+      throw new ServiceException(e);
+    }
+  }
   
   @Override
   public AppendResponseProto append(RpcController controller,
@@ -679,6 +731,30 @@ public GetListingResponseProto getListing(RpcController controller,
     }
   }
   
+  @Override
+  public ClientNamenodeProtocolProtos.GetListingCursorResponseProto getListingCursor(
+      RpcController controller,
+      ClientNamenodeProtocolProtos.GetListingCursorRequestProto req)
+      throws ServiceException {
+    try {
+      CursorDirectoryListing result = server.getListingCursor(req.getSrc(),
+          req.getCursorId(), req.getStartAfter().toByteArray(),
+          req.getNeedLocation(), req.getNamesOnly());
+      ClientNamenodeProtocolProtos.GetListingCursorResponseProto.Builder
+          builder = ClientNamenodeProtocolProtos.GetListingCursorResponseProto
+          .newBuilder();
+      if (result != null) {
+        builder.setDirList(PBHelper.convert(result))
+            .setCursorId(result.getCursorId());
+      } else {
+        builder.setCursorId(0);
+      }
+      return builder.build();
+    } catch (IOException e) {
+      throw new ServiceException(e);
+    }
+  }
+
   @Override
   public RenewLeaseResponseProto renewLease(RpcController controller,
       RenewLeaseRequestProto req) throws ServiceException {
@@ -807,6 +883,32 @@ public GetFileInfoResponseProto getFileInfo(RpcController controller,
     }
   }
 
+  @Override
+  public ClientNamenodeProtocolProtos.GetBatchedFileInfoResponseProto getBatchedFileInfo(
+      RpcController controller,
+      ClientNamenodeProtocolProtos.GetBatchedFileInfoRequestProto req)
+      throws ServiceException {
+    try {
+      List<String> srcs = req.getSrcsList();
+      HdfsFileStatus[] result =
+          server.getBatchedFileInfo(srcs.toArray(new String[srcs.size()]));
+      ClientNamenodeProtocolProtos.GetBatchedFileInfoResponseProto.Builder
+          builder = ClientNamenodeProtocolProtos
+          .GetBatchedFileInfoResponseProto.newBuilder();
+      for (HdfsFileStatus status : result) {
+        if (status != null) {
+          builder.addResults(GetFileInfoResponseProto.newBuilder()
+              .setFs(PBHelper.convert(status)));
+        } else {
+          builder.addResults(VOID_GETFILEINFO_RESPONSE);
+        }
+      }
+      return builder.build();
+    } catch (IOException e) {
+      throw new ServiceException(e);
+    }
+  }
+
   @Override
   public GetFileLinkInfoResponseProto getFileLinkInfo(RpcController controller,
       GetFileLinkInfoRequestProto req) throws ServiceException {
@@ -1147,6 +1249,11 @@ private ActiveNodeProtos.ActiveNodeProto convertANToResponseProto(
     anp.setHttpAddress(p.getHttpAddress());
     anp.setServiceIpAddress(p.getServiceRpcIpAddress());
     anp.setServicePort(p.getServiceRpcPort());
+    if (p.getCallQueueLength() >= 0) {
+      anp.setCallQueueLength(p.getCallQueueLength());
+      anp.setActiveHandlers(p.getActiveHandlers());
+      anp.setHandlers(p.getHandlers());
+    }
     return anp.build();
   }
 
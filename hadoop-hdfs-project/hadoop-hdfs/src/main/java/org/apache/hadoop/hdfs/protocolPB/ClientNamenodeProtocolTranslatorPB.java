@@ -50,10 +50,12 @@
 import org.apache.hadoop.hdfs.protocol.BlockStoragePolicy;
 import org.apache.hadoop.hdfs.protocol.ClientProtocol;
 import org.apache.hadoop.hdfs.protocol.CorruptFileBlocks;
+import org.apache.hadoop.hdfs.protocol.CursorDirectoryListing;
 import org.apache.hadoop.hdfs.protocol.DSQuotaExceededException;
 import org.apache.hadoop.hdfs.protocol.DatanodeID;
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
 import org.apache.hadoop.hdfs.protocol.DirectoryListing;
+import org.apache.hadoop.hdfs.protocol.ListingCursorExpiredException;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants.DatanodeReportType;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants.SafeModeAction;
@@ -200,6 +202,29 @@ public LocatedBlocks getBlockLocations(String src, long offset, long length)
     }
   }
 
+  @Override
+  public LocatedBlocks[] getBatchedBlockLocations(String[] srcs, long offset,
+      long length)
+      throws AccessControlException, UnresolvedLinkException, IOException {
+    ClientNamenodeProtocolProtos.GetBatchedBlockLocationsRequestProto req =
+        ClientNamenodeProtocolProtos.GetBatchedBlockLocationsRequestProto
+            .newBuilder().addAllSrcs(Arrays.asList(srcs)).setOffset(offset)
+            .setLength(length).build();
+    try {
+      List<GetBlockLocationsResponseProto> results =
+          rpcProxy.getBatchedBlockLocations(null, req).getResultsList();
+      LocatedBlocks[] locatedBlocks = new LocatedBlocks[results.size()];
+      for (int i = 0; i < locatedBlocks.length; i++) {
+        GetBlockLocationsResponseProto result = results.get(i);
+        locatedBlocks[i] = result.hasLocations() ?
+            PBHelper.convert(result.getLocations()) : null;
+      }
+      return locatedBlocks;
+    } catch (ServiceException e) {
+      throw ProtobufHelper.getRemoteException(e);
+    }
+  }
+
   @Override
   public LocatedBlocks getMissingBlockLocations(String filePath)
       throws AccessControlException, FileNotFoundException,
@@ -295,6 +320,30 @@ public HdfsFileStatus create(String src, FsPermission masked,
     }
   }
 
+  @Override
+  public void createSmallFiles(String[] srcs, byte[][] data,
+      FsPermission masked, String clientName, boolean createParent,
+      short replication, long blockSize)
+      throws AccessControlException, DSQuotaExceededException,
+      FileAlreadyExistsException, FileNotFoundException,
+      NSQuotaExceededException, ParentNotDirectoryException,
+      SafeModeException, UnresolvedLinkException, IOException {
+    ClientNamenodeProtocolProtos.CreateSmallFilesRequestProto.Builder builder =
+        ClientNamenodeProtocolProtos.CreateSmallFilesRequestProto.newBuilder()
+            .addAllSrcs(Arrays.asList(srcs))
+            .setMasked(PBHelper.convert(masked)).setClientName(clientName)
+            .setCreateParent(createParent).setReplication(replication)
+            .setBlockSize(blockSize);
+    for (byte[] content : data) {
+      builder.addData(ByteString.copyFrom(content));
+    }
+    try {
+      rpcProxy.createSmallFiles(null, builder.build());
+    } catch (ServiceException e) {
+      throw ProtobufHelper.getRemoteException(e);
+    }
+  }
+
   @Override
   public LocatedBlock append(String src, String clientName)
       throws AccessControlException, DSQuotaExceededException,
@@ -613,6 +662,30 @@ public DirectoryListing getListing(String src, byte[] startAfter,
     }
   }
 
+  @Override
+  public CursorDirectoryListing getListingCursor(String src, long cursorId,
+      byte[] startAfter, boolean needLocation, boolean namesOnly)
+      throws AccessControlException, FileNotFoundException,
+      ListingCursorExpiredException, UnresolvedLinkException, IOException {
+    ClientNamenodeProtocolProtos.GetListingCursorRequestProto req =
+        ClientNamenodeProtocolProtos.GetListingCursorRequestProto.newBuilder()
+            .setSrc(src).setCursorId(cursorId)
+            .setStartAfter(ByteString.copyFrom(startAfter))
+            .setNeedLocation(needLocation).setNamesOnly(namesOnly).build();
+    try {
+      ClientNamenodeProtocolProtos.GetListingCursorResponseProto result =
+          rpcProxy.getListingCursor(null, req);
+      if (result.hasDirList()) {
+        DirectoryListing listing = PBHelper.convert(result.getDirList());
+        return new CursorDirectoryListing(listing.getPartialListing(),
+            listing.getRemainingEntries(), result.getCursorId());
+      }
+      return null;
+    } catch (ServiceException e) {
+      throw ProtobufHelper.getRemoteException(e);
+    }
+  }
+
   @Override
   public void renewLease(String clientName)
       throws AccessControlException, IOException {
@@ -741,6 +814,26 @@ public HdfsFileStatus getFileInfo(String src)
     }
   }
 
+  @Override
+  public HdfsFileStatus[] getBatchedFileInfo(String[] srcs)
+      throws AccessControlException, UnresolvedLinkException, IOException {
+    ClientNamenodeProtocolProtos.GetBatchedFileInfoRequestProto req =
+        ClientNamenodeProtocolProtos.GetBatchedFileInfoRequestProto
+            .newBuilder().addAllSrcs(Arrays.asList(srcs)).build();
+    try {
+      List<GetFileInfoResponseProto> results =
+          rpcProxy.getBatchedFileInfo(null, req).getResultsList();
+      HdfsFileStatus[] stats = new HdfsFileStatus[results.size()];
+      for (int i = 0; i < stats.length; i++) {
+        GetFileInfoResponseProto result = results.get(i);
+        stats[i] = result.hasFs() ? PBHelper.convert(result.getFs()) : null;
+      }
+      return stats;
+    } catch (ServiceException e) {
+      throw ProtobufHelper.getRemoteException(e);
+    }
+  }
+
   @Override
   public HdfsFileStatus getFileLinkInfo(String src)
       throws AccessControlException, UnresolvedLinkException, IOException {
@@ -1060,9 +1153,13 @@ private SortedActiveNodeList convertProtoANListToANList(
   }
 
   private ActiveNode convertProtoANToAN(ActiveNodeProtos.ActiveNodeProto p) {
-    ActiveNode an =
+    ActiveNodePBImpl an =
         new ActiveNodePBImpl(p.getId(), p.getRpcHostname(), p.getRpcIpAddress(),
             p.getRpcPort(), p.getHttpAddress(),p.getServiceIpAddress(), p.getServicePort());
+    if (p.hasCallQueueLength()) {
+      an.setLoad(p.getCallQueueLength(), p.getActiveHandlers(),
+          p.getHandlers());
+    }
     return an;
   }
 
@@ -34,6 +34,7 @@
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.ActiveNamenodeListRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.ActiveNamenodeListResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockReceivedAndDeletedRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockReportCompletedRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockReportRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockReportResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.CommitBlockSynchronizationRequestProto;
@@ -95,6 +96,10 @@
       VersionRequestProto.newBuilder().build();
   private final static RpcController NULL_CONTROLLER = null;
 
+  // what the namenode advertised in its last version response, nothing until
+  // then
+  private volatile long namenodeCapabilities = 0;
+
   public DatanodeProtocolClientSideTranslatorPB(InetSocketAddress nameNodeAddr,
       Configuration conf) throws IOException {
     RPC.setProtocolEngine(conf, DatanodeProtocolPB.class,
@@ -195,12 +200,15 @@ public DatanodeCommand blockReport(DatanodeRegistration registration,
         BlockReportRequestProto.newBuilder()
             .setRegistration(PBHelper.convert(registration))
             .setBlockPoolId(poolId);
+    // older namenodes only read the buckets sent block by block
+    boolean useColumns = (namenodeCapabilities &
+        NamespaceInfo.Capability.BLOCK_REPORT_COLUMNS.getMask()) != 0;
 
     for (StorageBlockReport r : reports) {
       StorageBlockReportProto.Builder reportBuilder =
           StorageBlockReportProto.newBuilder()
               .setStorage(PBHelper.convert(r.getStorage()))
-              .setReport(PBHelper.convert(r.getReport()));
+              .setReport(PBHelper.convert(r.getReport(), useColumns));
       builder.addReports(reportBuilder.build());
     }
     BlockReportResponseProto resp;
@@ -254,9 +262,11 @@ public void errorReport(DatanodeRegistration registration, int errorCode,
   @Override
   public NamespaceInfo versionRequest() throws IOException {
     try {
-      return PBHelper.convert(
+      NamespaceInfo info = PBHelper.convert(
           rpcProxy.versionRequest(NULL_CONTROLLER, VOID_VERSION_REQUEST)
               .getInfo());
+      namenodeCapabilities = info.getCapabilities();
+      return info;
     } catch (ServiceException e) {
       throw ProtobufHelper.getRemoteException(e);
     }
@@ -323,11 +333,14 @@ public SortedActiveNodeList getActiveNamenodes() throws IOException {
   }
 
   @Override
-  public ActiveNode getNextNamenodeToSendBlockReport(long noOfBlks) throws IOException {
+  public ActiveNode getNextNamenodeToSendBlockReport(long noOfBlks,
+      boolean firstReport, long waitTime) throws IOException {
 
     NameNodeAddressRequestForBlockReportingProto.Builder request =
         NameNodeAddressRequestForBlockReportingProto.newBuilder();
     request.setNoOfBlks(noOfBlks);
+    request.setFirstReport(firstReport);
+    request.setWaitTime(waitTime);
     try {
       ActiveNodeProtos.ActiveNodeProto response = rpcProxy
           .getNextNamenodeToSendBlockReport(NULL_CONTROLLER, request.build());
@@ -345,6 +358,22 @@ public ActiveNode getNextNamenodeToSendBlockReport(long noOfBlks) throws IOExcep
    * @return data
    * @throws IOException
    */
+  @Override
+  public void blockReportCompleted(long namenodeId, long noOfBlks,
+      long processingTime) throws IOException {
+    BlockReportCompletedRequestProto request =
+        BlockReportCompletedRequestProto.newBuilder()
+            .setNamenodeId(namenodeId)
+            .setNoOfBlks(noOfBlks)
+            .setProcessingTime(processingTime)
+            .build();
+    try {
+      rpcProxy.blockReportCompleted(NULL_CONTROLLER, request);
+    } catch (ServiceException e) {
+      throw ProtobufHelper.getRemoteException(e);
+    }
+  }
+
   @Override
   public byte[] getSmallFileData(int id) throws IOException {
     DatanodeProtocolProtos.GetSmallFileDataProto.Builder request =
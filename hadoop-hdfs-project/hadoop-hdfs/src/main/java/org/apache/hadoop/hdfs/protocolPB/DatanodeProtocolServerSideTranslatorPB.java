@@ -34,6 +34,8 @@
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockReportResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.CommitBlockSynchronizationRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.CommitBlockSynchronizationResponseProto;
+import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockReportCompletedRequestProto;
+import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockReportCompletedResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.ErrorReportRequestProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.ErrorReportResponseProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.HeartbeatRequestProto;
@@ -78,6 +80,9 @@
   private static final CommitBlockSynchronizationResponseProto
       VOID_COMMIT_BLOCK_SYNCHRONIZATION_RESPONSE_PROTO =
       CommitBlockSynchronizationResponseProto.newBuilder().build();
+  private static final BlockReportCompletedResponseProto
+      VOID_BLOCK_REPORT_COMPLETED_RESPONSE =
+      BlockReportCompletedResponseProto.newBuilder().build();
 
   public DatanodeProtocolServerSideTranslatorPB(DatanodeProtocol impl) {
     this.impl = impl;
@@ -274,7 +279,9 @@ public ActiveNodeProtos.ActiveNodeProto getNextNamenodeToSendBlockReport(
       NameNodeAddressRequestForBlockReportingProto request)
       throws ServiceException {
     try {
-      ActiveNode response = impl.getNextNamenodeToSendBlockReport(request.getNoOfBlks());
+      ActiveNode response = impl.getNextNamenodeToSendBlockReport(
+          request.getNoOfBlks(), request.getFirstReport(),
+          request.getWaitTime());
       ActiveNodeProtos.ActiveNodeProto responseProto =
           PBHelper.convert(response);
       return responseProto;
@@ -283,6 +290,19 @@ public ActiveNodeProtos.ActiveNodeProto getNextNamenodeToSendBlockReport(
     }
   }
 
+  @Override
+  public BlockReportCompletedResponseProto blockReportCompleted(
+      RpcController controller, BlockReportCompletedRequestProto request)
+      throws ServiceException {
+    try {
+      impl.blockReportCompleted(request.getNamenodeId(), request.getNoOfBlks(),
+          request.getProcessingTime());
+    } catch (IOException e) {
+      throw new ServiceException(e);
+    }
+    return VOID_BLOCK_REPORT_COMPLETED_RESPONSE;
+  }
+
   @Override
   public DatanodeProtocolProtos.SmallFileDataResponseProto getSmallFileData(RpcController controller, DatanodeProtocolProtos.GetSmallFileDataProto request) throws ServiceException {
     try{
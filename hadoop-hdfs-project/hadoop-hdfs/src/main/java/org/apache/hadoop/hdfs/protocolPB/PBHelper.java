@@ -21,6 +21,7 @@
 import com.google.common.collect.Lists;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
 import io.hops.leader_election.node.ActiveNode;
 import io.hops.leader_election.node.ActiveNodePBImpl;
 import io.hops.leader_election.node.SortedActiveNodeList;
@@ -131,7 +132,6 @@
 import org.apache.hadoop.hdfs.server.protocol.BlockRecoveryCommand;
 import org.apache.hadoop.hdfs.server.protocol.BlockRecoveryCommand.RecoveringBlock;
 import org.apache.hadoop.hdfs.server.protocol.BlockReport;
-import org.apache.hadoop.hdfs.server.protocol.ReportedBlock;
 import org.apache.hadoop.hdfs.server.protocol.BlockReportBlockState;
 import org.apache.hadoop.hdfs.server.protocol.Bucket;
 import org.apache.hadoop.hdfs.server.protocol.BlocksWithLocations;
@@ -395,7 +395,7 @@ public static NamespaceInfo convert(NamespaceInfoProto info) {
     StorageInfoProto storage = info.getStorageInfo();
     return new NamespaceInfo(storage.getNamespaceID(), storage.getClusterID(),
         info.getBlockPoolID(), storage.getCTime(), info.getBuildVersion(),
-        info.getSoftwareVersion());
+        info.getSoftwareVersion(), info.getCapabilities());
   }
 
   public static NamenodeCommand convert(NamenodeCommandProto cmd) {
@@ -1023,7 +1023,8 @@ public static NamespaceInfoProto convert(NamespaceInfo info) {
     return NamespaceInfoProto.newBuilder().setBlockPoolID(info.getBlockPoolID())
         .setBuildVersion(info.getBuildVersion()).setUnused(0)
         .setStorageInfo(PBHelper.convert((StorageInfo) info))
-        .setSoftwareVersion(info.getSoftwareVersion()).build();
+        .setSoftwareVersion(info.getSoftwareVersion())
+        .setCapabilities(info.getCapabilities()).build();
   }
 
   // Located Block Arrays and Lists
@@ -1688,9 +1689,13 @@ public static SortedActiveNodeList convert(
   }
 
   public static ActiveNode convert(ActiveNodeProto p) {
-    ActiveNode an =
+    ActiveNodePBImpl an =
         new ActiveNodePBImpl(p.getId(), p.getRpcHostname(), p.getRpcIpAddress(),
             p.getRpcPort(), p.getHttpAddress(), p.getServiceIpAddress(), p.getServicePort());
+    if (p.hasCallQueueLength()) {
+      an.setLoad(p.getCallQueueLength(), p.getActiveHandlers(),
+          p.getHandlers());
+    }
     return an;
   }
 
@@ -1703,6 +1708,11 @@ public static ActiveNodeProto convert(ActiveNode p) {
     anp.setHttpAddress(p.getHttpAddress());
     anp.setServiceIpAddress(p.getServiceRpcIpAddress());
     anp.setServicePort(p.getServiceRpcPort());
+    if (p.getCallQueueLength() >= 0) {
+      anp.setCallQueueLength(p.getCallQueueLength());
+      anp.setActiveHandlers(p.getActiveHandlers());
+      anp.setHandlers(p.getHandlers());
+    }
     return anp.build();
   }
 
@@ -1827,22 +1837,22 @@ public static DatanodeProtocolProtos.SmallFileDataResponseProto convert(byte[] d
   }
   
   public static DatanodeProtocolProtos.BlockReportProto convert(BlockReport report) {
+    return convert(report, true);
+  }
+
+  /**
+   * @param columns whether to send the buckets column wise, which only the
+   * namenodes advertising
+   * {@link NamespaceInfo.Capability#BLOCK_REPORT_COLUMNS} can read
+   */
+  public static DatanodeProtocolProtos.BlockReportProto convert(
+      BlockReport report, boolean columns) {
    
     List<DatanodeProtocolProtos.BlockReportBucketProto> bucketProtos = new
         ArrayList<>();
     for (Bucket bucket : report.getBuckets()){
-  
-      DatanodeProtocolProtos.BlockReportBucketProto.Builder bucketBuilder =
-          DatanodeProtocolProtos.BlockReportBucketProto.newBuilder();
-      for (ReportedBlock block : bucket.getBlocks()){
-        bucketBuilder.addBlocks(
-            DatanodeProtocolProtos.BlockReportBlockProto.newBuilder()
-                .setBlockId(block.getBlockId())
-                .setGenerationStamp(block.getGenerationStamp())
-                .setLength(block.getLength())
-                .setState(convert(block.getState())));
-      }
-      bucketProtos.add(bucketBuilder.build());
+      bucketProtos.add(columns ? convertToColumns(bucket)
+          : convertToBlocks(bucket));
     }
   
     List<Long> hashes = new ArrayList<>();
@@ -1855,6 +1865,73 @@ public static DatanodeProtocolProtos.BlockReportProto convert(BlockReport report
         .addAllHashes(hashes)
         .build();
   }
+
+  private static DatanodeProtocolProtos.BlockReportBucketProto convertToBlocks(
+      Bucket bucket) {
+    DatanodeProtocolProtos.BlockReportBucketProto.Builder bucketBuilder =
+        DatanodeProtocolProtos.BlockReportBucketProto.newBuilder();
+    for (int i = 0; i < bucket.size(); i++) {
+      bucketBuilder.addBlocks(
+          DatanodeProtocolProtos.BlockReportBlockProto.newBuilder()
+              .setBlockId(bucket.getBlockId(i))
+              .setGenerationStamp(bucket.getGenerationStamp(i))
+              .setLength(bucket.getLength(i))
+              .setState(convert(bucket.getState(i))));
+    }
+    return bucketBuilder.build();
+  }
+
+  private static DatanodeProtocolProtos.BlockReportBucketProto convertToColumns(
+      Bucket bucket) {
+    int size = bucket.size();
+    int blockIdsSize = 0;
+    int generationStampsSize = 0;
+    int lengthsSize = 0;
+    for (int i = 0; i < size; i++) {
+      blockIdsSize += CodedOutputStream.computeRawVarint64Size(
+          CodedOutputStream.encodeZigZag64(bucket.getBlockId(i)));
+      generationStampsSize += CodedOutputStream.computeRawVarint64Size(
+          bucket.getGenerationStamp(i));
+      lengthsSize += CodedOutputStream.computeRawVarint64Size(
+          bucket.getLength(i));
+    }
+
+    // an output filled exactly up to its initial capacity hands its buffer
+    // over to the ByteString instead of copying it
+    ByteString.Output blockIds = ByteString.newOutput(blockIdsSize);
+    ByteString.Output generationStamps =
+        ByteString.newOutput(generationStampsSize);
+    ByteString.Output lengths = ByteString.newOutput(lengthsSize);
+    ByteString.Output states = ByteString.newOutput(size);
+    CodedOutputStream blockIdsOut = CodedOutputStream.newInstance(blockIds);
+    CodedOutputStream generationStampsOut =
+        CodedOutputStream.newInstance(generationStamps);
+    CodedOutputStream lengthsOut = CodedOutputStream.newInstance(lengths);
+    CodedOutputStream statesOut = CodedOutputStream.newInstance(states);
+    try {
+      for (int i = 0; i < size; i++) {
+        blockIdsOut.writeRawVarint64(
+            CodedOutputStream.encodeZigZag64(bucket.getBlockId(i)));
+        generationStampsOut.writeRawVarint64(bucket.getGenerationStamp(i));
+        lengthsOut.writeRawVarint64(bucket.getLength(i));
+        statesOut.writeRawByte(convert(bucket.getState(i)).getNumber());
+      }
+      blockIdsOut.flush();
+      generationStampsOut.flush();
+      lengthsOut.flush();
+      statesOut.flush();
+    } catch (IOException e) {
+      // the outputs are in memory
+      throw new IllegalStateException(e);
+    }
+
+    return DatanodeProtocolProtos.BlockReportBucketProto.newBuilder()
+        .setBlockIds(blockIds.toByteString())
+        .setGenerationStamps(generationStamps.toByteString())
+        .setLengths(lengths.toByteString())
+        .setStates(states.toByteString())
+        .build();
+  }
   
   private static DatanodeProtocolProtos.BlockReportBlockProto.BlockReportBlockStateProto convert(BlockReportBlockState
       state){
@@ -1890,26 +1967,66 @@ public static BlockReport convert(
     
     for(int i = 0; i < numBuckets ; i ++){
       DatanodeProtocolProtos.BlockReportBucketProto bucketProto = blockReportProto.getBuckets(i);
-      int numBlocksInBucket = bucketProto.getBlocksCount();
-      
-      numBlocks += numBlocksInBucket;
-      
-      ReportedBlock[] blocks = new ReportedBlock[numBlocksInBucket];
-      for (int j = 0; j < numBlocksInBucket; j++){
-        DatanodeProtocolProtos.BlockReportBlockProto blockProto = bucketProto.getBlocks(j);
-        blocks[j] = new ReportedBlock(blockProto.getBlockId(), blockProto
-            .getGenerationStamp(), blockProto.getLength(), convert(blockProto
-            .getState()));
-      }
-      
-      Bucket bucket = new Bucket();
-      bucket.setBlocks(blocks);
+      Bucket bucket = bucketProto.hasStates() ? convertColumns(bucketProto)
+          : convertBlocks(bucketProto);
+      numBlocks += bucket.size();
       buckets[i] = bucket;
       hashes[i] = blockReportProto.getHashes(i);
     }
     
     return new BlockReport(buckets, hashes, numBlocks);
   }
+
+  private static Bucket convertColumns(
+      DatanodeProtocolProtos.BlockReportBucketProto bucketProto) {
+    ByteString statesBytes = bucketProto.getStates();
+    int size = statesBytes.size();
+    long[] blockIds = new long[size];
+    long[] generationStamps = new long[size];
+    long[] lengths = new long[size];
+    byte[] states = new byte[size];
+    CodedInputStream blockIdsIn = bucketProto.getBlockIds().newCodedInput();
+    CodedInputStream generationStampsIn =
+        bucketProto.getGenerationStamps().newCodedInput();
+    CodedInputStream lengthsIn = bucketProto.getLengths().newCodedInput();
+    try {
+      for (int j = 0; j < size; j++) {
+        blockIds[j] = CodedInputStream.decodeZigZag64(
+            blockIdsIn.readRawVarint64());
+        generationStamps[j] = generationStampsIn.readRawVarint64();
+        lengths[j] = lengthsIn.readRawVarint64();
+        DatanodeProtocolProtos.BlockReportBlockProto.BlockReportBlockStateProto
+            state = DatanodeProtocolProtos.BlockReportBlockProto
+            .BlockReportBlockStateProto.valueOf(statesBytes.byteAt(j));
+        if (state == null) {
+          throw new IllegalArgumentException("Unknown replica state " +
+              statesBytes.byteAt(j) + " in block report bucket");
+        }
+        states[j] = (byte) convert(state).ordinal();
+      }
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Malformed block report bucket", e);
+    }
+    return new Bucket(size, blockIds, generationStamps, lengths, states);
+  }
+
+  private static Bucket convertBlocks(
+      DatanodeProtocolProtos.BlockReportBucketProto bucketProto) {
+    int size = bucketProto.getBlocksCount();
+    long[] blockIds = new long[size];
+    long[] generationStamps = new long[size];
+    long[] lengths = new long[size];
+    byte[] states = new byte[size];
+    for (int j = 0; j < size; j++) {
+      DatanodeProtocolProtos.BlockReportBlockProto blockProto =
+          bucketProto.getBlocks(j);
+      blockIds[j] = blockProto.getBlockId();
+      generationStamps[j] = blockProto.getGenerationStamp();
+      lengths[j] = blockProto.getLength();
+      states[j] = (byte) convert(blockProto.getState()).ordinal();
+    }
+    return new Bucket(size, blockIds, generationStamps, lengths, states);
+  }
   
   private static BlockReportBlockState convert(
       DatanodeProtocolProtos.BlockReportBlockProto.BlockReportBlockStateProto state) {
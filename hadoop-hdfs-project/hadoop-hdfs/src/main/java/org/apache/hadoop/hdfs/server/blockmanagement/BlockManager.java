@@ -20,8 +20,6 @@
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Sets;
-import com.google.common.primitives.Ints;
-import com.google.common.primitives.Longs;
 import io.hops.common.INodeUtil;
 import io.hops.exception.StorageException;
 import io.hops.exception.TransactionContextException;
@@ -30,6 +28,8 @@
 import io.hops.metadata.HdfsVariables;
 import io.hops.metadata.blockmanagement.ExcessReplicasMap;
 import io.hops.metadata.common.entity.Variable;
+import io.hops.metadata.election.dal.HdfsLeDescriptorDataAccess;
+import io.hops.metadata.election.entity.LeDescriptor;
 import io.hops.metadata.hdfs.dal.MisReplicatedRangeQueueDataAccess;
 import io.hops.metadata.hdfs.entity.EncodingStatus;
 import io.hops.metadata.hdfs.entity.HashBucket;
@@ -76,7 +76,6 @@
 import org.apache.hadoop.hdfs.server.namenode.metrics.NameNodeMetrics;
 import org.apache.hadoop.hdfs.server.protocol.BlockCommand;
 import org.apache.hadoop.hdfs.server.protocol.BlockReport;
-import org.apache.hadoop.hdfs.server.protocol.ReportedBlock;
 import org.apache.hadoop.hdfs.server.protocol.BlockReportBlockState;
 import org.apache.hadoop.hdfs.server.protocol.Bucket;
 import org.apache.hadoop.hdfs.server.protocol.BlocksWithLocations;
@@ -103,6 +102,7 @@
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -196,6 +196,12 @@ public long getPostponedMisreplicatedBlocksCount() {
    */
   private final long replicationRecheckInterval;
 
+  /**
+   * Admits the block reports of the datanodes when this namenode is the
+   * leader
+   */
+  private final BlockReportScheduler blockReportScheduler;
+
   /**
    * Mapping: Block -> { BlockCollection, datanodes, self ref }
    * Updated only in response to client-sent information.
@@ -310,6 +316,28 @@ public long getPostponedMisreplicatedBlocksCount() {
    * Number of threads procession batches in parallel
    */
   private final int processMisReplicatedNoThreads;
+  /**
+   * Number of blocks of the same file of an incremental block report to
+   * process in one transaction
+   */
+  private final int incrementalReportBatchSize;
+  /**
+   * Whether every namenode replicates its part of the under replicated
+   * blocks, or only the leader replicates them all
+   */
+  private final boolean distributedReplication;
+  /**
+   * The namenodes of the last run of the replication monitor
+   */
+  private List<Long> replicationMembership = null;
+
+  private static final long IBR_RATE_WINDOW = 5000;
+  private final AtomicLong incrementalReportBlocks = new AtomicLong();
+  private final AtomicLong incrementalReportTransactions = new AtomicLong();
+  // guarded by incrementalReportBlocks
+  private long ibrRateWindowStart = Time.monotonicNow();
+  private long ibrRateWindowBlocks;
+  private long ibrBlocksPerSecond;
   
   public BlockManager(final Namesystem namesystem, final FSClusterStats stats,
       final Configuration conf) throws IOException {
@@ -318,6 +346,16 @@ public BlockManager(final Namesystem namesystem, final FSClusterStats stats,
         DFSConfigKeys.DFS_NUM_BUCKETS_DEFAULT);
     HashBuckets.initialize(numBuckets);
     
+    blockReportScheduler = new BlockReportScheduler(
+        conf.getLong(DFSConfigKeys.DFS_BR_LB_DB_VAR_UPDATE_THRESHOLD,
+            DFSConfigKeys.DFS_BR_LB_DB_VAR_UPDATE_THRESHOLD_DEFAULT),
+        conf.getLong(DFSConfigKeys.DFS_BR_LB_TIME_WINDOW_SIZE,
+            DFSConfigKeys.DFS_BR_LB_TIME_WINDOW_SIZE_DEFAULT),
+        conf.getFloat(DFSConfigKeys.DFS_BR_LB_LATENCY_TOLERANCE,
+            DFSConfigKeys.DFS_BR_LB_LATENCY_TOLERANCE_DEFAULT),
+        conf.getFloat(DFSConfigKeys.DFS_BR_LB_FIRST_REPORT_RESERVE,
+            DFSConfigKeys.DFS_BR_LB_FIRST_REPORT_RESERVE_DEFAULT));
+
     datanodeManager = new DatanodeManager(this, namesystem, conf);
     corruptReplicas = new CorruptReplicasMap(datanodeManager);
     heartbeatManager = datanodeManager.getHeartbeatManager();
@@ -398,6 +436,14 @@ public BlockManager(final Namesystem namesystem, final FSClusterStats stats,
         conf.getInt(DFSConfigKeys.DFS_NAMENODE_PROCESS_MISREPLICATED_BATCH_SIZE,
             DFSConfigKeys.DFS_NAMENODE_PROCESS_MISREPLICATED_BATCH_SIZE_DEFAULT);
 
+    this.distributedReplication = conf.getBoolean(
+        DFSConfigKeys.DFS_NAMENODE_REPLICATION_DISTRIBUTED_KEY,
+        DFSConfigKeys.DFS_NAMENODE_REPLICATION_DISTRIBUTED_DEFAULT);
+
+    this.incrementalReportBatchSize = Math.max(1,
+        conf.getInt(DFSConfigKeys.DFS_NAMENODE_INCREMENTAL_BR_BATCH_SIZE,
+            DFSConfigKeys.DFS_NAMENODE_INCREMENTAL_BR_BATCH_SIZE_DEFAULT));
+
     this.processMisReplicatedNoOfBatchs = conf.getInt(
         DFSConfigKeys.DFS_NAMENODE_PROCESS_MISREPLICATED_NO_OF_BATCHS,
         DFSConfigKeys.DFS_NAMENODE_PROCESS_MISREPLICATED_NO_OF_BATCHS_DEFAULT);
@@ -530,6 +576,10 @@ public DatanodeManager getDatanodeManager() {
     return datanodeManager;
   }
 
+  public BlockReportScheduler getBlockReportScheduler() {
+    return blockReportScheduler;
+  }
+
   @VisibleForTesting
   public BlockPlacementPolicy getBlockPlacementPolicy() {
     return blockplacement;
@@ -877,6 +927,8 @@ private List<LocatedBlock> createPhantomLocatedBlockList(INodeFile file, final b
     fakeBlk.setBlockIndexNoPersistance(0);
     fakeBlk.setNumBytesNoPersistance(file.getSize());
     fakeBlk.setTimestampNoPersistance(file.getModificationTime());
+    // lets the datanodes tell apart the versions of the file they cache
+    fakeBlk.setGenerationStampNoPersistance(file.getGenerationStamp());
 
     final ExtendedBlock eb =
         new ExtendedBlock(namesystem.getBlockPoolId(),fakeBlk);
@@ -2363,7 +2415,6 @@ private void processMisMatchingBuckets(final DatanodeStorageInfo storage,
     final Collection<Callable<Void>> subTasks = new ArrayList<>();
     for (final int bucketId : matchingResult.mismatchedBuckets) {
       final Bucket bucket = newReport.getBuckets()[bucketId];
-      final List<ReportedBlock> bucketBlocks = Arrays.asList(bucket.getBlocks());
       final Callable<Void> subTask = new Callable<Void>() {
         @Override
         public Void call() throws IOException {
@@ -2372,8 +2423,11 @@ public Void call() throws IOException {
               toCorrupt, toUC, firstBlockReport,
               mismatchedBlocksAndInodes,
               aggregatedSafeBlocks, allMismatchedBlocksOnServer,
-              invalidatedReplicas, bucketBlocks);
+              invalidatedReplicas, bucket);
+          long start = Time.monotonicNow();
           processReportHandler.handle();
+          blockReportScheduler.addTransactionLatency(
+              Time.monotonicNow() - start);
           return null;
         }
       };
@@ -2404,30 +2458,37 @@ private HopsTransactionalRequestHandler processBucketInternal(final DatanodeStor
                                                                 final Set<Long> aggregatedSafeBlocks,
                                                                 final Set<Long> allMismatchedBlocksOnServer,
                                                                 final Map<Long,Long> invalidatedReplicas,
-                                                                final List<ReportedBlock> reportedBlocks ) {
+                                                                final Bucket reportedBlocks ) {
 
     return new HopsTransactionalRequestHandler(HDFSOperationType.PROCESS_REPORT) {
       @Override
       public void acquireLock(TransactionLocks locks) throws IOException {
         LockFactory lf = LockFactory.getInstance();
-        if (!reportedBlocks.isEmpty()) {
-          List<Long> resolvedBlockIds = new ArrayList<>();
-          List<Integer> inodeIds = new ArrayList<>();
-          List<Long> unResolvedBlockIds = new ArrayList<>();
-
-          for (ReportedBlock reportedBlock : reportedBlocks) {
-            Integer inodeId = mismatchedBlocksAndInodes.get(reportedBlock.getBlockId());
+        int size = reportedBlocks.size();
+        if (size > 0) {
+          long[] resolvedBlockIds = new long[size];
+          int[] inodeIds = new int[size];
+          long[] unResolvedBlockIds = new long[size];
+          int resolved = 0;
+          int unResolved = 0;
+
+          for (int i = 0; i < size; i++) {
+            long blockId = reportedBlocks.getBlockId(i);
+            Integer inodeId = mismatchedBlocksAndInodes.get(blockId);
             if (inodeId != null) {
-              resolvedBlockIds.add(reportedBlock.getBlockId());
-              inodeIds.add(inodeId);
+              resolvedBlockIds[resolved] = blockId;
+              inodeIds[resolved] = inodeId;
+              resolved++;
             } else {
-              unResolvedBlockIds.add(reportedBlock.getBlockId());
+              unResolvedBlockIds[unResolved++] = blockId;
             }
           }
 
-          locks.add(lf.getBlockReportingLocks(Longs.toArray(resolvedBlockIds),
-              Ints.toArray(inodeIds),
-              Longs.toArray(unResolvedBlockIds), storage.getSid()));
+          locks.add(lf.getBlockReportingLocks(
+              Arrays.copyOf(resolvedBlockIds, resolved),
+              Arrays.copyOf(inodeIds, resolved),
+              Arrays.copyOf(unResolvedBlockIds, unResolved),
+              storage.getSid()));
         }
         locks.add(lf.getIndividualHashBucketLock(storage.getSid(), bucketId));
       }
@@ -2437,26 +2498,30 @@ public Object performTask() throws IOException {
         // scan the report and process newly reported blocks
         long hash = 0; // Our updated hash should only consider
         // finalized, stored blocks
-        for (ReportedBlock brb : reportedBlocks) {
+        for (int i = 0; i < reportedBlocks.size(); i++) {
+          long blockId = reportedBlocks.getBlockId(i);
+          long length = reportedBlocks.getLength(i);
+          long generationStamp = reportedBlocks.getGenerationStamp(i);
+          BlockReportBlockState state = reportedBlocks.getState(i);
           Block block = new Block();
-          block.setNoPersistance(brb.getBlockId(), brb.getLength(),
-                  brb.getGenerationStamp());
+          block.setNoPersistance(blockId, length, generationStamp);
           BlockInfo storedBlock =
                   processReportedBlock(storage,
-                          block, fromBlockReportBlockState(brb.getState()),
+                          block, fromBlockReportBlockState(state),
                           toAdd,
                           toInvalidate,
                           toCorrupt, toUC, aggregatedSafeBlocks,
                           firstBlockReport,
-                          allMismatchedBlocksOnServer.contains(brb.getBlockId()),
+                          allMismatchedBlocksOnServer.contains(blockId),
                           invalidatedReplicas);
           if (storedBlock != null) {
             mismatchedBlocksAndInodes.remove(storedBlock.getBlockId());
-            if (brb.getState() == BlockReportBlockState.FINALIZED){
+            if (state == BlockReportBlockState.FINALIZED){
               // Only update hash with blocks that should not
               // be removed and are finalized. This helps catch excess
               // replicas as well.
-              hash += BlockReport.hashAsFinalized(brb);
+              hash += BlockReport.hashAsFinalized(blockId, generationStamp,
+                  length);
             }
           }
         }
@@ -2510,7 +2575,7 @@ private HashMatchingResult calculateMismatchedHashes(DatanodeStorageInfo storage
       if (firstBlockReport) {
         //if the bucket is empty there is nothing to process 
         //except if the namenode think that there should be things in the bucket
-        if (report.getBuckets()[i].getBlocks().length == 0 && storedHash == 0) {
+        if (report.getBuckets()[i].size() == 0 && storedHash == 0) {
           matchedBuckets.add(i);
           continue;
         }
@@ -3779,51 +3844,71 @@ public void acquireLock(TransactionLocks locks) throws IOException {
           public Object performTask() throws IOException {
             ReceivedDeletedBlockInfo rdbi =
                     (ReceivedDeletedBlockInfo) getParams()[0];
-            LOG.debug("BLOCK_RECEIVED_AND_DELETED_INC_BLK_REPORT " +
-                rdbi.getStatus() + " bid=" +rdbi.getBlock().getBlockId() +
-                " dataNode=" + node.getXferAddr() + " storage=" + storage.getStorageID() +
-                    " sid: " + storage.getSid() + " status=" + rdbi.getStatus());
-            HashBuckets hashBuckets = HashBuckets.getInstance();
-            switch (rdbi.getStatus()) {
-              case CREATING:
-                processAndHandleReportedBlock(storage, rdbi.getBlock(),
-                        ReplicaState.RBW, null);
-                received[0]++;
-                break;
-              case APPENDING:
-                processAndHandleReportedBlock(storage, rdbi.getBlock(),
-                    ReplicaState.RBW, null);
-                received[0]++;
-                break;
-              case RECOVERING_APPEND:
-                processAndHandleReportedBlock(storage, rdbi.getBlock(),
-                    ReplicaState.RBW, null);
-                received[0]++;
-                break;
-              case RECEIVED:
-                addBlock(storage, rdbi.getBlock(), rdbi.getDelHints());
-                hashBuckets.applyHash(storage.getSid(), ReplicaState.FINALIZED, rdbi.getBlock());
-                received[0]++;
-                break;
-              case UPDATE_RECOVERED:
-                addBlock(storage, rdbi.getBlock(), rdbi.getDelHints());
-                received[0]++;
-                break;
-              case DELETED:
-                removeStoredBlock(rdbi.getBlock(), storage.getDatanodeDescriptor());
-                deleted[0]++;
-                break;
-              default:
-                String msg =
-                    "Unknown block status code reported by " + storage.getStorageID() + ": " + 
-                        rdbi;
-                blockLog.warn(msg);
-                assert false : msg; // if assertions are enabled, throw.
-                break;
+            processIncrementallyReportedBlock(node, storage, rdbi, received,
+                deleted);
+            return null;
+          }
+        };
+
+    // the blocks of the same file, in the order they were reported, are
+    // applied together in one transaction that locks the file once
+    HopsTransactionalRequestHandler processIncrementalBlockReportBatchHandler =
+        new HopsTransactionalRequestHandler(
+            HDFSOperationType.BLOCK_RECEIVED_AND_DELETED_INC_BLK_REPORT_BATCH) {
+          INodeIdentifier inodeIdentifier;
+
+          @Override
+          public void setUp() throws StorageException {
+            int inodeId = (Integer) getParams()[0];
+            inodeIdentifier = INodeUtil.resolveINodeFromId(inodeId);
+          }
+
+          @Override
+          public void acquireLock(TransactionLocks locks) throws IOException {
+            LockFactory lf = LockFactory.getInstance();
+            List<ReceivedDeletedBlockInfo> rdbis =
+                (List<ReceivedDeletedBlockInfo>) getParams()[1];
+            Set<Long> ids = new HashSet<>();
+            int[] bucketIds = new int[rdbis.size()];
+            boolean onlyDeleted = true;
+            for (int i = 0; i < rdbis.size(); i++) {
+              ReceivedDeletedBlockInfo rdbi = rdbis.get(i);
+              ids.add(rdbi.getBlock().getBlockId());
+              bucketIds[i] = HashBuckets.getInstance()
+                  .getBucketForBlock(rdbi.getBlock());
+              onlyDeleted &= rdbi.isDeletedBlock();
             }
-            if (blockLog.isDebugEnabled()) {
-              blockLog.debug("BLOCK* block " + (rdbi.getStatus()) + ": " + rdbi.getBlock() +
-                  " is received from " + storage.getStorageID());
+            long[] blockIds = new long[ids.size()];
+            int[] inodeIds = new int[ids.size()];
+            int i = 0;
+            for (long id : ids) {
+              blockIds[i] = id;
+              inodeIds[i] = inodeIdentifier.getInodeId();
+              i++;
+            }
+
+            locks.add(
+                lf.getIndividualINodeLock(INodeLockType.WRITE, inodeIdentifier, true))
+                .add(lf.getBatchedBlocksLock(blockIds, inodeIds))
+                .add(lf.getBlockRelated(BLK.RE, BLK.ER, BLK.CR, BLK.UR));
+            if (!onlyDeleted) {
+              locks.add(lf.getBlockRelated(BLK.PE, BLK.UC, BLK.IV));
+            }
+            if (((FSNamesystem) namesystem).isErasureCodingEnabled()) {
+              locks.add(lf.getIndivdualEncodingStatusLock(LockType.WRITE,
+                  inodeIdentifier.getInodeId()));
+            }
+            locks.add(lf.getIndividualHashBucketsLock(storage.getSid(),
+                bucketIds));
+          }
+
+          @Override
+          public Object performTask() throws IOException {
+            List<ReceivedDeletedBlockInfo> rdbis =
+                (List<ReceivedDeletedBlockInfo>) getParams()[1];
+            for (ReceivedDeletedBlockInfo rdbi : rdbis) {
+              processIncrementallyReportedBlock(node, storage, rdbi, received,
+                  deleted);
             }
             return null;
           }
@@ -3837,10 +3922,46 @@ public Object performTask() throws IOException {
             "Got incremental block report from unregistered or dead node");
       }
 
-      for (ReceivedDeletedBlockInfo rdbi : blockInfos.getBlocks()) {
-        processIncrementalBlockReportHandler.setParams(rdbi);
-        processIncrementalBlockReportHandler.handle(namesystem);
+      ReceivedDeletedBlockInfo[] rdbis = blockInfos.getBlocks();
+      long[] blockIds = new long[rdbis.length];
+      for (int i = 0; i < rdbis.length; i++) {
+        blockIds[i] = rdbis[i].getBlock().getBlockId();
+      }
+      int[] inodeIds = rdbis.length == 0 ? new int[0] :
+          INodeUtil.resolveINodesFromBlockIds(blockIds);
+
+      // the blocks whose file is not resolved are applied where they are in
+      // the report, after the groups of the blocks before them
+      Map<Integer, List<ReceivedDeletedBlockInfo>> byINode =
+          new LinkedHashMap<>();
+      for (int i = 0; i < rdbis.length; i++) {
+        int inodeId = BlockInfo.NON_EXISTING_ID;
+        if (rdbis[i].getBlock() instanceof BlockInfo) {
+          inodeId = ((BlockInfo) rdbis[i].getBlock()).getInodeId();
+        } else if (i < inodeIds.length) {
+          inodeId = inodeIds[i];
+        }
+        if (inodeId <= 0) {
+          // the file is gone, handled on its own as before
+          applyIncrementalReportGroups(byINode,
+              processIncrementalBlockReportHandler,
+              processIncrementalBlockReportBatchHandler);
+          processIncrementalBlockReportHandler.setParams(rdbis[i]);
+          processIncrementalBlockReportHandler.handle(namesystem);
+          incrementalReportTransactions.incrementAndGet();
+          continue;
+        }
+        List<ReceivedDeletedBlockInfo> group = byINode.get(inodeId);
+        if (group == null) {
+          group = new ArrayList<>();
+          byINode.put(inodeId, group);
+        }
+        group.add(rdbis[i]);
       }
+      applyIncrementalReportGroups(byINode,
+          processIncrementalBlockReportHandler,
+          processIncrementalBlockReportBatchHandler);
+      incrementalReportBlocks.addAndGet(rdbis.length);
     } finally {
       blockLog.debug(
           "*BLOCK* NameNode.processIncrementalBlockReport: " + "from " +
@@ -3850,6 +3971,116 @@ public Object performTask() throws IOException {
 
   }
 
+  /**
+   * Applies the blocks of each file in transactions of up to
+   * incrementalReportBatchSize blocks, in the order they were reported, and
+   * empties the groups.
+   */
+  private void applyIncrementalReportGroups(
+      Map<Integer, List<ReceivedDeletedBlockInfo>> byINode,
+      HopsTransactionalRequestHandler singleHandler,
+      HopsTransactionalRequestHandler batchHandler) throws IOException {
+    for (Map.Entry<Integer, List<ReceivedDeletedBlockInfo>> entry :
+        byINode.entrySet()) {
+      List<ReceivedDeletedBlockInfo> group = entry.getValue();
+      for (int from = 0; from < group.size();
+           from += incrementalReportBatchSize) {
+        List<ReceivedDeletedBlockInfo> batch = group.subList(from,
+            Math.min(group.size(), from + incrementalReportBatchSize));
+        if (batch.size() == 1) {
+          singleHandler.setParams(batch.get(0));
+          singleHandler.handle(namesystem);
+        } else {
+          batchHandler.setParams(entry.getKey(), batch);
+          batchHandler.handle(namesystem);
+        }
+        incrementalReportTransactions.incrementAndGet();
+      }
+    }
+    byINode.clear();
+  }
+
+  private void processIncrementallyReportedBlock(DatanodeDescriptor node,
+      DatanodeStorageInfo storage, ReceivedDeletedBlockInfo rdbi,
+      int[] received, int[] deleted) throws IOException {
+    LOG.debug("BLOCK_RECEIVED_AND_DELETED_INC_BLK_REPORT " +
+        rdbi.getStatus() + " bid=" +rdbi.getBlock().getBlockId() +
+        " dataNode=" + node.getXferAddr() + " storage=" + storage.getStorageID() +
+            " sid: " + storage.getSid() + " status=" + rdbi.getStatus());
+    HashBuckets hashBuckets = HashBuckets.getInstance();
+    switch (rdbi.getStatus()) {
+      case CREATING:
+        processAndHandleReportedBlock(storage, rdbi.getBlock(),
+                ReplicaState.RBW, null);
+        received[0]++;
+        break;
+      case APPENDING:
+        processAndHandleReportedBlock(storage, rdbi.getBlock(),
+            ReplicaState.RBW, null);
+        received[0]++;
+        break;
+      case RECOVERING_APPEND:
+        processAndHandleReportedBlock(storage, rdbi.getBlock(),
+            ReplicaState.RBW, null);
+        received[0]++;
+        break;
+      case RECEIVED:
+        addBlock(storage, rdbi.getBlock(), rdbi.getDelHints());
+        hashBuckets.applyHash(storage.getSid(), ReplicaState.FINALIZED, rdbi.getBlock());
+        received[0]++;
+        break;
+      case UPDATE_RECOVERED:
+        addBlock(storage, rdbi.getBlock(), rdbi.getDelHints());
+        received[0]++;
+        break;
+      case DELETED:
+        removeStoredBlock(rdbi.getBlock(), storage.getDatanodeDescriptor());
+        deleted[0]++;
+        break;
+      default:
+        String msg =
+            "Unknown block status code reported by " + storage.getStorageID() + ": " + 
+                rdbi;
+        blockLog.warn(msg);
+        assert false : msg; // if assertions are enabled, throw.
+        break;
+    }
+    if (blockLog.isDebugEnabled()) {
+      blockLog.debug("BLOCK* block " + (rdbi.getStatus()) + ": " + rdbi.getBlock() +
+          " is received from " + storage.getStorageID());
+    }
+  }
+
+  /**
+   * @return the blocks of the incremental block reports processed by this
+   * namenode
+   */
+  public long getIncrementalReportBlocks() {
+    return incrementalReportBlocks.get();
+  }
+
+  public long getIncrementalReportTransactions() {
+    return incrementalReportTransactions.get();
+  }
+
+  /**
+   * @return the blocks of the incremental block reports processed per second,
+   * measured over windows of at least IBR_RATE_WINDOW ms
+   */
+  public long getIncrementalReportBlocksPerSecond() {
+    synchronized (incrementalReportBlocks) {
+      long now = Time.monotonicNow();
+      long blocks = incrementalReportBlocks.get();
+      if (now - ibrRateWindowStart >= IBR_RATE_WINDOW) {
+        ibrBlocksPerSecond = (blocks - ibrRateWindowBlocks) * 1000 /
+            (now - ibrRateWindowStart);
+        ibrRateWindowStart = now;
+        ibrRateWindowBlocks = blocks;
+      }
+      return ibrBlocksPerSecond;
+    }
+  }
+
   /**
    * Return the number of nodes hosting a given block, grouped
    * by the state of those replicas.
@@ -4345,7 +4576,13 @@ private class ReplicationMonitor implements Runnable {
     public void run() {
       while (namesystem.isRunning()) {
         try {
-          if (namesystem.isLeader()) {
+          if (distributedReplication) {
+            if (updateReplicationPartition()) {
+              LOG.debug("Running replication monitor");
+              computeDatanodeWork();
+              processPendingReplications();
+            }
+          } else if (namesystem.isLeader()) {
             LOG.debug("Running replication monitor");
             computeDatanodeWork();
             processPendingReplications();
@@ -4405,10 +4642,56 @@ int computeDatanodeWork() throws IOException {
     // Update counters
     this.updateState();
     this.scheduledReplicationBlocksCount = workFound;
-    workFound += this.computeInvalidateWork(nodesToProcess);
+    if (!distributedReplication || namesystem.isLeader()) {
+      workFound += this.computeInvalidateWork(nodesToProcess);
+    }
     return workFound;
   }
 
+  /**
+   * Gives this namenode the under replicated blocks whose id modulo the number
+   * of namenodes is its position among them, sorted by id. The namenodes are
+   * the rows of the leader election table, which only the leader removes, so
+   * that all the namenodes read the same list. When the list changes the
+   * namenode skips a run, for the others to see the change before it takes
+   * its new partition.
+   * @return false if the partitions are changing or this namenode is not
+   * among the namenodes yet
+   */
+  @VisibleForTesting
+  boolean updateReplicationPartition() throws IOException {
+    List<Long> namenodes = getReplicationMembership();
+    if (!namenodes.equals(replicationMembership)) {
+      replicationMembership = namenodes;
+      return false;
+    }
+    int partition = namenodes.indexOf(
+        ((FSNamesystem) namesystem).getNameNode().getId());
+    if (partition < 0) {
+      return false;
+    }
+    neededReplications.setPartition(partition, namenodes.size());
+    return true;
+  }
+
+  private List<Long> getReplicationMembership() throws IOException {
+    return (List<Long>) new LightWeightRequestHandler(
+        HDFSOperationType.GET_ALL_NAME_NODES) {
+      @Override
+      public Object performTask() throws IOException {
+        HdfsLeDescriptorDataAccess da =
+            (HdfsLeDescriptorDataAccess) HdfsStorageFactory
+                .getDataAccess(HdfsLeDescriptorDataAccess.class);
+        List<Long> ids = new ArrayList<>();
+        for (Object descriptor : da.findAll()) {
+          ids.add(((LeDescriptor) descriptor).getId());
+        }
+        Collections.sort(ids);
+        return ids;
+      }
+    }.handle();
+  }
+
   /**
    * Clear all queues that hold decisions previously made by
    * this NameNode.
@@ -4550,9 +4833,11 @@ public void setUp() throws StorageException {
       public void acquireLock(TransactionLocks locks) throws IOException {
         LockFactory lf = LockFactory.getInstance();
         locks.add(lf.getIndividualINodeLock(INodeLockType.WRITE, inodeIdentifier, true))
-            .add(lf.getBlockLock(b.getBlockId(), inodeIdentifier))
-            .add(lf.getVariableLock(Variable.Finder.ReplicationIndex, LockType.WRITE))
-            .add(lf.getBlockRelated(BLK.RE, BLK.ER, BLK.CR, BLK.PE, BLK.UR, BLK.UC));
+            .add(lf.getBlockLock(b.getBlockId(), inodeIdentifier));
+        if (!neededReplications.isPartitioned()) {
+          locks.add(lf.getVariableLock(Variable.Finder.ReplicationIndex, LockType.WRITE));
+        }
+        locks.add(lf.getBlockRelated(BLK.RE, BLK.ER, BLK.CR, BLK.PE, BLK.UR, BLK.UC));
       }
 
       @Override
@@ -4624,6 +4909,10 @@ public void acquireLock(TransactionLocks locks) throws IOException {
 
       @Override
       public Object performTask() throws IOException {
+        if (!neededReplications.isInPartition(timedOutItemId)) {
+          // requeued by the namenode of its partition
+          return null;
+        }
         BlockInfo timedOutItem = EntityManager
             .find(BlockInfo.Finder.ByBlockIdAndINodeId, timedOutItemId);
         NumberReplicas num = countNodes(timedOutItem);
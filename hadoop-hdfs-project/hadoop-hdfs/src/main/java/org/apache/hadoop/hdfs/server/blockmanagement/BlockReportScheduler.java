@@ -0,0 +1,388 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.blockmanagement;
+
+import io.hops.leader_election.node.ActiveNode;
+import io.hops.leader_election.node.SortedActiveNodeList;
+import io.hops.metadata.HdfsVariables;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.hdfs.server.datanode.BRLoadBalancingException;
+import org.apache.hadoop.util.Time;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides, on the leader, whether a datanode may send its block report now
+ * and to which namenode.
+ * <p>
+ * An admitted report stays in flight until the datanode tells the leader it
+ * was processed, or until it expires one time window after it was expected to
+ * be done. The blocks in flight are bounded by a limit that follows the
+ * processing time per block reported by the datanodes and the latency of the
+ * block report transactions of this namenode: the limit shrinks when either
+ * grows past the tolerance over its baseline and grows back otherwise, but
+ * never above the maximum set with -setBlkRptProcessSize. A report is always
+ * admitted when nothing is in flight, however big it is.
+ * <p>
+ * First reports, which the namenodes need to leave safe mode, may use the
+ * whole limit. While they are being asked for, the other reports only get
+ * what is left after a reserve. Reports go to the namenode with the least
+ * estimated processing time in flight.
+ */
+public class BlockReportScheduler {
+
+  public static final Log LOG = LogFactory.getLog(BlockReportScheduler.class);
+
+  /**
+   * Weight of the last sample in the moving averages.
+   */
+  private static final double ALPHA = 0.2;
+  /**
+   * How fast the baselines follow latencies that are above them.
+   */
+  private static final double BASELINE_DRIFT = 0.01;
+  /**
+   * Smaller reports are dominated by the fixed cost of the RPC and do not
+   * give a useful processing time per block.
+   */
+  private static final long MIN_BLOCKS_PER_SAMPLE = 1000;
+  private static final double DECREASE_FACTOR = 0.75;
+  private static final double INCREASE_FRACTION = 0.05;
+  private static final double MIN_LIMIT_FRACTION = 0.05;
+
+  private final long dbVarUpdateThreshold;
+  private final long timeWindow;
+  private final double latencyTolerance;
+  private final double firstReportReserve;
+
+  private volatile long maxBlocks = -1;
+  private final AtomicLong maxBlocksChecked;
+
+  // guarded by this
+  private final Map<Long, NamenodeLoad> loads = new HashMap<>();
+  private long blocksInFlight;
+  private int reportsInFlight;
+  // negative as long as it follows maxBlocks
+  private double limit = -1;
+  private final Latency processingLatency = new Latency();
+  private final Latency transactionLatency = new Latency();
+  private long firstReportsWantedUntil;
+  private int rrIndex;
+
+  private final AtomicLong admitted = new AtomicLong();
+  private final AtomicLong refused = new AtomicLong();
+  private volatile double avgWaitTime;
+
+  public BlockReportScheduler(long dbVarUpdateThreshold, long timeWindow,
+      double latencyTolerance, double firstReportReserve) {
+    this.dbVarUpdateThreshold = dbVarUpdateThreshold;
+    this.timeWindow = timeWindow;
+    this.latencyTolerance = latencyTolerance;
+    this.firstReportReserve = firstReportReserve;
+    this.maxBlocksChecked =
+        new AtomicLong(Time.monotonicNow() - dbVarUpdateThreshold - 1);
+  }
+
+  /**
+   * Assigns a report that is not needed to leave safe mode and was not
+   * refused before.
+   */
+  public ActiveNode assignWork(final SortedActiveNodeList nnList,
+      long noOfBlks) throws IOException {
+    return assignWork(nnList, noOfBlks, false, 0);
+  }
+
+  /**
+   * @param noOfBlks blocks in the report
+   * @param firstReport whether the report is needed to leave safe mode
+   * @param waitTime time in ms since the report was first refused
+   * @return the namenode to send the report to
+   * @throws BRLoadBalancingException if the report has to wait
+   */
+  public ActiveNode assignWork(final SortedActiveNodeList nnList,
+      long noOfBlks, boolean firstReport, long waitTime) throws IOException {
+    long max = getMaxBlocks();
+    synchronized (this) {
+      long now = Time.monotonicNow();
+      expire(now);
+      if (firstReport) {
+        firstReportsWantedUntil = now + timeWindow;
+      }
+
+      long currentLimit = getLimit(max);
+      long allowed = currentLimit;
+      if (!firstReport && now < firstReportsWantedUntil) {
+        allowed = (long) (currentLimit * (1 - firstReportReserve));
+      }
+      List<ActiveNode> namenodes = nnList.getSortedActiveNodes();
+      if (namenodes.isEmpty() ||
+          (reportsInFlight > 0 && blocksInFlight + noOfBlks > allowed)) {
+        refused.incrementAndGet();
+        throw new BRLoadBalancingException("Work (" + noOfBlks +
+            " blks) could not be assigned. System is fully loaded now. " +
+            blocksInFlight + " blocks are being processed, at most " +
+            allowed + " are allowed");
+      }
+
+      ActiveNode an = leastLoaded(namenodes);
+      NamenodeLoad load = loads.get(an.getId());
+      if (load == null) {
+        load = new NamenodeLoad();
+        loads.put(an.getId(), load);
+      }
+      long expected = (long) (noOfBlks * load.getLatency());
+      load.add(new Work(noOfBlks, now + expected + timeWindow));
+      blocksInFlight += noOfBlks;
+      reportsInFlight++;
+
+      admitted.incrementAndGet();
+      avgWaitTime = ALPHA * waitTime + (1 - ALPHA) * avgWaitTime;
+      LOG.info("Work (" + noOfBlks + " blks) assigned to NN: " + an.getId() +
+          ", " + blocksInFlight + " blocks in flight");
+      return an;
+    }
+  }
+
+  /**
+   * Called when a datanode reports that the namenode processed its report.
+   */
+  public synchronized void workCompleted(long nnId, long noOfBlks,
+      long processingTime) {
+    NamenodeLoad load = loads.get(nnId);
+    if (load != null) {
+      Work work = load.remove(noOfBlks);
+      if (work != null) {
+        blocksInFlight -= work.noOfBlks;
+        reportsInFlight--;
+      }
+    }
+
+    if (noOfBlks < MIN_BLOCKS_PER_SAMPLE) {
+      return;
+    }
+    double sample = (double) processingTime / noOfBlks;
+    processingLatency.add(sample);
+    if (load != null) {
+      load.latency = load.latency == 0 ? sample :
+          ALPHA * sample + (1 - ALPHA) * load.latency;
+    }
+    adjustLimit();
+  }
+
+  /**
+   * Called with the time taken by the block report transactions of this
+   * namenode, as they share the database with the other namenodes.
+   */
+  public void addTransactionLatency(long latency) {
+    transactionLatency.add(latency);
+  }
+
+  private void adjustLimit() {
+    long max = maxBlocks;
+    if (max <= 0) {
+      return;
+    }
+    double congestion = Math.max(processingLatency.congestion(),
+        transactionLatency.congestion());
+    double current = limit < 0 ? max : limit;
+    if (congestion > latencyTolerance) {
+      limit = Math.max(max * MIN_LIMIT_FRACTION, current * DECREASE_FACTOR);
+      LOG.debug("Block report latency is " + congestion +
+          " times its baseline, admitting " + (long) limit + " blocks");
+    } else if (limit >= 0) {
+      limit = current + max * INCREASE_FRACTION;
+      if (limit >= max) {
+        limit = -1;
+      }
+    }
+  }
+
+  private long getLimit(long max) {
+    return limit < 0 ? max : (long) Math.min(limit, max);
+  }
+
+  private ActiveNode leastLoaded(List<ActiveNode> namenodes) {
+    int size = namenodes.size();
+    if (rrIndex >= size) {
+      rrIndex = 0;
+    }
+    int chosen = -1;
+    double chosenBacklog = 0;
+    // start from the next one in turn so that idle namenodes get work round
+    // robin
+    for (int i = 0; i < size; i++) {
+      int index = (rrIndex + i) % size;
+      NamenodeLoad load = loads.get(namenodes.get(index).getId());
+      double backlog = load == null ? 0 : load.blocks * load.getLatency();
+      if (chosen < 0 || backlog < chosenBacklog) {
+        chosen = index;
+        chosenBacklog = backlog;
+      }
+    }
+    rrIndex = (chosen + 1) % size;
+    return namenodes.get(chosen);
+  }
+
+  private void expire(long now) {
+    Iterator<NamenodeLoad> loadsIt = loads.values().iterator();
+    while (loadsIt.hasNext()) {
+      NamenodeLoad load = loadsIt.next();
+      Iterator<Work> it = load.works.iterator();
+      while (it.hasNext()) {
+        Work work = it.next();
+        if (work.deadline <= now) {
+          it.remove();
+          load.blocks -= work.noOfBlks;
+          blocksInFlight -= work.noOfBlks;
+          reportsInFlight--;
+          LOG.debug("Work (" + work.noOfBlks + " blks) expired");
+        }
+      }
+      if (load.works.isEmpty() && load.latency == 0) {
+        loadsIt.remove();
+      }
+    }
+  }
+
+  private long getMaxBlocks() throws IOException {
+    long checked = maxBlocksChecked.get();
+    long now = Time.monotonicNow();
+    if (now - checked > dbVarUpdateThreshold &&
+        maxBlocksChecked.compareAndSet(checked, now)) {
+      long newValue = HdfsVariables.getBrLbMaxBlkPerTW();
+      if (newValue != maxBlocks) {
+        maxBlocks = newValue;
+        LOG.info("At most " + newValue + " blocks of block reports are " +
+            "processed at a time");
+      }
+    }
+    return maxBlocks;
+  }
+
+  public synchronized int getReportsInFlight() {
+    return reportsInFlight;
+  }
+
+  public synchronized long getBlocksInFlight() {
+    return blocksInFlight;
+  }
+
+  public synchronized long getLimit() {
+    return getLimit(maxBlocks);
+  }
+
+  public long getAdmitted() {
+    return admitted.get();
+  }
+
+  public long getRefused() {
+    return refused.get();
+  }
+
+  /**
+   * @return the moving average of the time the admitted reports waited to be
+   * admitted, in ms
+   */
+  public long getAvgWaitTime() {
+    return (long) avgWaitTime;
+  }
+
+  private static class Work {
+    private final long noOfBlks;
+    private final long deadline;
+
+    Work(long noOfBlks, long deadline) {
+      this.noOfBlks = noOfBlks;
+      this.deadline = deadline;
+    }
+  }
+
+  private class NamenodeLoad {
+    private final ArrayDeque<Work> works = new ArrayDeque<>();
+    private long blocks;
+    // ms per block, 0 until measured
+    private double latency;
+
+    void add(Work work) {
+      works.add(work);
+      blocks += work.noOfBlks;
+    }
+
+    /**
+     * Removes the oldest work of that size. A datanode reports the number of
+     * blocks it was admitted with, and works of the same size on the same
+     * namenode are interchangeable. Anything else is left to expire.
+     *
+     * @return the work removed, null if there is none of that size
+     */
+    Work remove(long noOfBlks) {
+      for (Iterator<Work> it = works.iterator(); it.hasNext(); ) {
+        Work work = it.next();
+        if (work.noOfBlks == noOfBlks) {
+          it.remove();
+          blocks -= work.noOfBlks;
+          return work;
+        }
+      }
+      return null;
+    }
+
+    double getLatency() {
+      if (latency > 0) {
+        return latency;
+      }
+      return processingLatency.getAverage();
+    }
+  }
+
+  /**
+   * Moving average of a latency and a baseline that follows its lowest
+   * values.
+   */
+  private static class Latency {
+    private double average;
+    private double baseline;
+
+    synchronized void add(double sample) {
+      if (baseline == 0) {
+        average = sample;
+        baseline = sample;
+        return;
+      }
+      average = ALPHA * sample + (1 - ALPHA) * average;
+      if (average < baseline) {
+        baseline = average;
+      } else {
+        baseline += (average - baseline) * BASELINE_DRIFT;
+      }
+    }
+
+    synchronized double getAverage() {
+      return average;
+    }
+
+    synchronized double congestion() {
+      return baseline <= 0 ? 1 : average / baseline;
+    }
+  }
+}
@@ -109,12 +109,55 @@ class UnderReplicatedBlocks implements Iterable<Block> {
    */
   static final int QUEUE_WITH_CORRUPT_BLOCKS = 4;
   
+  // set once the queues are shared by all the namenodes, each walks them with
+  // its own replication index. The partition and the index belong to this
+  // namenode and are guarded by this object instead of the ReplicationIndex
+  // row, which would make all the namenodes wait on each other.
+  private List<Integer> localReplicationIndex = null;
+  private int partition = 0;
+  private int partitions = 1;
+
   /**
    * Create an object.
    */
   UnderReplicatedBlocks() {
   }
 
+  /**
+   * Makes the namenode pick only the blocks whose id modulo partitions is
+   * partition, so that each namenode replicates its own part of the queues.
+   * From then on the replication index is kept by this namenode instead of
+   * in the database, and starts again from the head of the queues when the
+   * partition changes.
+   */
+  synchronized void setPartition(int partition, int partitions) {
+    if (localReplicationIndex != null && this.partition == partition &&
+        this.partitions == partitions) {
+      return;
+    }
+    localReplicationIndex = new ArrayList<>(LEVEL);
+    for (int i = 0; i < LEVEL; i++) {
+      localReplicationIndex.add(0);
+    }
+    this.partition = partition;
+    this.partitions = partitions;
+    BlockManager.LOG.info("Replicating the under replicated blocks of " +
+        "partition " + partition + " of " + partitions);
+  }
+
+  /**
+   * @return true once this namenode keeps its own replication index, and so
+   * no longer needs the ReplicationIndex lock
+   */
+  synchronized boolean isPartitioned() {
+    return localReplicationIndex != null;
+  }
+
+  synchronized boolean isInPartition(long blockId) {
+    int n = partitions;
+    return n <= 1 || (blockId & Long.MAX_VALUE) % n == partition;
+  }
+
   /**
    * Empty the queues.
    */
@@ -393,14 +436,32 @@ private List<List<Block>> chooseUnderReplicatedBlocksInt(int blocksToProcess)
       }
       
       int remainingblksToProcess = blocksToProcess - blockCount;
+      // the other namenodes take care of the blocks of the other partitions
+      int n;
+      synchronized (this) {
+        n = partitions;
+      }
       List<UnderReplicatedBlock> urbs =
-          getUnderReplicatedBlocks(priority, replIndex, remainingblksToProcess);
+          getUnderReplicatedBlocks(priority, replIndex,
+              (int) Math.min(Integer.MAX_VALUE,
+                  (long) remainingblksToProcess * n));
+      int scanned = urbs.size();
+      if (n > 1) {
+        List<UnderReplicatedBlock> mine = new ArrayList<>(
+            remainingblksToProcess);
+        for (UnderReplicatedBlock urb : urbs) {
+          if (isInPartition(urb.getBlockId())) {
+            mine.add(urb);
+          }
+        }
+        urbs = mine;
+      }
       addBlocksInPriorityQueues(urbs, priorityQueuestmp);
       
       List<Block> blks = priorityQueuestmp.get(priority);
       blocksToReplicate.get(priority).addAll(blks);
       blockCount += blks.size();
-      replIndex += blks.size();
+      replIndex += n > 1 ? scanned : blks.size();
       
       if (priority == LEVEL - 1 && count(priority) <= replIndex) {
         // reset all priorities replication index to 0 because there is no
@@ -559,7 +620,7 @@ int getPriority() {
    * @param priority
    *     - int priority level
    */
-  public void decrementReplicationIndex(int priority)
+  public synchronized void decrementReplicationIndex(int priority)
       throws StorageException, TransactionContextException {
     List<Integer> priorityToReplIdx = getReplicationIndex();
     Integer replIdx = priorityToReplIdx.get(priority);
@@ -574,14 +635,19 @@ public List<List<Block>> chooseUnderReplicatedBlocks(
         HDFSOperationType.CHOOSE_UNDER_REPLICATED_BLKS) {
       @Override
       public void acquireLock(TransactionLocks locks) throws IOException {
-        LockFactory lf = LockFactory.getInstance();
-        locks.add(lf.getVariableLock(Variable.Finder.ReplicationIndex,
-            TransactionLockTypes.LockType.WRITE));
+        if (!isPartitioned()) {
+          LockFactory lf = LockFactory.getInstance();
+          locks.add(lf.getVariableLock(Variable.Finder.ReplicationIndex,
+              TransactionLockTypes.LockType.WRITE));
+        }
       }
 
       @Override
       public Object performTask() throws StorageException, IOException {
-        return chooseUnderReplicatedBlocksInt(blocksToProcess);
+        // the index is read and moved as one step
+        synchronized (UnderReplicatedBlocks.this) {
+          return chooseUnderReplicatedBlocksInt(blocksToProcess);
+        }
       }
     }.handle();
   }
@@ -739,11 +805,24 @@ private void removeUnderReplicatedBlock(UnderReplicatedBlock urb)
 
   private List<Integer> getReplicationIndex()
       throws StorageException, TransactionContextException {
+    synchronized (this) {
+      if (localReplicationIndex != null) {
+        return new ArrayList<>(localReplicationIndex);
+      }
+    }
     return HdfsVariables.getReplicationIndex();
   }
 
   private void setReplicationIndex(List<Integer> replicationIndex)
       throws StorageException, TransactionContextException {
+    synchronized (this) {
+      if (localReplicationIndex != null) {
+        for (int i = 0; i < LEVEL; i++) {
+          localReplicationIndex.set(i, replicationIndex.get(i));
+        }
+        return;
+      }
+    }
     HdfsVariables.setReplicationIndex(replicationIndex);
   }
   
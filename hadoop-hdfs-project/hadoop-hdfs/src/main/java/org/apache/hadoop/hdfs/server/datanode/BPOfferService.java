@@ -129,6 +129,8 @@ class BPOfferService implements Runnable {
   // to make sure the "happens-before" consistency.
   private volatile long lastBlockReport = 0;
   private boolean resetBlockReportTime = true;
+  // when the leader first refused the pending block report, 0 if it did not
+  private long blockReportRefusedSince = 0;
   private BPServiceActor blkReportHander = null;
   private List<ActiveNode> nnList = Collections.synchronizedList(new ArrayList<ActiveNode>());
   private List<InetSocketAddress> blackListNN = Collections.synchronizedList(new ArrayList<InetSocketAddress>());
@@ -956,7 +958,7 @@ List<DatanodeCommand> blockReport() throws IOException {
     }
     
     // Get a namenode to send the report(s) to
-    ActiveNode an = nextNNForBlkReport(totalBlockCount);
+    ActiveNode an = nextNNForBlkReport(totalBlockCount, resetBlockReportTime);
     if (an != null) {
       blkReportHander = getAnActor(an.getRpcServerAddressForDatanodes());
       if (blkReportHander == null || !blkReportHander.isInitialized()) {
@@ -994,6 +996,7 @@ List<DatanodeCommand> blockReport() throws IOException {
     long brSendCost = now() - brSendStartTime;
     long brCreateCost = brSendStartTime - brCreateStartTime;
     dn.getMetrics().addBlockReport(brSendCost);
+    blockReportCompleted(an, totalBlockCount, brSendCost);
     LOG.info("Sent " + numReportsSent + " blockreports " + totalBlockCount +
         " blocks total. Took " + brCreateCost +
         " msec to generate and " + brSendCost +
@@ -1260,16 +1263,21 @@ private synchronized BPServiceActor nextNNForNonBlkReportRPC() {
     return null;
   }
 
-  private ActiveNode nextNNForBlkReport(long noOfBlks) throws IOException {
+  private ActiveNode nextNNForBlkReport(long noOfBlks, boolean firstReport)
+      throws IOException {
     if (nnList == null || nnList.isEmpty()) {
       return null;
     }
 
+    long currentTime = now();
+    long waitTime = blockReportRefusedSince == 0 ? 0 :
+        currentTime - blockReportRefusedSince;
     ActiveNode annToBR = null;
     BPServiceActor leaderActor = getLeaderActor();
       if (leaderActor != null) {
         try {
-          annToBR = leaderActor.nextNNForBlkReport(noOfBlks);
+          annToBR = leaderActor.nextNNForBlkReport(noOfBlks, firstReport,
+              waitTime);
         } catch (RemoteException e) {
             if(e.getClassName().equals(BRLoadBalancingException.class.getName())){
                 LOG.warn(e);
@@ -1278,9 +1286,34 @@ private ActiveNode nextNNForBlkReport(long noOfBlks) throws IOException {
             }
         }
       }
+    if (annToBR == null) {
+      if (blockReportRefusedSince == 0) {
+        blockReportRefusedSince = currentTime;
+      }
+    } else {
+      blockReportRefusedSince = 0;
+    }
     return annToBR;
     }
 
+  /**
+   * Lets the leader admit more block reports. It is only a hint, the leader
+   * forgets about the report after a while anyway.
+   */
+  private void blockReportCompleted(ActiveNode an, long noOfBlks,
+      long processingTime) {
+    BPServiceActor leaderActor = getLeaderActor();
+    if (leaderActor == null) {
+      return;
+    }
+    try {
+      leaderActor.blockReportCompleted(an.getId(), noOfBlks, processingTime);
+    } catch (IOException e) {
+      LOG.debug("Could not tell the leader that the block report was " +
+          "processed", e);
+    }
+  }
+
   private BPServiceActor getLeaderActor() {
     if (nnList.size() > 0) {
       ActiveNode leaderNode = null;
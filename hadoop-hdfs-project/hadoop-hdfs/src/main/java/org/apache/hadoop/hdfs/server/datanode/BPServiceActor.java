@@ -583,14 +583,23 @@ public DatanodeCommand blockReport(DatanodeRegistration registration,
     return bpNamenode.blockReport(registration, poolId, reports);
   }
 
-  public ActiveNode nextNNForBlkReport(long noOfBlks) throws IOException {
+  public ActiveNode nextNNForBlkReport(long noOfBlks, boolean firstReport,
+      long waitTime) throws IOException {
     if (bpNamenode != null) {
-      return bpNamenode.getNextNamenodeToSendBlockReport(noOfBlks);
+      return bpNamenode.getNextNamenodeToSendBlockReport(noOfBlks,
+          firstReport, waitTime);
     } else {
       return null;
     }
   }
 
+  public void blockReportCompleted(long namenodeId, long noOfBlks,
+      long processingTime) throws IOException {
+    if (bpNamenode != null) {
+      bpNamenode.blockReportCompleted(namenodeId, noOfBlks, processingTime);
+    }
+  }
+
   public byte[] getSmallFileDataFromNN(int id)throws IOException {
     if (bpNamenode != null) {
       return bpNamenode.getSmallFileData(id);
@@ -394,6 +394,7 @@ class BlockSender implements java.io.Closeable {
         LOG.debug("Stuffed Inode: getting small file  data from the namenode");
         byte[] data = datanode.getSmallFileDataFromNN(block);
         ByteArrayInputStream bis = new ByteArrayInputStream(data);
+        IOUtils.skipFully(bis, offset); // seek to offset
         blockIn = bis;
       }else{
         blockIn = datanode.data.getBlockInputStream(block, offset); // seek to offset
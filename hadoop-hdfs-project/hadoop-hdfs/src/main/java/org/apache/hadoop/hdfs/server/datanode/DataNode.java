@@ -87,6 +87,7 @@
 import org.apache.hadoop.hdfs.server.protocol.InterDatanodeProtocol;
 import org.apache.hadoop.hdfs.server.protocol.NamespaceInfo;
 import org.apache.hadoop.hdfs.server.protocol.ReplicaRecoveryInfo;
+import org.apache.hadoop.hdfs.util.SmallFileDataCache;
 import org.apache.hadoop.hdfs.web.WebHdfsFileSystem;
 import org.apache.hadoop.hdfs.web.resources.Param;
 import org.apache.hadoop.io.IOUtils;
@@ -280,6 +281,9 @@ public static InetSocketAddress createSocketAddr(String target) {
   private long lastDiskErrorCheck = 0;
 
   private RevocationListFetcherService revocationListFetcherService;
+
+  // content of the files stored in the database, null if disabled
+  private SmallFileDataCache smallFileDataCache;
   
   /**
    * Create the DataNode given a configuration, an array of dataDirs,
@@ -795,6 +799,11 @@ void startDataNode(Configuration conf, AbstractList<StorageLocation> dataDirs,
     this.dataDirs = dataDirs;
     this.conf = conf;
     this.dnConf = new DNConf(conf);
+    long smallFileCacheSize = conf.getLong(
+        DFSConfigKeys.DFS_DATANODE_SMALL_FILE_CACHE_SIZE_KEY,
+        DFSConfigKeys.DFS_DATANODE_SMALL_FILE_CACHE_SIZE_DEFAULT);
+    this.smallFileDataCache = smallFileCacheSize > 0 ?
+        new SmallFileDataCache(smallFileCacheSize) : null;
 
     storage = new DataStorage();
     
@@ -2733,9 +2742,30 @@ boolean shouldRun() {
     return shouldRun;
   }
 
+  /**
+   * Gets the content of a file stored in the database, the block id being
+   * minus the inode id of the file. The generation stamp of its phantom block
+   * is the one of the file, which changes each time the content is written,
+   * and the content is cached under it.
+   */
   byte[] getSmallFileDataFromNN(ExtendedBlock block) throws IOException {
+    int id = (int) block.getBlockId();
+    // the blocks of older namenodes have no generation stamp
+    boolean cacheable = smallFileDataCache != null &&
+        block.getGenerationStamp() > 0;
+    if (cacheable) {
+      byte[] data = smallFileDataCache.get(id, block.getGenerationStamp(),
+          block.getNumBytes());
+      if (data != null) {
+        return data;
+      }
+    }
     BPOfferService bpos = getBPOSForBlock(block);
-    return bpos.getSmallFileDataFromNN((int)block.getBlockId());
+    byte[] data = bpos.getSmallFileDataFromNN(id);
+    if (cacheable && data != null && data.length == block.getNumBytes()) {
+      smallFileDataCache.put(id, block.getGenerationStamp(), data);
+    }
+    return data;
   }
   
   public ShortCircuitRegistry getShortCircuitRegistry() {
@@ -26,6 +26,7 @@
 import io.hops.metadata.HdfsStorageFactory;
 import io.hops.metadata.hdfs.dal.INodeAttributesDataAccess;
 import io.hops.metadata.hdfs.dal.INodeDataAccess;
+import io.hops.metadata.hdfs.entity.INodeCandidatePrimaryKey;
 import io.hops.metadata.hdfs.entity.INodeIdentifier;
 import io.hops.metadata.hdfs.entity.MetadataLogEntry;
 import io.hops.metadata.hdfs.entity.ProjectedINode;
@@ -35,7 +36,6 @@
 import io.hops.transaction.handler.LightWeightRequestHandler;
 import io.hops.transaction.lock.SubtreeLockHelper;
 import io.hops.transaction.lock.SubtreeLockedException;
-import io.hops.transaction.lock.SubtreeRetriableException;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.fs.permission.AclEntry;
@@ -48,10 +48,22 @@
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Reads a locked subtree. The directories still to be listed are kept on a
+ * stack and the children of up to listingBatchSize of them are read in one
+ * transaction, so the next level of a directory is listed while its siblings
+ * are still being read and only the directories not listed yet are kept in
+ * memory. The number of listing transactions running at a time adapts to
+ * their latency, between one and listingMaxInFlight: it grows while the
+ * database keeps up and is halved when the time spent per directory goes
+ * well above the best recently seen.
+ * <p/>
+ * The inodes are handed to the subclasses as they are read, with their
+ * parents always handed before them.
+ */
 @VisibleForTesting
 abstract class AbstractFileTree {
   public static final Log LOG = LogFactory.getLog(AbstractFileTree.class);
@@ -59,7 +71,14 @@ abstract class AbstractFileTree {
   private final FSNamesystem namesystem;
   private final FSPermissionChecker fsPermissionChecker;
   private final INodeIdentifier subtreeRootId;
-  private ConcurrentLinkedQueue<Future> activeCollectors = new ConcurrentLinkedQueue<>();
+  private final int listingBatchSize;
+  private final int listingMaxInFlight;
+
+  // guarded by toVisit
+  private final Deque<Dir> toVisit = new ArrayDeque<>();
+  private int running = 0;
+  private int inFlightLimit;
+  private long bestNanosPerDir = Long.MAX_VALUE;
 
   public INodeIdentifier getSubtreeRootId() {
     return subtreeRootId;
@@ -67,6 +86,7 @@ public INodeIdentifier getSubtreeRootId() {
 
   private final FsAction subAccess;
   private volatile IOException exception;
+  private volatile RuntimeException runtimeException;
   private List<AclEntry> subtreeRootDefaultEntries;
   
   public static class BuildingUpFileTreeFailedException extends IOException {
@@ -74,19 +94,32 @@ public static class BuildingUpFileTreeFailedException extends IOException {
       super(message);
     }
   }
-  
-  private class ChildCollector implements Runnable {
-    private final ProjectedINode parent;
+
+  /**
+   * A directory whose children are not listed yet.
+   */
+  private static class Dir {
+    private final ProjectedINode inode;
     private final short depth; //this is the depth of the inode in the file system tree
     private final int level;
-    private List<AclEntry> inheritedDefaultsAsAccess;
-    
-    private ChildCollector(ProjectedINode parent, short depth, int level, List<AclEntry> inheritedDefaultsAsAccess) {
-      this.parent = parent;
-      this.level = level;
+    private final List<AclEntry> inheritedDefaultsAsAccess;
+
+    private Dir(ProjectedINode inode, short depth, int level,
+        List<AclEntry> inheritedDefaultsAsAccess) {
+      this.inode = inode;
       this.depth = depth;
+      this.level = level;
       this.inheritedDefaultsAsAccess = inheritedDefaultsAsAccess;
     }
+  }
+  
+  private class ChildCollector implements Runnable {
+    private final List<Dir> parents;
+    private final List<Dir> subDirs = new ArrayList<>();
+    
+    private ChildCollector(List<Dir> parents) {
+      this.parents = parents;
+    }
     
     @Override
     public void run() {
@@ -94,66 +127,90 @@ public void run() {
           new LightWeightRequestHandler(HDFSOperationType.GET_CHILD_INODES) {
             @Override
             public Object performTask() throws StorageException, IOException {
+              subDirs.clear();
               INodeDataAccess<INode> dataAccess =
                   (INodeDataAccess) HdfsStorageFactory
                       .getDataAccess(INodeDataAccess.class);
-              List<ProjectedINode> children = Collections.EMPTY_LIST;
-              if (INode.isTreeLevelRandomPartitioned(depth)) {
-                children = dataAccess.findInodesFTISTx(parent.getId(),
-                        EntityContext.LockMode.READ_COMMITTED);
-              } else {
-                //then the partitioning key is the parent id
-                children = dataAccess.findInodesPPISTx(parent.getId(), parent.getId(),
-                        EntityContext.LockMode.READ_COMMITTED);
+              List<List<ProjectedINode>> childrenPerParent =
+                  new ArrayList<>(parents.size());
+              List<ProjectedINode> allChildren = new ArrayList<>();
+              for (Dir parent : parents) {
+                List<ProjectedINode> children;
+                if (INode.isTreeLevelRandomPartitioned(parent.depth)) {
+                  children = dataAccess.findInodesFTISTx(parent.inode.getId(),
+                      EntityContext.LockMode.READ_COMMITTED);
+                } else {
+                  //then the partitioning key is the parent id
+                  children = dataAccess.findInodesPPISTx(parent.inode.getId(),
+                      parent.inode.getId(),
+                      EntityContext.LockMode.READ_COMMITTED);
+                }
+                childrenPerParent.add(children);
+                allChildren.addAll(children);
               }
 
               //locking with FTIS and PPIS is not a good idea. See JIRA HOPS-458
-              //using batch operations to lock the children
-              lockInodesUsingBatchOperation(children, dataAccess);
+              //using batch operations to lock the children of all the parents
+              lockInodesUsingBatchOperation(allChildren, dataAccess);
 
+              boolean checkAccess =
+                  namesystem.isPermissionEnabled() && subAccess != null;
               Map<ProjectedINode, List<AclEntry>> acls = new HashMap<>();
-              for (ProjectedINode child : children) {
-                if (namesystem.isPermissionEnabled() && subAccess != null) {
-                  List<AclEntry> inodeAclNoTransaction = INodeUtil.getInodeOwnAclNoTransaction(child);
-                  acls.put(child, inodeAclNoTransaction);
+              for (int i = 0; i < parents.size(); i++) {
+                Dir parent = parents.get(i);
+                for (ProjectedINode child : childrenPerParent.get(i)) {
+                  if (checkAccess) {
+                    List<AclEntry> inodeAclNoTransaction = INodeUtil.getInodeOwnAclNoTransaction(child);
+                    acls.put(child, inodeAclNoTransaction);
 
-                  if (inodeAclNoTransaction.isEmpty()){
-                    checkAccess(child, subAccess, asAccessEntries(inheritedDefaultsAsAccess));
-                  } else {
-                    checkAccess(child, subAccess, inodeAclNoTransaction);
+                    if (inodeAclNoTransaction.isEmpty()){
+                      checkAccess(child, subAccess, asAccessEntries(parent.inheritedDefaultsAsAccess));
+                    } else {
+                      checkAccess(child, subAccess, inodeAclNoTransaction);
+                    }
                   }
+                  addChildNode(parent.inode, parent.level, child);
                 }
-                addChildNode(parent, level, child);
               }
   
               if (exception != null) {
                 return null;
               }
-  
-              for (ProjectedINode child : children) {
-                List<ActiveNode> activeNamenodes = namesystem.getNameNode().
-                    getActiveNameNodes().getActiveNodes();
-                if (SubtreeLockHelper.isSTOLocked(child.isSubtreeLocked(),
-                    child.getSubtreeLockOwner(), activeNamenodes)) {
-                  exception = new SubtreeLockedException(child.getName(),
-                      activeNamenodes);
-                  return null;
-                }
 
-                List<AclEntry> newDefaults = filterAccessEntries(acls.get(child));
-                if (child.isDirectory()) {
-                  collectChildren(child, ((short) (depth + 1)), level + 1, newDefaults.isEmpty()
-                      ? inheritedDefaultsAsAccess : newDefaults);
+              List<ActiveNode> activeNamenodes = namesystem.getNameNode().
+                  getActiveNameNodes().getActiveNodes();
+              for (int i = 0; i < parents.size(); i++) {
+                Dir parent = parents.get(i);
+                for (ProjectedINode child : childrenPerParent.get(i)) {
+                  if (SubtreeLockHelper.isSTOLocked(child.isSubtreeLocked(),
+                      child.getSubtreeLockOwner(), activeNamenodes)) {
+                    exception = new SubtreeLockedException(child.getName(),
+                        activeNamenodes);
+                    return null;
+                  }
+
+                  if (child.isDirectory()) {
+                    List<AclEntry> newDefaults = filterAccessEntries(acls.get(child));
+                    subDirs.add(new Dir(child, (short) (parent.depth + 1),
+                        parent.level + 1, newDefaults.isEmpty()
+                        ? parent.inheritedDefaultsAsAccess : newDefaults));
+                  }
                 }
               }
               return null;
             }
           };
       
+      long start = System.nanoTime();
       try {
         handler.handle(this);
+        batchCollected();
       } catch (IOException e) {
         setExceptionIfNull(e);
+      } catch (RuntimeException e) {
+        runtimeException = e;
+      } finally {
+        collected(subDirs, parents.size(), System.nanoTime() - start);
       }
     }
 
@@ -193,6 +250,7 @@ boolean getBatch(List<ProjectedINode> children, InodesBatch inodesBatch) {
     }
 
     void lockInodesUsingBatchOperation(List<ProjectedINode> children, INodeDataAccess<INode> dataAccess) throws StorageException {
+      batchIndex = 0;
       InodesBatch batch = new InodesBatch();
       while (getBatch(children, batch)) {
         dataAccess.lockInodesUsingPkBatchTx(batch.names, batch.pids, batch.partitionIDs,
@@ -213,6 +271,10 @@ public AbstractFileTree(FSNamesystem namesystem, INodeIdentifier subtreeRootId,
     this.subtreeRootId = subtreeRootId;
     this.subAccess = subAccess;
     this.subtreeRootDefaultEntries = subtreeRootDefaultEntries;
+    this.listingBatchSize = Math.max(1, namesystem.getSubtreeListingBatchSize());
+    this.listingMaxInFlight =
+        Math.max(1, namesystem.getSubtreeListingMaxInFlight());
+    this.inFlightLimit = listingMaxInFlight;
   }
   
   private void checkAccess(INode node, FsAction action,
@@ -234,38 +296,111 @@ private void checkAccess(ProjectedINode node, FsAction action, List<AclEntry> ac
   
   public void buildUp() throws IOException {
     INode subtreeRoot = readSubtreeRoot();
+    batchCollected();
     if (!subtreeRoot.isDirectory()) {
       return;
     }
     
-    
-    collectChildren(newProjectedInode(subtreeRoot, 0), subtreeRootId.getDepth(), 2, subtreeRootDefaultEntries);
-    while (true) {
-      try {
-        Future future = activeCollectors.poll();
-        if (future == null) {
-          break;
+    synchronized (toVisit) {
+      toVisit.push(new Dir(newProjectedInode(subtreeRoot, 0),
+          subtreeRootId.getDepth(), 2, subtreeRootDefaultEntries));
+    }
+    try {
+      while (true) {
+        List<Dir> parents;
+        synchronized (toVisit) {
+          while (!canSubmit()) {
+            if (running == 0) {
+              break;
+            }
+            toVisit.wait();
+          }
+          if (!canSubmit()) {
+            // failed, or nothing is left to list
+            break;
+          }
+          // spread what is left over the free slots before filling batches
+          int count = Math.min(listingBatchSize, Math.max(1,
+              toVisit.size() / (inFlightLimit - running)));
+          parents = new ArrayList<>(count);
+          for (int i = 0; i < count; i++) {
+            parents.add(toVisit.pop());
+          }
+          running++;
         }
-        future.get();
-      } catch (InterruptedException e) {
-        LOG.info("FileTree builder was interrupted");
-        throw new BuildingUpFileTreeFailedException(
-            "Building the up the file tree was interrupted.");
-      } catch (ExecutionException e) {
-        if (e.getCause() instanceof RuntimeException) {
-          throw new RuntimeException(e.getCause());
-        } else {
-          // This should not happen as it is a Runnable
-          String message = "FileTree.buildUp received an unexpected execution exception";
-          LOG.warn( message, e);
-          throw new SubtreeRetriableException(message);
+        try {
+          namesystem.getSubtreeOperationsExecutor().submit(
+              new ChildCollector(parents));
+        } catch (RejectedExecutionException e) {
+          collected(Collections.<Dir>emptyList(), parents.size(), 0);
+          awaitCollectors();
+          throw e;
         }
       }
+    } catch (InterruptedException e) {
+      LOG.info("FileTree builder was interrupted");
+      awaitCollectors();
+      Thread.currentThread().interrupt();
+      throw new BuildingUpFileTreeFailedException(
+          "Building the up the file tree was interrupted.");
+    }
+    if (runtimeException != null) {
+      throw new RuntimeException(runtimeException);
     }
     if (exception != null) {
       throw exception;
     }
   }
+
+  /**
+   * Waits for the collectors already submitted, which add to the tree, to be
+   * done before the build up fails. Keeps waiting if interrupted.
+   */
+  private void awaitCollectors() {
+    boolean interrupted = false;
+    synchronized (toVisit) {
+      while (running > 0) {
+        try {
+          toVisit.wait();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  // must hold the toVisit lock
+  private boolean canSubmit() {
+    return exception == null && runtimeException == null &&
+        !toVisit.isEmpty() && running < inFlightLimit;
+  }
+
+  private void collected(List<Dir> subDirs, int listed, long elapsedNanos) {
+    synchronized (toVisit) {
+      running--;
+      for (Dir dir : subDirs) {
+        toVisit.push(dir);
+      }
+      if (elapsedNanos > 0) {
+        long nanosPerDir = elapsedNanos / listed;
+        // let the best latency age, so that a database that got slower for
+        // good does not keep the limit down forever
+        if (bestNanosPerDir != Long.MAX_VALUE) {
+          bestNanosPerDir += bestNanosPerDir / 64;
+        }
+        bestNanosPerDir = Math.min(bestNanosPerDir, nanosPerDir);
+        if (nanosPerDir > 2 * bestNanosPerDir) {
+          inFlightLimit = Math.max(1, inFlightLimit / 2);
+        } else if (inFlightLimit < listingMaxInFlight) {
+          inFlightLimit++;
+        }
+      }
+      toVisit.notifyAll();
+    }
+  }
   
   protected synchronized void setExceptionIfNull(IOException e) {
     if (exception == null) {
@@ -276,6 +411,13 @@ protected synchronized void setExceptionIfNull(IOException e) {
   protected abstract void addSubtreeRoot(ProjectedINode node);
   
   protected abstract void addChildNode(ProjectedINode parent, int level, ProjectedINode child);
+
+  /**
+   * Called after the children of a batch of directories were added, outside
+   * of the listing transaction. Can be called by several threads at a time.
+   */
+  protected void batchCollected() throws IOException {
+  }
   
   private INode readSubtreeRoot() throws IOException {
     return (INode) new LightWeightRequestHandler(
@@ -317,11 +459,6 @@ public Object performTask() throws StorageException, IOException {
     }.handle(this);
   }
   
-  private void collectChildren(ProjectedINode parent, short depth, int level, List<AclEntry> inheritedDefaults) {
-    activeCollectors.add(namesystem.getSubtreeOperationsExecutor().
-        submit(new ChildCollector(parent, depth, level, inheritedDefaults)));
-  }
-  
   /**
    * This method is for testing only! Do not rely on it.
    *
@@ -408,8 +545,14 @@ public long getDirectoryCount() {
   
   @VisibleForTesting
   static class QuotaCountingFileTree extends AbstractFileTree {
+    // max number of directories whose attributes are read in one query
+    private static final int ATTRIBUTES_BATCH_SIZE = 1000;
+
     private final AtomicLong namespaceCount = new AtomicLong(0);
     private final AtomicLong diskspaceCount = new AtomicLong(0);
+    // the directories with quota whose attributes are not read yet
+    private final ConcurrentLinkedQueue<Integer> dirsWithQuota =
+        new ConcurrentLinkedQueue<>();
   
     public QuotaCountingFileTree(FSNamesystem namesystem, INodeIdentifier subtreeRootId)
         throws AccessControlException {
@@ -434,34 +577,51 @@ protected void addChildNode(ProjectedINode parent, int level, ProjectedINode nod
   
     protected void addNode(final ProjectedINode node) {
       if (node.isDirWithQuota()) {
-        LightWeightRequestHandler handler = new LightWeightRequestHandler(
+        // the attributes are read for the whole batch in batchCollected
+        dirsWithQuota.add(node.getId());
+      } else {
+        namespaceCount.addAndGet(1);
+        if (!node.isDirectory() && !node.isSymlink()) {
+          diskspaceCount.addAndGet(node.getFileSize() * INode.HeaderFormat.getReplication(node.getHeader()));
+        }
+      }
+    }
+  
+    @Override
+    protected void batchCollected() throws IOException {
+      while (!dirsWithQuota.isEmpty()) {
+        final List<INodeCandidatePrimaryKey> pks = new ArrayList<>();
+        Integer id;
+        while (pks.size() < ATTRIBUTES_BATCH_SIZE &&
+            (id = dirsWithQuota.poll()) != null) {
+          pks.add(new INodeCandidatePrimaryKey(id));
+        }
+        if (pks.isEmpty()) {
+          return;
+        }
+        new LightWeightRequestHandler(
             HDFSOperationType.GET_SUBTREE_ATTRIBUTES) {
           @Override
           public Object performTask() throws StorageException, IOException {
             INodeAttributesDataAccess<INodeAttributes> dataAccess =
                 (INodeAttributesDataAccess) HdfsStorageFactory
                     .getDataAccess(INodeAttributesDataAccess.class);
-            INodeAttributes attributes =
-                dataAccess.findAttributesByPk(node.getId());
-            namespaceCount.addAndGet(attributes.getNsCount());
-            diskspaceCount.addAndGet(attributes.getDiskspace());
+            Collection<INodeAttributes> attributesList =
+                dataAccess.findAttributesByPkList(pks);
+            if (attributesList.size() != pks.size()) {
+              throw new BuildingUpFileTreeFailedException(
+                  "Attributes of a directory with quota are missing");
+            }
+            for (INodeAttributes attributes : attributesList) {
+              namespaceCount.addAndGet(attributes.getNsCount());
+              diskspaceCount.addAndGet(attributes.getDiskspace());
+            }
             return null;
           }
-        };
-  
-        try {
-          handler.handle();
-        } catch (IOException e) {
-          setExceptionIfNull(e);
-        }
-      } else {
-        namespaceCount.addAndGet(1);
-        if (!node.isDirectory() && !node.isSymlink()) {
-          diskspaceCount.addAndGet(node.getFileSize() * INode.HeaderFormat.getReplication(node.getHeader()));
-        }
+        }.handle();
       }
     }
-  
+
     long getNamespaceCount() {
       return namespaceCount.get();
     }
@@ -0,0 +1,513 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import com.google.common.primitives.SignedBytes;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.hops.exception.StorageException;
+import io.hops.metadata.HdfsStorageFactory;
+import io.hops.metadata.hdfs.dal.INodeDataAccess;
+import io.hops.metadata.hdfs.entity.INodeIdentifier;
+import io.hops.metadata.hdfs.entity.ProjectedINode;
+import io.hops.transaction.EntityManager;
+import io.hops.transaction.context.EntityContext;
+import io.hops.transaction.handler.HDFSOperationType;
+import io.hops.transaction.handler.HopsTransactionalRequestHandler;
+import io.hops.transaction.handler.LightWeightRequestHandler;
+import io.hops.transaction.lock.LockFactory;
+import io.hops.transaction.lock.TransactionLocks;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSUtil;
+import org.apache.hadoop.hdfs.protocol.CursorDirectoryListing;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.protocol.HdfsLocatedFileStatus;
+import org.apache.hadoop.hdfs.protocol.ListingCursorExpiredException;
+import org.apache.hadoop.hdfs.protocol.LocatedBlocks;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockStoragePolicySuite;
+import org.apache.hadoop.util.Time;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.hops.transaction.lock.LockFactory.BLK;
+
+/**
+ * Namenode side cursors over the children of a directory, used to list
+ * huge directories page by page.
+ * <p/>
+ * Opening a cursor reads the projected children of the directory once and
+ * keeps their names sorted as in {@link INodeDirectory}. A page then only
+ * reads its own children by primary key, and the next page is read in the
+ * background while the client consumes the current one. A page is located
+ * by the name it starts after, so a retried call returns the same page.
+ * <p/>
+ * Like the classic listing, a cursor listing is not atomic: the children
+ * added after the cursor was opened are not listed and the ones deleted or
+ * renamed since are skipped. The access to the directory is checked when
+ * the cursor is opened, and the cursor can only be used by the same user.
+ * The names only pages are built from the snapshot alone, so they still
+ * list the children deleted or renamed since.
+ * <p/>
+ * The snapshot costs about {@link #SNAPSHOT_BYTES_PER_CHILD} bytes of heap
+ * per child plus its name. No cursor is opened on a directory with more than
+ * dfs.namenode.listing.cursor.max.children children, or when the snapshots
+ * of the open cursors would take more than
+ * dfs.namenode.listing.cursor.max.memory bytes. The listing then goes on
+ * with the classic one. The expired cursors are closed when the cursors are
+ * used and every expiry period.
+ */
+class DirectoryListingCursors {
+
+  static final Log LOG = LogFactory.getLog(DirectoryListingCursors.class);
+
+  private static final Comparator<byte[]> NAME_ORDER =
+      SignedBytes.lexicographicalComparator();
+
+  // the name array header and slot, the id, the partition id and the bit
+  static final int SNAPSHOT_BYTES_PER_CHILD = 32;
+  // the name length assumed before the children are read
+  private static final int ESTIMATED_NAME_LENGTH = 32;
+
+  private final FSNamesystem namesystem;
+  private final int pageSize;
+  private final int maxCursors;
+  private final int maxChildren;
+  private final long maxMemory;
+  private final long expiry;
+  private final ScheduledExecutorService prefetcher;
+  private final ConcurrentMap<Long, Cursor> cursors =
+      new ConcurrentHashMap<>();
+  private final AtomicLong nextId =
+      new AtomicLong(new Random().nextInt(Integer.MAX_VALUE));
+  // the heap taken or reserved by the snapshots of the open cursors
+  private final AtomicLong snapshotBytes = new AtomicLong();
+
+  DirectoryListingCursors(FSNamesystem namesystem, Configuration conf) {
+    this.namesystem = namesystem;
+    int lsLimit = conf.getInt(DFSConfigKeys.DFS_LIST_LIMIT,
+        DFSConfigKeys.DFS_LIST_LIMIT_DEFAULT);
+    int configuredPageSize = Math.max(1, conf.getInt(
+        DFSConfigKeys.DFS_LISTING_CURSOR_PAGE_SIZE_KEY,
+        DFSConfigKeys.DFS_LISTING_CURSOR_PAGE_SIZE_DEFAULT));
+    this.pageSize = lsLimit > 0 ? Math.min(lsLimit, configuredPageSize) :
+        configuredPageSize;
+    this.maxCursors = conf.getInt(DFSConfigKeys.DFS_LISTING_CURSOR_MAX_KEY,
+        DFSConfigKeys.DFS_LISTING_CURSOR_MAX_DEFAULT);
+    this.maxChildren = conf.getInt(
+        DFSConfigKeys.DFS_LISTING_CURSOR_MAX_CHILDREN_KEY,
+        DFSConfigKeys.DFS_LISTING_CURSOR_MAX_CHILDREN_DEFAULT);
+    this.maxMemory = conf.getLong(
+        DFSConfigKeys.DFS_LISTING_CURSOR_MAX_MEMORY_KEY,
+        DFSConfigKeys.DFS_LISTING_CURSOR_MAX_MEMORY_DEFAULT);
+    this.expiry = conf.getLong(DFSConfigKeys.DFS_LISTING_CURSOR_EXPIRY_MS_KEY,
+        DFSConfigKeys.DFS_LISTING_CURSOR_EXPIRY_MS_DEFAULT);
+    this.prefetcher = Executors.newScheduledThreadPool(Math.max(1,
+        conf.getInt(DFSConfigKeys.DFS_LISTING_CURSOR_PREFETCH_THREADS_KEY,
+            DFSConfigKeys.DFS_LISTING_CURSOR_PREFETCH_THREADS_DEFAULT)),
+        new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("ListingCursorPrefetcher-%d").build());
+    // releases the snapshots of the cursors the clients gave up on
+    long purgeInterval = Math.max(1, expiry);
+    this.prefetcher.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        purgeExpired();
+      }
+    }, purgeInterval, purgeInterval, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Opens a cursor over the children of the directory and returns its first
+   * page.
+   *
+   * @param target
+   *     the directory, read when its access was checked
+   * @param isSuperUser
+   *     if the storage policies are returned
+   * @return the first page, or null if the directory is too big or there
+   * are too many open cursors
+   */
+  CursorDirectoryListing open(String src, String user, Target target,
+      boolean isSuperUser, byte[] startAfter, boolean needLocation,
+      boolean namesOnly) throws IOException {
+    if (target.childrenNum > maxChildren) {
+      return null;
+    }
+    purgeExpired();
+    if (cursors.size() >= maxCursors) {
+      return null;
+    }
+    long reserved = (long) target.childrenNum *
+        (SNAPSHOT_BYTES_PER_CHILD + ESTIMATED_NAME_LENGTH);
+    if (!reserve(reserved)) {
+      return null;
+    }
+    Cursor cursor;
+    try {
+      List<ProjectedINode> children = listChildren(target.dir);
+      cursor = new Cursor(nextCursorId(), src, user, target.dir.getInodeId(),
+          isSuperUser, target.storagePolicy, children);
+    } finally {
+      snapshotBytes.addAndGet(-reserved);
+    }
+    if (!reserve(cursor.snapshotBytes)) {
+      return null;
+    }
+    cursors.put(cursor.id, cursor);
+    return nextPage(cursor, startAfter, needLocation, namesOnly);
+  }
+
+  /**
+   * @return the page of the cursor that starts after the given name
+   * @throws ListingCursorExpiredException
+   *     if the cursor expired or belongs to another user or directory
+   */
+  CursorDirectoryListing next(long cursorId, String src, String user,
+      byte[] startAfter, boolean needLocation, boolean namesOnly)
+      throws IOException {
+    purgeExpired();
+    Cursor cursor = cursors.get(cursorId);
+    if (cursor == null || !cursor.src.equals(src) ||
+        !cursor.user.equals(user)) {
+      throw new ListingCursorExpiredException(
+          "Listing cursor " + cursorId + " of " + src + " expired");
+    }
+    return nextPage(cursor, startAfter, needLocation, namesOnly);
+  }
+
+  int size() {
+    return cursors.size();
+  }
+
+  long getSnapshotBytes() {
+    return snapshotBytes.get();
+  }
+
+  void close() {
+    prefetcher.shutdownNow();
+    cursors.clear();
+    snapshotBytes.set(0);
+  }
+
+  /**
+   * @return false if the snapshots would take more than the maximum memory
+   */
+  private boolean reserve(long bytes) {
+    while (true) {
+      long current = snapshotBytes.get();
+      if (current + bytes > maxMemory) {
+        return false;
+      }
+      if (snapshotBytes.compareAndSet(current, current + bytes)) {
+        return true;
+      }
+    }
+  }
+
+  private CursorDirectoryListing nextPage(Cursor cursor, byte[] startAfter,
+      boolean needLocation, boolean namesOnly) throws IOException {
+    synchronized (cursor) {
+      cursor.lastAccess = Time.now();
+      Page page = cursor.takePrefetched(startAfter, needLocation, namesOnly);
+      if (page == null) {
+        page = readPage(cursor, cursor.indexAfter(startAfter), needLocation,
+            namesOnly);
+      }
+      // all the children of the page may be gone
+      while (page.statuses.isEmpty() && page.next < cursor.names.length) {
+        page = readPage(cursor, page.next, needLocation, namesOnly);
+      }
+      HdfsFileStatus[] statuses =
+          page.statuses.toArray(new HdfsFileStatus[page.statuses.size()]);
+      int remaining = cursor.names.length - page.next;
+      if (remaining == 0) {
+        remove(cursor);
+        return new CursorDirectoryListing(statuses, 0, 0);
+      }
+      if (!namesOnly) {
+        prefetch(cursor, statuses[statuses.length - 1].getLocalNameInBytes(),
+            page.next, needLocation);
+      }
+      return new CursorDirectoryListing(statuses, remaining, cursor.id);
+    }
+  }
+
+  private Page readPage(final Cursor cursor, final int start,
+      final boolean needLocation, boolean namesOnly) throws IOException {
+    final int end = Math.min(cursor.names.length, start + pageSize);
+    if (namesOnly) {
+      List<HdfsFileStatus> statuses = new ArrayList<>(end - start);
+      for (int i = start; i < end; i++) {
+        statuses.add(new HdfsFileStatus(0, cursor.dirs.get(i), 0, 0, 0, 0,
+            null, null, null, null, cursor.names[i], cursor.ids[i], 0, false,
+            BlockStoragePolicySuite.ID_UNSPECIFIED));
+      }
+      return new Page(statuses, end);
+    }
+
+    final List<INodeIdentifier> inodeIdentifiers = new ArrayList<>(end - start);
+    for (int i = start; i < end; i++) {
+      inodeIdentifiers.add(new INodeIdentifier(cursor.ids[i], cursor.dirId,
+          DFSUtil.bytes2String(cursor.names[i]), cursor.partitionIds[i]));
+    }
+    return (Page) new HopsTransactionalRequestHandler(
+        HDFSOperationType.GET_LISTING_PAGE, cursor.src) {
+      @Override
+      public void acquireLock(TransactionLocks locks) throws IOException {
+        LockFactory lf = LockFactory.getInstance();
+        locks.add(lf.getBatchedINodesLock(inodeIdentifiers));
+        if (needLocation) {
+          locks.add(lf.getSqlBatchedBlocksLock()).add(
+              lf.getSqlBatchedBlocksRelated(BLK.RE, BLK.ER, BLK.CR, BLK.UC));
+        }
+      }
+
+      @Override
+      public Object performTask() throws IOException {
+        FSDirectory dir = namesystem.getFSDirectory();
+        List<HdfsFileStatus> statuses = new ArrayList<>(end - start);
+        int locationBudget = pageSize;
+        int i = start;
+        for (; i < end && locationBudget > 0; i++) {
+          INode child =
+              EntityManager.find(INode.Finder.ByINodeIdFTIS, cursor.ids[i]);
+          // deleted, moved or renamed since the cursor was opened
+          if (child == null || child.getParentId() != cursor.dirId ||
+              !Arrays.equals(child.getLocalNameBytes(), cursor.names[i])) {
+            continue;
+          }
+          HdfsFileStatus status = dir.createListingStatus(child, needLocation,
+              cursor.isSuperUser, cursor.parentStoragePolicy);
+          statuses.add(status);
+          if (needLocation) {
+            LocatedBlocks blks =
+                ((HdfsLocatedFileStatus) status).getBlockLocations();
+            locationBudget -= (blks == null) ? 0 :
+                blks.locatedBlockCount() * status.getReplication();
+          }
+        }
+        return new Page(statuses, i);
+      }
+    }.handle(namesystem);
+  }
+
+  private void prefetch(final Cursor cursor, byte[] after, final int start,
+      final boolean needLocation) {
+    cursor.prefetchAfter = after;
+    cursor.prefetchNeedLocation = needLocation;
+    try {
+      cursor.prefetch = prefetcher.submit(new Callable<Page>() {
+        @Override
+        public Page call() throws IOException {
+          return readPage(cursor, start, needLocation, false);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      cursor.prefetch = null;
+    }
+  }
+
+  private List<ProjectedINode> listChildren(final INodeIdentifier dir)
+      throws IOException {
+    return (List<ProjectedINode>) new LightWeightRequestHandler(
+        HDFSOperationType.GET_CHILD_INODES) {
+      @Override
+      public Object performTask() throws StorageException, IOException {
+        INodeDataAccess<INode> dataAccess =
+            (INodeDataAccess) HdfsStorageFactory
+                .getDataAccess(INodeDataAccess.class);
+        if (INode.isTreeLevelRandomPartitioned(dir.getDepth())) {
+          return dataAccess.findInodesFTISTx(dir.getInodeId(),
+              EntityContext.LockMode.READ_COMMITTED);
+        } else {
+          return dataAccess.findInodesPPISTx(dir.getInodeId(),
+              dir.getInodeId(), EntityContext.LockMode.READ_COMMITTED);
+        }
+      }
+    }.handle(namesystem);
+  }
+
+  private long nextCursorId() {
+    long id;
+    do {
+      id = nextId.incrementAndGet();
+    } while (id == 0);
+    return id;
+  }
+
+  private boolean isExpired(Cursor cursor, long now) {
+    return now - cursor.lastAccess > expiry;
+  }
+
+  private void purgeExpired() {
+    long now = Time.now();
+    for (Cursor cursor : cursors.values()) {
+      if (isExpired(cursor, now)) {
+        remove(cursor);
+      }
+    }
+  }
+
+  private void remove(Cursor cursor) {
+    if (cursors.remove(cursor.id) != null) {
+      snapshotBytes.addAndGet(-cursor.snapshotBytes);
+      if (LOG.isDebugEnabled()) {
+        LOG.debug("Closed listing cursor " + cursor.id + " of " + cursor.src);
+      }
+    }
+    Future<Page> prefetch = cursor.prefetch;
+    if (prefetch != null) {
+      prefetch.cancel(false);
+    }
+  }
+
+  /**
+   * The directory a cursor is opened on, with its depth, its number of
+   * children and the storage policy its children inherit.
+   */
+  static class Target {
+    private final INodeIdentifier dir;
+    private final int childrenNum;
+    private final byte storagePolicy;
+
+    Target(INodeIdentifier dir, int childrenNum, byte storagePolicy) {
+      this.dir = dir;
+      this.childrenNum = childrenNum;
+      this.storagePolicy = storagePolicy;
+    }
+  }
+
+  private static class Page {
+    private final List<HdfsFileStatus> statuses;
+    // the index of the first child of the next page
+    private final int next;
+
+    Page(List<HdfsFileStatus> statuses, int next) {
+      this.statuses = statuses;
+      this.next = next;
+    }
+  }
+
+  private static class Cursor {
+    private final long id;
+    private final String src;
+    private final String user;
+    private final int dirId;
+    private final boolean isSuperUser;
+    private final byte parentStoragePolicy;
+    // the children when the cursor was opened, sorted by name
+    private final byte[][] names;
+    private final int[] ids;
+    private final int[] partitionIds;
+    private final BitSet dirs;
+    private final long snapshotBytes;
+    private volatile long lastAccess;
+    // the page read ahead, and the name it starts after
+    private volatile Future<Page> prefetch;
+    private byte[] prefetchAfter;
+    private boolean prefetchNeedLocation;
+
+    Cursor(long id, String src, String user, int dirId, boolean isSuperUser,
+        byte parentStoragePolicy, List<ProjectedINode> children) {
+      this.id = id;
+      this.src = src;
+      this.user = user;
+      this.dirId = dirId;
+      this.isSuperUser = isSuperUser;
+      this.parentStoragePolicy = parentStoragePolicy;
+      this.lastAccess = Time.now();
+
+      final byte[][] unsorted = new byte[children.size()][];
+      Integer[] order = new Integer[children.size()];
+      for (int i = 0; i < unsorted.length; i++) {
+        unsorted[i] = DFSUtil.string2Bytes(children.get(i).getName());
+        order[i] = i;
+      }
+      Arrays.sort(order, new Comparator<Integer>() {
+        @Override
+        public int compare(Integer left, Integer right) {
+          return NAME_ORDER.compare(unsorted[left], unsorted[right]);
+        }
+      });
+      names = new byte[order.length][];
+      ids = new int[order.length];
+      partitionIds = new int[order.length];
+      dirs = new BitSet(order.length);
+      long bytes = 0;
+      for (int i = 0; i < order.length; i++) {
+        ProjectedINode child = children.get(order[i]);
+        names[i] = unsorted[order[i]];
+        ids[i] = child.getId();
+        partitionIds[i] = child.getPartitionId();
+        dirs.set(i, child.isDirectory());
+        bytes += SNAPSHOT_BYTES_PER_CHILD + names[i].length;
+      }
+      snapshotBytes = bytes;
+    }
+
+    int indexAfter(byte[] startAfter) {
+      if (startAfter.length == 0) {
+        return 0;
+      }
+      int index = Arrays.binarySearch(names, startAfter, NAME_ORDER);
+      return index >= 0 ? index + 1 : -(index + 1);
+    }
+
+    /**
+     * @return the page read ahead if it is the one asked for, null otherwise
+     */
+    Page takePrefetched(byte[] startAfter, boolean needLocation,
+        boolean namesOnly) {
+      Future<Page> prefetched = prefetch;
+      prefetch = null;
+      if (prefetched == null) {
+        return null;
+      }
+      if (namesOnly || needLocation != prefetchNeedLocation ||
+          !Arrays.equals(startAfter, prefetchAfter)) {
+        prefetched.cancel(false);
+        return null;
+      }
+      try {
+        return prefetched.get();
+      } catch (ExecutionException e) {
+        LOG.debug("Failed to read ahead the listing of " + src, e.getCause());
+        return null;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return null;
+      }
+    }
+  }
+}
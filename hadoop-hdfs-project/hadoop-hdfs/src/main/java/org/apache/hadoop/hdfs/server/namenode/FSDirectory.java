@@ -1157,6 +1157,18 @@ DirectoryListing getListing(String src, byte[] startAfter,
         totalNumChildren - startChild - listingCnt);
   }
 
+  /**
+   * Create the status of a child listed through a listing cursor, with the
+   * storage policy {@link #getListing} would give it.
+   */
+  HdfsFileStatus createListingStatus(INode child, boolean needLocation,
+      boolean isSuperUser, byte parentStoragePolicy) throws IOException {
+    byte curPolicy = isSuperUser && !child.isSymlink() ?
+        child.getLocalStoragePolicyID() : BlockStoragePolicySuite.ID_UNSPECIFIED;
+    return createFileStatus(child.getLocalNameBytes(), child, needLocation,
+        getStoragePolicyID(curPolicy, parentStoragePolicy));
+  }
+
   /**
    * Get the file info for a specific file.
    *
@@ -1799,6 +1811,10 @@ private INode removeLastINode(final INodesInPath inodesInPath, boolean forRename
       removedNode = ((INodeDirectory) inodes[pos - 1])
           .removeChild(inodes[pos]);
     }
+    if (removedNode != null) {
+      // the node and everything cached under it moved or is gone
+      Cache.getInstance().deleteOnCommit(removedNode);
+    }
     if (removedNode != null && isQuotaEnabled()) {
       List<QuotaUpdate> outstandingUpdates = (List<QuotaUpdate>) EntityManager
           .findList(QuotaUpdate.Finder.ByINodeId, removedNode.getId());
@@ -1819,6 +1835,9 @@ INode removeChildNonRecursively(final INodesInPath inodesInPath, int pos)
     final INode[] inodes = inodesInPath.getINodes();
     INode removedNode = ((INodeDirectory) inodes[pos - 1])
         .removeChild(inodes[pos]);
+    if (removedNode != null) {
+      Cache.getInstance().deleteOnCommit(removedNode);
+    }
     if (removedNode != null && isQuotaEnabled()) {
       List<QuotaUpdate> outstandingUpdates = (List<QuotaUpdate>) EntityManager
           .findList(QuotaUpdate.Finder.ByINodeId, removedNode.getId());
@@ -33,6 +33,7 @@
 import io.hops.metadata.hdfs.dal.BlockChecksumDataAccess;
 import io.hops.metadata.hdfs.dal.EncodingStatusDataAccess;
 import io.hops.metadata.hdfs.dal.INodeDataAccess;
+import io.hops.metadata.hdfs.dal.OngoingSubTreeOpsDataAccess;
 import io.hops.metadata.hdfs.dal.RetryCacheEntryDataAccess;
 import io.hops.metadata.hdfs.dal.SafeBlocksDataAccess;
 import io.hops.metadata.hdfs.entity.BlockChecksum;
@@ -88,6 +89,7 @@
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.protocol.BlockStoragePolicy;
 import org.apache.hadoop.hdfs.protocol.ClientProtocol;
+import org.apache.hadoop.hdfs.protocol.CursorDirectoryListing;
 import org.apache.hadoop.hdfs.protocol.DatanodeID;
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
 import org.apache.hadoop.hdfs.protocol.DirectoryListing;
@@ -110,6 +112,7 @@
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfo;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfoUnderConstruction;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockManager;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockStoragePolicySuite;
 import org.apache.hadoop.hdfs.server.blockmanagement.DatanodeDescriptor;
 import org.apache.hadoop.hdfs.server.blockmanagement.DatanodeManager;
 import org.apache.hadoop.hdfs.server.blockmanagement.DatanodeStatistics;
@@ -186,6 +189,8 @@
 import io.hops.transaction.lock.TransactionLockTypes;
 import org.apache.commons.logging.impl.Log4JLogger;
 import org.apache.hadoop.fs.DirectoryListingStartAfterNotFoundException;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_BATCHED_METADATA_OPS_MAX_PATHS_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_BATCHED_METADATA_OPS_MAX_PATHS_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_BLOCK_SIZE_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_BLOCK_SIZE_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_BYTES_PER_CHECKSUM_DEFAULT;
@@ -225,8 +230,14 @@
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_REPL_QUEUE_THRESHOLD_PCT_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_RESOURCE_CHECK_INTERVAL_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_RESOURCE_CHECK_INTERVAL_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_RETRY_CACHE_ASYNC_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_RETRY_CACHE_ASYNC_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_RETRY_CACHE_EXPIRYTIME_MILLIS_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_RETRY_CACHE_EXPIRYTIME_MILLIS_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_RETRY_CACHE_FLUSH_BATCH_SIZE_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_RETRY_CACHE_FLUSH_BATCH_SIZE_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_RETRY_CACHE_FLUSH_INTERVAL_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_RETRY_CACHE_FLUSH_INTERVAL_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_RETRY_CACHE_HEAP_PERCENT_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_RETRY_CACHE_HEAP_PERCENT_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_NAMENODE_SAFEMODE_EXTENSION_KEY;
@@ -240,6 +251,16 @@
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_PERMISSIONS_SUPERUSERGROUP_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_REPLICATION_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_REPLICATION_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_SUBTREE_DELETE_MAX_IN_FLIGHT_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_SUBTREE_DELETE_MAX_IN_FLIGHT_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_SUBTREE_LISTING_BATCH_SIZE_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_SUBTREE_LISTING_BATCH_SIZE_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_SUBTREE_LISTING_MAX_IN_FLIGHT_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_SUBTREE_LISTING_MAX_IN_FLIGHT_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_SUBTREE_LOCK_INDEX_REFRESH_INTERVAL_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_SUBTREE_LOCK_INDEX_REFRESH_INTERVAL_KEY;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_SUBTREE_LOCK_MAX_WAIT_DEFAULT;
+import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_SUBTREE_LOCK_MAX_WAIT_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_SUBTREE_EXECUTOR_LIMIT_DEFAULT;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_SUBTREE_EXECUTOR_LIMIT_KEY;
 import static org.apache.hadoop.hdfs.DFSConfigKeys.DFS_SUPPORT_APPEND_DEFAULT;
@@ -257,6 +278,7 @@
 import org.apache.hadoop.hdfs.server.namenode.startupprogress.Step;
 import org.apache.hadoop.hdfs.server.namenode.startupprogress.StepType;
 import org.apache.hadoop.hdfs.server.protocol.StorageReceivedDeletedBlocks;
+import org.apache.hadoop.hdfs.util.SmallFileDataCache;
 import org.apache.hadoop.ipc.RetriableException;
 import org.apache.hadoop.ipc.RetryCacheDistributed;
 import org.apache.hadoop.ipc.RetryCache.CacheEntry;
@@ -407,6 +429,7 @@ private void logAuditEvent(boolean succeeded, UserGroupInformation ugi,
   private Daemon nnrmthread = null; // NamenodeResourceMonitor thread
 
   private Daemon retryCacheCleanerThread = null;
+  private Daemon subtreeLockIndexRefresherThread = null;
 
   private volatile boolean hasResourcesAvailable = true; //HOP. yes we have huge namespace
   private volatile boolean fsRunning = true;
@@ -444,12 +467,25 @@ private void logAuditEvent(boolean succeeded, UserGroupInformation ugi,
   private final ErasureCodingManager erasureCodingManager;
 
   private final boolean storeSmallFilesInDB;
+  // null if disabled
+  private final SmallFileDataCache smallFileDataCache;
   private static int DB_ON_DISK_FILE_MAX_SIZE;
   private static int DB_ON_DISK_SMALL_FILE_MAX_SIZE;
   private static int DB_ON_DISK_MEDIUM_FILE_MAX_SIZE;
   private static int DB_ON_DISK_LARGE_FILE_MAX_SIZE;
   private static int DB_IN_MEMORY_FILE_MAX_SIZE;
   private final long BIGGEST_DELETABLE_DIR;
+  private final int subtreeDeleteMaxInFlight;
+  private final int subtreeListingBatchSize;
+  private final int subtreeListingMaxInFlight;
+  private final SubtreeLockIndex subtreeLockIndex = new SubtreeLockIndex();
+  // the roots of the subtree deletes taken over from failed namenodes, until
+  // they are done
+  private final Map<String, INodeIdentifier> resumedDeletes =
+      new ConcurrentHashMap<>();
+  private DirectoryListingCursors listingCursors;
+  private final long subtreeLockMaxWait;
+  private final int batchedMetadataOpsMaxPaths;
 
   /**
    * Whether the namenode is in the middle of starting the active service
@@ -545,12 +581,22 @@ private FSNamesystem(Configuration conf, NameNode namenode, boolean ignoreRetryC
               DFS_NAMENODE_RESOURCE_CHECK_INTERVAL_DEFAULT);
 
       this.blockManager = new BlockManager(this, this, conf);
+      leaseManager.setRenewalFlushing(
+          conf.getLong(DFSConfigKeys.DFS_NAMENODE_LEASE_RENEWAL_FLUSH_INTERVAL_KEY,
+              DFSConfigKeys.DFS_NAMENODE_LEASE_RENEWAL_FLUSH_INTERVAL_DEFAULT),
+          conf.getInt(DFSConfigKeys.DFS_NAMENODE_LEASE_RENEWAL_FLUSH_BATCH_SIZE_KEY,
+              DFSConfigKeys.DFS_NAMENODE_LEASE_RENEWAL_FLUSH_BATCH_SIZE_DEFAULT));
       this.erasureCodingEnabled =
           ErasureCodingManager.isErasureCodingEnabled(conf);
       this.erasureCodingManager = new ErasureCodingManager(this, conf);
       this.storeSmallFilesInDB =
           conf.getBoolean(DFSConfigKeys.DFS_STORE_SMALL_FILES_IN_DB_KEY,
               DFSConfigKeys.DFS_STORE_SMALL_FILES_IN_DB_DEFAULT);
+      long smallFileCacheSize = conf.getLong(
+          DFSConfigKeys.DFS_NAMENODE_SMALL_FILE_CACHE_SIZE_KEY,
+          DFSConfigKeys.DFS_NAMENODE_SMALL_FILE_CACHE_SIZE_DEFAULT);
+      this.smallFileDataCache = storeSmallFilesInDB && smallFileCacheSize > 0 ?
+          new SmallFileDataCache(smallFileCacheSize) : null;
       DB_ON_DISK_FILE_MAX_SIZE = conf.getInt(DFSConfigKeys.DFS_DB_FILE_MAX_SIZE_KEY,
               DFSConfigKeys.DFS_DB_FILE_MAX_SIZE_DEFAULT);
       DB_ON_DISK_LARGE_FILE_MAX_SIZE = conf.getInt(DFSConfigKeys.DFS_DB_ONDISK_LARGE_FILE_MAX_SIZE_KEY,
@@ -592,6 +638,21 @@ private FSNamesystem(Configuration conf, NameNode namenode, boolean ignoreRetryC
               DFS_SUBTREE_EXECUTOR_LIMIT_DEFAULT));
       BIGGEST_DELETABLE_DIR = conf.getLong(DFS_DIR_DELETE_BATCH_SIZE,
               DFS_DIR_DELETE_BATCH_SIZE_DEFAULT);
+      subtreeDeleteMaxInFlight = conf.getInt(
+          DFS_SUBTREE_DELETE_MAX_IN_FLIGHT_KEY,
+          DFS_SUBTREE_DELETE_MAX_IN_FLIGHT_DEFAULT);
+      subtreeListingBatchSize = conf.getInt(
+          DFS_SUBTREE_LISTING_BATCH_SIZE_KEY,
+          DFS_SUBTREE_LISTING_BATCH_SIZE_DEFAULT);
+      subtreeListingMaxInFlight = conf.getInt(
+          DFS_SUBTREE_LISTING_MAX_IN_FLIGHT_KEY,
+          DFS_SUBTREE_LISTING_MAX_IN_FLIGHT_DEFAULT);
+      subtreeLockMaxWait = conf.getLong(DFS_SUBTREE_LOCK_MAX_WAIT_KEY,
+          DFS_SUBTREE_LOCK_MAX_WAIT_DEFAULT);
+      batchedMetadataOpsMaxPaths = conf.getInt(
+          DFS_BATCHED_METADATA_OPS_MAX_PATHS_KEY,
+          DFS_BATCHED_METADATA_OPS_MAX_PATHS_DEFAULT);
+      listingCursors = new DirectoryListingCursors(this, conf);
 
       LOG.info("fsOwner             = " + fsOwner);
       LOG.info("superGroup          = " + superGroup);
@@ -698,8 +759,15 @@ static RetryCacheDistributed initRetryCache(Configuration conf) {
           + " of total heap and retry cache entry expiry time is "
           + entryExpiryMillis + " millis");
       long entryExpiryNanos = entryExpiryMillis * 1000 * 1000;
+      boolean async = conf.getBoolean(DFS_NAMENODE_RETRY_CACHE_ASYNC_KEY,
+          DFS_NAMENODE_RETRY_CACHE_ASYNC_DEFAULT);
+      if (async) {
+        LOG.info("Retry cache entries are written in batches every " +
+            conf.getLong(DFS_NAMENODE_RETRY_CACHE_FLUSH_INTERVAL_KEY,
+                DFS_NAMENODE_RETRY_CACHE_FLUSH_INTERVAL_DEFAULT) + " millis");
+      }
       return new RetryCacheDistributed("Namenode Retry Cache", heapPercent,
-          entryExpiryNanos);
+          entryExpiryNanos, async);
     }
     return null;
   }
@@ -834,6 +902,10 @@ void startActiveServices() throws IOException {
       this.retryCacheCleanerThread = new Daemon(new RetryCacheCleaner());
       retryCacheCleanerThread.start();
 
+      this.subtreeLockIndexRefresherThread =
+          new Daemon(new SubtreeLockIndexRefresher());
+      subtreeLockIndexRefresherThread.start();
+
       if (erasureCodingEnabled) {
         erasureCodingManager.activate();
       }
@@ -876,6 +948,12 @@ void stopActiveServices() {
       retryCacheCleanerThread.interrupt();
     }
 
+    if (subtreeLockIndexRefresherThread != null) {
+      ((SubtreeLockIndexRefresher) subtreeLockIndexRefresherThread
+          .getRunnable()).stopMonitor();
+      subtreeLockIndexRefresherThread.interrupt();
+    }
+
     if (erasureCodingManager != null) {
       erasureCodingManager.close();
     }
@@ -940,6 +1018,9 @@ void close() {
         smmthread.interrupt();
       }
       subtreeOperationsExecutor.shutdownNow();
+      if (listingCursors != null) {
+        listingCursors.close();
+      }
     } finally {
       // using finally to ensure we also wait for lease daemon
       try {
@@ -1021,6 +1102,10 @@ public Object performTask() throws IOException {
         }
       }.handle(this);
       txFailed = false;
+      if (isSTO) {
+        // the transaction removed the subtree lock
+        subtreeLockIndex.remove(src);
+      }
     } finally {
       if(txFailed){
         if(inode!=null){
@@ -1144,6 +1229,10 @@ public Object performTask() throws IOException {
         }
       }.handle(this);
       txFailed = false;
+      if (isSTO) {
+        // the transaction removed the subtree lock
+        subtreeLockIndex.remove(src);
+      }
     }finally{
       if(txFailed){
         if(inode!=null){
@@ -1305,6 +1394,108 @@ public Object performTask() throws IOException {
     return locatedBlocks;
   }
 
+  /**
+   * Get the block locations of many files in one transaction. The paths are
+   * resolved together, so the inodes of their common ancestors are read once,
+   * and the blocks and replicas of all the files are read in one batch per
+   * table.
+   *
+   * @return the block locations of each path, null for paths that do not
+   * exist or are not files
+   * @see ClientProtocol#getBatchedBlockLocations(String[], long, long)
+   */
+  public LocatedBlocks[] getBatchedBlockLocations(final String clientMachine,
+      final String[] srcs, final long offset, final long length)
+      throws IOException {
+    checkBatchSize(srcs);
+    try {
+      return getBatchedBlockLocationsWithLock(clientMachine, srcs, offset,
+          length, INodeLockType.READ);
+    } catch (LockUpgradeException e) {
+      LOG.debug("Encountered LockUpgradeException while reading a batch of " +
+          srcs.length + " files. Retrying the operation using exclusive locks");
+      return getBatchedBlockLocationsWithLock(clientMachine, srcs, offset,
+          length, INodeLockType.WRITE);
+    }
+  }
+
+  private LocatedBlocks[] getBatchedBlockLocationsWithLock(
+      final String clientMachine, final String[] srcs1, final long offset,
+      final long length, final INodeLockType lockType) throws IOException {
+    final String[] srcs = resolvePaths(srcs1);
+    HopsTransactionalRequestHandler getBlockLocationsHandler =
+        new HopsTransactionalRequestHandler(
+            HDFSOperationType.GET_BATCHED_BLOCK_LOCATIONS) {
+          @Override
+          public void acquireLock(TransactionLocks locks) throws IOException {
+            LockFactory lf = getInstance();
+            INodeLock il = lf.getINodeLock(lockType, INodeResolveType.PATH,
+                Arrays.copyOf(srcs, srcs.length))
+                .setNameNodeID(nameNode.getId())
+                .setActiveNameNodes(nameNode.getActiveNameNodes().getActiveNodes())
+                .skipReadingQuotaAttr(!dir.isQuotaEnabled());
+            locks.add(il).add(lf.getSqlBatchedBlocksLock())
+                .add(lf.getSqlBatchedBlocksRelated(BLK.RE, BLK.ER, BLK.CR,
+                    BLK.UC));
+            locks.add(lf.getAcesLock());
+          }
+
+          @Override
+          public Object performTask() throws IOException {
+            LocatedBlocks[] result = new LocatedBlocks[srcs.length];
+            for (int i = 0; i < srcs.length; i++) {
+              LocatedBlocks blocks;
+              try {
+                blocks = getBlockLocationsInternal(srcs[i], offset, length,
+                    true, true, true);
+              } catch (FileNotFoundException e) {
+                continue;
+              }
+              if (blocks != null && !blocks.hasPhantomBlock()) {
+                blockManager.getDatanodeManager()
+                    .sortLocatedBlocks(clientMachine, blocks.getLocatedBlocks());
+                LocatedBlock lastBlock = blocks.getLastLocatedBlock();
+                if (lastBlock != null) {
+                  blockManager.getDatanodeManager().sortLocatedBlocks(
+                      clientMachine, Collections.singletonList(lastBlock));
+                }
+              }
+              result[i] = blocks;
+            }
+            return result;
+          }
+        };
+    LocatedBlocks[] locatedBlocks =
+        (LocatedBlocks[]) getBlockLocationsHandler.handle(this);
+    for (int i = 0; i < srcs.length; i++) {
+      if (locatedBlocks[i] != null) {
+        logAuditEvent(true, "open", srcs[i]);
+      }
+    }
+    return locatedBlocks;
+  }
+
+  private void checkBatchSize(String[] srcs) {
+    if (srcs.length > batchedMetadataOpsMaxPaths) {
+      throw new HadoopIllegalArgumentException("Too many paths in one " +
+          "batch: " + srcs.length + " > " + batchedMetadataOpsMaxPaths +
+          ", see " + DFS_BATCHED_METADATA_OPS_MAX_PATHS_KEY);
+    }
+  }
+
+  private String[] resolvePaths(String[] srcs) throws IOException {
+    String[] resolved = new String[srcs.length];
+    for (int i = 0; i < srcs.length; i++) {
+      byte[][] pathComponents =
+          FSDirectory.getPathComponentsForReservedPath(srcs[i]);
+      resolved[i] = FSDirectory.resolvePath(srcs[i], pathComponents, dir);
+      if (!DFSUtil.isValidName(resolved[i])) {
+        throw new InvalidPathException("Invalid file name: " + resolved[i]);
+      }
+    }
+    return resolved;
+  }
+
   /**
    * Get block locations within the specified range.
    *
@@ -1429,7 +1620,7 @@ private LocatedBlocks getPhantomBlockLocationsUpdateTimes(String src,
       }
 
       return blockManager
-          .createPhantomLocatedBlocks(inode, inode.getFileDataInDB(),
+          .createPhantomLocatedBlocks(inode, getFileDataInDB(inode),
               inode.isUnderConstruction(), needBlockToken);
     }
     return null; // can never reach here
@@ -1484,7 +1675,8 @@ public void acquireLock(TransactionLocks locks) throws IOException {
                 .setActiveNameNodes(nameNode.getActiveNameNodes().getActiveNodes());
         locks.add(il).add(lf.getBlockLock()).add(
             lf.getBlockRelated(BLK.RE, BLK.CR, BLK.ER, BLK.PE, BLK.UC, BLK.IV))
-            .add(lf.getRetryCacheEntryLock(Server.getClientId(), Server.getCallId()));
+            .add(lf.getRetryCacheEntryLock(Server.getClientId(), Server.getCallId(),
+                retryCache));
         if (erasureCodingEnabled) {
           locks.add(lf.getEncodingStatusLock(LockType.WRITE, srcs));
         }
@@ -1739,7 +1931,8 @@ public void acquireLock(TransactionLocks locks) throws IOException {
                 .setNameNodeID(nameNode.getId())
                 .setActiveNameNodes(nameNode.getActiveNameNodes().getActiveNodes());
         locks.add(il).add(lf.getAcesLock())
-                .add(lf.getRetryCacheEntryLock(Server.getClientId(), Server.getCallId()));
+                .add(lf.getRetryCacheEntryLock(Server.getClientId(), Server.getCallId(),
+                    retryCache));
       }
 
       @Override
@@ -2119,7 +2312,8 @@ public void acquireLock(TransactionLocks locks) throws IOException {
                   .add(lf.getLeaseLock(LockType.WRITE, holder))
                   .add(lf.getLeasePathLock(LockType.READ_COMMITTED)).add(
                   lf.getBlockRelated(BLK.RE, BLK.CR, BLK.ER, BLK.UC, BLK.UR, BLK.PE, BLK.IV))
-                  .add(lf.getRetryCacheEntryLock(Server.getClientId(), Server.getCallId()));
+                  .add(lf.getRetryCacheEntryLock(Server.getClientId(), Server.getCallId(),
+                      retryCache));
 
         if (flag.contains(CreateFlag.OVERWRITE) && dir.isQuotaEnabled()) {
           locks.add(lf.getQuotaUpdateLock(src));
@@ -2268,6 +2462,135 @@ private void startFileInternal(FSPermissionChecker pc, String src,
     }
   }
 
+  /**
+   * Create many small files and store their data in the database, all in one
+   * transaction.
+   * <p/>
+   * For description of parameters and exceptions thrown see
+   * {@link ClientProtocol#createSmallFiles}. The files are closed in the same
+   * transaction that creates them, so no lease is taken for them.
+   */
+  void createSmallFiles(final String[] srcs1, final byte[][] data,
+      final PermissionStatus permissions, final String holder,
+      final String clientMachine, final boolean createParent,
+      final short replication, final long blockSize) throws IOException {
+    if (!storeSmallFilesInDB) {
+      throw new IOException("Storing small files in the database is " +
+          "disabled, see " + DFSConfigKeys.DFS_STORE_SMALL_FILES_IN_DB_KEY);
+    }
+    if (srcs1.length != data.length) {
+      throw new HadoopIllegalArgumentException("Got " + srcs1.length +
+          " paths but the data of " + data.length + " files");
+    }
+    checkBatchSize(srcs1);
+    if (blockSize < minBlockSize) {
+      throw new IOException("Specified block size is less than configured" +
+          " minimum value (" + DFSConfigKeys.DFS_NAMENODE_MIN_BLOCK_SIZE_KEY +
+          "): " + blockSize + " < " + minBlockSize);
+    }
+    final String[] srcs = resolvePaths(srcs1);
+    for (int i = 0; i < srcs.length; i++) {
+      if (data[i].length > dbOnDiskLargeFileMaxSize()) {
+        throw new IOException("The file " + srcs[i] + " is too large to be " +
+            "stored in the database: " + data[i].length + " > " +
+            dbOnDiskLargeFileMaxSize() + ", see " +
+            DFSConfigKeys.DFS_DB_ONDISK_LARGE_FILE_MAX_SIZE_KEY);
+      }
+    }
+
+    new HopsTransactionalRequestHandler(HDFSOperationType.CREATE_SMALL_FILES) {
+      @Override
+      public void acquireLock(TransactionLocks locks) throws IOException {
+        LockFactory lf = getInstance();
+        INodeLock il = lf.getINodeLock(INodeLockType.WRITE_ON_TARGET_AND_PARENT,
+            INodeResolveType.PATH, Arrays.copyOf(srcs, srcs.length))
+            .setNameNodeID(nameNode.getId())
+            .setActiveNameNodes(nameNode.getActiveNameNodes().getActiveNodes())
+            .skipReadingQuotaAttr(!dir.isQuotaEnabled());
+        locks.add(il)
+            .add(lf.getRetryCacheEntryLock(Server.getClientId(),
+                Server.getCallId(), retryCache))
+            .add(lf.getAcesLock());
+      }
+
+      @Override
+      public Object performTask() throws IOException {
+        final CacheEntry cacheEntry =
+            RetryCacheDistributed.waitForCompletion(retryCache);
+        if (cacheEntry != null && cacheEntry.isSuccess()) {
+          return null; // Return previous response
+        }
+        boolean success = false;
+        try {
+          checkNameNodeSafeMode("Cannot create files");
+          FSPermissionChecker pc = getPermissionChecker();
+          for (int i = 0; i < srcs.length; i++) {
+            try {
+              createSmallFileInternal(pc, srcs[i], data[i], permissions,
+                  holder, clientMachine, createParent, replication,
+                  blockSize);
+            } catch (AccessControlException e) {
+              logAuditEvent(false, "create", srcs[i]);
+              throw e;
+            }
+          }
+          success = true;
+        } finally {
+          RetryCacheDistributed.setState(cacheEntry, success);
+        }
+        for (String src : srcs) {
+          logAuditEvent(true, "create", src);
+        }
+        return null;
+      }
+    }.handle(this);
+  }
+
+  /**
+   * Adds the file, stores its data and closes it, without the lease that
+   * {@link #startFileInternal} and {@link #completeFileStoredInDataBase}
+   * would add and then remove.
+   */
+  private void createSmallFileInternal(FSPermissionChecker pc, String src,
+      byte[] data, PermissionStatus permissions, String holder,
+      String clientMachine, boolean createParent, short replication,
+      long blockSize) throws IOException {
+    if (dir.exists(src)) {
+      throw new FileAlreadyExistsException("failed to create file " + src +
+          " on client " + clientMachine + " because the file exists");
+    }
+    if (isPermissionEnabled) {
+      checkAncestorAccess(pc, src, FsAction.WRITE);
+    }
+    if (!createParent) {
+      verifyParentDir(src);
+    }
+
+    checkFsObjectLimit();
+    final DatanodeDescriptor clientNode = blockManager.getDatanodeManager()
+        .getDatanodeByHost(clientMachine);
+    INodeFile newNode = dir.addFile(src, permissions, replication, blockSize,
+        holder, clientMachine, clientNode);
+    if (newNode == null) {
+      throw new IOException("DIR* NameSystem.createSmallFiles: " +
+          "Unable to add file " + src + " to namespace.");
+    }
+
+    newNode.setFileStoredInDB(true);
+    newNode.setSize(data.length);
+    newNode.storeFileDataInDB(data);
+    if (dir.isQuotaEnabled()) {
+      dir.updateSpaceConsumed(src, 0,
+          data.length * newNode.getBlockReplication());
+    }
+
+    dir.closeFile(src, newNode.toCompleteFile(now()));
+    if (NameNode.stateChangeLog.isDebugEnabled()) {
+      NameNode.stateChangeLog.debug("DIR* NameSystem.createSmallFiles: " +
+          src + " is stored in the database for " + holder);
+    }
+  }
+
   /**
    * Append to an existing file for append.
    * <p>
@@ -2571,7 +2894,8 @@ public void acquireLock(TransactionLocks locks) throws IOException {
                     .add(lf.getLeasePathLock(LockType.READ_COMMITTED))
                     .add(lf.getBlockRelated(BLK.RE, BLK.CR, BLK.ER, BLK.UC, BLK.UR, BLK.IV, BLK.PE))
                     .add(lf.getLastBlockHashBucketsLock());
-            locks.add(lf.getRetryCacheEntryLock(Server.getClientId(), Server.getCallId()));
+            locks.add(lf.getRetryCacheEntryLock(Server.getClientId(), Server.getCallId(),
+                retryCache));
             // Always needs to be read. Erasure coding might have been
             // enabled earlier and we don't want to end up in an inconsistent
             // state.
@@ -3364,7 +3688,8 @@ public void acquireLock(TransactionLocks locks) throws IOException {
             locks.add(il).add(lf.getLeaseLock(LockType.WRITE))
                     .add(lf.getLeasePathLock(LockType.READ_COMMITTED)).add(lf.getBlockLock())
                     .add(lf.getBlockRelated(BLK.RE, BLK.CR, BLK.UC, BLK.UR, BLK.PE, BLK.IV))
-                    .add(lf.getRetryCacheEntryLock(Server.getClientId(), Server.getCallId()));
+                    .add(lf.getRetryCacheEntryLock(Server.getClientId(), Server.getCallId(),
+                        retryCache));
             if (dir.isQuotaEnabled()) {
               locks.add(lf.getQuotaUpdateLock(true, src));
             }
@@ -3555,6 +3880,57 @@ public Object performTask() throws IOException {
     return (HdfsFileStatus) getFileInfoHandler.handle(this);
   }
 
+  /**
+   * Get the file info of many paths in one transaction, see
+   * {@link #getBatchedBlockLocations(String, String[], long, long)}.
+   *
+   * @return the file info of each path, null for paths that do not exist
+   * @see ClientProtocol#getBatchedFileInfo(String[])
+   */
+  public HdfsFileStatus[] getBatchedFileInfo(final String[] srcs1)
+      throws IOException {
+    checkBatchSize(srcs1);
+    final String[] srcs = resolvePaths(srcs1);
+    HopsTransactionalRequestHandler getFileInfoHandler =
+        new HopsTransactionalRequestHandler(
+            HDFSOperationType.GET_BATCHED_FILE_INFO) {
+          @Override
+          public void acquireLock(TransactionLocks locks) throws IOException {
+            LockFactory lf = getInstance();
+            INodeLock il = lf.getINodeLock(INodeLockType.READ,
+                INodeResolveType.PATH, Arrays.copyOf(srcs, srcs.length))
+                .setNameNodeID(nameNode.getId())
+                .setActiveNameNodes(nameNode.getActiveNameNodes().getActiveNodes())
+                .skipReadingQuotaAttr(true);
+            locks.add(il);
+            locks.add(lf.getAcesLock());
+          }
+
+          @Override
+          public Object performTask() throws IOException {
+            HdfsFileStatus[] stats = new HdfsFileStatus[srcs.length];
+            FSPermissionChecker pc = getPermissionChecker();
+            boolean isSuperUser = true;
+            for (int i = 0; i < srcs.length; i++) {
+              try {
+                if (isPermissionEnabled) {
+                  checkPermission(pc, srcs[i], false, null, null, null, null,
+                      true);
+                  isSuperUser = pc.isSuperUser();
+                }
+                stats[i] = dir.getFileInfo(srcs[i], true, isSuperUser);
+              } catch (AccessControlException e) {
+                logAuditEvent(false, "getfileinfo", srcs[i]);
+                throw e;
+              }
+              logAuditEvent(true, "getfileinfo", srcs[i]);
+            }
+            return stats;
+          }
+        };
+    return (HdfsFileStatus[]) getFileInfoHandler.handle(this);
+  }
+
   /**
    * Returns true if the file is closed
    */
@@ -4129,6 +4505,14 @@ BlockInfo getStoredBlock(Block block) throws StorageException, TransactionContex
    * Renew the lease(s) held by the given client
    */
   void renewLease(final String holder) throws IOException {
+    // only the leader buffers renewals, as it flushes them before it looks
+    // for the leases past their hard limit. A renewal buffered on another
+    // namenode would be invisible to that check.
+    if (leaseManager.isCoalescingRenewals() && isLeader()) {
+      checkNameNodeSafeMode("Cannot renew lease for " + holder);
+      leaseManager.bufferRenewal(holder);
+      return;
+    }
     new HopsTransactionalRequestHandler(HDFSOperationType.RENEW_LEASE) {
       @Override
       public void acquireLock(TransactionLocks locks) throws IOException {
@@ -4216,6 +4600,85 @@ public Object performTask() throws IOException {
     return (DirectoryListing) getListingHandler.handle(this);
   }
 
+  /**
+   * Get a partial listing of the indicated directory through a listing
+   * cursor.
+   *
+   * @see ClientProtocol#getListingCursor
+   */
+  CursorDirectoryListing getListingCursor(final String src1, long cursorId,
+      byte[] startAfter, boolean needLocation, boolean namesOnly)
+      throws IOException {
+    byte[][] pathComponents = FSDirectory.getPathComponentsForReservedPath(src1);
+    final String src = FSDirectory.resolvePath(src1, pathComponents, dir);
+    if (cursorId != 0) {
+      return listingCursors.next(cursorId, src,
+          getRemoteUser().getShortUserName(), startAfter, needLocation,
+          namesOnly);
+    }
+
+    // the reserved names are resolved by the classic listing
+    if (!FSDirectory.isReservedName(DFSUtil.bytes2String(startAfter))) {
+      final FSPermissionChecker pc = getPermissionChecker();
+      final boolean isSuperUser = !isPermissionEnabled || pc.isSuperUser();
+      DirectoryListingCursors.Target target = (DirectoryListingCursors.Target)
+          new HopsTransactionalRequestHandler(HDFSOperationType.GET_LISTING,
+              src) {
+            @Override
+            public void acquireLock(TransactionLocks locks)
+                throws IOException {
+              LockFactory lf = LockFactory.getInstance();
+              INodeLock il = lf.getINodeLock(INodeLockType.READ_COMMITTED,
+                  INodeResolveType.PATH, src)
+                  .setNameNodeID(nameNode.getId())
+                  .setActiveNameNodes(
+                      nameNode.getActiveNameNodes().getActiveNodes())
+                  .skipReadingQuotaAttr(true);
+              locks.add(il).add(lf.getAcesLock());
+            }
+
+            @Override
+            public Object performTask() throws IOException {
+              INode inode = dir.getINode(src);
+              if (inode == null || !inode.isDirectory()) {
+                return null;
+              }
+              if (isPermissionEnabled) {
+                try {
+                  checkPathAccess(pc, src, FsAction.READ_EXECUTE);
+                } catch (AccessControlException e) {
+                  logAuditEvent(false, "listStatus", src);
+                  throw e;
+                }
+              }
+              logAuditEvent(true, "listStatus", src);
+              INodeIdentifier id = new INodeIdentifier(inode.getId(),
+                  inode.getParentId(), inode.getLocalName(),
+                  inode.getPartitionId());
+              id.setDepth(inode.myDepth());
+              return new DirectoryListingCursors.Target(id,
+                  inode.asDirectory().getChildrenNum(), isSuperUser ?
+                  inode.getStoragePolicyID() :
+                  BlockStoragePolicySuite.ID_UNSPECIFIED);
+            }
+          }.handle(this);
+
+      if (target != null) {
+        CursorDirectoryListing listing = listingCursors.open(src,
+            pc.getUser(), target, isSuperUser, startAfter, needLocation,
+            namesOnly);
+        if (listing != null) {
+          return listing;
+        }
+      }
+    }
+
+    // a file, a missing path, a too big directory or too many open cursors
+    DirectoryListing listing = getListing(src1, startAfter, needLocation);
+    return listing == null ? null : new CursorDirectoryListing(
+        listing.getPartialListing(), listing.getRemainingEntries(), 0);
+  }
+
   private DirectoryListing getListingInt(String src, byte[] startAfter,
       boolean needLocation)
       throws IOException {
@@ -4372,6 +4835,99 @@ public int getExpiredHeartbeats() {
     return datanodeStatistics.getExpiredHeartbeats();
   }
 
+  @Metric({"ResolvingCacheHits",
+      "Number of paths with at least one component in the resolving cache"})
+  public long getResolvingCacheHits() {
+    return Cache.getInstance().getHits();
+  }
+
+  @Metric({"ResolvingCacheMisses", "Number of paths not in the resolving cache"})
+  public long getResolvingCacheMisses() {
+    return Cache.getInstance().getMisses();
+  }
+
+  @Metric({"ResolvingCacheVerificationFailures",
+      "Number of resolving cache entries that did not match the database"})
+  public long getResolvingCacheVerificationFailures() {
+    return Cache.getInstance().getVerificationFailures();
+  }
+
+  @Metric({"IdRangeRefills", "Number of id ranges fetched from the database"})
+  public long getIdRangeRefills() {
+    return IDsGeneratorFactory.getInstance().getIdsRefills();
+  }
+
+  @Metric({"IdRangeRefillAvgTime",
+      "Average time to fetch an id range from the database in msec"})
+  public long getIdRangeRefillAvgTime() {
+    return IDsGeneratorFactory.getInstance().getIdsRefillAvgTime();
+  }
+
+  @Metric({"IdQueueEmpty",
+      "Number of times an operation had to wait for an id range"})
+  public long getIdQueueEmpty() {
+    return IDsGeneratorFactory.getInstance().getIdsEmptyQueueCount();
+  }
+
+  @Metric({"QuotaUpdateBacklog",
+      "Number of pending quota updates when the last batch was read"})
+  public int getQuotaUpdateBacklog() {
+    return quotaUpdateManager == null ? 0 : quotaUpdateManager.getBacklog();
+  }
+
+  @Metric({"QuotaUpdateLag",
+      "Time since the pending quota updates last fit in one batch in msec"})
+  public long getQuotaUpdateLag() {
+    return quotaUpdateManager == null ? 0 : quotaUpdateManager.getLag();
+  }
+
+  @Metric({"BlockReportsInFlight",
+      "Number of block reports admitted by the leader and not processed yet"})
+  public int getBlockReportsInFlight() {
+    return blockManager.getBlockReportScheduler().getReportsInFlight();
+  }
+
+  @Metric({"BlockReportBlocksInFlight",
+      "Number of blocks in the block reports admitted by the leader"})
+  public long getBlockReportBlocksInFlight() {
+    return blockManager.getBlockReportScheduler().getBlocksInFlight();
+  }
+
+  @Metric({"BlockReportAdmissionLimit",
+      "Number of blocks the leader currently admits in block reports"})
+  public long getBlockReportAdmissionLimit() {
+    return blockManager.getBlockReportScheduler().getLimit();
+  }
+
+  @Metric({"BlockReportsRefused", "Number of block reports told to wait"})
+  public long getBlockReportsRefused() {
+    return blockManager.getBlockReportScheduler().getRefused();
+  }
+
+  @Metric({"BlockReportAvgWaitTime",
+      "Average time the admitted block reports waited in msec"})
+  public long getBlockReportAvgWaitTime() {
+    return blockManager.getBlockReportScheduler().getAvgWaitTime();
+  }
+
+  @Metric({"IncrementalBlockReportBlocks",
+      "Number of blocks of incremental block reports processed"})
+  public long getIncrementalBlockReportBlocks() {
+    return blockManager.getIncrementalReportBlocks();
+  }
+
+  @Metric({"IncrementalBlockReportTransactions",
+      "Number of transactions that applied incremental block reports"})
+  public long getIncrementalBlockReportTransactions() {
+    return blockManager.getIncrementalReportTransactions();
+  }
+
+  @Metric({"IncrementalBlockReportBlocksPerSec",
+      "Blocks of incremental block reports processed per second"})
+  public long getIncrementalBlockReportBlocksPerSec() {
+    return blockManager.getIncrementalReportBlocksPerSecond();
+  }
+
   /**
    * @see ClientProtocol#getStats()
    */
@@ -5771,7 +6327,8 @@ public void acquireLock(TransactionLocks locks) throws IOException {
                 .add(lf.getBlockLock(oldBlock.getBlockId(), inodeIdentifier))
                 .add(lf.getBlockRelated(BLK.UC))
                 .add(lf.getLastBlockHashBucketsLock())
-                .add(lf.getRetryCacheEntryLock(Server.getClientId(), Server.getCallId()));
+                .add(lf.getRetryCacheEntryLock(Server.getClientId(), Server.getCallId(),
+                    retryCache));
       }
 
       @Override
@@ -6835,6 +7392,14 @@ public ExecutorService getSubtreeOperationsExecutor() {
     return subtreeOperationsExecutor;
   }
 
+  int getSubtreeListingBatchSize() {
+    return subtreeListingBatchSize;
+  }
+
+  int getSubtreeListingMaxInFlight() {
+    return subtreeListingMaxInFlight;
+  }
+
   /**
    * Setting the quota of a directory in multiple transactions. Calculating the
    * namespace counts of a large directory tree might take to much time for a
@@ -7189,6 +7754,9 @@ void multiTransactionalRename(final String src1, final String dst1,
         if (srcSubTreeRoot != null) { //only unlock if locked
           unlockSubtree(src, srcSubTreeRoot.getInodeId());
         }
+      } else if (srcSubTreeRoot != null) {
+        // the rename transaction removed the subtree lock
+        subtreeLockIndex.remove(src);
       }
     }
       success = true;
@@ -7468,6 +8036,9 @@ private boolean renameToInt(final String src1, final String dst1) throws IOExcep
         if (srcSubTreeRoot != null) { //only unlock if locked
           unlockSubtree(src, srcSubTreeRoot.getInodeId());
         }
+     } else if (srcSubTreeRoot != null) {
+        // the rename transaction removed the subtree lock
+        subtreeLockIndex.remove(src);
      }
     }
   }
@@ -7563,9 +8134,9 @@ public Object performTask() throws IOException {
   /**
    * Delete a directory tree in multiple transactions. Deleting a large directory
    * tree might take to much time for a single transaction. Hence, this function
-   * first builds up an in-memory representation of the directory tree to be
-   * deleted and then deletes it level by level. The directory tree is locked
-   * during the delete to prevent any concurrent modification.
+   * walks the directory tree and deletes the directories bottom up while it
+   * walks, see {@link SubtreeDeleter}. The directory tree is locked during the
+   * delete to prevent any concurrent modification.
    *
    * @param path
    *    the path to be deleted
@@ -7643,142 +8214,168 @@ private boolean multiTransactionalDeleteInternal(final String path1,
 
         //sub tree operation
         try {
+          // the operation record is only marked as a delete, which the leader
+          // resumes if we die, once the whole subtree has been checked
+          FSPermissionChecker pc = getPermissionChecker();
+          boolean checkSubtree = isPermissionEnabled && !pc.isSuperUser();
           subtreeRoot = lockSubtreeAndCheckPathPermission(path, false, null,
-              FsAction.WRITE, null, null,
-              SubTreeOperation.Type.DELETE_STO);
-
-          List<AclEntry> nearestDefaultsForSubtree = calculateNearestDefaultAclForSubtree(pathInfo);
-          AbstractFileTree.FileTree fileTree = new AbstractFileTree.FileTree(this, subtreeRoot, FsAction.ALL,
-              nearestDefaultsForSubtree);
-          fileTree.buildUp();
-          delayAfterBbuildingTree("Built tree for "+path1+" for delete op");
-
-          if (dir.isQuotaEnabled()) {
-            Iterator<Integer> idIterator = fileTree.getAllINodesIds().iterator();
-            synchronized (idIterator) {
-              quotaUpdateManager.addPrioritizedUpdates(idIterator);
-              try {
-                idIterator.wait();
-              } catch (InterruptedException e) {
-                // Not sure if this can happen if we are not shutting down but we need to abort in case it happens.
-                throw new IOException("Operation failed due to an Interrupt");
-              }
-            }
+              FsAction.WRITE, null, null, checkSubtree ?
+                  SubTreeOperation.Type.NA : SubTreeOperation.Type.DELETE_STO);
+
+          if (checkSubtree) {
+            List<AclEntry> nearestDefaultsForSubtree = calculateNearestDefaultAclForSubtree(pathInfo);
+            AbstractFileTree.CountingFileTree fileTree = new AbstractFileTree.CountingFileTree(this,
+                subtreeRoot, FsAction.ALL, nearestDefaultsForSubtree);
+            fileTree.buildUp();
+            journalSubtreeDelete(path, subtreeRoot.getInodeId());
           }
+          delayAfterBbuildingTree("Built tree for "+path1+" for delete op");
 
-          for (int i = fileTree.getHeight(); i > 0; i--) {
-            if (!deleteTreeLevel(path, fileTree.getSubtreeRoot().getId(), fileTree, i)) {
-              ret = false;
-              return ret;
-            }
-          }
+          ret = newSubtreeDeleter(path, subtreeRoot).delete();
+          return ret;
         } finally {
           if (subtreeRoot != null) {
             unlockSubtree(path, subtreeRoot.getInodeId());
           }
         }
-        ret = true;
-        return ret;
       } finally {
         retryCacheSetStateTransactional(cacheEntry, ret);
       }
     }
   }
 
-  private boolean deleteTreeLevel(final String subtreeRootPath, final int subTreeRootID,
-      final AbstractFileTree.FileTree fileTree, int level) throws TransactionContextException, IOException {
-    ArrayList<Future> barrier = new ArrayList<>();
-
-     for (final ProjectedINode dir : fileTree.getDirsByLevel(level)) {
-       if (fileTree.countChildren(dir.getId()) <= BIGGEST_DELETABLE_DIR) {
-         final String path = fileTree.createAbsolutePath(subtreeRootPath, dir);
-         Future f = multiTransactionDeleteInternal(path, subTreeRootID);
-         barrier.add(f);
-       } else {
-         //delete the content of the directory one by one.
-         for (final ProjectedINode inode : fileTree.getChildren(dir.getId())) {
-           if(!inode.isDirectory()) {
-             final String path = fileTree.createAbsolutePath(subtreeRootPath, inode);
-             Future f = multiTransactionDeleteInternal(path, subTreeRootID);
-             barrier.add(f);
-           }
-         }
-         // the dir is empty now. delete it.
-         final String path = fileTree.createAbsolutePath(subtreeRootPath, dir);
-         Future f = multiTransactionDeleteInternal(path, subTreeRootID);
-         barrier.add(f);
-       }
-     }
+  private SubtreeDeleter newSubtreeDeleter(String path,
+      INodeIdentifier subtreeRoot) {
+    return new SubtreeDeleter(this, path, subtreeRoot, BIGGEST_DELETABLE_DIR,
+        subtreeDeleteMaxInFlight, dir.isQuotaEnabled());
+  }
 
-    boolean result = true;
-    for (Future f : barrier) {
+  /**
+   * Applies the outstanding quota updates of the given inodes, so that they
+   * can be deleted. Only the leader can do it.
+   */
+  void prioritizeQuotaUpdates(Iterator<Integer> idIterator)
+      throws IOException {
+    synchronized (idIterator) {
+      quotaUpdateManager.addPrioritizedUpdates(idIterator);
       try {
-        if (!((Boolean) f.get())) {
-          result = false;
-        }
-      } catch (ExecutionException e) {
-        result = false;
-        LOG.error("Exception was thrown during partial delete", e);
-        Throwable throwable= e.getCause();
-        if ( throwable instanceof  IOException ){
-          throw (IOException)throwable; //pass the exception as is to the client
-        } else {
-          throw new IOException(e); //only io exception as passed to clients.
-        }
+        idIterator.wait();
       } catch (InterruptedException e) {
-        e.printStackTrace();
+        // Not sure if this can happen if we are not shutting down but we need to abort in case it happens.
+        throw new IOException("Operation failed due to an Interrupt");
       }
     }
-    return result;
   }
 
-  private Future multiTransactionDeleteInternal(final String path1, final int subTreeRootId)
-          throws StorageException, TransactionContextException, IOException {
-   byte[][] pathComponents = FSDirectory.getPathComponentsForReservedPath(path1);
-   final String path = FSDirectory.resolvePath(path1, pathComponents, dir);
-   return  subtreeOperationsExecutor.submit(new Callable<Boolean>() {
-        @Override
-        public Boolean call() throws Exception {
-          HopsTransactionalRequestHandler deleteHandler =
-                  new HopsTransactionalRequestHandler(HDFSOperationType.SUBTREE_DELETE) {
-                    @Override
-                    public void acquireLock(TransactionLocks locks)
-                            throws IOException {
-                      LockFactory lf = LockFactory.getInstance();
-                      INodeLock il = lf.getINodeLock(INodeLockType.WRITE_ON_TARGET_AND_PARENT,
-                              INodeResolveType.PATH_AND_ALL_CHILDREN_RECURSIVELY,path)
-                               .setNameNodeID(nameNode.getId())
-                              .setActiveNameNodes(nameNode.getActiveNameNodes().getActiveNodes())
-                              .skipReadingQuotaAttr(!dir.isQuotaEnabled())
-                              .setIgnoredSTOInodes(subTreeRootId);
-                      locks.add(il)
-                              .add(lf.getLeaseLock(LockType.WRITE))
-                              .add(lf.getLeasePathLock(LockType.READ_COMMITTED))
-                              .add(lf.getBlockLock()).add(
-                              lf.getBlockRelated(BLK.RE, BLK.CR, BLK.UC, BLK.UR, BLK.PE, BLK.IV));
-                      if (dir.isQuotaEnabled()) {
-                        locks.add(lf.getQuotaUpdateLock(true, path));
-                      }
-                      if (erasureCodingEnabled) {
-                        locks.add(lf.getEncodingStatusLock(true, LockType.WRITE, path));
-                      }
-                    }
-
-                    @Override
-                    public Object performTask() throws IOException {
-                      if(!deleteInternal(path,true,false)){
-                        //at this point the delete op is expected to succeed. Apart from DB errors
-                        // this can only fail if the quiesce phase in subtree operation failed to
-                        // quiesce the subtree. See TestSubtreeConflicts.testConcurrentSTOandInodeOps
-                        throw new SubtreeQuiesceException("Unable to Delete path: "+path1+". Possible subtree quiesce failure");
-
-                      }
-                      return true;
-                    }
-                  };
-          return (Boolean) deleteHandler.handle(this);
+  /**
+   * Marks the subtree operation record of a delete that passed the
+   * permission checks, from then on the delete is resumed by the leader if
+   * this namenode dies before it is done.
+   */
+  private void journalSubtreeDelete(final String path,
+      final int subtreeRootId) throws IOException {
+    new HopsTransactionalRequestHandler(HDFSOperationType.SET_SUBTREE_LOCK) {
+      @Override
+      public void acquireLock(TransactionLocks locks) throws IOException {
+        LockFactory lf = LockFactory.getInstance();
+        INodeLock il = lf.getINodeLock(INodeLockType.READ_COMMITTED, INodeResolveType.PATH, path)
+            .setNameNodeID(nameNode.getId())
+            .setActiveNameNodes(nameNode.getActiveNameNodes().getActiveNodes())
+            .skipReadingQuotaAttr(!dir.isQuotaEnabled())
+            .setIgnoredSTOInodes(subtreeRootId);
+        locks.add(il).add(lf.getSubTreeOpsLock(LockType.READ_COMMITTED,
+            getSubTreeLockPathPrefix(path)));
+      }
+
+      @Override
+      public Object performTask() throws IOException {
+        EntityManager.update(new SubTreeOperation(getSubTreeLockPathPrefix(path),
+            nameNode.getId(), SubTreeOperation.Type.DELETE_STO));
+        return null;
+      }
+    }.handle(this);
+  }
+
+  /**
+   * Finishes a subtree delete started by a namenode that died. Whatever is
+   * left of the subtree is deleted without checking the permissions again,
+   * as the delete was only journaled once they were checked.
+   * <p>
+   * The subtree and its record are only unlocked once the delete succeeded.
+   * If it fails they stay locked by this namenode, so the delete is resumed
+   * by the next call, or by the next leader if this namenode dies.
+   *
+   * @param path
+   *    the path of the subtree operation record
+   */
+  void resumeSubtreeDelete(String path) throws IOException {
+    String subtreePath = path;
+    if (subtreePath.length() > 1 && subtreePath.endsWith("/")) {
+      subtreePath = subtreePath.substring(0, subtreePath.length() - 1);
+    }
+    INodeIdentifier subtreeRoot = resumedDeletes.get(subtreePath);
+    if (subtreeRoot == null) {
+      // taking the lock over also makes the record ours
+      subtreeRoot = lockSubtree(subtreePath, SubTreeOperation.Type.DELETE_STO);
+      if (subtreeRoot == null) {
+        // the subtree is gone, only the record is left
+        unlockSubtree(subtreePath, -1);
+        return;
+      }
+      resumedDeletes.put(subtreePath, subtreeRoot);
+    }
+    SubtreeDeleter deleter = newSubtreeDeleter(subtreePath, subtreeRoot);
+    if (!deleter.delete()) {
+      throw new IOException("Could not delete the root of " + subtreePath);
+    }
+    LOG.info("Resumed the delete of " + subtreePath + ", " +
+        deleter.getDeleteTransactions() + " transactions were needed");
+    unlockSubtree(subtreePath, subtreeRoot.getInodeId());
+    resumedDeletes.remove(subtreePath);
+  }
+
+  /**
+   * Deletes a path of a locked subtree, with all that is left under it, in
+   * one transaction.
+   */
+  void deleteSubtreePart(final String path, final int subTreeRootId)
+      throws IOException {
+    new HopsTransactionalRequestHandler(HDFSOperationType.SUBTREE_DELETE) {
+      @Override
+      public void acquireLock(TransactionLocks locks)
+              throws IOException {
+        LockFactory lf = LockFactory.getInstance();
+        INodeLock il = lf.getINodeLock(INodeLockType.WRITE_ON_TARGET_AND_PARENT,
+                INodeResolveType.PATH_AND_ALL_CHILDREN_RECURSIVELY,path)
+                 .setNameNodeID(nameNode.getId())
+                .setActiveNameNodes(nameNode.getActiveNameNodes().getActiveNodes())
+                .skipReadingQuotaAttr(!dir.isQuotaEnabled())
+                .setIgnoredSTOInodes(subTreeRootId);
+        locks.add(il)
+                .add(lf.getLeaseLock(LockType.WRITE))
+                .add(lf.getLeasePathLock(LockType.READ_COMMITTED))
+                .add(lf.getBlockLock()).add(
+                lf.getBlockRelated(BLK.RE, BLK.CR, BLK.UC, BLK.UR, BLK.PE, BLK.IV));
+        if (dir.isQuotaEnabled()) {
+          locks.add(lf.getQuotaUpdateLock(true, path));
         }
-      });
+        if (erasureCodingEnabled) {
+          locks.add(lf.getEncodingStatusLock(true, LockType.WRITE, path));
+        }
+      }
+
+      @Override
+      public Object performTask() throws IOException {
+        if(!deleteInternal(path,true,false)){
+          //at this point the delete op is expected to succeed. Apart from DB errors
+          // this can only fail if the quiesce phase in subtree operation failed to
+          // quiesce the subtree. See TestSubtreeConflicts.testConcurrentSTOandInodeOps
+          throw new SubtreeQuiesceException("Unable to Delete path: "+path+". Possible subtree quiesce failure");
+
+        }
+        return true;
+      }
+    }.handle(this);
   }
 
   /**
@@ -7829,7 +8426,7 @@ private INodeIdentifier lockSubtreeAndCheckPathPermission(final String path,
       return null;
     }
 
-    return (INodeIdentifier) new HopsTransactionalRequestHandler(
+    INodeIdentifier subtreeRoot = (INodeIdentifier) new HopsTransactionalRequestHandler(
         HDFSOperationType.SET_SUBTREE_LOCK) {
 
       @Override
@@ -7897,6 +8494,10 @@ public Object performTask() throws IOException {
         }
       }
     }.handle(this);
+    if (subtreeRoot != null) {
+      subtreeLockIndex.add(path, getNamenodeId(), stoType);
+    }
+    return subtreeRoot;
   }
 
   /**
@@ -7921,6 +8522,16 @@ private String getSubTreeLockPathPrefix(String path){
    */
   private void checkSubTreeLocks(String path) throws TransactionContextException,
           StorageException, SubtreeLockedException{
+    if (isWaitingForSubtreeUnlock()) {
+      // the operations known by this namenode are found without reading the
+      // database. The index may lag behind, which only costs a wait.
+      String locked = subtreeLockIndex.isLocked(path) ? path :
+          subtreeLockIndex.findLockedDescendant(path);
+      if (locked != null) {
+        throw new SubtreeLockedException("There is at least one ongoing " +
+            "subtree operation on the descendants. Path: " + locked, locked);
+      }
+    }
     List<SubTreeOperation> ops = (List<SubTreeOperation>)
         EntityManager.findList(SubTreeOperation.Finder.ByPathPrefix,
             path);  // THIS RETURNS ONLY ONE SUBTREE OP IN THE CHILD TREE. INCREASE THE LIMIT IN IMPL LAYER IF NEEDED
@@ -7933,7 +8544,8 @@ private void checkSubTreeLocks(String path) throws TransactionContextException,
       if(activeNameNodeIds.contains(op.getNameNodeId())){
         throw new SubtreeLockedException("There is at least one ongoing " +
             "subtree operation on the descendants. Path: "+op.getPath()
-            +" Operation "+op.getOpType()+" NameNodeId "+ op.getNameNodeId());
+            +" Operation "+op.getOpType()+" NameNodeId "+ op.getNameNodeId(),
+            op.getPath());
       }else{ // operation started by a dead namenode.
         //TODO: what if the activeNameNodeIds does not contain all new namenode ids
         //An operation belonging to new namenode might be considered dead
@@ -7979,6 +8591,49 @@ public Object performTask() throws IOException {
         return null;
       }
     }.handle(this);
+    subtreeLockIndex.remove(path);
+  }
+
+  /**
+   * @return whether client path operations blocked by a subtree operation
+   * wait for it to be done
+   */
+  public boolean isWaitingForSubtreeUnlock() {
+    return subtreeLockMaxWait > 0;
+  }
+
+  /**
+   * Waits for the subtree that made a transaction fail to be unlocked, if it
+   * is known by this namenode.
+   *
+   * @param waited
+   *     how long the operation already waited, in ms
+   * @param retried
+   *     whether the operation already ran again after it was blocked
+   * @return true if the operation should run again
+   */
+  public boolean awaitSubtreeUnlock(SubtreeLockedException e, long waited,
+      boolean retried) {
+    String lockedPath = e.getLockedPath();
+    long remaining = subtreeLockMaxWait - waited;
+    if (lockedPath == null || remaining <= 0) {
+      return false;
+    }
+    if (!subtreeLockIndex.isLocked(lockedPath)) {
+      // unlocked since, or locked by a namenode we did not hear of yet
+      return !retried;
+    }
+    try {
+      return subtreeLockIndex.awaitUnlocked(lockedPath, remaining);
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+
+  @VisibleForTesting
+  SubtreeLockIndex getSubtreeLockIndex() {
+    return subtreeLockIndex;
   }
 
   private int pid(String param) {
@@ -8127,7 +8782,8 @@ public void acquireLock(TransactionLocks locks) throws IOException {
                 .setActiveNameNodes(nameNode.getActiveNameNodes().getActiveNodes());
         locks.add(il);
         locks.add(lf.getEncodingStatusLock(LockType.WRITE, sourcePath))
-                .add(lf.getRetryCacheEntryLock(Server.getClientId(), Server.getCallId()));
+                .add(lf.getRetryCacheEntryLock(Server.getClientId(), Server.getCallId(),
+                    retryCache));
       }
 
       @Override
@@ -8903,7 +9559,7 @@ public Object performTask() throws IOException {
             throw new  IOException("The requested file is not stored in the database.");
           }
 
-          return ((INodeFile)iNode).getFileDataInDB();
+          return getFileDataInDB(file);
         } else{
           throw new  FileNotFoundException("Inode id: "+id+" is not a file.");
         }
@@ -8912,6 +9568,30 @@ public Object performTask() throws IOException {
   }
 
 
+  /**
+   * Reads the content of a closed file stored in the database, from the
+   * cache if it was not written since it was cached.
+   */
+  private byte[] getFileDataInDB(INodeFile file) throws StorageException {
+    if (smallFileDataCache == null || file.isUnderConstruction()) {
+      return file.getFileDataInDB();
+    }
+    byte[] data = smallFileDataCache.get(file.getId(),
+        file.getGenerationStamp(), file.getSize());
+    if (data == null) {
+      data = file.getFileDataInDB();
+      if (data != null) {
+        smallFileDataCache.put(file.getId(), file.getGenerationStamp(), data);
+      }
+    }
+    return data;
+  }
+
+  @VisibleForTesting
+  SmallFileDataCache getSmallFileDataCache() {
+    return smallFileDataCache;
+  }
+
   void checkAccess(final String src, final FsAction mode) throws IOException {
 
     HopsTransactionalRequestHandler checkAccessHandler =
@@ -8999,12 +9679,18 @@ public Object performTask() throws IOException {
   }
 
   private CacheEntry retryCacheWaitForCompletionTransactional() throws IOException {
+    if (retryCache != null && retryCache.isStaged() &&
+        !retryCache.mayBePersisted(Server.getClientId(), Server.getCallId())) {
+      // nothing to read or to lock in the database
+      return RetryCacheDistributed.waitForCompletionInMemory(retryCache);
+    }
     HopsTransactionalRequestHandler rh = new HopsTransactionalRequestHandler(HDFSOperationType
             .RETRY_CACHE) {
       @Override
       public void acquireLock(TransactionLocks locks) throws IOException {
         LockFactory lf = getInstance();
-        locks.add(lf.getRetryCacheEntryLock(Server.getClientId(), Server.getCallId()));
+        locks.add(lf.getRetryCacheEntryLock(Server.getClientId(), Server.getCallId(),
+            retryCache));
       }
 
       @Override
@@ -9016,12 +9702,18 @@ public Object performTask() throws IOException {
   }
 
   private CacheEntry retryCacheSetStateTransactional(final CacheEntry cacheEntry, final boolean ret) throws IOException {
+    if (retryCache != null && retryCache.isStaged()) {
+      // written with the next batch of the retry cache cleaner
+      RetryCacheDistributed.setState(cacheEntry, ret);
+      return null;
+    }
     HopsTransactionalRequestHandler rh = new HopsTransactionalRequestHandler(HDFSOperationType
             .RETRY_CACHE) {
       @Override
       public void acquireLock(TransactionLocks locks) throws IOException {
         LockFactory lf = getInstance();
-        locks.add(lf.getRetryCacheEntryLock(Server.getClientId(), Server.getCallId()));
+        locks.add(lf.getRetryCacheEntryLock(Server.getClientId(), Server.getCallId(),
+            retryCache));
       }
 
       @Override
@@ -9033,24 +9725,143 @@ public Object performTask() throws IOException {
     return (CacheEntry) rh.handle(this);
   }
 
+  /**
+   * Reads the subtree operations of the other namenodes into the subtree
+   * lock index, and drops the ones of the namenodes that are gone.
+   */
+  class SubtreeLockIndexRefresher implements Runnable {
+    private volatile boolean shouldRun = true;
+    private final long interval = Math.max(1, conf.getLong(
+        DFS_SUBTREE_LOCK_INDEX_REFRESH_INTERVAL_KEY,
+        DFS_SUBTREE_LOCK_INDEX_REFRESH_INTERVAL_DEFAULT));
+
+    private void refresh() throws IOException {
+      List<Long> activeIds = new ArrayList<>();
+      for (ActiveNode node : nameNode.getActiveNameNodes().getActiveNodes()) {
+        activeIds.add(node.getId());
+      }
+      subtreeLockIndex.retainNameNodes(activeIds);
+      for (final long id : activeIds) {
+        if (id == getNamenodeId()) {
+          // kept up to date when the subtrees are locked and unlocked
+          continue;
+        }
+        Collection<SubTreeOperation> ops =
+            (Collection<SubTreeOperation>) new LightWeightRequestHandler(
+                HDFSOperationType.GET_SUBTREE_OPS) {
+              @Override
+              public Object performTask() throws IOException {
+                OngoingSubTreeOpsDataAccess da = (OngoingSubTreeOpsDataAccess)
+                    HdfsStorageFactory.getDataAccess(
+                        OngoingSubTreeOpsDataAccess.class);
+                return da.allOpsByNN(id);
+              }
+            }.handle();
+        subtreeLockIndex.refresh(id, ops);
+      }
+    }
+
+    @Override
+    public void run() {
+      while (fsRunning && shouldRun) {
+        try {
+          refresh();
+        } catch (IOException e) {
+          FSNamesystem.LOG.warn("Could not refresh the subtree lock index", e);
+        }
+        try {
+          Thread.sleep(interval);
+        } catch (InterruptedException e) {
+          return;
+        }
+      }
+    }
+
+    public void stopMonitor() {
+      shouldRun = false;
+    }
+  }
+
   class RetryCacheCleaner implements Runnable {
 
     boolean shouldCacheCleanerRun = true;
     long entryExpiryNanos;
     Timer timer = new Timer();
+    // time between two runs, the staged entries are written at each run
+    final long interval;
+    final int flushBatchSize;
 
     public RetryCacheCleaner() {
       long entryExpiryMillis = conf.getLong(
           DFS_NAMENODE_RETRY_CACHE_EXPIRYTIME_MILLIS_KEY,
           DFS_NAMENODE_RETRY_CACHE_EXPIRYTIME_MILLIS_DEFAULT);
       entryExpiryNanos = entryExpiryMillis * 1000 * 1000;
+      if (retryCache != null && retryCache.isStaged()) {
+        interval = Math.max(1, conf.getLong(
+            DFS_NAMENODE_RETRY_CACHE_FLUSH_INTERVAL_KEY,
+            DFS_NAMENODE_RETRY_CACHE_FLUSH_INTERVAL_DEFAULT));
+      } else {
+        interval = 1000;
+      }
+      flushBatchSize = Math.max(1, conf.getInt(
+          DFS_NAMENODE_RETRY_CACHE_FLUSH_BATCH_SIZE_KEY,
+          DFS_NAMENODE_RETRY_CACHE_FLUSH_BATCH_SIZE_DEFAULT));
+    }
+
+    /**
+     * Writes the completed entries of the staged retry cache in batches.
+     */
+    private void persistStagedEntries() throws IOException {
+      List<CacheEntry> staged = new ArrayList<>();
+      if (retryCache.drainToPersist(staged) == 0) {
+        return;
+      }
+      for (int i = 0; i < staged.size(); i += flushBatchSize) {
+        final List<CacheEntry> batch = staged.subList(i,
+            Math.min(staged.size(), i + flushBatchSize));
+        try {
+          new LightWeightRequestHandler(
+              HDFSOperationType.PERSIST_RETRY_CACHE) {
+            @Override
+            public Object performTask() throws IOException {
+              List<RetryCacheEntry> entries = new ArrayList<>(batch.size());
+              for (CacheEntry entry : batch) {
+                byte[] payload = entry instanceof CacheEntryWithPayload ?
+                    ((CacheEntryWithPayload) entry).getPayload() : null;
+                entries.add(new RetryCacheEntry(entry.getClientId(),
+                    entry.getCallId(), payload, entry.getExpirationTime(),
+                    entry.getState()));
+              }
+              RetryCacheEntryDataAccess da = (RetryCacheEntryDataAccess)
+                  HdfsStorageFactory.getDataAccess(
+                      RetryCacheEntryDataAccess.class);
+              da.prepare(Collections.<RetryCacheEntry>emptyList(), entries);
+              return null;
+            }
+          }.handle();
+        } catch (IOException e) {
+          // keep what is left for the next run
+          retryCache.restage(staged.subList(i, staged.size()));
+          throw e;
+        }
+        retryCache.persisted(batch);
+      }
     }
 
     @Override
     public void run() {
       try {
-        int numRun = 0;
+        long lastRemoveOlds = 0;
         while (fsRunning && shouldCacheCleanerRun) {
+          if (retryCache != null && retryCache.isStaged()) {
+            try {
+              persistStagedEntries();
+            } catch (IOException e) {
+              FSNamesystem.LOG.warn("Could not write the retry cache entries",
+                  e);
+            }
+          }
+
           final List<CacheEntry> toRemove = new ArrayList<>();
           int num = retryCache.getToRemove().drainTo(toRemove);
           if (num > 0) {
@@ -9073,7 +9884,8 @@ public Object performTask() throws IOException {
             rh.handle();
           }
 
-          if (isLeader() && numRun % 60 == 0) {
+          if (isLeader() && Time.monotonicNow() - lastRemoveOlds >= 60000) {
+            lastRemoveOlds = Time.monotonicNow();
             new LightWeightRequestHandler(
                 HDFSOperationType.CLEAN_RETRY_CACHE) {
               @Override
@@ -9087,8 +9899,7 @@ public Object performTask() throws IOException {
             }.handle();
           }
 
-          Thread.sleep(1000);
-          numRun++;
+          Thread.sleep(interval);
         }
       } catch (Exception e) {
         FSNamesystem.LOG.error("Exception in RetryCacheCleaner: ", e);
@@ -215,6 +215,8 @@ public void storeFileDataInDB(byte[] data)
     }
 
     fida.add(fid);
+    // a new version of the content, for the caches of the content
+    nextGenerationStamp();
     FSNamesystem.LOG.debug("Stuffed Inode:  the file has been stored in the database ");
   }
 
@@ -40,9 +40,11 @@
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.DFSUtil;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants;
+import org.apache.hadoop.hdfs.server.namenode.metrics.NameNodeMetrics;
 import org.apache.hadoop.util.Daemon;
 
 import java.io.IOException;
@@ -54,6 +56,8 @@
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static io.hops.transaction.lock.LockFactory.BLK;
 import static io.hops.transaction.lock.LockFactory.getInstance;
@@ -94,6 +98,15 @@ public class LeaseManager {
   private Daemon lmthread;
   private volatile boolean shouldRunMonitor;
 
+  // renewals of the clients that are written in batches by the flusher,
+  // holder to time of the last renewal
+  private final ConcurrentMap<String, Long> pendingRenewals =
+      new ConcurrentHashMap<>();
+  private long renewalFlushInterval = 0;
+  private int renewalFlushBatchSize =
+      DFSConfigKeys.DFS_NAMENODE_LEASE_RENEWAL_FLUSH_BATCH_SIZE_DEFAULT;
+  private Daemon flusherThread;
+
   LeaseManager(FSNamesystem fsnamesystem) {
     this.fsnamesystem = fsnamesystem;
   }
@@ -271,6 +284,116 @@ Lease reassignLease(Lease lease, String src, String newHolder)
     return newLease;
   }
 
+  /**
+   * Makes the clients renew their leases in memory on the leader. The
+   * renewals are written in batches every interval ms, and by the leader
+   * before it looks for the leases past their hard limit, which is
+   * unchanged. The other namenodes write each renewal in its own
+   * transaction. The soft limit is only considered reached once the lease is
+   * older than it plus twice the interval, so that the renewals still waiting
+   * on the leader, or on a namenode that just lost the leadership, are not
+   * missed.
+   *
+   * @param interval 0 to write each renewal in its own transaction
+   */
+  void setRenewalFlushing(long interval, int batchSize) {
+    this.renewalFlushInterval = Math.max(0, interval);
+    this.renewalFlushBatchSize = Math.max(1, batchSize);
+  }
+
+  boolean isCoalescingRenewals() {
+    return renewalFlushInterval > 0;
+  }
+
+  /**
+   * Time a renewal may wait before it is written.
+   */
+  private long getRenewalGrace() {
+    return 2 * renewalFlushInterval;
+  }
+
+  /**
+   * Records a renewal of the leases of the client, to be written by the
+   * flusher.
+   */
+  void bufferRenewal(String holder) {
+    if (pendingRenewals.put(holder, now()) != null) {
+      NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+      if (metrics != null) {
+        metrics.incrLeaseRenewalsCoalesced();
+      }
+    }
+  }
+
+  @VisibleForTesting
+  int getPendingRenewals() {
+    return pendingRenewals.size();
+  }
+
+  /**
+   * Writes the renewals recorded so far.
+   */
+  @VisibleForTesting
+  void flushRenewals() throws IOException {
+    if (pendingRenewals.isEmpty()) {
+      return;
+    }
+    List<String> holders = new ArrayList<>(pendingRenewals.keySet());
+    for (int i = 0; i < holders.size(); i += renewalFlushBatchSize) {
+      Map<String, Long> batch = new HashMap<>();
+      for (String holder : holders.subList(i,
+          Math.min(holders.size(), i + renewalFlushBatchSize))) {
+        Long time = pendingRenewals.remove(holder);
+        if (time != null) {
+          batch.put(holder, time);
+        }
+      }
+      if (!batch.isEmpty()) {
+        flushRenewals(batch);
+      }
+    }
+  }
+
+  private void flushRenewals(final Map<String, Long> batch)
+      throws IOException {
+    long start = now();
+    try {
+      new HopsTransactionalRequestHandler(HDFSOperationType.RENEW_LEASE_BATCH) {
+        @Override
+        public void acquireLock(TransactionLocks locks) throws IOException {
+          LockFactory lf = LockFactory.getInstance();
+          locks.add(lf.getLeasesLock(LockType.WRITE, batch.keySet()));
+        }
+
+        @Override
+        public Object performTask() throws IOException {
+          for (Map.Entry<String, Long> renewal : batch.entrySet()) {
+            Lease lease = getLease(renewal.getKey());
+            if (lease != null && lease.getLastUpdate() < renewal.getValue()) {
+              lease.setLastUpdate(renewal.getValue());
+              EntityManager.update(lease);
+            }
+          }
+          return null;
+        }
+      }.handle(fsnamesystem);
+    } catch (IOException e) {
+      // keep them for the next flush, unless the client renewed again since
+      for (Map.Entry<String, Long> renewal : batch.entrySet()) {
+        Long newer = pendingRenewals.putIfAbsent(renewal.getKey(),
+            renewal.getValue());
+        if (newer != null && newer < renewal.getValue()) {
+          pendingRenewals.put(renewal.getKey(), renewal.getValue());
+        }
+      }
+      throw e;
+    }
+    NameNodeMetrics metrics = NameNode.getNameNodeMetrics();
+    if (metrics != null) {
+      metrics.addLeaseRenewalFlush(batch.size(), now() - start);
+    }
+  }
+
   /**
    * Renew the lease(s) held by the given client
    */
@@ -430,6 +553,7 @@ public void run() {
           if (fsnamesystem.isLeader()) {
             try {
               if (!fsnamesystem.isInSafeMode()) {
+                flushRenewals();
                 SortedSet<Lease> sortedLeases =
                     (SortedSet<Lease>) findExpiredLeaseHandler
                         .handle(fsnamesystem);
@@ -572,11 +696,38 @@ private boolean checkLeases(String holder)
     return needSync;
   }
 
+  /**
+   * Writes the buffered renewals every renewalFlushInterval ms, on every
+   * namenode, so that those buffered before the leadership moved are written
+   * too.
+   */
+  class RenewalFlusher implements Runnable {
+    @Override
+    public void run() {
+      while (shouldRunMonitor && fsnamesystem.isRunning()) {
+        try {
+          Thread.sleep(renewalFlushInterval);
+        } catch (InterruptedException ie) {
+          LOG.debug("Lease renewal flusher is interrupted", ie);
+        }
+        try {
+          flushRenewals();
+        } catch (IOException e) {
+          LOG.warn("Could not write the lease renewals", e);
+        }
+      }
+    }
+  }
+
   void startMonitor() {
     Preconditions.checkState(lmthread == null, "Lease Monitor already running");
     shouldRunMonitor = true;
     lmthread = new Daemon(new Monitor());
     lmthread.start();
+    if (isCoalescingRenewals()) {
+      flusherThread = new Daemon(new RenewalFlusher());
+      flusherThread.start();
+    }
   }
   
   void stopMonitor() {
@@ -590,6 +741,15 @@ void stopMonitor() {
       }
       lmthread = null;
     }
+    if (flusherThread != null) {
+      try {
+        flusherThread.interrupt();
+        flusherThread.join(3000);
+      } catch (InterruptedException ie) {
+        LOG.warn("Encountered exception ", ie);
+      }
+      flusherThread = null;
+    }
   }
 
   /**
@@ -607,6 +767,9 @@ private boolean expiredHardLimit(Lease lease) {
   }
 
   public boolean expiredSoftLimit(Lease lease) {
-    return now() - lease.getLastUpdate() > softLimit;
+    Long pending = pendingRenewals.get(lease.getHolder());
+    long lastUpdate = pending == null ? lease.getLastUpdate() :
+        Math.max(pending, lease.getLastUpdate());
+    return now() - lastUpdate > softLimit + getRenewalGrace();
   }
 }
@@ -29,10 +29,18 @@
 import org.slf4j.MDC;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Cleans metadata left behind by the failed namenodes
@@ -48,6 +56,23 @@ public class MDCleaner {
   private Daemon mdCleaner;
   private long stoTableCleanDelay = 0;
   private FSNamesystem namesystem;
+  // the journaled deletes of the failed namenodes, resumed one at a time
+  private final Queue<ResumedDelete> deletesToResume = new ArrayDeque<>();
+  private ResumedDelete resuming;
+  private Future<Boolean> resumedDelete;
+  // the deletes left to resume of each failed namenode, which is kept in
+  // failedNodes until they are done
+  private final Map<Long, Integer> pendingResumes = new HashMap<>();
+
+  private static class ResumedDelete {
+    private final long namenodeId;
+    private final String path;
+
+    ResumedDelete(long namenodeId, String path) {
+      this.namenodeId = namenodeId;
+      this.path = path;
+    }
+  }
 
   //[S] Singleton does not work in unit tests as multiple NN run in same JVM
 //  private static final MDCleaner instance = new MDCleaner();
@@ -85,16 +110,112 @@ private void clearLocks() throws IOException {
     Iterator<FailedNodeLeDescriptor> iterator = failedNodes.iterator();
     while (iterator.hasNext()) {
       FailedNodeLeDescriptor descriptor = iterator.next();
+      if (pendingResumes.containsKey(descriptor.getId())) {
+        // its locks are cleaned, its deletes are being resumed
+        continue;
+      }
       if ((System.currentTimeMillis() - descriptor.getFailTime()) > stoTableCleanDelay) {
         //find all locked paths;
-        iterator.remove();
         Collection<SubTreeOperation> ops = getPaths(descriptor.getId());
+        int deletes = 0;
         LOG.debug("Cleaning STO Lock for NN: " + descriptor +" No of stale locks: "+ops.size());
         for(SubTreeOperation op : ops){
-          namesystem.unlockSubtree(op.getPath(), -1);
+          try {
+            if (op.getOpType() == SubTreeOperation.Type.DELETE_STO) {
+              // the delete was journaled and may be half done, finish it
+              // instead of leaving a partially deleted subtree behind. Only
+              // the leader can delete subtrees.
+              if (namesystem.isLeader()) {
+                LOG.info("Resuming the delete of " + op.getPath() +
+                    " started by NN: " + descriptor.getId());
+                deletesToResume.add(
+                    new ResumedDelete(descriptor.getId(), op.getPath()));
+                deletes++;
+              }
+            } else {
+              namesystem.unlockSubtree(op.getPath(), -1);
+            }
+          } catch (IOException e) {
+            LOG.warn("Failed to clean the STO Lock of " + op.getPath(), e);
+          }
+        }
+        if (deletes == 0) {
+          iterator.remove();
+        } else {
+          pendingResumes.put(descriptor.getId(), deletes);
         }
       }
     }
+    resumeNextDelete();
+  }
+
+  /**
+   * Starts the next journaled delete once the previous one is done. They run
+   * on the subtree operations executor so that a big subtree does not hold
+   * up the cleaning of the other locks, and one at a time so that they never
+   * take all its threads while waiting for their part deletes. A delete that
+   * fails is tried again after the others.
+   */
+  private void resumeNextDelete() {
+    if (resumedDelete != null) {
+      if (!resumedDelete.isDone()) {
+        return;
+      }
+      if (resumed(resumedDelete)) {
+        resumeCompleted(resuming);
+      } else {
+        deletesToResume.add(resuming);
+      }
+      resumedDelete = null;
+      resuming = null;
+    }
+    final ResumedDelete delete = deletesToResume.poll();
+    if (delete == null) {
+      return;
+    }
+    try {
+      resumedDelete = namesystem.getSubtreeOperationsExecutor().submit(
+          new Callable<Boolean>() {
+            @Override
+            public Boolean call() {
+              try {
+                namesystem.resumeSubtreeDelete(delete.path);
+                return true;
+              } catch (IOException e) {
+                LOG.warn("Failed to resume the delete of " + delete.path, e);
+                return false;
+              }
+            }
+          });
+      resuming = delete;
+    } catch (RejectedExecutionException e) {
+      LOG.warn("Could not resume the delete of " + delete.path +
+          ", the namenode is shutting down", e);
+      deletesToResume.add(delete);
+    }
+  }
+
+  private static boolean resumed(Future<Boolean> resumedDelete) {
+    try {
+      return resumedDelete.get();
+    } catch (InterruptedException | ExecutionException e) {
+      return false;
+    }
+  }
+
+  private void resumeCompleted(ResumedDelete delete) {
+    int left = pendingResumes.get(delete.namenodeId) - 1;
+    if (left > 0) {
+      pendingResumes.put(delete.namenodeId, left);
+      return;
+    }
+    pendingResumes.remove(delete.namenodeId);
+    Iterator<FailedNodeLeDescriptor> iterator = failedNodes.iterator();
+    while (iterator.hasNext()) {
+      if (iterator.next().getId() == delete.namenodeId) {
+        iterator.remove();
+      }
+    }
   }
 
   Collection<SubTreeOperation> getPaths(final long nnID) throws IOException {
@@ -40,12 +40,12 @@
 import org.apache.hadoop.hdfs.HdfsConfiguration;
 import org.apache.hadoop.hdfs.protocol.ClientProtocol;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
-import org.apache.hadoop.hdfs.server.blockmanagement.BRTrackingService;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.NamenodeRole;
 import org.apache.hadoop.hdfs.server.common.HdfsServerConstants.StartupOption;
 import org.apache.hadoop.hdfs.server.common.StorageInfo;
 import org.apache.hadoop.hdfs.server.datanode.BRLoadBalancingException;
 import org.apache.hadoop.hdfs.server.namenode.metrics.NameNodeMetrics;
+import org.apache.hadoop.hdfs.server.namenode.metrics.TransactionMetrics;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeProtocol;
 import org.apache.hadoop.hdfs.server.protocol.NamenodeProtocol;
 import org.apache.hadoop.hdfs.server.protocol.NamenodeProtocols;
@@ -232,7 +232,6 @@ public long getProtocolVersion(String protocol, long clientVersion)
   /**
    * for block report load balancing
    */
-  private BRTrackingService brTrackingService;
 
   /**
    * Metadata cleaner service. Cleans stale metadata left my dead NNs
@@ -268,6 +267,7 @@ public NamenodeProtocols getRpcServer() {
 
   static void initMetrics(Configuration conf, NamenodeRole role) {
     metrics = NameNodeMetrics.create(conf, role);
+    TransactionMetrics.getInstance().register();
   }
 
   public static NameNodeMetrics getNameNodeMetrics() {
@@ -484,10 +484,6 @@ protected void initialize(Configuration conf) throws IOException {
     RequestHandler.setRetryBaseWaitTime(baseWaitTime);
     RequestHandler.setRetryCount(retryCount);
 
-    this.brTrackingService = new BRTrackingService(conf.getLong(DFSConfigKeys.DFS_BR_LB_DB_VAR_UPDATE_THRESHOLD,
-            DFSConfigKeys.DFS_BR_LB_DB_VAR_UPDATE_THRESHOLD_DEFAULT),
-            conf.getLong(DFSConfigKeys.DFS_BR_LB_TIME_WINDOW_SIZE,
-                    DFSConfigKeys.DFS_BR_LB_TIME_WINDOW_SIZE_DEFAULT));
     this.mdCleaner = MDCleaner.getInstance();
     this.stoTableCleanDelay = conf.getLong(DFSConfigKeys.DFS_SUBTREE_CLEAN_FAILED_OPS_LOCKS_DELAY_KEY,
             DFSConfigKeys.DFS_SUBTREE_CLEAN_FAILED_OPS_LOCKS_DELAY_DEFAULT);
@@ -1193,9 +1189,19 @@ public boolean isLeader() {
   }
 
   public ActiveNode getNextNamenodeToSendBlockReport(final long noOfBlks) throws IOException {
+    return getNextNamenodeToSendBlockReport(noOfBlks, false, 0);
+  }
+
+  public ActiveNode getNextNamenodeToSendBlockReport(final long noOfBlks,
+      boolean firstReport, long waitTime) throws IOException {
     if(leaderElection.isLeader()) {
       LOG.debug("NN Id: "+leaderElection.getCurrentId()+") Received request to assign work ("+noOfBlks+" blks) ");
-      ActiveNode an = brTrackingService.assignWork(leaderElection.getActiveNamenodes(), noOfBlks);
+      // only the first reports sent while in safe mode get priority, the
+      // others do not help to leave it
+      boolean priority = firstReport && namesystem.isInSafeMode();
+      ActiveNode an = namesystem.getBlockManager().getBlockReportScheduler()
+          .assignWork(leaderElection.getActiveNamenodes(), noOfBlks, priority,
+              waitTime);
       return an;
     }else{
       String msg = "NN Id: "+leaderElection.getCurrentId()+") Received request to assign work ("+noOfBlks+" blks). Returning null as I am not the leader NN";
@@ -1204,6 +1210,14 @@ public ActiveNode getNextNamenodeToSendBlockReport(final long noOfBlks) throws I
     }
   }
 
+  public void blockReportCompleted(long namenodeId, long noOfBlks,
+      long processingTime) {
+    if (leaderElection.isLeader()) {
+      namesystem.getBlockManager().getBlockReportScheduler()
+          .workCompleted(namenodeId, noOfBlks, processingTime);
+    }
+  }
+
   private static void dropAndCreateDB(Configuration conf) throws IOException {
     HdfsStorageFactory.setConfiguration(conf);
     HdfsStorageFactory.getConnector().dropAndRecreateDB();
@@ -21,7 +21,9 @@
 import com.google.protobuf.BlockingService;
 import io.hops.exception.ForeignKeyConstraintViolationException;
 import io.hops.leader_election.node.ActiveNode;
+import io.hops.leader_election.node.ActiveNodePBImpl;
 import io.hops.leader_election.node.SortedActiveNodeList;
+import io.hops.leader_election.node.SortedActiveNodeListPBImpl;
 import io.hops.metadata.hdfs.entity.EncodingPolicy;
 import io.hops.metadata.hdfs.entity.EncodingStatus;
 import io.hops.security.Users;
@@ -47,6 +49,7 @@
 import org.apache.hadoop.hdfs.protocol.AclException;
 import org.apache.hadoop.hdfs.protocol.BlockStoragePolicy;
 import org.apache.hadoop.hdfs.protocol.CorruptFileBlocks;
+import org.apache.hadoop.hdfs.protocol.CursorDirectoryListing;
 import org.apache.hadoop.hdfs.protocol.DatanodeID;
 import org.apache.hadoop.hdfs.protocol.DatanodeInfo;
 import org.apache.hadoop.hdfs.protocol.DirectoryListing;
@@ -122,6 +125,7 @@
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
@@ -428,6 +432,14 @@ public LocatedBlocks getBlockLocations(String src, long offset, long length)
     return namesystem
         .getBlockLocations(getClientMachine(), src, offset, length);
   }
+
+  @Override // ClientProtocol
+  public LocatedBlocks[] getBatchedBlockLocations(String[] srcs, long offset,
+      long length) throws IOException {
+    metrics.incrGetBlockLocations(srcs.length);
+    return namesystem.getBatchedBlockLocations(getClientMachine(), srcs,
+        offset, length);
+  }
   
   @Override // ClientProtocol
   public FsServerDefaults getServerDefaults() throws IOException {
@@ -458,6 +470,28 @@ public HdfsFileStatus create(String src, FsPermission masked,
     return stat;
   }
 
+  @Override // ClientProtocol
+  public void createSmallFiles(String[] srcs, byte[][] data,
+      FsPermission masked, String clientName, boolean createParent,
+      short replication, long blockSize) throws IOException {
+    String clientMachine = getClientMachine();
+    if (stateChangeLog.isDebugEnabled()) {
+      stateChangeLog.debug("*DIR* NameNode.createSmallFiles: " + srcs.length +
+          " files for " + clientName + " at " + clientMachine);
+    }
+    for (String src : srcs) {
+      if (!checkPathLength(src)) {
+        throw new IOException("createSmallFiles: Pathname too long.  Limit " +
+            MAX_PATH_LENGTH + " characters, " + MAX_PATH_DEPTH + " levels.");
+      }
+    }
+    namesystem.createSmallFiles(srcs, data, new PermissionStatus(
+            getRemoteUser().getShortUserName(), null, masked), clientName,
+        clientMachine, createParent, replication, blockSize);
+    metrics.incrFilesCreated(srcs.length);
+    metrics.incrCreateFileOps(srcs.length);
+  }
+
   @Override // ClientProtocol
   public LocatedBlock append(String src, String clientName) throws IOException {
     String clientMachine = getClientMachine();
@@ -748,11 +782,31 @@ public DirectoryListing getListing(String src, byte[] startAfter,
     return files;
   }
 
+  @Override // ClientProtocol
+  public CursorDirectoryListing getListingCursor(String src, long cursorId,
+      byte[] startAfter, boolean needLocation, boolean namesOnly)
+      throws IOException {
+    CursorDirectoryListing files = namesystem.getListingCursor(src, cursorId,
+        startAfter, needLocation, namesOnly);
+    if (files != null) {
+      metrics.incrGetListingOps();
+      metrics.incrFilesInGetListingOps(files.getPartialListing().length);
+    }
+    return files;
+  }
+
   @Override // ClientProtocol
   public HdfsFileStatus getFileInfo(String src) throws IOException {
     metrics.incrFileInfoOps();
     return namesystem.getFileInfo(src, true);
   }
+
+  @Override // ClientProtocol
+  public HdfsFileStatus[] getBatchedFileInfo(String[] srcs)
+      throws IOException {
+    metrics.incrFileInfoOps(srcs.length);
+    return namesystem.getBatchedFileInfo(srcs);
+  }
   
   @Override // ClientProtocol
   public boolean isFileClosed(String src) throws IOException{
@@ -1110,8 +1164,16 @@ public SortedActiveNodeList getActiveNamenodes() throws IOException {
   }
 
   @Override
-  public ActiveNode getNextNamenodeToSendBlockReport(long noOfBlks) throws IOException {
-    return nn.getNextNamenodeToSendBlockReport(noOfBlks);
+  public ActiveNode getNextNamenodeToSendBlockReport(long noOfBlks,
+      boolean firstReport, long waitTime) throws IOException {
+    return nn.getNextNamenodeToSendBlockReport(noOfBlks, firstReport,
+        waitTime);
+  }
+
+  @Override // DatanodeProtocol
+  public void blockReportCompleted(long namenodeId, long noOfBlks,
+      long processingTime) throws IOException {
+    nn.blockReportCompleted(namenodeId, noOfBlks, processingTime);
   }
   
   @Override
@@ -1120,7 +1182,25 @@ public void ping() throws IOException {
   
   @Override
   public SortedActiveNodeList getActiveNamenodesForClient() throws IOException {
-    return nn.getActiveNameNodes();
+    SortedActiveNodeList activeNamenodes = nn.getActiveNameNodes();
+    // tell the client how loaded this namenode is, the other entries are
+    // left as they are
+    long myId = nn.getLeCurrentId();
+    List<ActiveNode> namenodes = new ArrayList<>(activeNamenodes.size());
+    for (ActiveNode an : activeNamenodes.getActiveNodes()) {
+      if (an.getId() == myId) {
+        ActiveNodePBImpl loaded = new ActiveNodePBImpl(an.getId(),
+            an.getHostname(), an.getRpcServerIpAddress(),
+            an.getRpcServerPort(), an.getHttpAddress(),
+            an.getServiceRpcIpAddress(), an.getServiceRpcPort());
+        loaded.setLoad(clientRpcServer.getCallQueueLen(),
+            clientRpcServer.getNumActiveHandlers(),
+            clientRpcServer.getNumHandlers());
+        an = loaded;
+      }
+      namenodes.add(an);
+    }
+    return new SortedActiveNodeListPBImpl(namenodes);
   }
 
   @Override
@@ -35,13 +35,18 @@
 import org.apache.commons.logging.LogFactory;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hdfs.DFSConfigKeys;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.hadoop.util.Daemon;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
-import static org.apache.hadoop.util.ExitUtil.terminate;
 import static org.apache.hadoop.util.ExitUtil.terminate;
 
 /**
@@ -49,6 +54,13 @@
  * Each operation that affects the quota adds a log entry to our database.
  * This daemon periodically reads a batch of these updates, combines them if
  * possible and applies them.
+ * <p>
+ * The inodes of a batch are split by id over a pool of applier threads. The
+ * updates of an inode in the batch are applied together in one transaction
+ * that locks the inode, so a transaction never holds more than the batch
+ * limit of updates. The prioritized updates of subtree operations are
+ * applied by the daemon thread alone as they have to be applied from the
+ * leaves up.
  */
 public class QuotaUpdateManager {
 
@@ -58,8 +70,13 @@ public class QuotaUpdateManager {
 
   private final int updateInterval;
   private final int updateLimit;
+  private final int applierThreads;
 
   private final Daemon updateThread = new Daemon(new QuotaUpdateMonitor());
+  private volatile ExecutorService appliers;
+
+  private volatile int backlog;
+  private volatile long lastCaughtUp = System.currentTimeMillis();
 
   private final ConcurrentLinkedQueue<Iterator<Integer>> prioritizedUpdates =
       new ConcurrentLinkedQueue<>();
@@ -71,14 +88,42 @@ public QuotaUpdateManager(FSNamesystem namesystem, Configuration conf) {
             DFSConfigKeys.DFS_NAMENODE_QUOTA_UPDATE_INTERVAL_DEFAULT);
     updateLimit = conf.getInt(DFSConfigKeys.DFS_NAMENODE_QUOTA_UPDATE_LIMIT_KEY,
         DFSConfigKeys.DFS_NAMENODE_QUOTA_UPDATE_LIMIT_DEFAULT);
+    applierThreads = Math.max(1, conf.getInt(
+        DFSConfigKeys.DFS_NAMENODE_QUOTA_UPDATE_THREADS_KEY,
+        DFSConfigKeys.DFS_NAMENODE_QUOTA_UPDATE_THREADS_DEFAULT));
   }
 
   public void activate() {
     LOG.debug("QuotaUpdateMonitor is running");
+    appliers = Executors.newFixedThreadPool(applierThreads,
+        new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("QuotaUpdateApplier-%d").build());
     updateThread.start();
   }
 
+  /**
+   * @return the number of pending updates when the last batch was read. It
+   * is counted in the database when the batch was full.
+   */
+  public int getBacklog() {
+    return backlog;
+  }
+
+  /**
+   * @return the time since the pending updates last fit in one batch, in
+   * milliseconds
+   */
+  public long getLag() {
+    if (appliers == null) {
+      return 0;
+    }
+    return System.currentTimeMillis() - lastCaughtUp;
+  }
+
   public void close() {
+    if (appliers != null) {
+      appliers.shutdownNow();
+    }
     if (updateThread != null) {
       updateThread.interrupt();
       try {
@@ -119,12 +164,19 @@ public void run() {
                 iterator.notify();
               }
             }
-            processNextUpdateBatch();
+            if (processNextUpdateBatch()) {
+              // there is a backlog, go on with the next batch right away
+              continue;
+            }
+          } else {
+            // the backlog is the leader's
+            backlog = 0;
+            lastCaughtUp = System.currentTimeMillis();
           }
           long sleepDuration =
               updateInterval - (System.currentTimeMillis() - startTime);
           if (sleepDuration > 0) {
-            Thread.sleep(updateInterval);
+            Thread.sleep(sleepDuration);
           }
         } catch (InterruptedException ie) {
           LOG.warn("QuotaUpdateMonitor thread received InterruptedException.",
@@ -145,20 +197,6 @@ public void run() {
     }
   }
 
-  private final Comparator<QuotaUpdate> quotaUpdateComparator =
-      new Comparator<QuotaUpdate>() {
-        @Override
-        public int compare(QuotaUpdate quotaUpdate, QuotaUpdate quotaUpdate2) {
-          if (quotaUpdate.getInodeId() < quotaUpdate2.getInodeId()) {
-            return -1;
-          }
-          if (quotaUpdate.getInodeId() > quotaUpdate2.getInodeId()) {
-            return 1;
-          }
-          return 0;
-        }
-      };
-
   private void processUpdates(final Integer id) throws IOException {
     LightWeightRequestHandler findHandler =
         new LightWeightRequestHandler(HDFSOperationType.GET_UPDATES_FOR_ID) {
@@ -172,11 +210,35 @@ public Object performTask() throws IOException {
         };
 
     List<QuotaUpdate> quotaUpdates = (List<QuotaUpdate>) findHandler.handle();
-    LOG.debug("processUpdates for inode id="+id+" quotaUpdates ids are "+ Arrays.toString(quotaUpdates.toArray()));
-    applyBatchedUpdate(quotaUpdates);
+    LOG.debug("processUpdates for inode id=" + id + " " + quotaUpdates.size() +
+        " updates");
+    // the subtree operation waits for all the updates of the inode, in
+    // transactions of at most the batch limit
+    for (int i = 0; i < quotaUpdates.size(); i += updateLimit) {
+      applyUpdates(id, quotaUpdates.subList(i,
+          Math.min(quotaUpdates.size(), i + updateLimit)));
+    }
+  }
+
+  private int countPendingUpdates() throws IOException {
+    return (Integer) new LightWeightRequestHandler(
+        HDFSOperationType.GET_NEXT_QUOTA_BATCH) {
+      @Override
+      public Object performTask() throws IOException {
+        QuotaUpdateDataAccess<QuotaUpdate> dataAccess =
+            (QuotaUpdateDataAccess) HdfsStorageFactory
+                .getDataAccess(QuotaUpdateDataAccess.class);
+        return dataAccess.getCount();
+      }
+    }.handle();
   }
 
-  private void processNextUpdateBatch() throws IOException {
+  /**
+   * @return true if the batch was full, that is there are more updates
+   * waiting
+   */
+  private boolean processNextUpdateBatch()
+      throws IOException, InterruptedException {
     LightWeightRequestHandler findHandler =
         new LightWeightRequestHandler(HDFSOperationType.GET_NEXT_QUOTA_BATCH) {
           @Override
@@ -189,37 +251,85 @@ public Object performTask() throws IOException {
         };
 
     List<QuotaUpdate> quotaUpdates = (List<QuotaUpdate>) findHandler.handle();
-    Collections.sort(quotaUpdates, quotaUpdateComparator);
+    boolean full = quotaUpdates.size() >= updateLimit;
+    if (full) {
+      backlog = countPendingUpdates();
+    } else {
+      backlog = quotaUpdates.size();
+      lastCaughtUp = System.currentTimeMillis();
+    }
 
-    ArrayList<QuotaUpdate> batch = new ArrayList<>();
+    // the updates of an inode are applied together, by a single applier
+    List<Map<Integer, List<QuotaUpdate>>> partitions =
+        new ArrayList<>(applierThreads);
+    for (int i = 0; i < applierThreads; i++) {
+      partitions.add(new HashMap<Integer, List<QuotaUpdate>>());
+    }
     for (QuotaUpdate update : quotaUpdates) {
-      if (batch.size() == 0 ||
-          batch.get(0).getInodeId() == update.getInodeId()) {
-        batch.add(update);
-      } else {
-        applyBatchedUpdate(batch);
-        batch = new ArrayList<>();
-        batch.add(update);
+      int inodeId = update.getInodeId();
+      Map<Integer, List<QuotaUpdate>> partition =
+          partitions.get(inodeId % applierThreads);
+      List<QuotaUpdate> updates = partition.get(inodeId);
+      if (updates == null) {
+        updates = new ArrayList<>();
+        partition.put(inodeId, updates);
       }
+      updates.add(update);
     }
 
-    if (batch.size() != 0) {
-      applyBatchedUpdate(batch);
+    List<Future<Boolean>> results = new ArrayList<>(applierThreads);
+    for (final Map<Integer, List<QuotaUpdate>> partition : partitions) {
+      if (!partition.isEmpty()) {
+        results.add(appliers.submit(new Callable<Boolean>() {
+          @Override
+          public Boolean call() throws IOException {
+            boolean applied = false;
+            for (Map.Entry<Integer, List<QuotaUpdate>> updates : partition
+                .entrySet()) {
+              applied |= applyUpdates(updates.getKey(), updates.getValue());
+            }
+            return applied;
+          }
+        }));
+      }
+    }
+    boolean applied = false;
+    for (Future<Boolean> result : results) {
+      try {
+        applied |= result.get();
+      } catch (ExecutionException e) {
+        for (Future<Boolean> other : results) {
+          other.cancel(true);
+        }
+        if (e.getCause() instanceof IOException) {
+          throw (IOException) e.getCause();
+        }
+        throw new IOException(e.getCause());
+      }
     }
+    // if nothing could be applied, e.g. because of subtree locks, wait
+    return full && applied;
   }
 
-  private void applyBatchedUpdate(final List<QuotaUpdate> updates)
-      throws IOException {
-    if (updates.size() == 0) {
-      return;
+  /**
+   * Applies the given updates of the inode, read by the caller. The updates
+   * of an inode are handed to one applier only.
+   *
+   * @return false if the updates were left for later, because of a subtree
+   * lock
+   */
+  private boolean applyUpdates(final int inodeId,
+      final List<QuotaUpdate> updates) throws IOException {
+    if (updates.isEmpty()) {
+      return false;
     }
-    new HopsTransactionalRequestHandler(HDFSOperationType.APPLY_QUOTA_UPDATE) {
+    return (Boolean) new HopsTransactionalRequestHandler(HDFSOperationType.APPLY_QUOTA_UPDATE) {
       INodeIdentifier iNodeIdentifier;
 
       @Override
       public void setUp() throws IOException {
         super.setUp();
-        iNodeIdentifier = new INodeIdentifier(updates.get(0).getInodeId());
+        iNodeIdentifier = new INodeIdentifier(inodeId);
       }
 
       @Override
@@ -233,7 +343,7 @@ public void acquireLock(TransactionLocks locks) throws IOException {
       @Override
       public Object performTask() throws IOException {
         INodeDirectory dir = (INodeDirectory) EntityManager
-            .find(INode.Finder.ByINodeIdFTIS, updates.get(0).getInodeId());
+            .find(INode.Finder.ByINodeIdFTIS, inodeId);
         if (dir != null && SubtreeLockHelper
             .isSTOLocked(dir.isSTOLocked(), dir.getSTOLockOwner(),
                 namesystem.getNameNode().getActiveNameNodes()
@@ -244,7 +354,7 @@ public Object performTask() throws IOException {
            * could differ from the view of the parent if outstanding quota updates are applied after being considered
            * by the QuotaCountingFileTree but before successfully moving the subtree.
            */
-          return null;
+          return false;
         }
 
         long namespaceDelta = 0;
@@ -257,13 +367,13 @@ public Object performTask() throws IOException {
         }
 
         if (dir == null) {
-          LOG.debug("dropping update for " + updates.get(0) + " ns " +
+          LOG.debug("dropping update for inode " + inodeId + " ns " +
               namespaceDelta + " ds " + diskspaceDelta +
               " because of deletion");
-          return null;
+          return true;
         }
         if (namespaceDelta == 0 && diskspaceDelta == 0) {
-          return null;
+          return true;
         }
 
         if (dir != null && dir.isQuotaSet()) {
@@ -285,7 +395,7 @@ public Object performTask() throws IOException {
           EntityManager.add(parentUpdate);
           LOG.debug("adding parent update " + parentUpdate);
         }
-        return null;
+        return true;
       }
     }.handle(this);
   }
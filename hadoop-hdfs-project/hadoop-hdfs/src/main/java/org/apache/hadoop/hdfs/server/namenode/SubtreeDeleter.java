@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import io.hops.exception.StorageException;
+import io.hops.leader_election.node.ActiveNode;
+import io.hops.metadata.HdfsStorageFactory;
+import io.hops.metadata.hdfs.dal.INodeDataAccess;
+import io.hops.metadata.hdfs.entity.INodeIdentifier;
+import io.hops.metadata.hdfs.entity.ProjectedINode;
+import io.hops.transaction.context.EntityContext;
+import io.hops.transaction.handler.HDFSOperationType;
+import io.hops.transaction.handler.LightWeightRequestHandler;
+import io.hops.transaction.lock.SubtreeLockHelper;
+import io.hops.transaction.lock.SubtreeLockedException;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deletes a locked subtree while walking it. The tree is walked depth first
+ * and a directory is deleted, with its files, as soon as its subdirectories
+ * are gone, so the leaves are deleted while deeper levels are still being
+ * listed. Only the directories that are listed but not deleted yet are kept
+ * in memory, and at most maxInFlight delete transactions are queued or
+ * running at any time.
+ * <p>
+ * Every transaction commits on its own, so whatever was deleted stays
+ * deleted if the namenode dies. The subtree operation record of the delete
+ * stays behind and the leader runs the delete again on what is left of the
+ * subtree, see {@link FSNamesystem#resumeSubtreeDelete(String)}.
+ */
+class SubtreeDeleter {
+  public static final Log LOG = LogFactory.getLog(SubtreeDeleter.class);
+
+  /**
+   * Number of inodes whose quota updates are applied at once before they are
+   * deleted.
+   */
+  private static final int QUOTA_BATCH_SIZE = 10000;
+
+  private final FSNamesystem namesystem;
+  private final ExecutorService executor;
+  private final String subtreeRootPath;
+  private final INodeIdentifier subtreeRootId;
+  private final long biggestDeletableDir;
+  private final int maxInFlight;
+  private final boolean quotaEnabled;
+
+  private final Semaphore inFlight;
+  private final Deque<Dir> toVisit = new ArrayDeque<>();
+  // the deletes of the inodes listed since the last flush
+  private final List<Delete> listed = new ArrayList<>();
+  private final List<Integer> listedIds = new ArrayList<>();
+  private final AtomicLong deleted = new AtomicLong();
+  private volatile boolean rootDeleted = false;
+  private volatile IOException exception;
+
+  SubtreeDeleter(FSNamesystem namesystem, String subtreeRootPath,
+      INodeIdentifier subtreeRootId, long biggestDeletableDir,
+      int maxInFlight, boolean quotaEnabled) {
+    this.namesystem = namesystem;
+    this.executor = namesystem.getSubtreeOperationsExecutor();
+    this.subtreeRootPath = subtreeRootPath;
+    this.subtreeRootId = subtreeRootId;
+    this.biggestDeletableDir = biggestDeletableDir;
+    this.maxInFlight = Math.max(1, maxInFlight);
+    this.quotaEnabled = quotaEnabled;
+    this.inFlight = new Semaphore(this.maxInFlight);
+  }
+
+  /**
+   * @return true if the whole subtree was deleted
+   */
+  boolean delete() throws IOException {
+    Dir root = new Dir(null, subtreeRootId.getInodeId(), null,
+        subtreeRootId.getDepth());
+    toVisit.push(root);
+    if (quotaEnabled) {
+      listedIds.add(root.id);
+    }
+    try {
+      while (!toVisit.isEmpty() && exception == null) {
+        visit(toVisit.pop());
+        if (!quotaEnabled || listedIds.size() >= QUOTA_BATCH_SIZE) {
+          flush();
+        }
+      }
+      flush();
+    } catch (IOException e) {
+      setExceptionIfNull(e);
+    } finally {
+      // the subtree is unlocked once we return, wait for the deletes that
+      // are still running
+      inFlight.acquireUninterruptibly(maxInFlight);
+      inFlight.release(maxInFlight);
+    }
+
+    if (exception != null) {
+      throw exception;
+    }
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Deleted " + subtreeRootPath + " in " + deleted.get() +
+          " transactions");
+    }
+    return rootDeleted;
+  }
+
+  long getDeleteTransactions() {
+    return deleted.get();
+  }
+
+  private void visit(Dir dir) throws IOException {
+    List<ProjectedINode> children = listChildren(dir);
+    List<ActiveNode> activeNamenodes = null;
+    int files = 0;
+    for (ProjectedINode child : children) {
+      if (quotaEnabled) {
+        listedIds.add(child.getId());
+      }
+      if (child.isDirectory()) {
+        if (activeNamenodes == null) {
+          activeNamenodes = namesystem.getNameNode().getActiveNameNodes()
+              .getActiveNodes();
+        }
+        if (SubtreeLockHelper.isSTOLocked(child.isSubtreeLocked(),
+            child.getSubtreeLockOwner(), activeNamenodes)) {
+          throw new SubtreeLockedException(child.getName(), activeNamenodes);
+        }
+        dir.pending.incrementAndGet();
+        toVisit.push(new Dir(dir, child.getId(), child.getName(),
+            (short) (dir.depth + 1)));
+      } else {
+        files++;
+      }
+    }
+
+    if (files > biggestDeletableDir) {
+      // too many files for one transaction, delete them one by one
+      String path = dir.getPath();
+      for (ProjectedINode child : children) {
+        if (!child.isDirectory()) {
+          dir.pending.incrementAndGet();
+          listed.add(new Delete(path + "/" + child.getName(), dir, false));
+        }
+      }
+    }
+    // the directory goes, with its remaining files, once all the deletes
+    // above are done. Until this is flushed its counter keeps it alive.
+    listed.add(new Delete(null, dir, true));
+  }
+
+  /**
+   * Submits the deletes of what was listed, after the pending quota updates
+   * of the listed inodes are applied.
+   */
+  private void flush() throws IOException {
+    if (!listedIds.isEmpty()) {
+      namesystem.prioritizeQuotaUpdates(listedIds.iterator());
+      listedIds.clear();
+    }
+    for (Delete delete : listed) {
+      if (exception != null) {
+        break;
+      }
+      if (delete.guard) {
+        if (delete.dir.pending.decrementAndGet() == 0) {
+          inFlight.acquireUninterruptibly();
+          submit(delete.dir.getPath(), delete.dir, true);
+        }
+      } else {
+        inFlight.acquireUninterruptibly();
+        submit(delete.path, delete.dir, false);
+      }
+    }
+    listed.clear();
+  }
+
+  /**
+   * Runs the delete with a permit taken by the caller. The permit is given
+   * back once the delete is done, or passed on to the delete of the parent
+   * directory if this was the last thing it was waiting for. It is given
+   * back right away if the executor refuses the delete.
+   */
+  private void submit(final String path, final Dir dir,
+      final boolean wholeDir) {
+    try {
+      executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          boolean handedOver = false;
+          try {
+            if (exception == null) {
+              namesystem.deleteSubtreePart(path, subtreeRootId.getInodeId());
+              deleted.incrementAndGet();
+              handedOver = completed(dir, wholeDir);
+            }
+          } catch (IOException e) {
+            LOG.error("Exception was thrown during partial delete", e);
+            setExceptionIfNull(e);
+          } catch (RuntimeException e) {
+            LOG.error("Exception was thrown during partial delete", e);
+            setExceptionIfNull(new IOException(e));
+          } finally {
+            if (!handedOver) {
+              inFlight.release();
+            }
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      inFlight.release();
+      setExceptionIfNull(new IOException("Could not submit the delete of " +
+          path, e));
+    }
+  }
+
+  private boolean completed(Dir dir, boolean wholeDir) {
+    Dir waiting = dir;
+    if (wholeDir) {
+      if (dir.parent == null) {
+        rootDeleted = true;
+        return false;
+      }
+      waiting = dir.parent;
+    }
+    if (waiting.pending.decrementAndGet() == 0) {
+      submit(waiting.getPath(), waiting, true);
+      return true;
+    }
+    return false;
+  }
+
+  private List<ProjectedINode> listChildren(final Dir dir) throws IOException {
+    return (List<ProjectedINode>) new LightWeightRequestHandler(
+        HDFSOperationType.GET_CHILD_INODES) {
+      @Override
+      public Object performTask() throws StorageException, IOException {
+        INodeDataAccess<INode> dataAccess =
+            (INodeDataAccess) HdfsStorageFactory
+                .getDataAccess(INodeDataAccess.class);
+        // the subtree is locked, there is no need to lock the children
+        if (INode.isTreeLevelRandomPartitioned(dir.depth)) {
+          return dataAccess.findInodesFTISTx(dir.id,
+              EntityContext.LockMode.READ_COMMITTED);
+        } else {
+          return dataAccess.findInodesPPISTx(dir.id, dir.id,
+              EntityContext.LockMode.READ_COMMITTED);
+        }
+      }
+    }.handle(this);
+  }
+
+  private synchronized void setExceptionIfNull(IOException e) {
+    if (exception == null) {
+      exception = e;
+    }
+  }
+
+  private class Dir {
+    private final Dir parent;
+    private final int id;
+    private final String name;
+    private final short depth;
+    // the listing of the directory plus the deletes it waits for
+    private final AtomicInteger pending = new AtomicInteger(1);
+
+    Dir(Dir parent, int id, String name, short depth) {
+      this.parent = parent;
+      this.id = id;
+      this.name = name;
+      this.depth = depth;
+    }
+
+    String getPath() {
+      if (parent == null) {
+        return subtreeRootPath;
+      }
+      return parent.getPath() + "/" + name;
+    }
+  }
+
+  private static class Delete {
+    private final String path;
+    private final Dir dir;
+    // releases the hold of the listing on the directory
+    private final boolean guard;
+
+    Delete(String path, Dir dir, boolean guard) {
+      this.path = path;
+      this.dir = dir;
+      this.guard = guard;
+    }
+  }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import io.hops.metadata.hdfs.entity.SubTreeOperation;
+import org.apache.hadoop.fs.Path;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * In memory index of the ongoing subtree operations, as a trie of the path
+ * components of their subtree roots.
+ * <p/>
+ * The operations of this namenode are added and removed as their subtree
+ * locks are committed, the operations of the other namenodes are refreshed
+ * from the database by {@link FSNamesystem}. The subtree lock flags and the
+ * ongoing subtree operations table stay the reference: the index is only
+ * used to fail early and to wake up the operations that wait for a subtree
+ * to be unlocked.
+ */
+class SubtreeLockIndex {
+
+  private static class Node {
+    private final Node parent;
+    private final String name;
+    private final Map<String, Node> children = new HashMap<>();
+    // the namenode running a subtree operation rooted here, null if none
+    private Long nameNodeId;
+    private SubTreeOperation.Type type;
+
+    Node(Node parent, String name) {
+      this.parent = parent;
+      this.name = name;
+    }
+  }
+
+  private final Node root = new Node(null, null);
+  private final Map<Long, Set<String>> pathsByNameNode = new HashMap<>();
+
+  synchronized void add(String path, long nameNodeId,
+      SubTreeOperation.Type type) {
+    Node node = root;
+    for (String component : components(path)) {
+      Node child = node.children.get(component);
+      if (child == null) {
+        child = new Node(node, component);
+        node.children.put(component, child);
+      }
+      node = child;
+    }
+    if (node.nameNodeId != null) {
+      removePath(node.nameNodeId, path);
+    }
+    node.nameNodeId = nameNodeId;
+    node.type = type;
+    Set<String> paths = pathsByNameNode.get(nameNodeId);
+    if (paths == null) {
+      paths = new HashSet<>();
+      pathsByNameNode.put(nameNodeId, paths);
+    }
+    paths.add(normalize(path));
+  }
+
+  synchronized void remove(String path) {
+    Node node = find(path);
+    if (node == null || node.nameNodeId == null) {
+      return;
+    }
+    removePath(node.nameNodeId, path);
+    node.nameNodeId = null;
+    node.type = null;
+    prune(node);
+    notifyAll();
+  }
+
+  /**
+   * Replaces the operations of a namenode with the ones read from the
+   * database.
+   */
+  synchronized void refresh(long nameNodeId,
+      Collection<SubTreeOperation> ops) {
+    Set<String> current = new HashSet<>();
+    for (SubTreeOperation op : ops) {
+      current.add(normalize(op.getPath()));
+    }
+    Set<String> known = pathsByNameNode.get(nameNodeId);
+    if (known != null) {
+      for (String path : new ArrayList<>(known)) {
+        if (!current.contains(path)) {
+          remove(path);
+        }
+      }
+    }
+    for (SubTreeOperation op : ops) {
+      add(op.getPath(), nameNodeId, op.getOpType());
+    }
+  }
+
+  /**
+   * Drops the operations of the namenodes that are not in the given ones.
+   */
+  synchronized void retainNameNodes(Collection<Long> nameNodeIds) {
+    for (Long nameNodeId : new ArrayList<>(pathsByNameNode.keySet())) {
+      if (!nameNodeIds.contains(nameNodeId)) {
+        for (String path : new ArrayList<>(pathsByNameNode.get(nameNodeId))) {
+          remove(path);
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the root of the subtree operation that contains the path, or
+   * null if the path is not in a locked subtree
+   */
+  synchronized String findLockedAncestor(String path) {
+    Node node = root;
+    StringBuilder prefix = new StringBuilder();
+    for (String component : components(path)) {
+      node = node.children.get(component);
+      if (node == null) {
+        return null;
+      }
+      prefix.append(Path.SEPARATOR).append(component);
+      if (node.nameNodeId != null) {
+        return prefix.toString();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return the root of a subtree operation strictly under the path, or
+   * null if there is none
+   */
+  synchronized String findLockedDescendant(String path) {
+    Node node = find(path);
+    if (node == null) {
+      return null;
+    }
+    List<Node> toVisit = new ArrayList<>(node.children.values());
+    while (!toVisit.isEmpty()) {
+      Node child = toVisit.remove(toVisit.size() - 1);
+      if (child.nameNodeId != null) {
+        return pathOf(child);
+      }
+      toVisit.addAll(child.children.values());
+    }
+    return null;
+  }
+
+  synchronized boolean isLocked(String path) {
+    Node node = find(path);
+    return node != null && node.nameNodeId != null;
+  }
+
+  /**
+   * Waits until the subtree rooted at the path is unlocked.
+   *
+   * @return true if the subtree is not locked anymore, false if it is still
+   * locked after the timeout
+   */
+  synchronized boolean awaitUnlocked(String path, long timeoutMs)
+      throws InterruptedException {
+    long deadline = System.currentTimeMillis() + timeoutMs;
+    while (isLocked(path)) {
+      long remaining = deadline - System.currentTimeMillis();
+      if (remaining <= 0) {
+        return false;
+      }
+      wait(remaining);
+    }
+    return true;
+  }
+
+  synchronized int size() {
+    int size = 0;
+    for (Set<String> paths : pathsByNameNode.values()) {
+      size += paths.size();
+    }
+    return size;
+  }
+
+  private Node find(String path) {
+    Node node = root;
+    for (String component : components(path)) {
+      node = node.children.get(component);
+      if (node == null) {
+        return null;
+      }
+    }
+    return node;
+  }
+
+  private void removePath(long nameNodeId, String path) {
+    Set<String> paths = pathsByNameNode.get(nameNodeId);
+    if (paths != null) {
+      paths.remove(normalize(path));
+      if (paths.isEmpty()) {
+        pathsByNameNode.remove(nameNodeId);
+      }
+    }
+  }
+
+  private void prune(Node node) {
+    while (node.parent != null && node.nameNodeId == null &&
+        node.children.isEmpty()) {
+      node.parent.children.remove(node.name);
+      node = node.parent;
+    }
+  }
+
+  private static String pathOf(Node node) {
+    StringBuilder path = new StringBuilder();
+    for (; node.parent != null; node = node.parent) {
+      path.insert(0, node.name).insert(0, Path.SEPARATOR);
+    }
+    return path.length() == 0 ? Path.SEPARATOR : path.toString();
+  }
+
+  private static String normalize(String path) {
+    StringBuilder normalized = new StringBuilder();
+    for (String component : components(path)) {
+      normalized.append(Path.SEPARATOR).append(component);
+    }
+    return normalized.length() == 0 ? Path.SEPARATOR : normalized.toString();
+  }
+
+  private static List<String> components(String path) {
+    List<String> components = new ArrayList<>();
+    for (String component : path.split(Path.SEPARATOR)) {
+      if (!component.isEmpty()) {
+        components.add(component);
+      }
+    }
+    return components;
+  }
+}
@@ -29,6 +29,7 @@
 import org.apache.hadoop.metrics2.lib.MutableGaugeInt;
 import org.apache.hadoop.metrics2.lib.MutableQuantiles;
 import org.apache.hadoop.metrics2.lib.MutableRate;
+import org.apache.hadoop.metrics2.lib.MutableStat;
 import org.apache.hadoop.metrics2.source.JvmMetrics;
 
 import static org.apache.hadoop.metrics2.impl.MsInfo.ProcessName;
@@ -80,6 +81,14 @@ public class NameNodeMetrics {
   MutableRate blockReport;
   MutableQuantiles[] blockReportQuantiles;
 
+  @Metric("Lease renewals absorbed by a renewal that was not written yet")
+  MutableCounterLong leaseRenewalsCoalesced;
+  @Metric(value = "Lease renewals written per flush", sampleName = "Flushes",
+      valueName = "Renewals")
+  MutableStat leaseRenewalBatchSize;
+  @Metric("Time to write a batch of lease renewals")
+  MutableRate leaseRenewalFlush;
+
   @Metric("Duration in SafeMode at startup in msec")
   MutableGaugeInt safeModeTime;
   @Metric("Time loading FS Image at startup in msec")
@@ -123,14 +132,26 @@ public void incrGetBlockLocations() {
     getBlockLocations.incr();
   }
 
+  public void incrGetBlockLocations(long count) {
+    getBlockLocations.incr(count);
+  }
+
   public void incrFilesCreated() {
     filesCreated.incr();
   }
 
+  public void incrFilesCreated(long count) {
+    filesCreated.incr(count);
+  }
+
   public void incrCreateFileOps() {
     createFileOps.incr();
   }
 
+  public void incrCreateFileOps(long count) {
+    createFileOps.incr(count);
+  }
+
   public void incrFilesAppended() {
     filesAppended.incr();
   }
@@ -167,6 +188,10 @@ public void incrFileInfoOps() {
     fileInfoOps.incr();
   }
 
+  public void incrFileInfoOps(long count) {
+    fileInfoOps.incr(count);
+  }
+
   public void incrCreateSymlinkOps() {
     createSymlinkOps.incr();
   }
@@ -194,6 +219,15 @@ public void addBlockReport(long latency) {
     }
   }
 
+  public void incrLeaseRenewalsCoalesced() {
+    leaseRenewalsCoalesced.incr();
+  }
+
+  public void addLeaseRenewalFlush(int renewals, long latency) {
+    leaseRenewalBatchSize.add(renewals);
+    leaseRenewalFlush.add(latency);
+  }
+
   public void setSafeModeTime(long elapsed) {
     safeModeTime.set((int) elapsed);
   }
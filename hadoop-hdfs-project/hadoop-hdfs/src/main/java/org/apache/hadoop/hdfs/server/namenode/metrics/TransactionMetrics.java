@@ -0,0 +1,334 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode.metrics;
+
+import io.hops.transaction.handler.HDFSOperationType;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.metrics2.MetricsCollector;
+import org.apache.hadoop.metrics2.MetricsSource;
+import org.apache.hadoop.metrics2.MetricsSystem;
+import org.apache.hadoop.metrics2.lib.DefaultMetricsSystem;
+import org.apache.hadoop.metrics2.lib.MetricsRegistry;
+import org.apache.hadoop.metrics2.lib.MutableCounterLong;
+import org.apache.hadoop.metrics2.lib.MutableQuantiles;
+import org.apache.hadoop.metrics2.lib.MutableRate;
+import org.apache.hadoop.metrics2.lib.MutableStat;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Live breakdown of the transactions of the namenode per operation type,
+ * published as a metrics2 source and so also as the JMX bean
+ * Hadoop:service=NameNode,name=TransactionMetrics. For each operation type
+ * that ran at least once there are, in microseconds:
+ * <ul>
+ *   <li>Total: the whole request, retries included</li>
+ *   <li>Prepare: set up and lock planning of the last attempt</li>
+ *   <li>Lock: lock acquisition, which reads the locked rows, of all the
+ *   attempts</li>
+ *   <li>Commit: the operation itself and the commit of the last attempt</li>
+ * </ul>
+ * and the number of retries, resolving cache hits and misses and, when
+ * enabled, of database round trips per request. Percentiles are published
+ * for the intervals in dfs.metrics.percentiles.intervals, as for the other
+ * namenode metrics.
+ * <p>
+ * The metrics are shared by the namenodes running in the same JVM.
+ */
+public class TransactionMetrics implements MetricsSource {
+
+  public static final String NAME = "TransactionMetrics";
+
+  private static final TransactionMetrics instance = new TransactionMetrics();
+
+  private final MetricsRegistry registry = new MetricsRegistry(NAME)
+      .setContext("dfs");
+  // read at the end of every transaction, only created under the lock
+  private final ConcurrentMap<HDFSOperationType, OpMetrics> ops =
+      new ConcurrentHashMap<>();
+  private final ThreadLocal<Sample> current = new ThreadLocal<>();
+  private final ThreadLocal<long[]> threadRoundTrips =
+      new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+          return new long[1];
+        }
+      };
+
+  private volatile boolean enabled = false;
+  private volatile boolean countRoundTrips = false;
+  private int[] intervals = new int[0];
+
+  public static TransactionMetrics getInstance() {
+    return instance;
+  }
+
+  private TransactionMetrics() {
+  }
+
+  public void setConfiguration(Configuration conf) {
+    enabled = conf.getBoolean(DFSConfigKeys.DFS_TRANSACTION_METRICS_ENABLED,
+        DFSConfigKeys.DFS_TRANSACTION_METRICS_ENABLED_DEFAULT);
+    countRoundTrips = enabled && conf.getBoolean(
+        DFSConfigKeys.DFS_TRANSACTION_METRICS_ROUND_TRIPS_ENABLED,
+        DFSConfigKeys.DFS_TRANSACTION_METRICS_ROUND_TRIPS_ENABLED_DEFAULT);
+    synchronized (this) {
+      intervals = conf.getInts(
+          DFSConfigKeys.DFS_METRICS_PERCENTILES_INTERVALS_KEY);
+    }
+  }
+
+  /**
+   * Registers the source, unless it is already registered by another
+   * namenode of this JVM.
+   */
+  public void register() {
+    if (!enabled) {
+      return;
+    }
+    MetricsSystem ms = DefaultMetricsSystem.instance();
+    synchronized (this) {
+      if (ms.getSource(NAME) == null) {
+        ms.register(NAME, "Namenode transactions per operation type", this);
+      }
+    }
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public boolean isCountingRoundTrips() {
+    return countRoundTrips;
+  }
+
+  @Override
+  public void getMetrics(MetricsCollector collector, boolean all) {
+    registry.snapshot(collector.addRecord(registry.info()), all);
+  }
+
+  /**
+   * Called when a request starts, before its first attempt.
+   */
+  public Sample begin(HDFSOperationType opType) {
+    if (!enabled || opType == null) {
+      return null;
+    }
+    Sample sample = new Sample(opType, current.get());
+    current.set(sample);
+    return sample;
+  }
+
+  public void attemptStarted() {
+    Sample sample = current.get();
+    if (sample != null) {
+      sample.attempts++;
+      sample.attemptStart = System.nanoTime();
+      sample.lockStart = 0;
+      sample.lockEnd = 0;
+    }
+  }
+
+  public void lockAcquisitionStarted() {
+    Sample sample = current.get();
+    if (sample != null) {
+      sample.lockStart = System.nanoTime();
+    }
+  }
+
+  public void lockAcquisitionFinished() {
+    Sample sample = current.get();
+    if (sample != null && sample.lockStart != 0) {
+      sample.lockEnd = System.nanoTime();
+      sample.lockTime += sample.lockEnd - sample.lockStart;
+    }
+  }
+
+  public void committed() {
+    Sample sample = current.get();
+    if (sample != null && sample.commitEnd == 0) {
+      sample.commitEnd = System.nanoTime();
+    }
+  }
+
+  public void roundTrip() {
+    Sample sample = current.get();
+    if (sample != null) {
+      sample.roundTrips++;
+      threadRoundTrips.get()[0]++;
+    }
+  }
+
+  /**
+   * Database round trips of all the requests run by the calling thread so
+   * far, when they are counted. Used by the benchmarks, which call the
+   * namenode in their own threads, to get the round trips per operation.
+   */
+  public long getThreadRoundTrips() {
+    return threadRoundTrips.get()[0];
+  }
+
+  public void resolvingCacheLookup(boolean hit) {
+    Sample sample = current.get();
+    if (sample != null) {
+      if (hit) {
+        sample.cacheHits++;
+      } else {
+        sample.cacheMisses++;
+      }
+    }
+  }
+
+  /**
+   * Called when the request is done, whether it succeeded or not.
+   */
+  public void end(Sample sample) {
+    if (sample == null) {
+      return;
+    }
+    current.set(sample.outer);
+    long end = System.nanoTime();
+    OpMetrics metrics = getOpMetrics(sample.opType);
+    metrics.total.add(toMicros(end - sample.start));
+    for (MutableQuantiles quantiles : metrics.totalQuantiles) {
+      quantiles.add(toMicros(end - sample.start));
+    }
+    if (sample.lockEnd != 0) {
+      metrics.prepare.add(toMicros(sample.lockStart - sample.attemptStart));
+      metrics.lock.add(toMicros(sample.lockTime));
+      for (MutableQuantiles quantiles : metrics.lockQuantiles) {
+        quantiles.add(toMicros(sample.lockTime));
+      }
+      if (sample.commitEnd != 0) {
+        metrics.commit.add(toMicros(sample.commitEnd - sample.lockEnd));
+        for (MutableQuantiles quantiles : metrics.commitQuantiles) {
+          quantiles.add(toMicros(sample.commitEnd - sample.lockEnd));
+        }
+      }
+    }
+    if (sample.attempts > 1) {
+      metrics.retries.incr(sample.attempts - 1);
+    }
+    if (sample.cacheHits > 0) {
+      metrics.cacheHits.incr(sample.cacheHits);
+    }
+    if (sample.cacheMisses > 0) {
+      metrics.cacheMisses.incr(sample.cacheMisses);
+    }
+    if (countRoundTrips) {
+      metrics.roundTrips.add(sample.roundTrips);
+      for (MutableQuantiles quantiles : metrics.roundTripsQuantiles) {
+        quantiles.add(sample.roundTrips);
+      }
+    }
+  }
+
+  private static long toMicros(long nanos) {
+    return nanos / 1000;
+  }
+
+  private OpMetrics getOpMetrics(HDFSOperationType opType) {
+    OpMetrics metrics = ops.get(opType);
+    if (metrics != null) {
+      return metrics;
+    }
+    synchronized (this) {
+      // the metrics of an operation type are only added to the registry once
+      metrics = ops.get(opType);
+      if (metrics == null) {
+        metrics = new OpMetrics(opType.toString());
+        ops.put(opType, metrics);
+      }
+      return metrics;
+    }
+  }
+
+  public static class Sample {
+    private final HDFSOperationType opType;
+    private final Sample outer;
+    private final long start = System.nanoTime();
+    private int attempts;
+    private long attemptStart;
+    private long lockStart;
+    private long lockEnd;
+    private long lockTime;
+    private long commitEnd;
+    private long roundTrips;
+    private long cacheHits;
+    private long cacheMisses;
+
+    private Sample(HDFSOperationType opType, Sample outer) {
+      this.opType = opType;
+      this.outer = outer;
+      this.attemptStart = start;
+    }
+  }
+
+  private class OpMetrics {
+    private final MutableRate total;
+    private final MutableRate prepare;
+    private final MutableRate lock;
+    private final MutableRate commit;
+    private final MutableStat roundTrips;
+    private final MutableCounterLong retries;
+    private final MutableCounterLong cacheHits;
+    private final MutableCounterLong cacheMisses;
+    private final MutableQuantiles[] totalQuantiles;
+    private final MutableQuantiles[] lockQuantiles;
+    private final MutableQuantiles[] commitQuantiles;
+    private final MutableQuantiles[] roundTripsQuantiles;
+
+    OpMetrics(String op) {
+      total = registry.newRate(op + "Total", "Time of " + op, true);
+      prepare = registry.newRate(op + "Prepare",
+          "Time to set up " + op + " before taking its locks", true);
+      lock = registry.newRate(op + "Lock", "Time to take the locks of " + op,
+          true);
+      commit = registry.newRate(op + "Commit",
+          "Time to run and commit " + op + " once it holds its locks", true);
+      roundTrips = registry.newStat(op + "RoundTrips",
+          "Database round trips of " + op, "Ops", "RoundTrips", true);
+      retries = registry.newCounter(op + "Retries", "Retries of " + op, 0L);
+      cacheHits = registry.newCounter(op + "ResolvingCacheHits",
+          "Paths of " + op + " found in the resolving cache", 0L);
+      cacheMisses = registry.newCounter(op + "ResolvingCacheMisses",
+          "Paths of " + op + " not found in the resolving cache", 0L);
+
+      totalQuantiles = new MutableQuantiles[intervals.length];
+      lockQuantiles = new MutableQuantiles[intervals.length];
+      commitQuantiles = new MutableQuantiles[intervals.length];
+      roundTripsQuantiles = new MutableQuantiles[countRoundTrips ?
+          intervals.length : 0];
+      for (int i = 0; i < intervals.length; i++) {
+        int interval = intervals[i];
+        totalQuantiles[i] = registry.newQuantiles(op + "Total" + interval + "s",
+            "Time of " + op, "ops", "latency", interval);
+        lockQuantiles[i] = registry.newQuantiles(op + "Lock" + interval + "s",
+            "Time to take the locks of " + op, "ops", "latency", interval);
+        commitQuantiles[i] = registry.newQuantiles(
+            op + "Commit" + interval + "s",
+            "Time to run and commit " + op, "ops", "latency", interval);
+        if (countRoundTrips) {
+          roundTripsQuantiles[i] = registry.newQuantiles(
+              op + "RoundTrips" + interval + "s",
+              "Database round trips of " + op, "ops", "roundTrips", interval);
+        }
+      }
+    }
+  }
+}
@@ -77,6 +77,10 @@ public Block next() {
     };
   }
   
+  /**
+   * Allocates a {@link ReportedBlock} per replica, the namenode and the
+   * datanode read the columns of the buckets instead.
+   */
   @Override
   public Iterator<ReportedBlock> iterator() {
     return new BlockReportIterator();
@@ -149,9 +153,14 @@ private static long hashAsFinalized(Block theBlock) {
   }
   
   public static long hashAsFinalized(ReportedBlock block){
-    Block toHash = new Block(block.getBlockId(), block.getLength(),
-        block.getGenerationStamp());
-    return hashAsFinalized(toHash);
+    return hashAsFinalized(block.getBlockId(), block.getGenerationStamp(),
+        block.getLength());
+  }
+
+  public static long hashAsFinalized(long blockId, long generationStamp,
+      long length) {
+    return hash(blockId, generationStamp, length,
+        HdfsServerConstants.ReplicaState.FINALIZED.getValue());
   }
   private static long hash(Replica replica){
     return hash(replica.getBlockId(), replica.getGenerationStamp(), replica
@@ -175,24 +184,29 @@ private static long hash(long blockId, long generationStamp, long
   }
   
   public static class Builder {
+    private static final int INITIAL_BUCKET_CAPACITY = 16;
+
     private final int NUM_BUCKETS;
-    private ArrayList<ReportedBlock>[] buckets;
+    private final int[] sizes;
+    private final long[][] blockIds;
+    private final long[][] generationStamps;
+    private final long[][] lengths;
+    private final byte[][] states;
     private long[] hashes;
     private int blockCounter = 0;
   
     private Builder(int numBuckets) {
       NUM_BUCKETS = numBuckets;
-      buckets = new ArrayList[NUM_BUCKETS];
+      sizes = new int[NUM_BUCKETS];
+      blockIds = new long[NUM_BUCKETS][];
+      generationStamps = new long[NUM_BUCKETS][];
+      lengths = new long[NUM_BUCKETS][];
+      states = new byte[NUM_BUCKETS][];
       hashes = new long[NUM_BUCKETS];
-      for (int i = 0; i < NUM_BUCKETS; i++) {
-        buckets[i] = new ArrayList<>();
-      }
     }
 
     @VisibleForTesting
     public Builder add(ReportedBlock reportBlock){
-      int bucket = bucket(reportBlock.getBlockId(), NUM_BUCKETS);
-      buckets[bucket].add(reportBlock);
       HdfsServerConstants.ReplicaState replicaState = null;
       switch (reportBlock.getState()){
         case FINALIZED:
@@ -211,20 +225,14 @@ public Builder add(ReportedBlock reportBlock){
           replicaState = HdfsServerConstants.ReplicaState.TEMPORARY;
           break;
       }
-      hashes[bucket] += hash(reportBlock.getBlockId(),reportBlock.getGenerationStamp(),reportBlock.getLength(),
-              replicaState.getValue());
-      blockCounter++;
-      return this;
+      return add(reportBlock.getBlockId(), reportBlock.getGenerationStamp(),
+          reportBlock.getLength(), reportBlock.getState(), replicaState);
     }
   
     public Builder add(Replica replica) {
-      int bucket = bucket(replica, NUM_BUCKETS);
-      buckets[bucket].add(new ReportedBlock(replica.getBlockId(), replica
-          .getGenerationStamp(), replica.getNumBytes(), fromReplicaState(
-          replica.getState())));
-      hashes[bucket] += hash(replica);
-      blockCounter++;
-      return this;
+      return add(replica.getBlockId(), replica.getGenerationStamp(),
+          replica.getNumBytes(), fromReplicaState(replica.getState()),
+          replica.getState());
     }
     
     public Builder addAllAsFinalized(List<Block> blocks){
@@ -235,21 +243,58 @@ public Builder addAllAsFinalized(List<Block> blocks){
     }
     
     public Builder addAsFinalized(Block theBlock) {
-      int bucket = bucket(theBlock, NUM_BUCKETS);
-      buckets[bucket].add(new ReportedBlock(theBlock.getBlockId(),
-          theBlock.getGenerationStamp(), theBlock.getNumBytes(),
-          FINALIZED));
-      hashes[bucket] += hashAsFinalized(theBlock);
+      return add(theBlock.getBlockId(), theBlock.getGenerationStamp(),
+          theBlock.getNumBytes(), FINALIZED,
+          HdfsServerConstants.ReplicaState.FINALIZED);
+    }
+
+    private Builder add(long blockId, long generationStamp, long length,
+        BlockReportBlockState state,
+        HdfsServerConstants.ReplicaState replicaState) {
+      int bucket = bucket(blockId, NUM_BUCKETS);
+      int index = sizes[bucket];
+      ensureCapacity(bucket, index + 1);
+      blockIds[bucket][index] = blockId;
+      generationStamps[bucket][index] = generationStamp;
+      lengths[bucket][index] = length;
+      states[bucket][index] = (byte) state.ordinal();
+      sizes[bucket] = index + 1;
+      hashes[bucket] += hash(blockId, generationStamp, length,
+          replicaState.getValue());
       blockCounter++;
       return this;
     }
+
+    private void ensureCapacity(int bucket, int capacity) {
+      if (blockIds[bucket] == null) {
+        int initial = Math.max(capacity, INITIAL_BUCKET_CAPACITY);
+        blockIds[bucket] = new long[initial];
+        generationStamps[bucket] = new long[initial];
+        lengths[bucket] = new long[initial];
+        states[bucket] = new byte[initial];
+      } else if (blockIds[bucket].length < capacity) {
+        int grown = Math.max(capacity, blockIds[bucket].length * 2);
+        blockIds[bucket] = Arrays.copyOf(blockIds[bucket], grown);
+        generationStamps[bucket] = Arrays.copyOf(generationStamps[bucket],
+            grown);
+        lengths[bucket] = Arrays.copyOf(lengths[bucket], grown);
+        states[bucket] = Arrays.copyOf(states[bucket], grown);
+      }
+    }
   
-  
+    /**
+     * The buckets share the columns of the builder, which must not be used
+     * after this.
+     */
     public BlockReport build(){
       Bucket[] bucketArray = new Bucket[NUM_BUCKETS];
       for (int i = 0; i < NUM_BUCKETS; i++){
-        bucketArray[i] = new Bucket(buckets[i].toArray(new
-                ReportedBlock[buckets[i].size()]));
+        if (sizes[i] == 0) {
+          bucketArray[i] = new Bucket();
+        } else {
+          bucketArray[i] = new Bucket(sizes[i], blockIds[i],
+              generationStamps[i], lengths[i], states[i]);
+        }
       }
       return new BlockReport(bucketArray, hashes, blockCounter);
     }
@@ -288,7 +333,7 @@ private class BlockReportIterator implements Iterator<ReportedBlock>{
     @Override
     public boolean hasNext() {
       if (currentBucket < buckets.length){
-        if(currentBucketOffset < buckets[currentBucket].getBlocks().length){
+        if(currentBucketOffset < buckets[currentBucket].size()){
           return true;
         } else {
           currentBucket++;
@@ -302,7 +347,7 @@ public boolean hasNext() {
     @Override
     public ReportedBlock next() {
       if (hasNext()) {
-        return buckets[currentBucket].getBlocks()[currentBucketOffset++];
+        return buckets[currentBucket].getBlock(currentBucketOffset++);
       } else {
         throw new NoSuchElementException();
       }
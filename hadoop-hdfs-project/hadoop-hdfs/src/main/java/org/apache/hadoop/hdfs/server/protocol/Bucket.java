@@ -1,20 +1,85 @@
 package org.apache.hadoop.hdfs.server.protocol;
 
+/**
+ * The replicas of one hash bucket of a block report, stored column wise so
+ * that a report costs a handful of arrays per bucket instead of an object per
+ * replica. The replica at index i is made of the i-th element of every
+ * column; the state is the ordinal of its {@link BlockReportBlockState}.
+ */
 public class Bucket {
-  
-  private ReportedBlock[] blocks;
-  
-  public Bucket(){}
-  
+
+  private static final BlockReportBlockState[] STATES =
+      BlockReportBlockState.values();
+
+  private static final long[] NO_LONGS = new long[0];
+  private static final byte[] NO_BYTES = new byte[0];
+
+  private final int size;
+  private final long[] blockIds;
+  private final long[] generationStamps;
+  private final long[] lengths;
+  private final byte[] states;
+
+  public Bucket(){
+    this(0, NO_LONGS, NO_LONGS, NO_LONGS, NO_BYTES);
+  }
+
+  /**
+   * The columns are not copied and may be longer than size.
+   */
+  public Bucket(int size, long[] blockIds, long[] generationStamps,
+      long[] lengths, byte[] states) {
+    this.size = size;
+    this.blockIds = blockIds;
+    this.generationStamps = generationStamps;
+    this.lengths = lengths;
+    this.states = states;
+  }
+
   public Bucket(ReportedBlock[] blocks){
-    this.blocks = blocks;
+    this(blocks.length, new long[blocks.length], new long[blocks.length],
+        new long[blocks.length], new byte[blocks.length]);
+    for (int i = 0; i < blocks.length; i++) {
+      blockIds[i] = blocks[i].getBlockId();
+      generationStamps[i] = blocks[i].getGenerationStamp();
+      lengths[i] = blocks[i].getLength();
+      states[i] = (byte) blocks[i].getState().ordinal();
+    }
   }
-  public void setBlocks(ReportedBlock[] blocks) {
-    this.blocks = blocks;
+
+  public int size() {
+    return size;
+  }
+
+  public long getBlockId(int index) {
+    return blockIds[index];
   }
-  
+
+  public long getGenerationStamp(int index) {
+    return generationStamps[index];
+  }
+
+  public long getLength(int index) {
+    return lengths[index];
+  }
+
+  public BlockReportBlockState getState(int index) {
+    return STATES[states[index]];
+  }
+
+  /**
+   * Materializes the replicas as objects, meant for tests and debugging.
+   */
   public ReportedBlock[] getBlocks() {
+    ReportedBlock[] blocks = new ReportedBlock[size];
+    for (int i = 0; i < size; i++) {
+      blocks[i] = getBlock(i);
+    }
     return blocks;
   }
-}
 
+  ReportedBlock getBlock(int index) {
+    return new ReportedBlock(blockIds[index], generationStamps[index],
+        lengths[index], getState(index));
+  }
+}
@@ -197,10 +197,25 @@ public void commitBlockSynchronization(ExtendedBlock block,
    * The datanode asks the leader namenode which 'namenode' to send the next
    * block report to. This is to enusre load balancing of block reports among
    * namenodes
+   * @param noOfBlks number of blocks in the report
+   * @param firstReport whether it is the first report since the datanode
+   * registered
+   * @param waitTime time in ms since the leader first refused the report
    * @return active namenode to send the next block report to
    */
   @Idempotent
-  public ActiveNode getNextNamenodeToSendBlockReport(long noOfBlks) throws IOException;
+  public ActiveNode getNextNamenodeToSendBlockReport(long noOfBlks,
+      boolean firstReport, long waitTime) throws IOException;
+
+  /**
+   * The datanode tells the leader namenode that a block report it was
+   * assigned has been processed, so that the leader can admit more
+   * @param namenodeId id of the namenode the report was sent to
+   * @param noOfBlks number of blocks in the report
+   * @param processingTime time in ms the namenode took to process it
+   */
+  public void blockReportCompleted(long namenodeId, long noOfBlks,
+      long processingTime) throws IOException;
 
   /**
    * Read the small file data
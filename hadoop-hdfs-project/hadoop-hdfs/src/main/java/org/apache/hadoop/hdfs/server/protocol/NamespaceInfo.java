@@ -18,6 +18,7 @@
 
 package org.apache.hadoop.hdfs.server.protocol;
 
+import com.google.common.base.Preconditions;
 import org.apache.hadoop.classification.InterfaceAudience;
 import org.apache.hadoop.classification.InterfaceStability;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
@@ -35,6 +36,44 @@ public class NamespaceInfo extends StorageInfo {
   String buildVersion;
   String blockPoolID = "";    // id of the block pool
   String softwareVersion;
+  long capabilities;
+
+  // only authoritative on the namenode, which advertises what it supports
+  private static final long CAPABILITIES_SUPPORTED =
+      getSupportedCapabilities();
+
+  private static long getSupportedCapabilities() {
+    long mask = 0;
+    for (Capability c : Capability.values()) {
+      if (c.supported) {
+        mask |= c.mask;
+      }
+    }
+    return mask;
+  }
+
+  /**
+   * Features of the namenode that the datanodes only use when the namenode
+   * advertises them. New capabilities go at the end.
+   */
+  public enum Capability {
+    UNKNOWN(false),
+    // block report buckets sent as columns of varints
+    BLOCK_REPORT_COLUMNS(true);
+
+    private final boolean supported;
+    private final long mask;
+
+    Capability(boolean isSupported) {
+      supported = isSupported;
+      int bits = ordinal() - 1;
+      mask = (bits < 0) ? 0 : (1L << bits);
+    }
+
+    public long getMask() {
+      return mask;
+    }
+  }
 
   public NamespaceInfo() {
     super();
@@ -43,10 +82,17 @@ public NamespaceInfo() {
 
   public NamespaceInfo(int nsID, String clusterID, String bpID, long cT,
       String buildVersion, String softwareVersion) {
+    this(nsID, clusterID, bpID, cT, buildVersion, softwareVersion,
+        CAPABILITIES_SUPPORTED);
+  }
+
+  public NamespaceInfo(int nsID, String clusterID, String bpID, long cT,
+      String buildVersion, String softwareVersion, long capabilities) {
     super(HdfsConstants.LAYOUT_VERSION, nsID, clusterID, cT, bpID);
     blockPoolID = bpID;
     this.buildVersion = buildVersion;
     this.softwareVersion = softwareVersion;
+    this.capabilities = capabilities;
   }
 
   public NamespaceInfo(int nsID, String clusterID, String bpID, long cT) {
@@ -66,6 +112,17 @@ public String getSoftwareVersion() {
     return softwareVersion;
   }
 
+  public long getCapabilities() {
+    return capabilities;
+  }
+
+  public boolean isCapabilitySupported(Capability capability) {
+    Preconditions.checkArgument(capability != Capability.UNKNOWN,
+        "cannot test for unknown capability");
+    long mask = capability.getMask();
+    return (capabilities & mask) == mask;
+  }
+
   @Override
   public String toString() {
     return super.toString() + ";bpid=" + blockPoolID;
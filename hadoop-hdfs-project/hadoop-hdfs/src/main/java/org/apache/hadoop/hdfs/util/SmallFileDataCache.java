@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.util;
+
+import org.apache.hadoop.classification.InterfaceAudience;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of the content of the files stored in the database, bounded by
+ * the total size of the cached content.
+ * <p/>
+ * The namenode moves the generation stamp of a file each time it writes its
+ * content, so a cached content is valid as long as the generation stamp and
+ * the size of the file did not change. Only the latest known version of each
+ * file is kept.
+ * <p/>
+ * The returned arrays are shared and must not be modified.
+ */
+@InterfaceAudience.Private
+public class SmallFileDataCache {
+
+  private final long capacity;
+  private final LinkedHashMap<Integer, Entry> entries =
+      new LinkedHashMap<>(16, 0.75f, true);
+  private long size = 0;
+  private long hits = 0;
+  private long misses = 0;
+
+  /**
+   * @param capacity
+   *     max total size of the cached content, in bytes
+   */
+  public SmallFileDataCache(long capacity) {
+    this.capacity = capacity;
+  }
+
+  /**
+   * @return the cached content of the file, or null if the file is not
+   * cached or changed since it was cached
+   */
+  public synchronized byte[] get(int inodeId, long generationStamp,
+      long length) {
+    Entry entry = entries.get(inodeId);
+    if (entry == null) {
+      misses++;
+      return null;
+    }
+    if (entry.generationStamp != generationStamp ||
+        entry.data.length != length) {
+      remove(inodeId);
+      misses++;
+      return null;
+    }
+    hits++;
+    return entry.data;
+  }
+
+  public synchronized void put(int inodeId, long generationStamp,
+      byte[] data) {
+    if (data == null || data.length > capacity) {
+      return;
+    }
+    remove(inodeId);
+    entries.put(inodeId, new Entry(generationStamp, data));
+    size += data.length;
+    Iterator<Map.Entry<Integer, Entry>> eldest =
+        entries.entrySet().iterator();
+    while (size > capacity) {
+      size -= eldest.next().getValue().data.length;
+      eldest.remove();
+    }
+  }
+
+  public synchronized void remove(int inodeId) {
+    Entry entry = entries.remove(inodeId);
+    if (entry != null) {
+      size -= entry.data.length;
+    }
+  }
+
+  public synchronized long size() {
+    return size;
+  }
+
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+  private static class Entry {
+    private final long generationStamp;
+    private final byte[] data;
+
+    Entry(long generationStamp, byte[] data) {
+      this.generationStamp = generationStamp;
+      this.data = data;
+    }
+  }
+}
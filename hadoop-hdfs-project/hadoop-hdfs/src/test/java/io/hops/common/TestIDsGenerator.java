@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.common;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestIDsGenerator {
+
+  private static final int BATCH_SIZE = 10;
+
+  /**
+   * Hands out consecutive ranges instead of reserving them in the database.
+   */
+  private static class LocalIDsGenerator extends IDsGenerator {
+    private long next = 0;
+
+    LocalIDsGenerator(float threshold) {
+      // a check interval of 0 keeps the batch size fixed
+      super(BATCH_SIZE, BATCH_SIZE, threshold, 1, 0);
+    }
+
+    @Override
+    CountersQueue.Counter incrementCounter(int inc) throws IOException {
+      CountersQueue.Counter counter = new CountersQueue.Counter(next,
+          next + inc);
+      next += inc;
+      return counter;
+    }
+  }
+
+  @Test
+  public void testRefillRequestedBelowThreshold() throws IOException {
+    LocalIDsGenerator generator = new LocalIDsGenerator(0.5f);
+    assertTrue(generator.getMoreIdsIfNeeded());
+    assertFalse(generator.isRefillRequested());
+
+    // down to the threshold, 5 ids left
+    for (int i = 0; i < 5; i++) {
+      assertEquals(i, generator.getUniqueID());
+    }
+    assertFalse(generator.isRefillRequested());
+
+    assertEquals(5, generator.getUniqueID());
+    assertTrue(generator.isRefillRequested());
+
+    // the monitor tops the queue up to a batch, 14 ids left
+    assertTrue(generator.getMoreIdsIfNeeded());
+    assertFalse(generator.isRefillRequested());
+    assertEquals(6, generator.getUniqueID());
+    assertFalse(generator.isRefillRequested());
+  }
+
+  @Test
+  public void testNoRefillRequestedWithZeroThreshold() throws IOException {
+    LocalIDsGenerator generator = new LocalIDsGenerator(0);
+    generator.getMoreIdsIfNeeded();
+    for (int i = 0; i < BATCH_SIZE; i++) {
+      assertEquals(i, generator.getUniqueID());
+      assertFalse(generator.isRefillRequested());
+    }
+
+    // an empty queue fails right away and asks for a refill
+    try {
+      generator.getUniqueID();
+      fail("The generator has no id left");
+    } catch (CountersQueue.EmptyCountersQueueException e) {
+      // expected
+    }
+    assertTrue(generator.isRefillRequested());
+    assertEquals(1, generator.getEmptyQueueCount());
+
+    assertTrue(generator.getMoreIdsIfNeeded());
+    assertEquals(BATCH_SIZE, generator.getUniqueID());
+  }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata.memory;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs a NameNode, without DataNodes, on the in-memory metadata storage.
+ */
+public class TestInMemoryNameNode {
+
+  @Test(timeout = 120000)
+  public void testNamespaceOperations() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.set(DFSConfigKeys.DFS_STORAGE_DRIVER_CLASS,
+        InMemoryStorageFactory.class.getName());
+    conf.setBoolean(CommonConfigurationKeys.HOPS_GROUPS_ENABLE, false);
+    MiniDFSCluster cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(0).format(true).build();
+    try {
+      cluster.waitActive();
+      DistributedFileSystem fs = cluster.getFileSystem();
+
+      Path dir = new Path("/a/b");
+      assertTrue(fs.mkdirs(dir));
+      Path file = new Path(dir, "f");
+      fs.create(file).close();
+      FileStatus[] children = fs.listStatus(dir);
+      assertEquals(1, children.length);
+      assertEquals(file.getName(), children[0].getPath().getName());
+      assertEquals(0, children[0].getLen());
+
+      Path renamed = new Path("/a/g");
+      assertTrue(fs.rename(file, renamed));
+      assertTrue(fs.exists(renamed));
+      assertTrue(fs.delete(new Path("/a"), true));
+      assertFalse(fs.exists(renamed));
+    } finally {
+      cluster.shutdown();
+    }
+  }
+}
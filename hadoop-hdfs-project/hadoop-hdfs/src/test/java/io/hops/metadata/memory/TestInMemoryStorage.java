@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata.memory;
+
+import io.hops.exception.StorageException;
+import io.hops.exception.TransientStorageException;
+import io.hops.metadata.hdfs.dal.SafeBlocksDataAccess;
+import io.hops.metadata.hdfs.entity.Lease;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestInMemoryStorage {
+
+  private InMemoryStorageFactory factory;
+  private InMemoryStorageConnector connector;
+  private InMemoryLeaseDataAccess leases;
+
+  @Before
+  public void setUp() throws Exception {
+    factory = new InMemoryStorageFactory();
+    Properties conf = new Properties();
+    conf.setProperty(InMemoryStorageConnector.LOCK_TIMEOUT_MS, "200");
+    factory.setConfiguration(conf);
+    connector = (InMemoryStorageConnector) factory.getConnector();
+    leases = (InMemoryLeaseDataAccess) factory.getDataAccess(
+        io.hops.metadata.hdfs.dal.LeaseDataAccess.class);
+  }
+
+  private void insert(String holder, int holderId) throws Exception {
+    connector.beginTransaction();
+    leases.prepare(Collections.<Lease>emptyList(),
+        Collections.singletonList(new Lease(holder, holderId, 1L)),
+        Collections.<Lease>emptyList());
+    connector.commit();
+  }
+
+  @Test
+  public void testWritesAreVisibleAfterCommit() throws Exception {
+    connector.beginTransaction();
+    leases.prepare(Collections.<Lease>emptyList(),
+        Collections.singletonList(new Lease("client", 1, 1L)),
+        Collections.<Lease>emptyList());
+    assertNotNull("a transaction reads its own writes",
+        leases.findByPKey("client", 1));
+
+    Future<Lease> otherReader = Executors.newSingleThreadExecutor().submit(
+        new Callable<Lease>() {
+          @Override
+          public Lease call() throws Exception {
+            return leases.findByPKey("client", 1);
+          }
+        });
+    assertNull("uncommitted writes are not visible", otherReader.get());
+
+    connector.commit();
+    assertEquals(1, leases.countAll());
+    assertEquals(1, leases.findByHolderId(1).getHolderId());
+  }
+
+  @Test
+  public void testRollbackDiscardsWrites() throws Exception {
+    connector.beginTransaction();
+    leases.prepare(Collections.<Lease>emptyList(),
+        Collections.singletonList(new Lease("client", 1, 1L)),
+        Collections.<Lease>emptyList());
+    connector.rollback();
+    assertEquals(0, leases.countAll());
+    assertNull(leases.findByHolderId(1));
+  }
+
+  @Test
+  public void testWriteLockBlocksOtherWriters() throws Exception {
+    insert("client", 1);
+    connector.beginTransaction();
+    connector.writeLock();
+    assertNotNull(leases.findByPKey("client", 1));
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    Future<Void> writer = executor.submit(new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        connector.beginTransaction();
+        try {
+          leases.prepare(Collections.<Lease>emptyList(),
+              Collections.<Lease>emptyList(),
+              Collections.singletonList(new Lease("client", 1, 2L)));
+          connector.commit();
+        } catch (Exception e) {
+          connector.rollback();
+          throw e;
+        }
+        return null;
+      }
+    });
+    try {
+      writer.get();
+      fail("the row is write locked by the first transaction");
+    } catch (ExecutionException e) {
+      assertTrue(e.getCause() instanceof TransientStorageException);
+    }
+    connector.commit();
+    executor.shutdown();
+  }
+
+  @Test
+  public void testRoundTripsAreCounted() throws Exception {
+    long before = connector.getTotalRoundTrips();
+    connector.beginTransaction();
+    leases.findByPKey("client", 1);
+    leases.findByHolderId(1);
+    assertEquals(3, connector.getTransactionRoundTrips());
+    connector.commit();
+    assertEquals(4, connector.getTotalRoundTrips() - before);
+  }
+
+  @Test
+  public void testUnsupportedTablesFailWhenUsed() throws Exception {
+    SafeBlocksDataAccess safeBlocks = (SafeBlocksDataAccess)
+        factory.getDataAccess(SafeBlocksDataAccess.class);
+    assertNotNull(safeBlocks);
+    try {
+      safeBlocks.countAll();
+      fail("the in-memory driver has no safe blocks table");
+    } catch (StorageException e) {
+      assertTrue(e.getMessage(),
+          e.getMessage().contains("SafeBlocksDataAccess.countAll"));
+    }
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.metadata.memory;
+
+import io.hops.exception.StorageException;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class TestInMemoryTable {
+
+  private static final String BAD = "bad";
+
+  /**
+   * A table whose index can not be computed for the {@link #BAD} rows, to
+   * make the commit fail half way.
+   */
+  private static InMemoryTable<String, String> createTable(String name,
+      InMemoryStorageConnector connector) {
+    InMemoryTable<String, String> table = new InMemoryTable<>(name, connector);
+    table.addIndex(new InMemoryTable.Index<Integer, String, String>() {
+      @Override
+      Integer valueOf(String row) {
+        if (row.equals(BAD)) {
+          throw new IllegalStateException("Can not index " + row);
+        }
+        return row.length();
+      }
+    });
+    return table;
+  }
+
+  @Test
+  public void testFailedCommitAppliesNothing() throws Exception {
+    InMemoryStorageConnector connector = new InMemoryStorageConnector();
+    InMemoryTable<String, String> first = createTable("first", connector);
+    InMemoryTable<String, String> second = createTable("second", connector);
+
+    connector.beginTransaction();
+    first.put("a", "x");
+    first.put("b", "y");
+    connector.commit();
+
+    connector.beginTransaction();
+    first.put("a", "changed");
+    first.delete("b");
+    second.put("c", "z");
+    second.put("d", BAD);
+    try {
+      connector.commit();
+      fail("The commit should fail");
+    } catch (StorageException e) {
+      // expected
+    }
+
+    assertEquals("x", first.find("a"));
+    assertEquals("y", first.find("b"));
+    assertNull(second.find("c"));
+    assertNull(second.find("d"));
+    assertEquals(2, first.count());
+    assertEquals(0, second.count());
+    assertFalse(connector.isTransactionActive());
+  }
+
+  @Test(timeout = 30000)
+  public void testFormatReleasesLocks() throws Exception {
+    final InMemoryStorageConnector connector = new InMemoryStorageConnector();
+    final InMemoryTable<String, String> table = createTable("t", connector);
+    final CountDownLatch locked = new CountDownLatch(1);
+    // a transaction that never ends, like one of a NameNode that was killed
+    Thread abandoned = new Thread() {
+      @Override
+      public void run() {
+        try {
+          connector.beginTransaction();
+          connector.writeLock();
+          table.put("a", "x");
+          locked.countDown();
+        } catch (StorageException e) {
+          throw new IllegalStateException(e);
+        }
+      }
+    };
+    abandoned.start();
+    locked.await();
+    abandoned.join();
+
+    connector.formatAllStorageNonTransactional();
+
+    connector.beginTransaction();
+    connector.writeLock();
+    table.put("a", "y");
+    connector.commit();
+    assertEquals("y", table.find("a"));
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.resolvingcache;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.fs.permission.PermissionStatus;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.server.namenode.INode;
+import org.apache.hadoop.hdfs.server.namenode.INodeDirectory;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestTrieCache {
+
+  private static final PermissionStatus PERMISSIONS =
+      new PermissionStatus("hdfs", "hdfs", FsPermission.getDefault());
+
+  private TrieCache cache;
+  private INode root;
+
+  @Before
+  public void setUp() throws IOException {
+    cache = newCache(DFSConfigKeys.DFS_RESOLVING_CACHE_TRIE_MAX_MEMORY_DEFAULT);
+    root = INodeDirectory.createRootDir(PERMISSIONS);
+  }
+
+  private static TrieCache newCache(long maxMemory) throws IOException {
+    Configuration conf = new Configuration(false);
+    conf.setBoolean(DFSConfigKeys.DFS_RESOLVING_CACHE_ENABLED, true);
+    conf.setLong(DFSConfigKeys.DFS_RESOLVING_CACHE_TRIE_MAX_MEMORY, maxMemory);
+    TrieCache cache = new TrieCache();
+    cache.setConfiguration(conf);
+    return cache;
+  }
+
+  private static INode dir(int id, INode parent, String name)
+      throws IOException {
+    INode dir = new INodeDirectory(id, name, PERMISSIONS, true);
+    dir.setParentIdNoPersistance(parent.getId());
+    return dir;
+  }
+
+  private List<INode> path(INode... inodes) {
+    List<INode> path = new ArrayList<>();
+    path.add(root);
+    for (INode inode : inodes) {
+      path.add(inode);
+    }
+    return path;
+  }
+
+  @Test
+  public void testResolvesLongestCachedPrefix() throws IOException {
+    INode a = dir(2, root, "a");
+    INode b = dir(3, a, "b");
+    cache.set("/a/b", path(a, b));
+
+    assertArrayEquals(new int[]{1, 2, 3}, cache.get("/a/b"));
+    assertArrayEquals(new int[]{1, 2, 3}, cache.get("/a/b/c/d"));
+    assertArrayEquals(new int[]{1, 2}, cache.get("/a/x"));
+    // only the root is cached
+    assertNull(cache.get("/x/y"));
+    assertEquals(3, cache.getHits());
+    assertEquals(1, cache.getMisses());
+
+    // the partial path resolver passes sub paths
+    INode c = dir(4, b, "c");
+    cache.set("/c", path(c).subList(1, 2));
+    assertArrayEquals(new int[]{1, 2, 3, 4}, cache.get("/a/b/c"));
+  }
+
+  @Test
+  public void testDeleteInvalidatesSubtree() throws IOException {
+    INode a = dir(2, root, "a");
+    INode b = dir(3, a, "b");
+    INode c = dir(4, b, "c");
+    INode d = dir(5, root, "d");
+    cache.set("/a/b/c", path(a, b, c));
+    cache.set("/d", path(d));
+
+    cache.delete(b);
+    assertArrayEquals(new int[]{1, 2}, cache.get("/a/b/c"));
+    assertArrayEquals(new int[]{1, 5}, cache.get("/d"));
+
+    // c can not be attached anymore as its parent is gone
+    cache.set(c);
+    assertArrayEquals(new int[]{1, 2}, cache.get("/a/b/c"));
+
+    cache.delete("/a");
+    assertNull(cache.get("/a/b/c"));
+    assertArrayEquals(new int[]{1, 5}, cache.get("/d"));
+  }
+
+  @Test
+  public void testRenameReplacesOldPath() throws IOException {
+    INode a = dir(2, root, "a");
+    INode b = dir(3, a, "b");
+    INode c = dir(4, b, "c");
+    cache.set("/a/b/c", path(a, b, c));
+
+    // mv /a/b /b, the namenode that did it learns the new path
+    b.setParentIdNoPersistance(root.getId());
+    cache.set("/b", path(b));
+    assertArrayEquals(new int[]{1, 3}, cache.get("/b/c"));
+    assertArrayEquals(new int[]{1, 2}, cache.get("/a/b/c"));
+
+    // another inode takes the old name
+    INode newB = dir(5, a, "b");
+    cache.set("/a/b", path(a, newB));
+    assertArrayEquals(new int[]{1, 2, 5}, cache.get("/a/b/c"));
+  }
+
+  @Test
+  public void testBoundedByMemory() throws IOException {
+    int nodes = 100;
+    int nodeSize = TrieCache.NODE_OVERHEAD + 8;
+    cache = newCache(nodes * nodeSize);
+    INode hot = dir(2, root, "hot");
+    cache.set("/hot", path(hot));
+    for (int i = 0; i < 10 * nodes; i++) {
+      INode cold = dir(3 + i, root, String.format("c%03d", i));
+      cache.set(cold);
+      // keep using the hot entry
+      cache.get("/hot");
+    }
+    // a sweep may only clear the reference bits of the newest entries
+    assertTrue(cache.getMemoryUsed() <= (nodes + 2) * nodeSize);
+    assertArrayEquals(new int[]{1, 2}, cache.get("/hot"));
+  }
+
+  @Test
+  public void testFlush() throws IOException {
+    INode a = dir(2, root, "a");
+    cache.set("/a", path(a));
+    cache.flush();
+    assertNull(cache.get("/a"));
+    assertEquals(0, cache.getMemoryUsed());
+  }
+}
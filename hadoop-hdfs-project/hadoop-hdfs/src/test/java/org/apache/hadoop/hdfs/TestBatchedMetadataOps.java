@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.BlockLocation;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.security.AccessControlException;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.PrivilegedExceptionAction;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestBatchedMetadataOps {
+
+  private static final int BLOCK_SIZE = 1024;
+  private static final int MAX_PATHS = 3;
+
+  private Configuration conf;
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem dfs;
+
+  @Before
+  public void setUp() throws Exception {
+    conf = new HdfsConfiguration();
+    conf.setLong(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+    conf.setInt(DFSConfigKeys.DFS_BATCHED_METADATA_OPS_MAX_PATHS_KEY,
+        MAX_PATHS);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    dfs = cluster.getFileSystem();
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  @Test
+  public void testBatchedFileStatus() throws Exception {
+    Path[] paths = new Path[]{new Path("/a/b/f1"), new Path("/a/b/f2"),
+        new Path("/a/missing"), new Path("/a/b"), new Path("/c/f3"),
+        new Path("/a/b/f1")};
+    DFSTestUtil.createFile(dfs, paths[0], 10, (short) 1, 0);
+    DFSTestUtil.createFile(dfs, paths[1], 3 * BLOCK_SIZE, (short) 1, 0);
+    DFSTestUtil.createFile(dfs, paths[4], 0, (short) 1, 0);
+
+    // more paths than fit in one batch, the client splits them
+    FileStatus[] stats = dfs.getBatchedFileStatus(paths);
+    assertEquals(paths.length, stats.length);
+    for (int i = 0; i < paths.length; i++) {
+      if (i == 2) {
+        assertNull(stats[i]);
+      } else {
+        assertEquals(dfs.getFileStatus(paths[i]), stats[i]);
+        assertEquals(dfs.getFileStatus(paths[i]).getLen(), stats[i].getLen());
+      }
+    }
+  }
+
+  @Test
+  public void testBatchedBlockLocations() throws Exception {
+    Path[] paths = new Path[]{new Path("/a/f1"), new Path("/a/f2"),
+        new Path("/a"), new Path("/a/missing"), new Path("/a/empty")};
+    DFSTestUtil.createFile(dfs, paths[0], 10, (short) 1, 0);
+    DFSTestUtil.createFile(dfs, paths[1], 3 * BLOCK_SIZE, (short) 1, 0);
+    DFSTestUtil.createFile(dfs, paths[4], 0, (short) 1, 0);
+
+    BlockLocation[][] locations =
+        dfs.getBatchedFileBlockLocations(paths, 0, Long.MAX_VALUE);
+    assertEquals(paths.length, locations.length);
+    assertEquals(Arrays.toString(
+        dfs.getFileBlockLocations(paths[0], 0, Long.MAX_VALUE)),
+        Arrays.toString(locations[0]));
+    assertEquals(3, locations[1].length);
+    assertEquals(Arrays.toString(
+        dfs.getFileBlockLocations(paths[1], 0, Long.MAX_VALUE)),
+        Arrays.toString(locations[1]));
+    assertNull(locations[2]);
+    assertNull(locations[3]);
+    assertEquals(0, locations[4].length);
+  }
+
+  @Test
+  public void testServerRejectsTooBigBatches() throws Exception {
+    String[] srcs = new String[MAX_PATHS + 1];
+    for (int i = 0; i < srcs.length; i++) {
+      srcs[i] = "/f" + i;
+    }
+    try {
+      cluster.getNameNodeRpc().getBatchedFileInfo(srcs);
+      fail("a batch bigger than the limit should be rejected");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage().contains(
+          DFSConfigKeys.DFS_BATCHED_METADATA_OPS_MAX_PATHS_KEY));
+    }
+  }
+
+  @Test
+  public void testPermissionDenied() throws Exception {
+    final Path file = new Path("/private/f1");
+    DFSTestUtil.createFile(dfs, file, 10, (short) 1, 0);
+    dfs.setPermission(file.getParent(), new FsPermission((short) 0700));
+
+    UserGroupInformation user = UserGroupInformation
+        .createUserForTesting("someone", new String[]{"nogroup"});
+    user.doAs(new PrivilegedExceptionAction<Object>() {
+      @Override
+      public Object run() throws Exception {
+        DistributedFileSystem userFs =
+            (DistributedFileSystem) FileSystem.newInstance(dfs.getUri(), conf);
+        try {
+          userFs.getBatchedFileStatus(new Path[]{new Path("/"), file});
+          fail("the whole batch should fail");
+        } catch (AccessControlException e) {
+          // expected
+        }
+        return null;
+      }
+    });
+  }
+}
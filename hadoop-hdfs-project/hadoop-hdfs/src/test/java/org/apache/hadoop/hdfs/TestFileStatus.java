@@ -27,8 +27,10 @@
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.RemoteIterator;
 import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.protocol.CursorDirectoryListing;
 import org.apache.hadoop.hdfs.protocol.HdfsConstants;
 import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.protocol.ListingCursorExpiredException;
 import org.apache.hadoop.hdfs.server.namenode.FSNamesystem;
 import org.apache.hadoop.hdfs.server.namenode.NameNode;
 import org.apache.hadoop.hdfs.web.HftpFileSystem;
@@ -329,4 +331,98 @@ public void testGetFileStatusOnDir() throws Exception {
     }
     fs.delete(dir, true);
   }
+
+  /**
+   * Test the listing of a directory through a namenode side cursor, in
+   * pages of two entries.
+   */
+  @Test
+  public void testListStatusIteratorWithCursor() throws Exception {
+    DistributedFileSystem dfs = (DistributedFileSystem) fs;
+    Path dir = fs.makeQualified(new Path("/test/cursor"));
+    assertTrue(fs.mkdirs(dir));
+    for (int i = 0; i < 5; i++) {
+      writeFile(fs, new Path(dir, "file" + i), 1, blockSize, blockSize);
+    }
+    assertTrue(fs.mkdirs(new Path(dir, "subdir")));
+
+    RemoteIterator<FileStatus> itor = dfs.listStatusIterator(dir);
+    for (int i = 0; i < 5; i++) {
+      FileStatus stat = itor.next();
+      assertEquals(new Path(dir, "file" + i).toString(),
+          stat.getPath().toString());
+      assertEquals(blockSize, stat.getLen());
+    }
+    assertTrue(itor.next().isDirectory());
+    assertFalse(itor.hasNext());
+
+    itor = dfs.listStatusIterator(dir, true);
+    int files = 0;
+    while (itor.hasNext()) {
+      FileStatus stat = itor.next();
+      if (stat.isDirectory()) {
+        assertEquals(new Path(dir, "subdir").toString(),
+            stat.getPath().toString());
+      } else {
+        files++;
+      }
+    }
+    assertEquals(5, files);
+
+    // an unknown cursor is reported as expired
+    String src = dir.toUri().getPath();
+    CursorDirectoryListing first = cluster.getNameNodeRpc()
+        .getListingCursor(src, 0, HdfsFileStatus.EMPTY_NAME, false, false);
+    assertEquals(2, first.getPartialListing().length);
+    assertTrue(first.getCursorId() != 0);
+    try {
+      cluster.getNameNodeRpc().getListingCursor(src,
+          first.getCursorId() + 1, first.getLastName(), false, false);
+      fail();
+    } catch (ListingCursorExpiredException e) {
+      FileSystem.LOG.info("GOOD: getting an exception", e);
+    }
+    fs.delete(dir, true);
+  }
+
+  /**
+   * Test that the directories with too many children are listed the classic
+   * way.
+   */
+  @Test
+  public void testListStatusIteratorWithoutCursor() throws Exception {
+    fs.close();
+    cluster.shutdown();
+    conf.setInt(DFSConfigKeys.DFS_LISTING_CURSOR_MAX_CHILDREN_KEY, 3);
+    cluster = new MiniDFSCluster.Builder(conf).build();
+    fs = cluster.getFileSystem();
+
+    DistributedFileSystem dfs = (DistributedFileSystem) fs;
+    Path small = fs.makeQualified(new Path("/test/small"));
+    Path big = fs.makeQualified(new Path("/test/big"));
+    for (int i = 0; i < 3; i++) {
+      assertTrue(fs.mkdirs(new Path(small, "dir" + i)));
+    }
+    for (int i = 0; i < 5; i++) {
+      assertTrue(fs.mkdirs(new Path(big, "dir" + i)));
+    }
+
+    CursorDirectoryListing listing = cluster.getNameNodeRpc()
+        .getListingCursor(small.toUri().getPath(), 0,
+            HdfsFileStatus.EMPTY_NAME, false, false);
+    assertTrue(listing.getCursorId() != 0);
+    listing = cluster.getNameNodeRpc()
+        .getListingCursor(big.toUri().getPath(), 0,
+            HdfsFileStatus.EMPTY_NAME, false, false);
+    assertEquals(0, listing.getCursorId());
+    assertEquals(2, listing.getPartialListing().length);
+    assertEquals(3, listing.getRemainingEntries());
+
+    RemoteIterator<FileStatus> itor = dfs.listStatusIterator(big);
+    for (int i = 0; i < 5; i++) {
+      assertEquals(new Path(big, "dir" + i).toString(),
+          itor.next().getPath().toString());
+    }
+    assertFalse(itor.hasNext());
+  }
 }
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs;
+
+import io.hops.leader_election.node.ActiveNodePBImpl;
+import org.apache.hadoop.hdfs.protocol.ClientProtocol;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The handler utilization the LOAD_AWARE policy uses for fresh, stale and
+ * missing load reports.
+ */
+public class TestNamenodeSelector {
+
+  private static final long VALIDITY = 1000;
+  private static final double DELTA = 1e-9;
+
+  private NamenodeSelector selector;
+  private NamenodeSelector.NamenodeHandle handle;
+
+  @Before
+  public void setUp() throws Exception {
+    // the test constructor, with one namenode
+    selector = new NamenodeSelector(new HdfsConfiguration(),
+        (ClientProtocol) null, null);
+    handle = new NamenodeSelector.NamenodeHandle(null, namenode());
+  }
+
+  private static ActiveNodePBImpl namenode() {
+    return new ActiveNodePBImpl(1, "localhost", "127.0.0.1", 9999,
+        "0.0.0.0:50070", "", 0);
+  }
+
+  private static ActiveNodePBImpl loadedNamenode(int callQueueLength,
+      int activeHandlers, int handlers) {
+    ActiveNodePBImpl an = namenode();
+    an.setLoad(callQueueLength, activeHandlers, handlers);
+    return an;
+  }
+
+  @Test
+  public void testMissingLoadReport() {
+    handle.setLoad(namenode(), 0);
+    assertEquals(0, handle.getUtilization(VALIDITY, 0), DELTA);
+    assertEquals(100, selector.getExpectedLatency(handle, 100), DELTA);
+  }
+
+  @Test
+  public void testFreshLoadReport() {
+    long now = System.currentTimeMillis();
+    handle.setLoad(loadedNamenode(4, 8, 8), now);
+    assertEquals(1.5, handle.getUtilization(VALIDITY, now + VALIDITY),
+        DELTA);
+    // expected latency times one plus the utilization
+    assertEquals(250, selector.getExpectedLatency(handle, 100), DELTA);
+
+    // an entry without load keeps the last report
+    handle.setLoad(namenode(), now + 1);
+    assertEquals(1.5, handle.getUtilization(VALIDITY, now + VALIDITY),
+        DELTA);
+  }
+
+  @Test
+  public void testStaleLoadReport() {
+    long now = System.currentTimeMillis();
+    handle.setLoad(loadedNamenode(4, 8, 8), now);
+    assertEquals(0, handle.getUtilization(VALIDITY, now + VALIDITY + 1),
+        DELTA);
+
+    handle.setLoad(loadedNamenode(4, 8, 8),
+        now - 2 * selector.getLoadValidity());
+    assertEquals(100, selector.getExpectedLatency(handle, 100), DELTA);
+  }
+
+  @Test
+  public void testValidityCoversAllNamenodes() {
+    // the namenodes are asked in turn, so a report is kept for one list
+    // update per namenode plus one
+    assertEquals(
+        2 * DFSConfigKeys.DFS_CLIENT_REFRESH_NAMENODE_LIST_IN_MS_DEFAULT,
+        selector.getLoadValidity());
+  }
+}
@@ -25,6 +25,7 @@
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
@@ -1095,6 +1096,65 @@ public void TestHdfsCompatibility2() throws IOException {
   }
 
 
+  /*
+  A HDFS client reads the small files stored in the database through the
+  datanodes, which must start sending the data at the offset the client asks
+  for.
+   */
+  @Test
+  public void TestHdfsCompatibilityReadAtOffset() throws IOException {
+    MiniDFSCluster cluster = null;
+    try {
+      Configuration conf = new HdfsConfiguration();
+
+      final int BLOCK_SIZE = 1024 * 1024;
+      final boolean ENABLE_STORE_SMALL_FILES_IN_DB = true;
+      final int INMEMORY_SMALL_FILE_MAX_SIZE = conf.getInt(DFSConfigKeys.DFS_DB_INMEMORY_FILE_MAX_SIZE_KEY, DFSConfigKeys.DFS_DB_INMEMORY_FILE_MAX_SIZE_DEFAULT);
+      final String FILE_NAME1 = "/TEST-FLIE1";
+
+      conf.setBoolean(DFSConfigKeys.DFS_STORE_SMALL_FILES_IN_DB_KEY, ENABLE_STORE_SMALL_FILES_IN_DB);
+      conf.setInt(DFSConfigKeys.DFS_BLOCK_SIZE_KEY, BLOCK_SIZE);
+      cluster = new MiniDFSCluster.Builder(conf).format(true).numDataNodes(1).format(true).build();
+      cluster.waitActive();
+      DistributedFileSystem dfs = cluster.getFileSystem();
+
+      writeFile(dfs, FILE_NAME1, INMEMORY_SMALL_FILE_MAX_SIZE);
+      assertTrue("Count of db file should be 1", countInMemoryDBFiles() == 1);
+
+      conf.setBoolean(hdfsClinetEmulationForSF,true);
+      FileSystem hdfsClient = FileSystem.newInstance(conf);
+
+      final int offset = INMEMORY_SMALL_FILE_MAX_SIZE / 2 + 1;
+      final int length = INMEMORY_SMALL_FILE_MAX_SIZE - offset;
+      byte[] buffer = new byte[length];
+
+      // a seek then a read, and a positional read
+      FSDataInputStream is = hdfsClient.open(new Path(FILE_NAME1));
+      is.seek(offset);
+      IOUtils.readFully(is, buffer, 0, length);
+      for (int i = 0; i < length; i++) {
+        assertTrue("Wrong data at " + (offset + i),
+            buffer[i] == (byte) ((offset + i) % 128));
+      }
+      Arrays.fill(buffer, (byte) -1);
+      is.readFully(offset, buffer);
+      for (int i = 0; i < length; i++) {
+        assertTrue("Wrong data at " + (offset + i),
+            buffer[i] == (byte) ((offset + i) % 128));
+      }
+      is.close();
+      hdfsClient.close();
+
+    } catch (Exception e) {
+      e.printStackTrace();
+      fail(e.getMessage());
+    } finally {
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+  }
+
   @Test
   public void TestSmallFilesWithNoDataNodes() throws IOException {
     MiniDFSCluster cluster = null;
@@ -1371,6 +1431,69 @@ public void TestWriteMaxSpillToDN() throws IOException {
     }
   }
 
+  /**
+   * Create many small files with one call and read them back
+   *
+   * @throws IOException
+   */
+  @Test
+  public void TestCreateSmallFilesInBatches() throws IOException {
+    MiniDFSCluster cluster = null;
+    try {
+      Configuration conf = new HdfsConfiguration();
+      conf.setBoolean(DFSConfigKeys.DFS_STORE_SMALL_FILES_IN_DB_KEY, true);
+      // the client splits the files in batches of 3 files
+      conf.setInt(DFSConfigKeys.DFS_BATCHED_METADATA_OPS_MAX_PATHS_KEY, 3);
+
+      cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).format(true).build();
+      cluster.waitActive();
+      DistributedFileSystem dfs = cluster.getFileSystem();
+
+      final int FILES = 8;
+      int[] sizes = {0, 1, 100, 1024, 1025, 2000, 4000, 64 * 1024};
+      Path[] paths = new Path[FILES];
+      byte[][] data = new byte[FILES][];
+      for (int i = 0; i < FILES; i++) {
+        paths[i] = new Path("/dir" + (i % 2) + "/file" + i);
+        data[i] = new byte[sizes[i]];
+        for (int j = 0; j < sizes[i]; j++) {
+          data[i][j] = (byte) (j % 128);
+        }
+      }
+      dfs.createSmallFiles(paths, data, null, true, (short) 1);
+
+      for (int i = 0; i < FILES; i++) {
+        assertTrue(dfs.getFileStatus(paths[i]).getLen() == sizes[i]);
+        verifyFile(dfs, paths[i].toString(), sizes[i]);
+      }
+      assertTrue("Expecting 4 in-memory files. Got: " + countInMemoryDBFiles(),
+          countInMemoryDBFiles() == 4);
+      assertTrue("Expecting 4 on-disk files. Got: " + countAllOnDiskDBFiles(),
+          countAllOnDiskDBFiles() == 4);
+
+      // a batch with a file that exists already creates none of its files
+      try {
+        dfs.createSmallFiles(new Path[]{new Path("/dir0/new"), paths[0]},
+            new byte[][]{data[1], data[1]});
+        fail("The file " + paths[0] + " exists already");
+      } catch (FileAlreadyExistsException e) {
+      }
+      assertFalse(dfs.exists(new Path("/dir0/new")));
+
+      // the parents are not created unless asked to
+      try {
+        dfs.createSmallFiles(new Path[]{new Path("/missing/file")},
+            new byte[][]{data[1]});
+        fail("The parent of /missing/file does not exist");
+      } catch (FileNotFoundException e) {
+      }
+    } finally {
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+  }
+
   @Test
   /** force format the database to release the extents
    *
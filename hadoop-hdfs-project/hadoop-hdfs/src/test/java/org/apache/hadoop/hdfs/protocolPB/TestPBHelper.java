@@ -19,6 +19,7 @@
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 
@@ -41,6 +42,9 @@
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
 import org.apache.hadoop.hdfs.protocol.LocatedBlock;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockCommandProto;
+import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockReportBlockProto;
+import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockReportBucketProto;
+import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockReportProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockRecoveryCommandProto;
 import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.DatanodeRegistrationProto;
 import org.apache.hadoop.hdfs.protocol.proto.HdfsProtos;
@@ -67,6 +71,8 @@
 import org.apache.hadoop.hdfs.server.protocol.BlockCommand;
 import org.apache.hadoop.hdfs.server.protocol.BlockRecoveryCommand;
 import org.apache.hadoop.hdfs.server.protocol.BlockRecoveryCommand.RecoveringBlock;
+import org.apache.hadoop.hdfs.server.protocol.BlockReport;
+import org.apache.hadoop.hdfs.server.protocol.BlockReportBlockState;
 import org.apache.hadoop.hdfs.server.protocol.BlocksWithLocations;
 import org.apache.hadoop.hdfs.server.protocol.BlocksWithLocations.BlockWithLocations;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeProtocol;
@@ -74,6 +80,7 @@
 import org.apache.hadoop.hdfs.server.protocol.DatanodeStorage;
 import org.apache.hadoop.hdfs.server.protocol.NamenodeRegistration;
 import org.apache.hadoop.hdfs.server.protocol.NamespaceInfo;
+import org.apache.hadoop.hdfs.server.protocol.ReportedBlock;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.security.proto.SecurityProtos.TokenProto;
 import org.apache.hadoop.security.token.Token;
@@ -362,6 +369,14 @@ public void testConvertNamespaceInfo() {
     compare(info, info2); //Compare the StorageInfo
     assertEquals(info.getBlockPoolID(), info2.getBlockPoolID());
     assertEquals(info.getBuildVersion(), info2.getBuildVersion());
+    assertEquals(info.getCapabilities(), info2.getCapabilities());
+    assertTrue(info2.isCapabilitySupported(
+        NamespaceInfo.Capability.BLOCK_REPORT_COLUMNS));
+
+    // an older namenode does not send its capabilities
+    NamespaceInfoProto old = proto.toBuilder().clearCapabilities().build();
+    assertFalse(PBHelper.convert(old).isCapabilitySupported(
+        NamespaceInfo.Capability.BLOCK_REPORT_COLUMNS));
   }
 
   private void compare(StorageInfo expected, StorageInfo actual) {
@@ -590,4 +605,71 @@ public void testAclStatusProto() {
         .build();
     Assert.assertEquals(s, PBHelper.convert(PBHelper.convert(s)));
   }
+
+  @Test
+  public void testConvertBlockReport() {
+    BlockReport.Builder builder = BlockReport.builder(4);
+    List<ReportedBlock> blocks = new ArrayList<ReportedBlock>();
+    blocks.add(new ReportedBlock(1, 1001, 0, BlockReportBlockState.FINALIZED));
+    blocks.add(new ReportedBlock(-7, 1002, 1024, BlockReportBlockState.RBW));
+    blocks.add(new ReportedBlock(Long.MAX_VALUE, 1003, 64 * 1024 * 1024,
+        BlockReportBlockState.RWR));
+    blocks.add(new ReportedBlock(Long.MIN_VALUE, 0, 1,
+        BlockReportBlockState.FINALIZED));
+    for (int i = 0; i < 100; i++) {
+      blocks.add(new ReportedBlock(1000 + i, 2000 + i, i,
+          BlockReportBlockState.FINALIZED));
+    }
+    for (ReportedBlock block : blocks) {
+      builder.add(block);
+    }
+    BlockReport report = builder.build();
+
+    BlockReport converted = PBHelper.convert(PBHelper.convert(report));
+    assertEquals(report.getNumberOfBlocks(), converted.getNumberOfBlocks());
+    Assert.assertArrayEquals(report.getHashes(), converted.getHashes());
+    assertEquals(toStrings(report), toStrings(converted));
+
+    // what an older namenode can read
+    BlockReportProto blocksProto = PBHelper.convert(report, false);
+    int blocksCount = 0;
+    for (BlockReportBucketProto bucket : blocksProto.getBucketsList()) {
+      assertFalse(bucket.hasStates());
+      blocksCount += bucket.getBlocksCount();
+    }
+    assertEquals(blocks.size(), blocksCount);
+    converted = PBHelper.convert(blocksProto);
+    Assert.assertArrayEquals(report.getHashes(), converted.getHashes());
+    assertEquals(toStrings(report), toStrings(converted));
+  }
+
+  @Test
+  public void testConvertBlockReportWithoutColumns() {
+    BlockReportProto proto = BlockReportProto.newBuilder()
+        .addBuckets(BlockReportBucketProto.newBuilder()
+            .addBlocks(BlockReportBlockProto.newBuilder()
+                .setBlockId(3)
+                .setGenerationStamp(1001)
+                .setLength(10)
+                .setState(BlockReportBlockProto.BlockReportBlockStateProto.RBW)))
+        .addHashes(42)
+        .build();
+    BlockReport report = PBHelper.convert(proto);
+    assertEquals(1, report.getNumberOfBlocks());
+    assertEquals(1, report.getBuckets()[0].size());
+    assertEquals(3, report.getBuckets()[0].getBlockId(0));
+    assertEquals(1001, report.getBuckets()[0].getGenerationStamp(0));
+    assertEquals(10, report.getBuckets()[0].getLength(0));
+    assertEquals(BlockReportBlockState.RBW, report.getBuckets()[0].getState(0));
+    assertEquals(42, report.getHashes()[0]);
+  }
+
+  private static List<String> toStrings(BlockReport report) {
+    List<String> blocks = new ArrayList<String>();
+    for (ReportedBlock block : report) {
+      blocks.add(block.getBlockId() + "_" + block.getGenerationStamp() + "_" +
+          block.getLength() + "_" + block.getState());
+    }
+    return blocks;
+  }
 }
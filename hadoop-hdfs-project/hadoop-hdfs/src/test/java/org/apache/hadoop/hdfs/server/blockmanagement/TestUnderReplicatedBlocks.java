@@ -29,16 +29,21 @@
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.FsShell;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.DFSTestUtil;
 import org.apache.hadoop.hdfs.HdfsConfiguration;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.MiniDFSNNTopology;
 import org.apache.hadoop.hdfs.protocol.Block;
 import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.server.datanode.DataNode;
 import org.apache.hadoop.hdfs.server.datanode.DataNodeTestUtils;
 import org.junit.Test;
 
 import java.io.IOException;
 
+import static org.apache.hadoop.test.MetricsAsserts.getLongCounter;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
 import static org.junit.Assert.assertEquals;
 
 public class TestUnderReplicatedBlocks {
@@ -143,4 +148,55 @@ public Object performTask() throws StorageException, IOException {
     
   }
 
+  /**
+   * With every namenode replicating its partition of the under replicated
+   * blocks, each missing replica is copied once.
+   */
+  @Test(timeout = 300000)
+  public void testDistributedReplicationReplicatesOnce() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_NAMENODE_REPLICATION_DISTRIBUTED_KEY,
+        true);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_REPLICATION_INTERVAL_KEY, 1);
+    conf.setLong(DFSConfigKeys.DFS_HEARTBEAT_INTERVAL_KEY, 1);
+    final int NUM_FILES = 20;
+    final MiniDFSCluster cluster = new MiniDFSCluster.Builder(conf)
+        .nnTopology(MiniDFSNNTopology.simpleHOPSTopology(3))
+        .numDataNodes(4).build();
+    try {
+      cluster.waitActive();
+      FileSystem fs = cluster.getFileSystem(0);
+      Path[] files = new Path[NUM_FILES];
+      for (int i = 0; i < NUM_FILES; i++) {
+        files[i] = new Path("/dir/file" + i);
+        DFSTestUtil.createFile(fs, files[i], 1L, (short) 2, i);
+        DFSTestUtil.waitReplication(fs, files[i], (short) 2);
+      }
+      long replicated = getBlocksReplicated(cluster);
+
+      for (Path file : files) {
+        fs.setReplication(file, (short) 3);
+      }
+      for (Path file : files) {
+        DFSTestUtil.waitReplication(fs, file, (short) 3);
+      }
+      // leave the time for a second copy to be scheduled
+      Thread.sleep(5000);
+      assertEquals(NUM_FILES, getBlocksReplicated(cluster) - replicated);
+      for (Path file : files) {
+        DFSTestUtil.waitReplication(fs, file, (short) 3);
+      }
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  private static long getBlocksReplicated(MiniDFSCluster cluster) {
+    long replicated = 0;
+    for (DataNode dn : cluster.getDataNodes()) {
+      replicated += getLongCounter("BlocksReplicated",
+          getMetrics(dn.getMetrics().name()));
+    }
+    return replicated;
+  }
 }
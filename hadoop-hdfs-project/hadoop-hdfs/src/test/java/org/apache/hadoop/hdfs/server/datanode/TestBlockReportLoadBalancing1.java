@@ -33,7 +33,7 @@
 import org.apache.hadoop.hdfs.DFSTestUtil;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
 import org.apache.hadoop.hdfs.MiniDFSNNTopology;
-import org.apache.hadoop.hdfs.server.blockmanagement.BRTrackingService;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockReportScheduler;
 import org.apache.hadoop.hdfs.server.namenode.NameNode;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeProtocol;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeRegistration;
@@ -87,7 +87,7 @@ public void TestBRTrackingService_01() throws IOException, InterruptedException
     }
 
     SortedActiveNodeListPBImpl nnList = new SortedActiveNodeListPBImpl(list);
-    BRTrackingService service = new BRTrackingService( DFS_BR_LB_DB_VAR_UPDATE_THRESHOLD, DFS_BR_LB_TIME_WINDOW_SIZE);
+    BlockReportScheduler service = newScheduler(DFS_BR_LB_DB_VAR_UPDATE_THRESHOLD, DFS_BR_LB_TIME_WINDOW_SIZE);
 
     for (int i = 0; i < NN_COUNT; i++) {
       ActiveNode an = assignWork(nnList, service,(long) (DFS_BR_LB_MAX_BLK_PER_NN_PER_TW * 0.8));
@@ -144,7 +144,7 @@ public void TestBRTrackingService_02() throws IOException, InterruptedException
     }
 
     SortedActiveNodeListPBImpl nnList = new SortedActiveNodeListPBImpl(list);
-    BRTrackingService service = new BRTrackingService(DFS_BR_LB_DB_VAR_UPDATE_THRESHOLD, DFS_BR_LB_TIME_WINDOW_SIZE);
+    BlockReportScheduler service = newScheduler(DFS_BR_LB_DB_VAR_UPDATE_THRESHOLD, DFS_BR_LB_TIME_WINDOW_SIZE);
 
     for (int i = 0; i < NN_COUNT; i++) {
       ActiveNode an = assignWork(nnList, service, (long) (DFS_BR_LB_MAX_BLK_PER_NN_PER_TW * 1));
@@ -201,6 +201,60 @@ public void TestBRTrackingService_02() throws IOException, InterruptedException
 
   }
 
+  @Test
+  public void TestBlockReportScheduler() throws IOException {
+    final long MAX_BLKS = 100000;
+    final long DFS_BR_LB_TIME_WINDOW_SIZE = 60 * 1000;
+    final long DFS_BR_LB_DB_VAR_UPDATE_THRESHOLD = 1000;
+
+    Configuration conf = new Configuration();
+    conf.setLong(DFSConfigKeys.DFS_BR_LB_MAX_BLK_PER_TW, MAX_BLKS);
+    HdfsStorageFactory.setConfiguration(conf);
+    assert (HdfsStorageFactory.formatStorage());
+
+    List<ActiveNode> list = new ArrayList<>();
+    for (int i = 0; i < 2; i++) {
+      list.add(new ActiveNodePBImpl(i, "host", "localhost", i, "0.0.0.0:10000", "", 0));
+    }
+    SortedActiveNodeListPBImpl nnList = new SortedActiveNodeListPBImpl(list);
+    BlockReportScheduler service = newScheduler(DFS_BR_LB_DB_VAR_UPDATE_THRESHOLD, DFS_BR_LB_TIME_WINDOW_SIZE);
+
+    // a report bigger than the limit goes through when nothing is in flight
+    ActiveNode an = assignWork(nnList, service, 2 * MAX_BLKS);
+    assertNotNull("Unable to assign work", an);
+    assertNull("More work should not have been assigned",
+        assignWork(nnList, service, 1));
+
+    // completed work does not wait for the time window
+    service.workCompleted(an.getId(), 2 * MAX_BLKS, 2000);
+    assertEquals(0, service.getBlocksInFlight());
+    an = assignWork(nnList, service, MAX_BLKS / 2, true);
+    assertNotNull("Unable to assign work", an);
+    // a completion that matches no work in flight does not release any
+    service.workCompleted(an.getId(), 7, 1000);
+    assertEquals(MAX_BLKS / 2, service.getBlocksInFlight());
+
+    // while first reports are asked for the others can not use the reserve
+    assertNull("More work should not have been assigned",
+        assignWork(nnList, service, MAX_BLKS / 2));
+    ActiveNode second = assignWork(nnList, service, MAX_BLKS / 2, true);
+    assertNotNull("Unable to assign work", second);
+    assertTrue("Work should go to the idle namenode",
+        an.getId() != second.getId());
+    service.workCompleted(an.getId(), MAX_BLKS / 2, 1000);
+    service.workCompleted(second.getId(), MAX_BLKS / 2, 1000);
+    assertEquals(0, service.getReportsInFlight());
+    assertEquals(MAX_BLKS, service.getLimit());
+
+    // slower processing makes the leader admit fewer blocks
+    for (int i = 0; i < 5; i++) {
+      service.workCompleted(0, MAX_BLKS, 100 * 1000);
+    }
+    assertTrue("The limit should have been lowered",
+        service.getLimit() < MAX_BLKS);
+    assertEquals(2, service.getRefused());
+  }
+
   @Test
   public void TestCommandLine() throws IOException, InterruptedException {
     MiniDFSCluster cluster = null;
@@ -221,7 +275,7 @@ public void TestCommandLine() throws IOException, InterruptedException {
     }
 
     SortedActiveNodeListPBImpl nnList = new SortedActiveNodeListPBImpl(list);
-    BRTrackingService service = new BRTrackingService( DFS_BR_LB_DB_VAR_UPDATE_THRESHOLD, DFS_BR_LB_TIME_WINDOW_SIZE);
+    BlockReportScheduler service = newScheduler(DFS_BR_LB_DB_VAR_UPDATE_THRESHOLD, DFS_BR_LB_TIME_WINDOW_SIZE);
 
     for (int i = 0; i < NN_COUNT; i++) {
       ActiveNode an = assignWork(nnList,service, (long) (DFS_BR_LB_MAX_BLK_PER_NN_PER_TW * 1));
@@ -326,12 +380,24 @@ public void TestClusterWithOutDataNodes() throws IOException, InterruptedExcepti
     cluster.shutdown();
   }
 
-  private static ActiveNode assignWork(SortedActiveNodeList nnList, BRTrackingService service, long blks){
+  private static ActiveNode assignWork(SortedActiveNodeList nnList, BlockReportScheduler service, long blks){
+    return assignWork(nnList, service, blks, false);
+  }
+
+  private static ActiveNode assignWork(SortedActiveNodeList nnList,
+      BlockReportScheduler service, long blks, boolean firstReport) {
     try
     {
-     return service.assignWork(nnList,blks);
+     return service.assignWork(nnList, blks, firstReport, 0);
     }catch (Exception e){
       return null;
     }
   }
+
+  private static BlockReportScheduler newScheduler(long dbVarUpdateThreshold,
+      long timeWindow) {
+    return new BlockReportScheduler(dbVarUpdateThreshold, timeWindow,
+        DFSConfigKeys.DFS_BR_LB_LATENCY_TOLERANCE_DEFAULT,
+        DFSConfigKeys.DFS_BR_LB_FIRST_REPORT_RESERVE_DEFAULT);
+  }
 }
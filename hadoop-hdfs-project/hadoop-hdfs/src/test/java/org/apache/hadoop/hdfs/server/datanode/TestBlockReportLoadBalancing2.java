@@ -28,7 +28,7 @@
 import org.apache.hadoop.hdfs.DFSTestUtil;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
 import org.apache.hadoop.hdfs.MiniDFSNNTopology;
-import org.apache.hadoop.hdfs.server.blockmanagement.BRTrackingService;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockReportScheduler;
 import org.apache.hadoop.hdfs.server.namenode.NameNode;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeProtocol;
 import org.apache.hadoop.hdfs.server.protocol.DatanodeRegistration;
@@ -156,7 +156,7 @@ protected Object passThrough(InvocationOnMock invocation)
     assertTrue("Expecting 3. Got "+counter, counter==3);
   }
 
-  private static ActiveNode assignWork(SortedActiveNodeList nnList, BRTrackingService service, long blks){
+  private static ActiveNode assignWork(SortedActiveNodeList nnList, BlockReportScheduler service, long blks){
     try
     {
      return service.assignWork(nnList,blks);
@@ -26,6 +26,8 @@
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 import java.util.UUID;
 
@@ -42,6 +44,7 @@
 import org.apache.hadoop.hdfs.DistributedFileSystem;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
 import org.apache.hadoop.hdfs.protocol.*;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockInfo;
 import org.apache.hadoop.hdfs.server.blockmanagement.BlockManager;
 import org.apache.hadoop.hdfs.server.blockmanagement.DatanodeStorageInfo;
 import org.apache.hadoop.hdfs.server.datanode.fsdataset.FsVolumeSpi;
@@ -190,6 +193,134 @@ public void verifyIncrementalBlockReports(boolean splitReports) throws IOExcepti
     assertThat(cluster.getNamesystem().getMissingBlocksCount(), is((long) reports.length));
   }
 
+  /**
+   * The blocks of the same file in a report are applied in one transaction.
+   */
+  @Test
+  public void testBatchedIncrementalBlockReport() throws IOException {
+    LocatedBlocks blocks = createFileGetBlocks(GenericTestUtils.getMethodName());
+    BlockManager bm = cluster.getNamesystem().getBlockManager();
+    long blocksBefore = bm.getIncrementalReportBlocks();
+    long transactionsBefore = bm.getIncrementalReportTransactions();
+
+    // Lie to the NN that all the blocks of the file have been deleted.
+    List<StorageReceivedDeletedBlocks> reports = new ArrayList<>();
+    for (FsVolumeSpi volume : dn0.getFSDataset().getVolumes()) {
+      List<ReceivedDeletedBlockInfo> rdbis = new ArrayList<>();
+      for (LocatedBlock block : blocks.getLocatedBlocks()) {
+        if (block.getStorageIDs()[0].equals(volume.getStorageID())) {
+          rdbis.add(new ReceivedDeletedBlockInfo(
+              block.getBlock().getLocalBlock(), BlockStatus.DELETED, null));
+        }
+      }
+      if (!rdbis.isEmpty()) {
+        reports.add(new StorageReceivedDeletedBlocks(volume.getStorageID(),
+            rdbis.toArray(new ReceivedDeletedBlockInfo[rdbis.size()])));
+      }
+    }
+    cluster.getNameNodeRpc().blockReceivedAndDeleted(dn0Reg, poolId,
+        reports.toArray(new StorageReceivedDeletedBlocks[reports.size()]));
+
+    assertThat(cluster.getNamesystem().getMissingBlocksCount(),
+        is((long) NUM_BLOCKS));
+    assertEquals(NUM_BLOCKS, bm.getIncrementalReportBlocks() - blocksBefore);
+    // one transaction per storage
+    assertEquals(reports.size(),
+        bm.getIncrementalReportTransactions() - transactionsBefore);
+  }
+
+  /**
+   * A block whose file is not known is applied where it is in the report,
+   * between the transactions of the blocks reported before and after it.
+   */
+  @Test
+  public void testBatchedIncrementalBlockReportWithUnresolvedBlock()
+      throws IOException {
+    LocatedBlocks blocks = createFileGetBlocks(GenericTestUtils.getMethodName());
+    BlockManager bm = cluster.getNamesystem().getBlockManager();
+    long blocksBefore = bm.getIncrementalReportBlocks();
+    long transactionsBefore = bm.getIncrementalReportTransactions();
+    long unknownId = blocks.getLastLocatedBlock().getBlock().getBlockId() +
+        1000000;
+
+    List<StorageReceivedDeletedBlocks> reports = new ArrayList<>();
+    int expectedTransactions = 0;
+    for (FsVolumeSpi volume : dn0.getFSDataset().getVolumes()) {
+      List<ReceivedDeletedBlockInfo> rdbis = new ArrayList<>();
+      for (LocatedBlock block : blocks.getLocatedBlocks()) {
+        if (block.getStorageIDs()[0].equals(volume.getStorageID())) {
+          rdbis.add(new ReceivedDeletedBlockInfo(
+              block.getBlock().getLocalBlock(), BlockStatus.DELETED, null));
+        }
+      }
+      if (rdbis.isEmpty()) {
+        continue;
+      }
+      int half = rdbis.size() / 2;
+      rdbis.add(half, new ReceivedDeletedBlockInfo(
+          new Block(unknownId++, 0, 1), BlockStatus.DELETED, null));
+      // the blocks before it, the unknown block, the blocks after it
+      expectedTransactions += (half > 0 ? 1 : 0) + 2;
+      reports.add(new StorageReceivedDeletedBlocks(volume.getStorageID(),
+          rdbis.toArray(new ReceivedDeletedBlockInfo[rdbis.size()])));
+    }
+    cluster.getNameNodeRpc().blockReceivedAndDeleted(dn0Reg, poolId,
+        reports.toArray(new StorageReceivedDeletedBlocks[reports.size()]));
+
+    assertThat(cluster.getNamesystem().getMissingBlocksCount(),
+        is((long) NUM_BLOCKS));
+    assertEquals(NUM_BLOCKS + reports.size(),
+        bm.getIncrementalReportBlocks() - blocksBefore);
+    assertEquals(expectedTransactions,
+        bm.getIncrementalReportTransactions() - transactionsBefore);
+  }
+
+  /**
+   * A block of the file that does not exist does not fail the transaction of
+   * the other blocks of the file.
+   */
+  @Test
+  public void testBatchedIncrementalBlockReportWithMissingBlock()
+      throws IOException {
+    String name = GenericTestUtils.getMethodName();
+    LocatedBlocks blocks = createFileGetBlocks(name);
+    int inodeId = (int) client.getFileInfo("/" + name + ".dat").getFileId();
+    FSNamesystem namesystem = cluster.getNamesystem();
+    BlockManager bm = namesystem.getBlockManager();
+    long transactionsBefore = bm.getIncrementalReportTransactions();
+    long missingId = blocks.getLastLocatedBlock().getBlock().getBlockId() +
+        1000000;
+
+    // the blocks carry their file, as a block that does not exist cannot be
+    // resolved to one
+    int storages = 0;
+    for (FsVolumeSpi volume : dn0.getFSDataset().getVolumes()) {
+      List<ReceivedDeletedBlockInfo> rdbis = new ArrayList<>();
+      for (LocatedBlock block : blocks.getLocatedBlocks()) {
+        if (block.getStorageIDs()[0].equals(volume.getStorageID())) {
+          rdbis.add(new ReceivedDeletedBlockInfo(
+              new BlockInfo(block.getBlock().getLocalBlock(), inodeId),
+              BlockStatus.DELETED, null));
+        }
+      }
+      if (rdbis.isEmpty()) {
+        continue;
+      }
+      rdbis.add(rdbis.size() / 2, new ReceivedDeletedBlockInfo(
+          new BlockInfo(new Block(missingId++, 0, 1), inodeId),
+          BlockStatus.DELETED, null));
+      namesystem.processIncrementalBlockReport(dn0Reg,
+          new StorageReceivedDeletedBlocks(volume.getStorageID(),
+              rdbis.toArray(new ReceivedDeletedBlockInfo[rdbis.size()])));
+      storages++;
+    }
+
+    assertThat(namesystem.getMissingBlocksCount(), is((long) NUM_BLOCKS));
+    // one transaction per storage, the missing block included
+    assertEquals(storages,
+        bm.getIncrementalReportTransactions() - transactionsBefore);
+  }
+
   /**
    * Verify that the DataNode sends a single incremental block report for all
    * storages.
@@ -18,6 +18,7 @@
 import io.hops.metadata.HdfsStorageFactory;
 import io.hops.metadata.hdfs.dal.INodeDataAccess;
 import io.hops.metadata.hdfs.dal.OngoingSubTreeOpsDataAccess;
+import io.hops.metadata.hdfs.entity.INodeIdentifier;
 import io.hops.metadata.hdfs.entity.SubTreeOperation;
 import io.hops.transaction.handler.HDFSOperationType;
 import io.hops.transaction.handler.LightWeightRequestHandler;
@@ -84,6 +85,60 @@ public void testSTOCleanup() throws IOException,
     }
   }
 
+  @Test
+  public void testResumeSubtreeDelete() throws IOException,
+          InterruptedException {
+    MiniDFSCluster cluster = null;
+    long stoCleanDelay=1000;
+    try {
+      Configuration conf = new HdfsConfiguration();
+      conf.setLong(DFSConfigKeys.DFS_SUBTREE_CLEAN_FAILED_OPS_LOCKS_DELAY_KEY,
+              stoCleanDelay);
+      cluster = new MiniDFSCluster.Builder(conf)
+              .nnTopology(MiniDFSNNTopology.simpleHOPSTopology(3))
+              .numDataNodes(1).build();
+      cluster.waitActive();
+
+      final DistributedFileSystem dfs = cluster.getFileSystem(0);
+      final FSNamesystem namesystem = cluster.getNamesystem(0);
+
+      dfs.mkdir(new Path("/A"), FsPermission.getDefault());
+      dfs.mkdir(new Path("/A/B"), FsPermission.getDefault());
+      dfs.mkdir(new Path("/A/B/C"), FsPermission.getDefault());
+      for (int i = 0; i < 10; i++) {
+        DFSTestUtil.createFile(dfs, new Path("/A/B/C/file" + i), 0, (short) 1, 0);
+      }
+      dfs.mkdir(new Path("/D"), FsPermission.getDefault());
+
+      // a delete that was journaled and partly done when the namenode died
+      INodeIdentifier subtreeRoot =
+              namesystem.lockSubtree("/A", SubTreeOperation.Type.DELETE_STO);
+      namesystem.deleteSubtreePart("/A/B/C/file0", subtreeRoot.getInodeId());
+      // a subtree operation that only has to be unlocked
+      namesystem.lockSubtree("/D", SubTreeOperation.Type.NA);
+
+      cluster.restartNameNode(0);
+
+      long leadercheckInterval =
+              conf.getInt(DFSConfigKeys.DFS_LEADER_CHECK_INTERVAL_IN_MS_KEY,
+                      DFSConfigKeys.DFS_LEADER_CHECK_INTERVAL_IN_MS_DEFAULT);
+      int missedHeartBeatThreshold =
+              conf.getInt(DFSConfigKeys.DFS_LEADER_MISSED_HB_THRESHOLD_KEY,
+                      DFSConfigKeys.DFS_LEADER_MISSED_HB_THRESHOLD_DEFAULT);
+      Thread.sleep(stoCleanDelay + (leadercheckInterval * (missedHeartBeatThreshold+1)) + 3000);
+
+      assertEquals("On going subtree ops table", 0, countOnGoingSTOs());
+      assertEquals("Locked Inodes", 0, countLockedINodes());
+      final DistributedFileSystem dfs1 = cluster.getFileSystem(1);
+      assertFalse("The delete was not resumed", dfs1.exists(new Path("/A")));
+      assertTrue(dfs1.exists(new Path("/D")));
+    } finally {
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+  }
+
   public static int countOnGoingSTOs() throws IOException {
     LightWeightRequestHandler subTreeLockChecker =
             new LightWeightRequestHandler(HDFSOperationType.TEST) {
@@ -23,11 +23,14 @@
 import io.hops.transaction.lock.TransactionLockTypes;
 import io.hops.transaction.lock.TransactionLocks;
 import java.io.IOException;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
 import org.apache.hadoop.hdfs.HdfsConfiguration;
 import org.apache.hadoop.hdfs.MiniDFSCluster;
 import org.apache.hadoop.hdfs.TestLease;
@@ -63,6 +66,60 @@ public void testRemoveLeaseWithPrefixPath() throws Exception {
     assertNull(getLeaseByPath(lm, "/a/c"));
   }
 
+  @Test
+  public void testCoalescedRenewals() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    // the test flushes the renewals itself
+    conf.setLong(DFSConfigKeys.DFS_NAMENODE_LEASE_RENEWAL_FLUSH_INTERVAL_KEY,
+        3600 * 1000);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_LEASE_RENEWAL_FLUSH_BATCH_SIZE_KEY,
+        1);
+    MiniDFSCluster cluster =
+        new MiniDFSCluster.Builder(conf).numDataNodes(0).build();
+    try {
+      cluster.waitActive();
+      FSNamesystem fsn = cluster.getNamesystem();
+      LeaseManager lm = NameNodeAdapter.getLeaseManager(fsn);
+      addLease(lm, "holder1", "/a/b");
+      addLease(lm, "holder2", "/a/c");
+      long lastUpdate1 = getLease(lm, "holder1").getLastUpdate();
+      long lastUpdate2 = getLease(lm, "holder2").getLastUpdate();
+
+      Thread.sleep(10);
+      fsn.renewLease("holder1");
+      fsn.renewLease("holder1");
+      fsn.renewLease("holder2");
+      fsn.renewLease("unknown");
+      assertEquals(3, lm.getPendingRenewals());
+      assertEquals(lastUpdate1, getLease(lm, "holder1").getLastUpdate());
+
+      lm.flushRenewals();
+      assertEquals(0, lm.getPendingRenewals());
+      assertTrue(getLease(lm, "holder1").getLastUpdate() > lastUpdate1);
+      assertTrue(getLease(lm, "holder2").getLastUpdate() > lastUpdate2);
+      // renewals do not bring back leases that are gone
+      assertNull(getLease(lm, "unknown"));
+    } finally {
+      cluster.shutdown();
+    }
+  }
+
+  private static Lease getLease(final LeaseManager lm, final String holder)
+      throws IOException {
+    return (Lease) new HopsTransactionalRequestHandler(HDFSOperationType.TEST) {
+      @Override
+      public void acquireLock(TransactionLocks locks) throws IOException {
+        LockFactory lf = LockFactory.getInstance();
+        locks.add(lf.getLeaseLock(TransactionLockTypes.LockType.READ, holder));
+      }
+
+      @Override
+      public Object performTask() throws IOException {
+        return lm.getLease(holder);
+      }
+    }.handle();
+  }
+
   private void addLease(final LeaseManager lm, final String holder, final String path) throws IOException {
     new HopsTransactionalRequestHandler(HDFSOperationType.TEST) {
       @Override
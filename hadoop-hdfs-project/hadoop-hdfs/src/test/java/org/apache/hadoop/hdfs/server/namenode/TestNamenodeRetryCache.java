@@ -347,6 +347,65 @@ public void testUpdatePipelineWithFailOver() throws Exception {
     }
   }
   
+  /**
+   * With the staged retry cache, a call retried on another namenode gets the
+   * response of its first attempt, written by the first namenode.
+   */
+  @Test(timeout = 60000)
+  public void testStagedRetryOnOtherNameNode() throws Exception {
+    cluster.shutdown();
+    namesystem = null;
+    filesystem = null;
+    Configuration stagedConf = new HdfsConfiguration(conf);
+    stagedConf.setBoolean(DFSConfigKeys.DFS_NAMENODE_RETRY_CACHE_ASYNC_KEY,
+        true);
+    stagedConf.setLong(
+        DFSConfigKeys.DFS_NAMENODE_RETRY_CACHE_FLUSH_INTERVAL_KEY, 100);
+    cluster = new MiniDFSCluster.Builder(stagedConf).nnTopology(
+        MiniDFSNNTopology.simpleHOPSTopology(2)).numDataNodes(0).build();
+    cluster.waitActive();
+    FSNamesystem ns0 = cluster.getNamesystem(0);
+    FSNamesystem ns1 = cluster.getNamesystem(1);
+    String dir = "/testNamenodeRetryCache/testStagedRetryOnOtherNameNode";
+    String target = dir + "/target";
+    resetCall();
+    ns0.mkdirs(dir, perm, true);
+
+    // first attempts on the first namenode
+    int deleteCallId = ++callId;
+    Server.getCurCall().set(new Server.Call(deleteCallId, 0, null, null,
+        RpcKind.RPC_PROTOCOL_BUFFER, CLIENT_ID));
+    Assert.assertTrue(ns0.multiTransactionalDelete(dir, false));
+    int symlinkCallId = ++callId;
+    Server.getCurCall().set(new Server.Call(symlinkCallId, 0, null, null,
+        RpcKind.RPC_PROTOCOL_BUFFER, CLIENT_ID));
+    ns0.createSymlink(target, "/a/b", perm, true);
+    Assert.assertTrue(ns0.getRetryCache().isStaged());
+
+    // let the first namenode write its entries
+    Thread.sleep(1000);
+
+    // the retries on the second namenode are answered from the database
+    Server.getCurCall().set(new Server.Call(deleteCallId, 1, null, null,
+        RpcKind.RPC_PROTOCOL_BUFFER, CLIENT_ID));
+    Assert.assertTrue(ns1.multiTransactionalDelete(dir, false));
+    Server.getCurCall().set(new Server.Call(symlinkCallId, 1, null, null,
+        RpcKind.RPC_PROTOCOL_BUFFER, CLIENT_ID));
+    ns1.createSymlink(target, "/a/b", perm, true);
+
+    // new calls are run again
+    newCall();
+    Assert.assertFalse(ns1.multiTransactionalDelete(dir, false));
+    newCall();
+    try {
+      ns1.createSymlink(target, "/a/b", perm, true);
+      Assert.fail("testStagedRetryOnOtherNameNode - expected exception is " +
+          "not thrown");
+    } catch (IOException e) {
+      // expected
+    }
+  }
+
   @Test
   public void testRetryCacheConfig() {
     // By default retry configuration should be enabled
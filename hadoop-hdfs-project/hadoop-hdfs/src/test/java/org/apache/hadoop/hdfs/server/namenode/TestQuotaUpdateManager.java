@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.ContentSummary;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.DFSTestUtil;
+import org.apache.hadoop.hdfs.DistributedFileSystem;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.LastUpdatedContentSummary;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestQuotaUpdateManager {
+
+  private static final int APPLIERS = 4;
+  // small enough for the batches and the updates of one inode to overflow
+  private static final int UPDATE_LIMIT = 7;
+  private static final long FILE_LENGTH = 10;
+
+  private MiniDFSCluster cluster;
+  private DistributedFileSystem dfs;
+  private final Path quotaDir = new Path("/quota");
+
+  @Before
+  public void setUp() throws Exception {
+    Configuration conf = new HdfsConfiguration();
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_QUOTA_UPDATE_THREADS_KEY, APPLIERS);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_QUOTA_UPDATE_LIMIT_KEY,
+        UPDATE_LIMIT);
+    conf.setInt(DFSConfigKeys.DFS_NAMENODE_QUOTA_UPDATE_INTERVAL_KEY, 100);
+    conf.setInt(DFSConfigKeys.DFS_REPLICATION_KEY, 1);
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+    cluster.waitActive();
+    dfs = cluster.getFileSystem();
+    dfs.mkdirs(quotaDir);
+    dfs.setQuota(quotaDir, 100000, 100000000);
+  }
+
+  @After
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  /**
+   * The updates of each directory are spread over several batches and
+   * appliers, each of them must be applied exactly once.
+   */
+  @Test(timeout = 120000)
+  public void testConcurrentAppliersApplyEachUpdateOnce() throws Exception {
+    final int writers = 2 * APPLIERS;
+    final int filesPerWriter = 20;
+    ExecutorService executor = Executors.newFixedThreadPool(writers);
+    try {
+      List<Future<Void>> results = new ArrayList<>();
+      for (int i = 0; i < writers; i++) {
+        final Path dir = new Path(quotaDir, "writer" + i);
+        results.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() throws Exception {
+            dfs.mkdirs(dir);
+            for (int j = 0; j < filesPerWriter; j++) {
+              DFSTestUtil.createFile(dfs, new Path(dir, "file" + j),
+                  FILE_LENGTH, (short) 1, 0L);
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> result : results) {
+        result.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    ContentSummary summary = DFSTestUtil.getContentSummary(dfs, quotaDir);
+    assertEquals(1 + writers, summary.getDirectoryCount());
+    assertEquals(writers * filesPerWriter, summary.getFileCount());
+    LastUpdatedContentSummary quota =
+        dfs.getLastUpdatedContentSummary(quotaDir);
+    assertEquals(1 + writers + writers * filesPerWriter,
+        quota.getFileAndDirCount());
+    assertEquals(writers * filesPerWriter * FILE_LENGTH,
+        quota.getSpaceConsumed());
+  }
+
+  /**
+   * A recursive delete leaves many more updates than fit in one batch or one
+   * transaction on the directories above it.
+   */
+  @Test(timeout = 120000)
+  public void testQuotaConvergesAfterLargeDelete() throws Exception {
+    Path big = new Path(quotaDir, "big");
+    int dirs = 5;
+    int filesPerDir = 30;
+    for (int i = 0; i < dirs; i++) {
+      for (int j = 0; j < filesPerDir; j++) {
+        DFSTestUtil.createFile(dfs, new Path(big, "dir" + i + "/file" + j),
+            FILE_LENGTH, (short) 1, 0L);
+      }
+    }
+    DFSTestUtil.getContentSummary(dfs, quotaDir);
+    LastUpdatedContentSummary quota =
+        dfs.getLastUpdatedContentSummary(quotaDir);
+    assertEquals(1 + 1 + dirs + dirs * filesPerDir,
+        quota.getFileAndDirCount());
+
+    dfs.delete(big, true);
+    ContentSummary summary = DFSTestUtil.getContentSummary(dfs, quotaDir);
+    assertEquals(1, summary.getDirectoryCount());
+    assertEquals(0, summary.getFileCount());
+    quota = dfs.getLastUpdatedContentSummary(quotaDir);
+    assertEquals(1, quota.getFileAndDirCount());
+    assertEquals(0, quota.getSpaceConsumed());
+  }
+}
@@ -22,6 +22,7 @@
 import io.hops.metadata.hdfs.dal.INodeDataAccess;
 import io.hops.metadata.hdfs.dal.OngoingSubTreeOpsDataAccess;
 import io.hops.metadata.hdfs.entity.INodeIdentifier;
+import io.hops.metadata.hdfs.entity.ProjectedINode;
 import io.hops.metadata.hdfs.entity.SubTreeOperation;
 import io.hops.transaction.handler.HDFSOperationType;
 import io.hops.transaction.handler.LightWeightRequestHandler;
@@ -224,6 +225,54 @@ public void testCountingFileTree() throws IOException {
     }
   }
 
+  @Test
+  public void testFileTreeInSmallBatches() throws IOException {
+    MiniDFSCluster cluster = null;
+    try {
+      Configuration conf = new HdfsConfiguration();
+      conf.setInt(DFSConfigKeys.DFS_CLIENT_RETRIES_ON_FAILURE_KEY, 0);
+      conf.setInt(DFSConfigKeys.DFS_SUBTREE_LISTING_BATCH_SIZE_KEY, 2);
+      conf.setInt(DFSConfigKeys.DFS_SUBTREE_LISTING_MAX_IN_FLIGHT_KEY, 2);
+      cluster = new MiniDFSCluster.Builder(conf).numDataNodes(1).build();
+      cluster.waitActive();
+
+      DistributedFileSystem dfs = cluster.getFileSystem();
+      Path root = new Path("/folder0");
+      dfs.mkdir(root, FsPermission.getDefault());
+      for (int i = 0; i < 3; i++) {
+        Path dir = new Path(root, "dir" + i);
+        dfs.mkdir(dir, FsPermission.getDefault());
+        for (int j = 0; j < 3; j++) {
+          Path subDir = new Path(dir, "dir" + j);
+          dfs.mkdir(subDir, FsPermission.getDefault());
+          dfs.create(new Path(subDir, "file0")).close();
+          dfs.create(new Path(subDir, "file1")).close();
+        }
+      }
+
+      AbstractFileTree.CountingFileTree countingTree = AbstractFileTree
+          .createCountingFileTreeFromPath(cluster.getNamesystem(),
+              root.toUri().getPath());
+      countingTree.buildUp();
+      assertEquals(13, countingTree.getDirectoryCount());
+      assertEquals(18, countingTree.getFileCount());
+
+      AbstractFileTree.FileTree fileTree = AbstractFileTree
+          .createFileTreeFromPath(cluster.getNamesystem(),
+              root.toUri().getPath());
+      fileTree.buildUp();
+      assertEquals(31, fileTree.getAll().size());
+      assertEquals(4, fileTree.getHeight());
+      for (ProjectedINode dir : fileTree.getDirsByLevel(2)) {
+        assertEquals(3, fileTree.countChildren(dir.getId()));
+      }
+    } finally {
+      if (cluster != null) {
+        cluster.shutdown();
+      }
+    }
+  }
+
   @Test
   public void testNameNodeFailureLockAcquisition()
           throws IOException, InterruptedException {
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode;
+
+import io.hops.metadata.hdfs.entity.SubTreeOperation;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TestSubtreeLockIndex {
+
+  @Test
+  public void testConflicts() {
+    SubtreeLockIndex index = new SubtreeLockIndex();
+    index.add("/a/b/", 1, SubTreeOperation.Type.DELETE_STO);
+    index.add("/c", 2, SubTreeOperation.Type.RENAME_STO);
+
+    assertEquals("/a/b", index.findLockedAncestor("/a/b/c/d"));
+    assertEquals("/a/b", index.findLockedAncestor("/a/b"));
+    assertNull(index.findLockedAncestor("/a"));
+    assertNull(index.findLockedAncestor("/a/bb"));
+    assertEquals("/a/b", index.findLockedDescendant("/a"));
+    assertEquals("/a/b", index.findLockedDescendant("/"));
+    assertNull(index.findLockedDescendant("/a/b"));
+    assertTrue(index.isLocked("/c/"));
+
+    index.remove("/a/b");
+    assertNull(index.findLockedAncestor("/a/b/c"));
+    assertNull(index.findLockedDescendant("/a"));
+    assertEquals(1, index.size());
+  }
+
+  @Test
+  public void testRefresh() {
+    SubtreeLockIndex index = new SubtreeLockIndex();
+    index.add("/a", 1, SubTreeOperation.Type.DELETE_STO);
+    index.add("/b", 2, SubTreeOperation.Type.DELETE_STO);
+
+    index.refresh(2, Arrays.asList(new SubTreeOperation("/c/", 2,
+        SubTreeOperation.Type.SET_PERMISSION_STO)));
+    assertTrue(index.isLocked("/a"));
+    assertFalse(index.isLocked("/b"));
+    assertTrue(index.isLocked("/c"));
+
+    // the operations of a namenode that is gone are dropped
+    index.retainNameNodes(Collections.singletonList(2L));
+    assertFalse(index.isLocked("/a"));
+    assertEquals(1, index.size());
+  }
+
+  @Test(timeout = 10000)
+  public void testWaitersAreWokenUp() throws Exception {
+    final SubtreeLockIndex index = new SubtreeLockIndex();
+    index.add("/a", 1, SubTreeOperation.Type.RENAME_STO);
+    assertFalse(index.awaitUnlocked("/a", 10));
+
+    final AtomicBoolean unlocked = new AtomicBoolean();
+    Thread waiter = new Thread() {
+      @Override
+      public void run() {
+        try {
+          unlocked.set(index.awaitUnlocked("/a", 60 * 1000));
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+    waiter.start();
+    Thread.sleep(100);
+    index.remove("/a");
+    waiter.join();
+    assertTrue(unlocked.get());
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.server.namenode.metrics;
+
+import io.hops.transaction.handler.HDFSOperationType;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.metrics2.MetricsRecordBuilder;
+import org.junit.Test;
+
+import static org.apache.hadoop.test.MetricsAsserts.assertCounter;
+import static org.junit.Assert.assertEquals;
+import static org.apache.hadoop.test.MetricsAsserts.getMetrics;
+
+public class TestTransactionMetrics {
+
+  @Test
+  public void testBreakdownPerOperation() {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_TRANSACTION_METRICS_ENABLED, true);
+    conf.setBoolean(DFSConfigKeys.DFS_TRANSACTION_METRICS_ROUND_TRIPS_ENABLED,
+        true);
+    TransactionMetrics metrics = TransactionMetrics.getInstance();
+    metrics.setConfiguration(conf);
+    long threadRoundTrips = metrics.getThreadRoundTrips();
+
+    // a request that is retried once
+    TransactionMetrics.Sample sample = metrics.begin(HDFSOperationType.MKDIRS);
+    metrics.attemptStarted();
+    metrics.lockAcquisitionStarted();
+    metrics.roundTrip();
+    metrics.attemptStarted();
+    metrics.resolvingCacheLookup(true);
+    metrics.lockAcquisitionStarted();
+    metrics.roundTrip();
+    metrics.lockAcquisitionFinished();
+
+    // the transactions of other operations run by this one are kept apart
+    TransactionMetrics.Sample nested =
+        metrics.begin(HDFSOperationType.GET_INODE);
+    metrics.attemptStarted();
+    metrics.resolvingCacheLookup(false);
+    metrics.end(nested);
+
+    metrics.roundTrip();
+    metrics.committed();
+    metrics.end(sample);
+
+    MetricsRecordBuilder rb = getMetrics(metrics);
+    assertCounter("MKDIRSTotalNumOps", 1L, rb);
+    assertCounter("MKDIRSLockNumOps", 1L, rb);
+    assertCounter("MKDIRSCommitNumOps", 1L, rb);
+    assertCounter("MKDIRSRetries", 1L, rb);
+    assertCounter("MKDIRSResolvingCacheHits", 1L, rb);
+    assertCounter("MKDIRSRoundTripsNumOps", 1L, rb);
+    assertCounter("GET_INODETotalNumOps", 1L, rb);
+    assertCounter("GET_INODEResolvingCacheMisses", 1L, rb);
+    // the nested transaction never took its locks
+    assertCounter("GET_INODELockNumOps", 0L, rb);
+    assertEquals(3, metrics.getThreadRoundTrips() - threadRoundTrips);
+
+    // nothing is recorded outside of a transaction
+    metrics.roundTrip();
+    metrics.resolvingCacheLookup(true);
+    rb = getMetrics(metrics);
+    assertCounter("MKDIRSResolvingCacheHits", 1L, rb);
+    assertEquals(3, metrics.getThreadRoundTrips() - threadRoundTrips);
+  }
+}
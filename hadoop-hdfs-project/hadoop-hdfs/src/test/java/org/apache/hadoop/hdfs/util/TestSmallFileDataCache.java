@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hadoop.hdfs.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class TestSmallFileDataCache {
+
+  @Test
+  public void testVersions() {
+    SmallFileDataCache cache = new SmallFileDataCache(1000);
+    byte[] v1 = new byte[10];
+    cache.put(1, 100L, v1);
+    assertSame(v1, cache.get(1, 100L, 10));
+    assertEquals(1, cache.getHits());
+
+    // a newer version of the file is not served from the cache, even of the
+    // same size, and the older one is dropped
+    assertNull(cache.get(1, 200L, 10));
+    assertEquals(0, cache.size());
+    assertNull(cache.get(1, 100L, 10));
+
+    byte[] v2 = new byte[20];
+    cache.put(1, 200L, v2);
+    assertNull(cache.get(1, 200L, 10));
+    cache.put(1, 200L, v2);
+    assertSame(v2, cache.get(1, 200L, 20));
+    assertEquals(20, cache.size());
+    assertEquals(2, cache.getHits());
+    assertEquals(3, cache.getMisses());
+  }
+
+  @Test
+  public void testEviction() {
+    SmallFileDataCache cache = new SmallFileDataCache(100);
+    byte[] a = new byte[40];
+    byte[] b = new byte[40];
+    byte[] c = new byte[40];
+    cache.put(1, 1L, a);
+    cache.put(2, 1L, b);
+    // the least recently read file goes first
+    assertSame(a, cache.get(1, 1L, 40));
+    cache.put(3, 1L, c);
+    assertEquals(80, cache.size());
+    assertNull(cache.get(2, 1L, 40));
+    assertSame(a, cache.get(1, 1L, 40));
+    assertSame(c, cache.get(3, 1L, 40));
+
+    // files bigger than the cache are not cached
+    cache.put(4, 1L, new byte[101]);
+    assertNull(cache.get(4, 1L, 101));
+    assertEquals(80, cache.size());
+
+    // nor the files whose content could not be read
+    cache.put(5, 1L, null);
+    assertNull(cache.get(5, 1L, 0));
+    assertEquals(80, cache.size());
+  }
+}
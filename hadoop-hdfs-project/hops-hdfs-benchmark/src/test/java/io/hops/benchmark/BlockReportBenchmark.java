@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.benchmark;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.protocol.Block;
+import org.apache.hadoop.hdfs.protocol.proto.DatanodeProtocolProtos.BlockReportProto;
+import org.apache.hadoop.hdfs.protocolPB.PBHelper;
+import org.apache.hadoop.hdfs.server.protocol.BlockReport;
+import org.apache.hadoop.hdfs.server.protocol.Bucket;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the life of a block report outside of the RPC and the database:
+ * building it on the datanode, encoding it, decoding it on the namenode and
+ * scanning its buckets. Run it with the gc profiler to get the bytes
+ * allocated per report next to the time.
+ * <p>
+ *   mvn test -Pbenchmark -Dbenchmark.args="BlockReport -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgs = {"-Xmx8g"})
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+public class BlockReportBenchmark {
+
+  @Param({"100000", "1000000"})
+  public int replicas;
+
+  private Block[] blocks;
+  private BlockReport report;
+  private byte[] encoded;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    Random random = new Random(0);
+    blocks = new Block[replicas];
+    long blockId = 1L << 30;
+    for (int i = 0; i < replicas; i++) {
+      blockId += 1 + random.nextInt(16);
+      blocks[i] = new Block(blockId, random.nextInt(128 * 1024 * 1024),
+          1000 + random.nextInt(1000));
+    }
+    report = build();
+    encoded = PBHelper.convert(report).toByteArray();
+  }
+
+  @Benchmark
+  public BlockReport build() {
+    BlockReport.Builder builder = BlockReport.builder(
+        DFSConfigKeys.DFS_NUM_BUCKETS_DEFAULT);
+    for (Block block : blocks) {
+      builder.addAsFinalized(block);
+    }
+    return builder.build();
+  }
+
+  @Benchmark
+  public byte[] encode() {
+    return PBHelper.convert(report).toByteArray();
+  }
+
+  @Benchmark
+  public BlockReport decode() throws InvalidProtocolBufferException {
+    return PBHelper.convert(BlockReportProto.parseFrom(encoded));
+  }
+
+  @Benchmark
+  public long scan() {
+    long sum = 0;
+    for (Bucket bucket : report.getBuckets()) {
+      for (int i = 0; i < bucket.size(); i++) {
+        sum += bucket.getBlockId(i) + bucket.getGenerationStamp(i) +
+            bucket.getLength(i) + bucket.getState(i).ordinal();
+      }
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.benchmark;
+
+import io.hops.metadata.memory.InMemoryStorageFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.fs.CreateFlag;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.MiniDFSCluster;
+import org.apache.hadoop.hdfs.protocol.ExtendedBlock;
+import org.apache.hadoop.hdfs.protocol.HdfsFileStatus;
+import org.apache.hadoop.hdfs.protocol.LocatedBlock;
+import org.apache.hadoop.hdfs.server.namenode.metrics.TransactionMetrics;
+import org.apache.hadoop.hdfs.server.protocol.NamenodeProtocols;
+import org.apache.hadoop.io.EnumSetWritable;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the client operations of the namenode end to end, calling the
+ * RPC server of a MiniDFSCluster directly so that the network stack is left
+ * out. With storage=configured the metadata storage is whatever the
+ * hdfs-site.xml on the classpath points to, normally a test NDB cluster,
+ * with storage=memory it is the in-memory driver, so the two runs separate
+ * the cost of the database from the one of the namenode.
+ * <p>
+ * The database round trips of every operation are counted per thread through
+ * the {@link TransactionMetrics} and reported as the roundTrips rate next to
+ * the throughput, their ratio is the round trips per operation.
+ * <p>
+ * addBlock and complete need a new file for every call, which is created in
+ * an invocation level setup. Its timestamping overhead is negligible next to
+ * a namenode operation.
+ * <p>
+ *   mvn test -Pbenchmark -Dbenchmark.args="NamenodeOps -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 10)
+@Measurement(iterations = 5, time = 10)
+@Threads(8)
+public class NamenodeOpsBenchmark {
+
+  private static final short REPLICATION = 3;
+  private static final long BLOCK_SIZE = 64 * 1024 * 1024;
+
+  @Param({"2", "8", "16"})
+  public int depth;
+
+  @Param({"10", "1000"})
+  public int fanOut;
+
+  @Param({"configured", "memory"})
+  public String storage;
+
+  private MiniDFSCluster cluster;
+  private NamenodeProtocols nn;
+  private String leafDir;
+  private final AtomicLong nextFileName = new AtomicLong();
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    Configuration conf = new HdfsConfiguration();
+    conf.setBoolean(DFSConfigKeys.DFS_TRANSACTION_METRICS_ENABLED, true);
+    conf.setBoolean(DFSConfigKeys.DFS_TRANSACTION_METRICS_ROUND_TRIPS_ENABLED,
+        true);
+    if (storage.equals("memory")) {
+      conf.set(DFSConfigKeys.DFS_STORAGE_DRIVER_CLASS,
+          InMemoryStorageFactory.class.getName());
+      conf.set(DFSConfigKeys.DFS_STORAGE_DRIVER_CONFIG_FILE,
+          "inmemory-storage.properties");
+      conf.setBoolean(CommonConfigurationKeys.HOPS_GROUPS_ENABLE, false);
+    }
+    cluster = new MiniDFSCluster.Builder(conf).numDataNodes(REPLICATION)
+        .format(true).build();
+    cluster.waitActive();
+    nn = cluster.getNameNodeRpc();
+
+    StringBuilder path = new StringBuilder();
+    for (int level = 1; level <= depth; level++) {
+      path.append(Path.SEPARATOR).append("dir").append(level);
+    }
+    leafDir = path.toString();
+    nn.mkdirs(leafDir, FsPermission.getDefault(), true);
+    for (int i = 0; i < fanOut; i++) {
+      create(leafDir + Path.SEPARATOR + "file" + i);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    if (cluster != null) {
+      cluster.shutdown();
+    }
+  }
+
+  private static String clientName() {
+    return "benchmark-client-" + Thread.currentThread().getId();
+  }
+
+  private String newFileName() {
+    return leafDir + Path.SEPARATOR + "new" + nextFileName.getAndIncrement();
+  }
+
+  private HdfsFileStatus createUnderConstruction(String path)
+      throws IOException {
+    return nn.create(path, FsPermission.getDefault(), clientName(),
+        new EnumSetWritable<>(EnumSet.of(CreateFlag.CREATE)), true,
+        REPLICATION, BLOCK_SIZE);
+  }
+
+  private HdfsFileStatus create(String path) throws IOException {
+    HdfsFileStatus status = createUnderConstruction(path);
+    nn.complete(path, clientName(), null, status.getFileId(), null);
+    return status;
+  }
+
+  @Benchmark
+  public HdfsFileStatus getFileInfo(RoundTrips roundTrips)
+      throws IOException {
+    roundTrips.start();
+    try {
+      return nn.getFileInfo(leafDir + Path.SEPARATOR + "file" +
+          ThreadLocalRandom.current().nextInt(fanOut));
+    } finally {
+      roundTrips.stop();
+    }
+  }
+
+  @Benchmark
+  public HdfsFileStatus createEmptyFile(RoundTrips roundTrips)
+      throws IOException {
+    roundTrips.start();
+    try {
+      return create(newFileName());
+    } finally {
+      roundTrips.stop();
+    }
+  }
+
+  /**
+   * Allocates the first block of a file without writing any data, the file
+   * is created by the setup of every call.
+   */
+  @Benchmark
+  public LocatedBlock addBlock(NewFile file, RoundTrips roundTrips)
+      throws IOException {
+    roundTrips.start();
+    try {
+      return nn.addBlock(file.path, clientName(), null, null, file.fileId,
+          null);
+    } finally {
+      roundTrips.stop();
+    }
+  }
+
+  /**
+   * Completes a file whose only block has no reported replicas, which is
+   * what the namenode sees when the client is faster than the block
+   * reports. The file and its block are allocated by the setup of every call.
+   */
+  @Benchmark
+  public boolean complete(NewFileWithBlock file, RoundTrips roundTrips)
+      throws IOException {
+    roundTrips.start();
+    try {
+      return nn.complete(file.path, clientName(), file.block, file.fileId,
+          null);
+    } finally {
+      roundTrips.stop();
+    }
+  }
+
+  /**
+   * Renames a file of the leaf directory owned by the calling thread, back
+   * and forth on every other call.
+   */
+  @Benchmark
+  public boolean rename(OwnFile file, RoundTrips roundTrips)
+      throws IOException {
+    roundTrips.start();
+    try {
+      return file.rename(nn);
+    } finally {
+      roundTrips.stop();
+    }
+  }
+
+  @Benchmark
+  public boolean createAndDelete(RoundTrips roundTrips) throws IOException {
+    roundTrips.start();
+    try {
+      String path = newFileName();
+      create(path);
+      return nn.delete(path, false);
+    } finally {
+      roundTrips.stop();
+    }
+  }
+
+  /**
+   * Reports the database round trips of each benchmark thread as a rate next
+   * to the throughput.
+   */
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @State(Scope.Thread)
+  public static class RoundTrips {
+    public long roundTrips;
+
+    private final TransactionMetrics metrics =
+        TransactionMetrics.getInstance();
+    private long started;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+      roundTrips = 0;
+    }
+
+    void start() {
+      started = metrics.getThreadRoundTrips();
+    }
+
+    void stop() {
+      roundTrips += metrics.getThreadRoundTrips() - started;
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class NewFile {
+    String path;
+    long fileId;
+
+    @Setup(Level.Invocation)
+    public void create(NamenodeOpsBenchmark benchmark) throws IOException {
+      path = benchmark.newFileName();
+      fileId = benchmark.createUnderConstruction(path).getFileId();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class NewFileWithBlock {
+    String path;
+    long fileId;
+    ExtendedBlock block;
+
+    @Setup(Level.Invocation)
+    public void create(NamenodeOpsBenchmark benchmark) throws IOException {
+      path = benchmark.newFileName();
+      fileId = benchmark.createUnderConstruction(path).getFileId();
+      block = benchmark.nn.addBlock(path, clientName(), null, null, fileId,
+          null).getBlock();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class OwnFile {
+    private String path;
+    private String renamed;
+
+    @Setup(Level.Trial)
+    public void create(NamenodeOpsBenchmark benchmark) throws IOException {
+      path = benchmark.newFileName();
+      renamed = path + "-renamed";
+      benchmark.create(path);
+    }
+
+    boolean rename(NamenodeProtocols nn) throws IOException {
+      boolean done = nn.rename(path, renamed);
+      String previous = path;
+      path = renamed;
+      renamed = previous;
+      return done;
+    }
+  }
+}
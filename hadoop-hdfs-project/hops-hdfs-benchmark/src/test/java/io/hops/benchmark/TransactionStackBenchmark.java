@@ -0,0 +1,306 @@
+/*
+ * Copyright (C) 2015 hops.io.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.benchmark;
+
+import io.hops.exception.TransientStorageException;
+import io.hops.metadata.HdfsStorageFactory;
+import io.hops.metadata.hdfs.dal.INodeDataAccess;
+import io.hops.metadata.memory.InMemoryStorageConnector;
+import io.hops.metadata.memory.InMemoryStorageFactory;
+import io.hops.transaction.EntityManager;
+import io.hops.transaction.handler.HDFSOperationType;
+import io.hops.transaction.handler.HopsTransactionalRequestHandler;
+import io.hops.transaction.handler.RequestHandler;
+import io.hops.transaction.lock.LockFactory;
+import io.hops.transaction.lock.TransactionLockTypes.INodeLockType;
+import io.hops.transaction.lock.TransactionLockTypes.INodeResolveType;
+import io.hops.transaction.lock.TransactionLocks;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.CommonConfigurationKeys;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.apache.hadoop.fs.permission.PermissionStatus;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.hdfs.HdfsConfiguration;
+import org.apache.hadoop.hdfs.server.blockmanagement.BlockStoragePolicySuite;
+import org.apache.hadoop.hdfs.server.namenode.INode;
+import org.apache.hadoop.hdfs.server.namenode.INodeDirectory;
+import org.apache.hadoop.hdfs.server.namenode.INodeFile;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures the HopsFS transaction stack, that is INodeLock path resolution,
+ * the entity contexts and the HopsTransactionalRequestHandler, on top of the
+ * in-memory metadata storage so that the database is out of the picture.
+ * The namespace is a chain of {@code depth} directories whose last one holds
+ * {@code fanOut} files.
+ * <p>
+ * Run it with the gc profiler to get the allocation rate as well:
+ * <pre>
+ *   mvn test -Pbenchmark -Dbenchmark.args="TransactionStack -prof gc"
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(4)
+public class TransactionStackBenchmark {
+
+  private static final PermissionStatus PERMISSIONS =
+      new PermissionStatus("hdfs", "hdfs", FsPermission.getDefault());
+
+  @Param({"2", "8", "16"})
+  public int depth;
+
+  @Param({"10", "1000"})
+  public int fanOut;
+
+  @Param({"true", "false"})
+  public boolean resolvingCache;
+
+  private String leafDir;
+  private int leafDirId;
+  private final AtomicInteger nextINodeId = new AtomicInteger();
+  private final AtomicInteger nextFileName = new AtomicInteger();
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    Configuration conf = new HdfsConfiguration();
+    conf.set(DFSConfigKeys.DFS_STORAGE_DRIVER_CLASS,
+        InMemoryStorageFactory.class.getName());
+    conf.set(DFSConfigKeys.DFS_STORAGE_DRIVER_CONFIG_FILE,
+        "inmemory-storage.properties");
+    conf.setBoolean(DFSConfigKeys.DFS_RESOLVING_CACHE_ENABLED, resolvingCache);
+    conf.setBoolean(CommonConfigurationKeys.HOPS_GROUPS_ENABLE, false);
+    HdfsStorageFactory.setConfiguration(conf);
+    HdfsStorageFactory.formatStorage();
+    RequestHandler.setRetryBaseWaitTime(0);
+    createNamespace();
+  }
+
+  private void createNamespace() throws IOException {
+    List<INode> inodes = new ArrayList<>();
+    inodes.add(INodeDirectory.createRootDir(PERMISSIONS));
+
+    int id = INodeDirectory.ROOT_INODE_ID;
+    StringBuilder path = new StringBuilder();
+    for (short level = 1; level <= depth; level++) {
+      String name = "dir" + level;
+      INodeDirectory dir = new INodeDirectory(++id, name, PERMISSIONS, true);
+      dir.setParentIdNoPersistance(id - 1);
+      dir.setPartitionIdNoPersistance(
+          INode.calculatePartitionId(id - 1, name, level));
+      inodes.add(dir);
+      path.append(Path.SEPARATOR).append(name);
+    }
+    leafDir = path.toString();
+    leafDirId = id;
+
+    for (int i = 0; i < fanOut; i++) {
+      inodes.add(newFile(++id, "file" + i));
+    }
+    nextINodeId.set(id + 1);
+    nextFileName.set(fanOut);
+
+    HdfsStorageFactory.getConnector().beginTransaction();
+    ((INodeDataAccess<INode>) HdfsStorageFactory
+        .getDataAccess(INodeDataAccess.class)).prepare(
+        Collections.<INode>emptyList(), inodes, Collections.<INode>emptyList());
+    HdfsStorageFactory.getConnector().commit();
+  }
+
+  private INodeFile newFile(int id, String name) throws IOException {
+    long now = System.currentTimeMillis();
+    INodeFile file = new INodeFile(id, PERMISSIONS, null, (short) 3, now, now,
+        128 * 1024 * 1024, BlockStoragePolicySuite.ID_UNSPECIFIED, true);
+    file.setLocalNameNoPersistance(name);
+    file.setParentIdNoPersistance(leafDirId);
+    file.setPartitionIdNoPersistance(INode.calculatePartitionId(leafDirId,
+        name, (short) (depth + 1)));
+    return file;
+  }
+
+  private String randomExistingFile() {
+    return leafDir + Path.SEPARATOR + "file" +
+        ThreadLocalRandom.current().nextInt(fanOut);
+  }
+
+  /**
+   * The locking part of getFileInfo: read locks along the path to a file.
+   */
+  @Benchmark
+  public Object resolvePath(RoundTrips roundTrips) throws IOException {
+    final String path = randomExistingFile();
+    return roundTrips.count(new HopsTransactionalRequestHandler(
+        HDFSOperationType.GET_FILE_INFO, path) {
+      @Override
+      public void acquireLock(TransactionLocks locks) throws IOException {
+        LockFactory lf = LockFactory.getInstance();
+        locks.add(lf.getINodeLock(INodeLockType.READ, INodeResolveType.PATH,
+            path).skipReadingQuotaAttr(true));
+      }
+
+      @Override
+      public Object performTask() throws IOException {
+        return EntityManager.find(INode.Finder.ByINodeIdFTIS, leafDirId);
+      }
+    });
+  }
+
+  /**
+   * The locking part of a listing: the target directory and all its children.
+   */
+  @Benchmark
+  public Object resolveDirectoryWithChildren(RoundTrips roundTrips)
+      throws IOException {
+    return roundTrips.count(new HopsTransactionalRequestHandler(
+        HDFSOperationType.GET_LISTING, leafDir) {
+      @Override
+      public void acquireLock(TransactionLocks locks) throws IOException {
+        LockFactory lf = LockFactory.getInstance();
+        locks.add(lf.getINodeLock(INodeLockType.READ,
+            INodeResolveType.PATH_AND_IMMEDIATE_CHILDREN, leafDir)
+            .skipReadingQuotaAttr(true));
+      }
+
+      @Override
+      public Object performTask() throws IOException {
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Adds a new file to the leaf directory and removes it again, in two
+   * transactions that lock the target and its parent like create and delete.
+   */
+  @Benchmark
+  public Object createAndDelete(RoundTrips roundTrips) throws IOException {
+    final String name = "new" + nextFileName.getAndIncrement();
+    final String path = leafDir + Path.SEPARATOR + name;
+    final int id = nextINodeId.getAndIncrement();
+    roundTrips.count(new HopsTransactionalRequestHandler(
+        HDFSOperationType.START_FILE, path) {
+      @Override
+      public void acquireLock(TransactionLocks locks) throws IOException {
+        LockFactory lf = LockFactory.getInstance();
+        locks.add(lf.getINodeLock(INodeLockType.WRITE_ON_TARGET_AND_PARENT,
+            INodeResolveType.PATH, path));
+      }
+
+      @Override
+      public Object performTask() throws IOException {
+        EntityManager.add(newFile(id, name));
+        return null;
+      }
+    });
+    return roundTrips.count(new HopsTransactionalRequestHandler(
+        HDFSOperationType.DELETE, path) {
+      @Override
+      public void acquireLock(TransactionLocks locks) throws IOException {
+        LockFactory lf = LockFactory.getInstance();
+        locks.add(lf.getINodeLock(INodeLockType.WRITE_ON_TARGET_AND_PARENT,
+            INodeResolveType.PATH, path));
+      }
+
+      @Override
+      public Object performTask() throws IOException {
+        INode inode = EntityManager.find(INode.Finder.ByINodeIdFTIS, id);
+        EntityManager.remove(inode);
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Path resolution whose first attempt fails with a transient error, to
+   * measure the cost of the retry loop of the request handler.
+   */
+  @Benchmark
+  public Object resolvePathWithRetry(RoundTrips roundTrips)
+      throws IOException {
+    final String path = randomExistingFile();
+    return roundTrips.count(new HopsTransactionalRequestHandler(
+        HDFSOperationType.GET_FILE_INFO, path) {
+      private boolean failed = false;
+
+      @Override
+      public void acquireLock(TransactionLocks locks) throws IOException {
+        LockFactory lf = LockFactory.getInstance();
+        locks.add(lf.getINodeLock(INodeLockType.READ, INodeResolveType.PATH,
+            path).skipReadingQuotaAttr(true));
+      }
+
+      @Override
+      public Object performTask() throws IOException {
+        if (!failed) {
+          failed = true;
+          throw new TransientStorageException("injected");
+        }
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Reports the database round trips of each benchmark thread as a rate next
+   * to the throughput; their ratio is the round trips per operation.
+   */
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  @State(Scope.Thread)
+  public static class RoundTrips {
+    public long roundTrips;
+
+    private InMemoryStorageConnector connector;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+      connector = (InMemoryStorageConnector) HdfsStorageFactory.getConnector();
+      roundTrips = 0;
+    }
+
+    Object count(HopsTransactionalRequestHandler handler) throws IOException {
+      long before = connector.getThreadRoundTrips();
+      Object result = handler.handle();
+      roundTrips += connector.getThreadRoundTrips() - before;
+      return result;
+    }
+  }
+}
@@ -2541,6 +2541,47 @@ public static String getClusterId(Configuration conf) {
   public static final String HOPS_EVENT_STREAMING_DB_PORT = HOPS_RM_PREFIX
           + "event-streaming.db.port";
 
+  /**
+   * Number of threads processing the events streamed from the database, the
+   * events are partitioned between them by RMNode.
+   */
+  public static final String HOPS_EVENT_STREAMING_PROCESSING_THREADS =
+          HOPS_RM_PREFIX + "event-streaming.processing-threads";
+  public static final int DEFAULT_HOPS_EVENT_STREAMING_PROCESSING_THREADS = 4;
+  /**
+   * Max number of streamed events waiting for each processing thread.
+   */
+  public static final String HOPS_EVENT_STREAMING_QUEUE_SIZE = HOPS_RM_PREFIX
+          + "event-streaming.queue-size";
+  public static final int DEFAULT_HOPS_EVENT_STREAMING_QUEUE_SIZE = 10000;
+  /**
+   * Max number of streamed events processed together.
+   */
+  public static final String HOPS_EVENT_STREAMING_BATCH_SIZE = HOPS_RM_PREFIX
+          + "event-streaming.batch-size";
+  public static final int DEFAULT_HOPS_EVENT_STREAMING_BATCH_SIZE = 100;
+
+  /**
+   * Max number of NodeManager heartbeats committed in one database
+   * transaction by the distributed RM.
+   */
+  public static final String HOPS_HB_COMMIT_BATCH_SIZE = HOPS_RM_PREFIX
+          + "heartbeat-commit.batch.size";
+  public static final int DEFAULT_HOPS_HB_COMMIT_BATCH_SIZE = 500;
+  /**
+   * Max time a heartbeat waits for other heartbeats to be committed with.
+   */
+  public static final String HOPS_HB_COMMIT_MAX_LATENCY_MS = HOPS_RM_PREFIX
+          + "heartbeat-commit.max-latency-ms";
+  public static final long DEFAULT_HOPS_HB_COMMIT_MAX_LATENCY_MS = 10;
+  /**
+   * Max number of heartbeats waiting to be committed. Beyond it the heartbeat
+   * handlers wait for the committer.
+   */
+  public static final String HOPS_HB_COMMIT_QUEUE_SIZE = HOPS_RM_PREFIX
+          + "heartbeat-commit.queue.size";
+  public static final int DEFAULT_HOPS_HB_COMMIT_QUEUE_SIZE = 10000;
+
   /**
    * The address of the RM group membership interface.
    */
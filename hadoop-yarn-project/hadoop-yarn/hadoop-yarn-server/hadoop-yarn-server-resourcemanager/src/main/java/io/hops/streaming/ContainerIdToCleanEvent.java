@@ -34,4 +34,9 @@ public ContainerId getContainerId() {
     return containerId;
   }
 
+  @Override
+  public String getRMNodeId() {
+    return containerId.getRmnodeid();
+  }
+
 }
@@ -28,7 +28,12 @@ public void createAndAddToQueue(String rmnodeId, String containerId) {
 
     ContainerIdToCleanEvent event = new ContainerIdToCleanEvent(rmnodeId,
             containerId);
-    receivedEvents.add(event);
+    try {
+      receivedEvents.put(event);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      LOG.warn("interrupted while queueing " + event.getRMNodeId(), ex);
+    }
 
   }
 }
@@ -37,4 +37,9 @@ public ContainerStatus getContainerStatus() {
     return containerStatus;
   }
 
+  @Override
+  public String getRMNodeId() {
+    return containerStatus.getRMNodeId();
+  }
+
 }
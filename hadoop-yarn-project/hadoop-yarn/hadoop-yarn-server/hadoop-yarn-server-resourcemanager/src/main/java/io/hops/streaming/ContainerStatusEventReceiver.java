@@ -30,7 +30,12 @@ public void createAndAddToQueue(String containerId, String rmnodeId,
 
     ContainerStatusEvent event = new ContainerStatusEvent(containerId, rmnodeId,
             state, diagnostics, exitStatus, uciId, pendingEventId);
-    receivedEvents.add(event);
+    try {
+      receivedEvents.put(event);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      LOG.warn("interrupted while queueing " + event.getRMNodeId(), ex);
+    }
 
   }
 }
@@ -31,4 +31,9 @@ public Container getContainer() {
     return container;
   }
 
+  @Override
+  public String getRMNodeId() {
+    return container.getNodeId();
+  }
+
 }
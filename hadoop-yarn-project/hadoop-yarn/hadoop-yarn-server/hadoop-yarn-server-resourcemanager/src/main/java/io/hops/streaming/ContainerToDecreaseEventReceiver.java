@@ -15,14 +15,25 @@
  */
 package io.hops.streaming;
 
+import static io.hops.streaming.DBEvent.receivedEvents;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 
 public class ContainerToDecreaseEventReceiver {
 
+  private static final Log LOG = LogFactory.getLog(
+          ContainerToDecreaseEventReceiver.class);
+
     public void createAndAddToQueue(String containerId, String NodeId, String httpAddress, int priority, long memSize,
       int virtualCores, int gpus, int version) {
 
       ContainerToDecreaseEvent event = new ContainerToDecreaseEvent(containerId, NodeId, httpAddress, priority, memSize,
           virtualCores, gpus, version);
-
+      try {
+        receivedEvents.put(event);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        LOG.warn("interrupted while queueing " + event.getRMNodeId(), ex);
+      }
   }
 }
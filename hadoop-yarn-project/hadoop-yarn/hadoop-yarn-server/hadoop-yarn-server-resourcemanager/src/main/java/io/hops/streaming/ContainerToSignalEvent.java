@@ -30,4 +30,9 @@ public ContainerToSignal getContainerToSignal() {
     return containerToSignal;
   }
 
+  @Override
+  public String getRMNodeId() {
+    return containerToSignal.getRmnodeid();
+  }
+
 }
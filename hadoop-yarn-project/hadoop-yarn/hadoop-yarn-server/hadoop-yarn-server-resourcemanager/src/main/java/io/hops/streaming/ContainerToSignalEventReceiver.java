@@ -16,13 +16,23 @@
 package io.hops.streaming;
 
 import static io.hops.streaming.DBEvent.receivedEvents;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 
 public class ContainerToSignalEventReceiver {
 
+  private static final Log LOG = LogFactory.getLog(
+          ContainerToSignalEventReceiver.class);
+
     public void createAndAddToQueue(String rmnodeId, String containerId, String command) {
 
     ContainerToSignalEvent event = new ContainerToSignalEvent(rmnodeId, containerId, command);
-    receivedEvents.add(event);
+    try {
+      receivedEvents.put(event);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      LOG.warn("interrupted while queueing " + event.getRMNodeId(), ex);
+    }
 
   }
 }
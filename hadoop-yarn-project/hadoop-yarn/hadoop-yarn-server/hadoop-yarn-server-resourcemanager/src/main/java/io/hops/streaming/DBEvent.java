@@ -20,6 +20,18 @@
 
 public interface DBEvent {
 
+  /**
+   * Max number of received events waiting to be processed. The receivers
+   * block when it is reached, which slows down the event API instead of
+   * buffering the events without bound.
+   */
+  public static final int RECEIVED_EVENTS_CAPACITY = 100000;
+
   public static final BlockingQueue<DBEvent> receivedEvents
-          = new LinkedBlockingQueue<>();
+          = new LinkedBlockingQueue<>(RECEIVED_EVENTS_CAPACITY);
+
+  /**
+   * @return the id of the RMNode the event is about
+   */
+  String getRMNodeId();
 }
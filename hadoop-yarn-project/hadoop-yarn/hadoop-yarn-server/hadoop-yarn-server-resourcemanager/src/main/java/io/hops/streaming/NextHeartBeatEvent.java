@@ -33,4 +33,9 @@ public NextHeartbeat getNextHeartbeat() {
     return nextHeartbeat;
   }
 
+  @Override
+  public String getRMNodeId() {
+    return nextHeartbeat.getRmnodeid();
+  }
+
 }
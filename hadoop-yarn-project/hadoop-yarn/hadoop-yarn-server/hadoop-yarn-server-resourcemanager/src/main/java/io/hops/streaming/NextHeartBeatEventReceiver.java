@@ -27,7 +27,12 @@ public class NextHeartBeatEventReceiver {
   public void createAndAddToQueue(String rmnodeId, int nextHeartBeat) {
 
     NextHeartBeatEvent event = new NextHeartBeatEvent(rmnodeId, nextHeartBeat);
-    receivedEvents.add(event);
+    try {
+      receivedEvents.put(event);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      LOG.warn("interrupted while queueing " + event.getRMNodeId(), ex);
+    }
 
   }
 }
@@ -35,4 +35,9 @@ public PendingEvent getPendingEvent() {
     return pendingEvent;
   }
 
+  @Override
+  public String getRMNodeId() {
+    return pendingEvent.getId().getNodeId();
+  }
+
 }
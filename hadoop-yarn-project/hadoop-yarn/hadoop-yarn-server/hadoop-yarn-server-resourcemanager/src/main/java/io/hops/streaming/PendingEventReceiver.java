@@ -28,7 +28,12 @@ public void createAndAddToQueue(int id, String rmnodeId, String type,
 
     PendingEventEvent event = new PendingEventEvent(id, rmnodeId, type, status,
             contains);
-    receivedEvents.add(event);
+    try {
+      receivedEvents.put(event);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      LOG.warn("interrupted while queueing " + event.getRMNodeId(), ex);
+    }
 
   }
 }
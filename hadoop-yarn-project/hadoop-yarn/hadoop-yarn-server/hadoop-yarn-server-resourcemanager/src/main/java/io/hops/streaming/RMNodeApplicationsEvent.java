@@ -34,4 +34,9 @@ public RMNodeApplication getRmNodeApplication() {
     return rmNodeApplication;
   }
 
+  @Override
+  public String getRMNodeId() {
+    return rmNodeApplication.getRMNodeID();
+  }
+
 }
@@ -39,4 +39,9 @@ public RMNode getRmNode() {
     return rmNode;
   }
 
+  @Override
+  public String getRMNodeId() {
+    return rmNode.getNodeId();
+  }
+
 }
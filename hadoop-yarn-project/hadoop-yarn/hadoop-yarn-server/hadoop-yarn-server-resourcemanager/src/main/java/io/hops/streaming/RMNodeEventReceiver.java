@@ -31,7 +31,12 @@ public void createAndAddToQueue(String rmnodeId, String hostName,
     RMNodeEvent event = new RMNodeEvent(rmnodeId, hostName, commandPort,
             httpPort, healthReport, lastHealthReportTime, currentState,
             nodeManagerVersion, pendingEventId);
-    receivedEvents.add(event);
+    try {
+      receivedEvents.put(event);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      LOG.warn("interrupted while queueing " + event.getRMNodeId(), ex);
+    }
 
   }
 }
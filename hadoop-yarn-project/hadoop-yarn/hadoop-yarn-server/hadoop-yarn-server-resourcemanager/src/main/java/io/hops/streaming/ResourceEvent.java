@@ -33,4 +33,9 @@ public Resource getResource() {
     return resource;
   }
 
+  @Override
+  public String getRMNodeId() {
+    return resource.getId();
+  }
+
 }
@@ -28,7 +28,12 @@ public void createAndAddToQueue(String id, int memory, int virtualcores,
 
     ResourceEvent event = new ResourceEvent(id, memory, virtualcores, gpus,
             pendingEventId);
-    receivedEvents.add(event);
+    try {
+      receivedEvents.put(event);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      LOG.warn("interrupted while queueing " + event.getRMNodeId(), ex);
+    }
 
   }
 }
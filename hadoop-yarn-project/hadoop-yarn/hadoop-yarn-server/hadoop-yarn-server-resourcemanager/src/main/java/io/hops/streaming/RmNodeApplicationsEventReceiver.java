@@ -26,7 +26,12 @@ public class RmNodeApplicationsEventReceiver {
   public void createAndAddToQueue(String rmnodeId, String applicationId, String status) {
 
     RMNodeApplicationsEvent event = new RMNodeApplicationsEvent(rmnodeId, applicationId, status);
-    receivedEvents.add(event);
+    try {
+      receivedEvents.put(event);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      LOG.warn("interrupted while queueing " + event.getRMNodeId(), ex);
+    }
 
   }
 }
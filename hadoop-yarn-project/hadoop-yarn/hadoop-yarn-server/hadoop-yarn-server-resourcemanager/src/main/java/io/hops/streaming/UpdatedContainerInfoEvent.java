@@ -36,4 +36,9 @@ public UpdatedContainerInfo getUpdatedContainerInfo() {
     return updatedContainerInfo;
   }
 
+  @Override
+  public String getRMNodeId() {
+    return updatedContainerInfo.getRmnodeid();
+  }
+
 }
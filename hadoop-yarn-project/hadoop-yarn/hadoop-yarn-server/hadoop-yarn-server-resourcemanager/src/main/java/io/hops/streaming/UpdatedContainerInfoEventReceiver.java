@@ -29,7 +29,12 @@ public void createAndAddToQueue(String rmnodeId, String containerId,
 
     UpdatedContainerInfoEvent event = new UpdatedContainerInfoEvent(rmnodeId,
             containerId, updatedContainerInfoId, pendingEventId);
-    receivedEvents.add(event);
+    try {
+      receivedEvents.put(event);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      LOG.warn("interrupted while queueing " + event.getRMNodeId(), ex);
+    }
 
   }
 }
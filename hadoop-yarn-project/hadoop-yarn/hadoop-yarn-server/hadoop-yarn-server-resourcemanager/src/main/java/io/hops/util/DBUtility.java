@@ -589,6 +589,37 @@ public Object performTask() throws IOException {
     }
   }
 
+  public static void removePendingEvents(
+          final List<PendingEvent> pendingEvents) throws IOException {
+    if (pendingEvents.isEmpty()) {
+      return;
+    }
+    long start = System.currentTimeMillis();
+    AsyncLightWeightRequestHandler removePendingEvents
+            = new AsyncLightWeightRequestHandler(YARNOperationType.TEST) {
+      @Override
+      public Object performTask() throws IOException {
+        connector.beginTransaction();
+        connector.writeLock();
+
+        PendingEventDataAccess pendingEventDAO
+                = (PendingEventDataAccess) YarnAPIStorageFactory
+                .getDataAccess(PendingEventDataAccess.class);
+        for (PendingEvent pendingEvent : pendingEvents) {
+          pendingEventDAO.removePendingEvent(pendingEvent);
+        }
+        connector.commit();
+
+        return null;
+      }
+    };
+    removePendingEvents.handle();
+    long duration = System.currentTimeMillis() - start;
+    if (duration > 10) {
+      LOG.error("too long " + duration);
+    }
+  }
+
   public static boolean InitializeDB() throws IOException {
     LightWeightRequestHandler setRMDTMasterKeyHandler
             = new LightWeightRequestHandler(YARNOperationType.TEST) {
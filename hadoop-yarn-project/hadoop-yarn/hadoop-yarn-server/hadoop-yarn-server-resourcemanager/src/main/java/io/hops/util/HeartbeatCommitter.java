@@ -0,0 +1,248 @@
+/*
+ * Copyright 2016 Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.util;
+
+import io.hops.exception.StorageException;
+import io.hops.metadata.yarn.dal.util.YARNOperationType;
+import io.hops.transaction.handler.LightWeightRequestHandler;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.yarn.conf.YarnConfiguration;
+import org.apache.hadoop.yarn.server.resourcemanager.ClusterMetrics;
+
+/**
+ * Commits the heartbeats of the NodeManagers to the database in groups: the
+ * heartbeats queued while a transaction is running, or during at most
+ * {@link YarnConfiguration#HOPS_HB_COMMIT_MAX_LATENCY_MS} after the first
+ * one, are committed in a single transaction.
+ * <p/>
+ * The heartbeats are committed by a single thread in the order they are
+ * queued, so the heartbeats of a node are committed in the order they were
+ * handled.
+ * <p/>
+ * At most {@link YarnConfiguration#HOPS_HB_COMMIT_QUEUE_SIZE} heartbeats wait
+ * to be committed. Beyond it the heartbeat handlers block until the committer
+ * catches up, so a slow database slows down the heartbeats instead of filling
+ * the heap. The heartbeats carry the changes since the previous heartbeat of
+ * the node, so none of them can be dropped.
+ */
+public class HeartbeatCommitter {
+
+  private static final Log LOG = LogFactory.getLog(HeartbeatCommitter.class);
+
+  private static HeartbeatCommitter instance;
+
+  public static synchronized void init(Configuration conf) {
+    if (instance == null) {
+      instance = new HeartbeatCommitter(conf);
+    }
+  }
+
+  public static synchronized HeartbeatCommitter getInstance() {
+    if (instance == null) {
+      instance = new HeartbeatCommitter(new YarnConfiguration());
+    }
+    return instance;
+  }
+
+  private final int maxBatchSize;
+  private final long maxLatencyMs;
+  private final BlockingQueue<Entry> queue;
+
+  HeartbeatCommitter(Configuration conf) {
+    maxBatchSize = Math.max(1, conf.getInt(
+        YarnConfiguration.HOPS_HB_COMMIT_BATCH_SIZE,
+        YarnConfiguration.DEFAULT_HOPS_HB_COMMIT_BATCH_SIZE));
+    maxLatencyMs = conf.getLong(
+        YarnConfiguration.HOPS_HB_COMMIT_MAX_LATENCY_MS,
+        YarnConfiguration.DEFAULT_HOPS_HB_COMMIT_MAX_LATENCY_MS);
+    queue = new LinkedBlockingQueue<>(Math.max(1, conf.getInt(
+        YarnConfiguration.HOPS_HB_COMMIT_QUEUE_SIZE,
+        YarnConfiguration.DEFAULT_HOPS_HB_COMMIT_QUEUE_SIZE)));
+    Thread committer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        commitLoop();
+      }
+    }, "HeartbeatCommitter");
+    committer.setDaemon(true);
+    committer.start();
+  }
+
+  /**
+   * Queues a heartbeat to be committed, waiting for room in the queue if it
+   * is full.
+   *
+   * @param sync
+   *     wait for the heartbeat to be committed
+   * @throws IOException
+   *     if sync and the heartbeat could not be committed
+   */
+  void commit(ToCommitHB hb, boolean sync) throws IOException {
+    Entry entry = new Entry(hb);
+    if (!queue.offer(entry)) {
+      LOG.debug("Heartbeat commit queue full, waiting to queue the heartbeat"
+          + " of " + hb.nodeId);
+      try {
+        queue.put(entry);
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException(
+            "Interrupted while queueing the heartbeat of " + hb.nodeId);
+      }
+    }
+    if (sync) {
+      entry.await();
+    }
+  }
+
+  private void commitLoop() {
+    while (true) {
+      List<Entry> batch = new ArrayList<>();
+      try {
+        batch.add(queue.take());
+        long deadline = System.currentTimeMillis() + maxLatencyMs;
+        while (batch.size() < maxBatchSize) {
+          queue.drainTo(batch, maxBatchSize - batch.size());
+          long remaining = deadline - System.currentTimeMillis();
+          if (batch.size() >= maxBatchSize || remaining <= 0) {
+            break;
+          }
+          Entry next = queue.poll(remaining, TimeUnit.MILLISECONDS);
+          if (next == null) {
+            break;
+          }
+          batch.add(next);
+        }
+      } catch (InterruptedException ex) {
+        LOG.warn("HeartbeatCommitter interrupted, committing " + batch.size()
+            + " heartbeats before exiting");
+        commitBatch(batch);
+        return;
+      }
+      commitBatch(batch);
+    }
+  }
+
+  private void commitBatch(List<Entry> batch) {
+    if (batch.isEmpty()) {
+      return;
+    }
+    long start = System.currentTimeMillis();
+    try {
+      persist(heartbeats(batch));
+      for (Entry entry : batch) {
+        entry.done(null);
+      }
+    } catch (IOException ex) {
+      if (batch.size() == 1) {
+        LOG.error(ex, ex);
+        batch.get(0).done(ex);
+      } else {
+        // do not let a single bad heartbeat fail the heartbeats of the other
+        // nodes
+        LOG.warn("Failed to commit " + batch.size() + " heartbeats together,"
+            + " committing them one by one", ex);
+        for (Entry entry : batch) {
+          try {
+            persist(Collections.singletonList(entry.hb));
+            entry.done(null);
+          } catch (IOException e) {
+            LOG.error(e, e);
+            entry.done(e);
+          }
+        }
+      }
+    } catch (RuntimeException ex) {
+      LOG.error(ex, ex);
+      for (Entry entry : batch) {
+        entry.done(new IOException(ex));
+      }
+    }
+    long end = System.currentTimeMillis();
+    ClusterMetrics metrics = ClusterMetrics.getMetrics();
+    metrics.addHeartbeatCommit(batch.size(), end - start);
+    for (Entry entry : batch) {
+      metrics.addHeartbeatVisibilityDelay(end - entry.queued);
+    }
+  }
+
+  private static List<ToCommitHB> heartbeats(List<Entry> batch) {
+    List<ToCommitHB> heartbeats = new ArrayList<>(batch.size());
+    for (Entry entry : batch) {
+      heartbeats.add(entry.hb);
+    }
+    return heartbeats;
+  }
+
+  /**
+   * Commits the heartbeats in one transaction.
+   */
+  void persist(final List<ToCommitHB> heartbeats) throws IOException {
+    new LightWeightRequestHandler(YARNOperationType.TEST) {
+      @Override
+      public Object performTask() throws StorageException {
+        connector.beginTransaction();
+        connector.writeLock();
+        for (ToCommitHB hb : heartbeats) {
+          hb.persist();
+        }
+        connector.commit();
+        return null;
+      }
+    }.handle();
+  }
+
+  private static class Entry {
+    private final ToCommitHB hb;
+    private final long queued = System.currentTimeMillis();
+    private final CountDownLatch committed = new CountDownLatch(1);
+    private volatile IOException error;
+
+    Entry(ToCommitHB hb) {
+      this.hb = hb;
+    }
+
+    void done(IOException error) {
+      this.error = error;
+      committed.countDown();
+    }
+
+    void await() throws IOException {
+      try {
+        committed.await();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException(
+            "Interrupted while waiting for the heartbeat of " + hb.nodeId
+                + " to be committed");
+      }
+      if (error != null) {
+        throw error;
+      }
+    }
+  }
+}
@@ -36,19 +36,22 @@
 import org.apache.hadoop.yarn.server.resourcemanager.scheduler.event.NodeUpdateSchedulerEvent;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 public class RmStreamingProcessor extends StreamingReceiver {
 
-  private final ExecutorService exec;
+  // the RMNodeComps being received, per partition
+  private final List<Map<PendingEventID, RMNodeComps>> partialRMNodeComps
+          = new ArrayList<>();
 
   public RmStreamingProcessor(RMContext rmContext) {
     super(rmContext, "RM Event retriever");
-    setRetrievingRunnable(new RetrievingThread());
-    exec = Executors.newCachedThreadPool();
+    for (int i = 0; i < getNumPartitions(); i++) {
+      partialRMNodeComps.add(new HashMap<PendingEventID, RMNodeComps>());
+    }
   }
 
   private void updateRMContext(RMNode rmNode) {
@@ -75,16 +78,11 @@ private void triggerEvent(final RMNode rmNode, PendingEvent pendingEvent) {
               getId().getEventId() + " : " + pendingEvent.getId().getNodeId());
     }
 
-    // TODO Maybe we should put back Hops Global Thread pool
-    exec.submit(new Runnable() {
-      @Override
-      public void run() {
-        NetUtils.normalizeHostName(rmNode.getHostName());
-      }
-    });
-
     if (pendingEvent.getType().equals(PendingEvent.Type.NODE_ADDED)) {
       LOG.debug("HOP :: PendingEventRetrieval event NodeAdded: " + pendingEvent);
+      // warm up the resolution of the host name, it only changes when the
+      // node is added
+      NetUtils.normalizeHostName(rmNode.getHostName());
       rmContext.getDispatcher().getEventHandler().handle(
               new NodeAddedSchedulerEvent(rmNode));
     } else if (pendingEvent.getType().equals(PendingEvent.Type.NODE_REMOVED)) {
@@ -111,97 +109,94 @@ public void run() {
     }
   }
 
-  Map<PendingEventID, RMNodeComps> partialRMNodeComps = new HashMap<>();
-
-  private RMNodeComps getRMNodeComps(PendingEventID id) {
-    RMNodeComps comps = partialRMNodeComps.get(id);
+  private RMNodeComps getRMNodeComps(
+          Map<PendingEventID, RMNodeComps> partial, PendingEventID id) {
+    RMNodeComps comps = partial.get(id);
     if (comps == null) {
       comps = new RMNodeComps();
-      partialRMNodeComps.put(id, comps);
+      partial.put(id, comps);
     }
     return comps;
   }
 
-  private class RetrievingThread implements Runnable {
-
-    @Override
-    public void run() {
-      while (running) {
-        try {
-          DBEvent event = DBEvent.receivedEvents.take();
-          RMNodeComps comps;
-          if (event instanceof PendingEventEvent) {
-            PendingEvent pendingEvent = ((PendingEventEvent) event).
-                    getPendingEvent();
-            comps = getRMNodeComps(pendingEvent.getId());
-            comps.setPendingEvent(pendingEvent);
-          } else if (event instanceof io.hops.streaming.RMNodeEvent) {
-            io.hops.metadata.yarn.entity.RMNode rmNode
-                    = ((io.hops.streaming.RMNodeEvent) event).getRmNode();
-            comps = getRMNodeComps(
-                    new PendingEventID(rmNode.getPendingEventId(), rmNode.
-                            getNodeId()));
-            comps.setRMNode(rmNode);
-          } else if (event instanceof ResourceEvent) {
-            Resource resource = ((ResourceEvent) event).getResource();
-            comps = getRMNodeComps(new PendingEventID(resource.
-                    getPendingEventId(), resource.getId()));
-            comps.setResource(resource);
-          } else if (event instanceof UpdatedContainerInfoEvent) {
-            UpdatedContainerInfo uci = ((UpdatedContainerInfoEvent) event).
-                    getUpdatedContainerInfo();
-            comps = getRMNodeComps(new PendingEventID(uci.getPendingEventId(),
-                    uci.getRmnodeid()));
-            comps.addUpdatedContainerInfo(uci);
-          } else if (event instanceof ContainerStatusEvent) {
-            ContainerStatus containerStatus = ((ContainerStatusEvent) event).
-                    getContainerStatus();
-            comps = getRMNodeComps(new PendingEventID(containerStatus.
-                    getPendingEventId(), containerStatus.getRMNodeId()));
-            comps.addContainersStatus(containerStatus);
-          } else {
-            LOG.error("should not receive events of type " + event.getClass().
-                    getCanonicalName());
-            continue;
-          }
-          if (comps.isComplet()) {
-            partialRMNodeComps.remove(comps.getPendingEvent().getId());
-            if (comps != null) {
-              if (rmContext.isDistributed()) {
-
-                RMNode rmNode = null;
-
-                try {
-                  rmNode = DBUtility.processHopRMNodeCompsForScheduler(comps,
-                          rmContext);
-                  LOG.debug("HOP :: RetrievingThread RMNode: " + rmNode);
-
-                  if (rmNode != null) {
-                    updateRMContext(rmNode);
-                    triggerEvent(rmNode, comps.getPendingEvent());
-                  }
-
-                  DBUtility.removePendingEvent(comps.getPendingEvent().getId().
-                          getNodeId(),
-                          comps.getPendingEvent().getType(),
-                          comps.getPendingEvent().getStatus(),
-                          comps.getPendingEvent().getId().getEventId(),
-                          comps.getPendingEvent().getContains());
-                } catch (InvalidProtocolBufferException ex) {
-                  LOG.error("HOP :: Error retrieving RMNode: " + ex, ex);
-                } catch (IOException ex) {
-                  LOG.error("HOP :: Error removing from DB: " + ex, ex);
-                }
-              }
-            }
-          }
-        } catch (InterruptedException ex) {
-          LOG.error(ex, ex);
+  private RMNodeComps addToRMNodeComps(
+          Map<PendingEventID, RMNodeComps> partial, DBEvent event) {
+    RMNodeComps comps;
+    if (event instanceof PendingEventEvent) {
+      PendingEvent pendingEvent = ((PendingEventEvent) event).
+              getPendingEvent();
+      comps = getRMNodeComps(partial, pendingEvent.getId());
+      comps.setPendingEvent(pendingEvent);
+    } else if (event instanceof io.hops.streaming.RMNodeEvent) {
+      io.hops.metadata.yarn.entity.RMNode rmNode
+              = ((io.hops.streaming.RMNodeEvent) event).getRmNode();
+      comps = getRMNodeComps(partial,
+              new PendingEventID(rmNode.getPendingEventId(), rmNode.
+                      getNodeId()));
+      comps.setRMNode(rmNode);
+    } else if (event instanceof ResourceEvent) {
+      Resource resource = ((ResourceEvent) event).getResource();
+      comps = getRMNodeComps(partial, new PendingEventID(resource.
+              getPendingEventId(), resource.getId()));
+      comps.setResource(resource);
+    } else if (event instanceof UpdatedContainerInfoEvent) {
+      UpdatedContainerInfo uci = ((UpdatedContainerInfoEvent) event).
+              getUpdatedContainerInfo();
+      comps = getRMNodeComps(partial, new PendingEventID(uci.
+              getPendingEventId(), uci.getRmnodeid()));
+      comps.addUpdatedContainerInfo(uci);
+    } else if (event instanceof ContainerStatusEvent) {
+      ContainerStatus containerStatus = ((ContainerStatusEvent) event).
+              getContainerStatus();
+      comps = getRMNodeComps(partial, new PendingEventID(containerStatus.
+              getPendingEventId(), containerStatus.getRMNodeId()));
+      comps.addContainersStatus(containerStatus);
+    } else {
+      LOG.error("should not receive events of type " + event.getClass().
+              getCanonicalName());
+      return null;
+    }
+    return comps;
+  }
+
+  @Override
+  protected void processEvents(int partition, List<DBEvent> events) {
+    Map<PendingEventID, RMNodeComps> partial = partialRMNodeComps.get(
+            partition);
+    List<RMNodeComps> completed = new ArrayList<>();
+    for (DBEvent event : events) {
+      RMNodeComps comps = addToRMNodeComps(partial, event);
+      if (comps != null && comps.isComplet()) {
+        partial.remove(comps.getPendingEvent().getId());
+        completed.add(comps);
+      }
+    }
+    if (completed.isEmpty() || !rmContext.isDistributed()) {
+      return;
+    }
+
+    List<PendingEvent> processed = new ArrayList<>(completed.size());
+    for (RMNodeComps comps : completed) {
+      try {
+        RMNode rmNode = DBUtility.processHopRMNodeCompsForScheduler(comps,
+                rmContext);
+        LOG.debug("HOP :: RetrievingThread RMNode: " + rmNode);
+
+        if (rmNode != null) {
+          updateRMContext(rmNode);
+          triggerEvent(rmNode, comps.getPendingEvent());
         }
+        processed.add(comps.getPendingEvent());
+      } catch (InvalidProtocolBufferException ex) {
+        LOG.error("HOP :: Error retrieving RMNode: " + ex, ex);
       }
+    }
 
-      exec.shutdown();
-      LOG.info("HOP :: RM Event retriever interrupted");
+    try {
+      // one transaction for all the pending events of the batch
+      DBUtility.removePendingEvents(processed);
+    } catch (IOException ex) {
+      LOG.error("HOP :: Error removing from DB: " + ex, ex);
     }
   }
 }
@@ -40,59 +40,62 @@
 import org.apache.hadoop.yarn.server.resourcemanager.rmnode.RMNodeImplDist;
 import org.apache.hadoop.yarn.util.ConverterUtils;
 
+import java.util.List;
+
 public class RtStreamingProcessor extends StreamingReceiver {
 
   public RtStreamingProcessor(RMContext rmContext) {
     super(rmContext, "RT Event retriever");
-    setRetrievingRunnable(new RetrievingThread());
   }
 
-  private class RetrievingThread implements Runnable {
+  @Override
+  protected void processEvents(int partition, List<DBEvent> events) {
+    if (rmContext.isLeader()) {
+      return;
+    }
+    for (DBEvent event : events) {
+      RMNode node = rmContext.getRMNodes().get(NodeId.fromString(event.
+          getRMNodeId()));
+      if (node == null) {
+        LOG.debug("HOP :: no RMNode for event on " + event.getRMNodeId());
+        continue;
+      }
+      processEvent((RMNodeImplDist) node, event);
+    }
+  }
 
-    @Override
-    public void run() {
-      while (running) {
-        if (!rmContext.isLeader()) {
-          try {
-            DBEvent event = DBEvent.receivedEvents.take();
-            if (event instanceof ContainerIdToCleanEvent) {
-              io.hops.metadata.yarn.entity.ContainerId containerId
-                      = ((ContainerIdToCleanEvent) event).getContainerId();
-              RMNode node = rmContext.getRMNodes().get(ConverterUtils.toNodeId(
-                      containerId.getRmnodeid()));
-              ((RMNodeImplDist) node).addContainersToCleanUp(ConverterUtils.
-                      toContainerId(containerId.getContainerId()));
-            } else if (event instanceof ContainerToSignalEvent) {
-              ContainerToSignal containerToSignal
-                  = ((ContainerToSignalEvent) event).getContainerToSignal();
-              RMNode node = rmContext.getRMNodes().get(NodeId.fromString(containerToSignal.getRmnodeid()));
-              ((RMNodeImplDist) node).addContainersToSignal(SignalContainerRequest.newInstance(ContainerId.fromString(
-                  containerToSignal.getContainerId()), SignalContainerCommand.valueOf(containerToSignal.getCommand())));
-            } else if (event instanceof ContainerToDecreaseEvent) {
-              io.hops.metadata.yarn.entity.Container container = ((ContainerToDecreaseEvent) event).getContainer();
-              RMNode node = rmContext.getRMNodes().get(NodeId.fromString(container.getNodeId()));
-              ((RMNodeImplDist) node).addContainersToDecrease(Container.newInstance(ContainerId.fromString(
-                  container.getContainerId()), NodeId.fromString(container.getNodeId()), container.getHttpAddress(),
-                  Resource.newInstance(container.getMemSize(), container.getVirtualCores(), container.getGpus()),
-                  Priority.newInstance(container.getPriority()), null));
-            } else if (event instanceof NextHeartBeatEvent) {
-              NextHeartbeat nextHB = ((NextHeartBeatEvent) event).
-                      getNextHeartbeat();
-              RMNode node = rmContext.getRMNodes().get(ConverterUtils.toNodeId(
-                      nextHB.getRmnodeid()));
-              if (node != null) {
-                ((RMNodeImplDist) node).setNextHeartbeat(nextHB.
-                        isNextheartbeat());
-              }
-            } else if (event instanceof RMNodeApplicationsEvent) {
-              RMNodeApplication rmNodeApp = ((RMNodeApplicationsEvent) event).getRmNodeApplication();
-              RMNode node = rmContext.getRMNodes().get(NodeId.fromString(rmNodeApp.getRMNodeID()));
-              if(rmNodeApp.getStatus().equals(RMNodeApplication.RMNodeApplicationStatus.FINISHED)){
-                ((RMNodeImplDist) node).addAppToCleanUp(ApplicationId.fromString(rmNodeApp.getApplicationId()));
-              } else if (rmNodeApp.getStatus().equals(RMNodeApplication.RMNodeApplicationStatus.RUNNING)){
-                ((RMNodeImplDist) node).addToRunningApps(ApplicationId.fromString(rmNodeApp.getApplicationId()));
-              }
-            }
+  private void processEvent(RMNodeImplDist node, DBEvent event) {
+    if (event instanceof ContainerIdToCleanEvent) {
+      io.hops.metadata.yarn.entity.ContainerId containerId
+              = ((ContainerIdToCleanEvent) event).getContainerId();
+      node.addContainersToCleanUp(ConverterUtils.toContainerId(containerId.
+              getContainerId()));
+    } else if (event instanceof ContainerToSignalEvent) {
+      ContainerToSignal containerToSignal
+          = ((ContainerToSignalEvent) event).getContainerToSignal();
+      node.addContainersToSignal(SignalContainerRequest.newInstance(ContainerId.fromString(
+          containerToSignal.getContainerId()), SignalContainerCommand.valueOf(containerToSignal.getCommand())));
+    } else if (event instanceof ContainerToDecreaseEvent) {
+      io.hops.metadata.yarn.entity.Container container = ((ContainerToDecreaseEvent) event).getContainer();
+      node.addContainersToDecrease(Container.newInstance(ContainerId.fromString(
+          container.getContainerId()), NodeId.fromString(container.getNodeId()), container.getHttpAddress(),
+          Resource.newInstance(container.getMemSize(), container.getVirtualCores(), container.getGpus()),
+          Priority.newInstance(container.getPriority()), null));
+    } else if (event instanceof NextHeartBeatEvent) {
+      NextHeartbeat nextHB = ((NextHeartBeatEvent) event).
+              getNextHeartbeat();
+      node.setNextHeartbeat(nextHB.isNextheartbeat());
+    } else if (event instanceof RMNodeApplicationsEvent) {
+      RMNodeApplication rmNodeApp = ((RMNodeApplicationsEvent) event).getRmNodeApplication();
+      if(rmNodeApp.getStatus().equals(RMNodeApplication.RMNodeApplicationStatus.FINISHED)){
+        node.addAppToCleanUp(ApplicationId.fromString(rmNodeApp.getApplicationId()));
+      } else if (rmNodeApp.getStatus().equals(RMNodeApplication.RMNodeApplicationStatus.RUNNING)){
+        node.addToRunningApps(ApplicationId.fromString(rmNodeApp.getApplicationId()));
+      }
+    } else {
+      LOG.error("should not receive events of type " + event.getClass().
+              getCanonicalName());
+    }
 //TODO if scale well
 //                            if (streamingRTComps.getCurrentNMMasterKey() != null) {
 //                                ((NMTokenSecretManagerInRMDist) rmContext.getNMTokenSecretManager())
@@ -113,12 +116,5 @@ public void run() {
 //                                ((RMContainerTokenSecretManagerDist) rmContext.getContainerTokenSecretManager())
 //                                        .setNextMasterKey(streamingRTComps.getNextRMContainerMasterKey());
 //                            }
-          } catch (InterruptedException ex) {
-            LOG.error(ex, ex);
-          }
-        }
-      }
-      LOG.info("HOP :: RT Event retriever interrupted");
-    }
   }
 }
@@ -1,37 +1,83 @@
 package io.hops.util;
 
+import io.hops.streaming.DBEvent;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.yarn.conf.YarnConfiguration;
 import org.apache.hadoop.yarn.server.resourcemanager.RMContext;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
 /**
  * Created by antonis on 8/26/16.
+ *
+ * The retrieving thread takes the events received from the database and
+ * partitions them by RMNode between the processing threads, so the events of
+ * an RMNode are processed in the order they were received. The queues of the
+ * processing threads are bounded: when the processing falls behind, the
+ * retrieving thread and then the database event receivers block.
  */
 public abstract class StreamingReceiver {
 
     protected final Log LOG = LogFactory.getLog(StreamingReceiver.class);
 
     Thread retrievingThread = null;
+    private final List<Thread> processingThreads = new ArrayList<>();
 
     protected final RMContext rmContext;
-    private Runnable retrievingRunnable;
     private final String threadName;
-    protected boolean running = false;
+    private final int maxBatchSize;
+    private final List<BlockingQueue<DBEvent>> partitions = new ArrayList<>();
+    protected volatile boolean running = false;
 
     public StreamingReceiver(RMContext rmContext, String threadName) {
         this.rmContext = rmContext;
         this.threadName = threadName;
+        Configuration conf = rmContext.getYarnConfiguration();
+        if (conf == null) {
+            conf = new YarnConfiguration();
+        }
+        int numPartitions = Math.max(1, conf.getInt(
+                YarnConfiguration.HOPS_EVENT_STREAMING_PROCESSING_THREADS,
+                YarnConfiguration.DEFAULT_HOPS_EVENT_STREAMING_PROCESSING_THREADS));
+        int queueSize = conf.getInt(
+                YarnConfiguration.HOPS_EVENT_STREAMING_QUEUE_SIZE,
+                YarnConfiguration.DEFAULT_HOPS_EVENT_STREAMING_QUEUE_SIZE);
+        this.maxBatchSize = Math.max(1, conf.getInt(
+                YarnConfiguration.HOPS_EVENT_STREAMING_BATCH_SIZE,
+                YarnConfiguration.DEFAULT_HOPS_EVENT_STREAMING_BATCH_SIZE));
+        for (int i = 0; i < numPartitions; i++) {
+            partitions.add(new LinkedBlockingQueue<DBEvent>(queueSize));
+        }
     }
 
-    protected void setRetrievingRunnable(Runnable retrievingRunnable) {
-        this.retrievingRunnable = retrievingRunnable;
+    protected int getNumPartitions() {
+        return partitions.size();
     }
 
+    /**
+     * Processes a batch of events of the given partition. The events of an
+     * RMNode are always processed by the same partition, in the order they
+     * were received.
+     */
+    protected abstract void processEvents(int partition, List<DBEvent> events);
+
     public void start() {
         if (retrievingThread == null) {
-          running = true;
+            running = true;
             LOG.debug("HOP :: Creating " + threadName);
-            retrievingThread = new Thread(retrievingRunnable);
+            for (int i = 0; i < partitions.size(); i++) {
+                Thread processingThread = new Thread(new ProcessingThread(i));
+                processingThread.setName(threadName + " processor " + i);
+                processingThread.setDaemon(true);
+                processingThreads.add(processingThread);
+                processingThread.start();
+            }
+            retrievingThread = new Thread(new RetrievingThread());
             retrievingThread.setName(threadName);
             retrievingThread.start();
         } else {
@@ -40,9 +86,67 @@ public void start() {
     }
 
     public void stop() {
-      running =false;
+        running = false;
         if (retrievingThread != null) {
             retrievingThread.interrupt();
         }
+        for (Thread processingThread : processingThreads) {
+            processingThread.interrupt();
+        }
+    }
+
+    private class RetrievingThread implements Runnable {
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    DBEvent event = DBEvent.receivedEvents.take();
+                    String rmNodeId = event.getRMNodeId();
+                    int partition = (rmNodeId.hashCode() & Integer.MAX_VALUE)
+                            % partitions.size();
+                    partitions.get(partition).put(event);
+                } catch (InterruptedException ex) {
+                    if (running) {
+                        LOG.error(ex, ex);
+                    }
+                }
+            }
+            LOG.info("HOP :: " + threadName + " interrupted");
+        }
+    }
+
+    private class ProcessingThread implements Runnable {
+
+        private final int partition;
+
+        ProcessingThread(int partition) {
+            this.partition = partition;
+        }
+
+        @Override
+        public void run() {
+            BlockingQueue<DBEvent> queue = partitions.get(partition);
+            // reused from one batch to the next
+            List<DBEvent> batch = new ArrayList<>(maxBatchSize);
+            while (running) {
+                try {
+                    batch.add(queue.take());
+                    queue.drainTo(batch, maxBatchSize - 1);
+                    processEvents(partition, batch);
+                } catch (InterruptedException ex) {
+                    if (running) {
+                        LOG.error(ex, ex);
+                    }
+                } catch (RuntimeException ex) {
+                    // do not let a bad event stop the processing of the
+                    // partition
+                    LOG.error("HOP :: Error processing " + batch.size()
+                            + " events", ex);
+                } finally {
+                    batch.clear();
+                }
+            }
+        }
     }
 }
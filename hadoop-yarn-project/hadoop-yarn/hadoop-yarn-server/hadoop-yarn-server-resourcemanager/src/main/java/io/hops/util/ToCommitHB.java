@@ -16,27 +16,34 @@
 package io.hops.util;
 
 import io.hops.exception.StorageException;
+import io.hops.metadata.yarn.dal.ContainerIdToCleanDataAccess;
 import io.hops.metadata.yarn.dal.ContainerStatusDataAccess;
+import io.hops.metadata.yarn.dal.ContainerToDecreaseDataAccess;
+import io.hops.metadata.yarn.dal.ContainerToSignalDataAccess;
 import io.hops.metadata.yarn.dal.NextHeartbeatDataAccess;
 import io.hops.metadata.yarn.dal.PendingEventDataAccess;
+import io.hops.metadata.yarn.dal.RMNodeApplicationsDataAccess;
 import io.hops.metadata.yarn.dal.RMNodeDataAccess;
 import io.hops.metadata.yarn.dal.ResourceDataAccess;
 import io.hops.metadata.yarn.dal.UpdatedContainerInfoDataAccess;
-import io.hops.metadata.yarn.dal.util.YARNOperationType;
 import io.hops.metadata.yarn.entity.ContainerStatus;
+import io.hops.metadata.yarn.entity.ContainerToSignal;
 import io.hops.metadata.yarn.entity.NextHeartbeat;
 import io.hops.metadata.yarn.entity.PendingEvent;
 import io.hops.metadata.yarn.entity.RMNode;
-import io.hops.transaction.handler.AsyncLightWeightRequestHandler;
-import io.hops.transaction.handler.LightWeightRequestHandler;
+import io.hops.metadata.yarn.entity.RMNodeApplication;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import io.hops.transaction.handler.RequestHandler;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.yarn.api.protocolrecords.SignalContainerRequest;
+import org.apache.hadoop.yarn.api.records.ApplicationId;
+import org.apache.hadoop.yarn.api.records.Container;
+import org.apache.hadoop.yarn.api.records.ContainerId;
 import org.apache.hadoop.yarn.api.records.NodeState;
 import org.apache.hadoop.yarn.api.records.Resource;
 import org.apache.hadoop.yarn.server.resourcemanager.rmnode.UpdatedContainerInfo;
@@ -59,6 +66,25 @@ public class ToCommitHB {
   RMNode rmNode = null;
   io.hops.metadata.yarn.entity.Resource rmNodeResource = null;
   NextHeartbeat nextHeartBeat = null;
+  PendingEvent pendingEvent = null;
+
+  final List<io.hops.metadata.yarn.entity.UpdatedContainerInfo> uciToRemove
+          = new ArrayList<>();
+  final List<ContainerStatus> containerStatusToRemove = new ArrayList<>();
+  final List<io.hops.metadata.yarn.entity.ContainerId> containersToCleanToAdd
+          = new ArrayList<>();
+  final List<io.hops.metadata.yarn.entity.ContainerId>
+          containersToCleanToRemove = new ArrayList<>();
+  final List<ContainerToSignal> containersToSignalToAdd = new ArrayList<>();
+  final List<ContainerToSignal> containersToSignalToRemove
+          = new ArrayList<>();
+  final List<io.hops.metadata.yarn.entity.Container> containersToDecreaseToAdd
+          = new ArrayList<>();
+  final List<io.hops.metadata.yarn.entity.Container>
+          containersToDecreaseToRemove = new ArrayList<>();
+  final List<RMNodeApplication> rmNodeApplicationsToAdd = new ArrayList<>();
+  final List<RMNodeApplication> rmNodeApplicationsToRemove
+          = new ArrayList<>();
 
   public ToCommitHB(String nodeId) {
     this.nodeId = nodeId;
@@ -137,45 +163,126 @@ public void addNextHeartBeat(boolean nextHeartBeat){
     this.nextHeartBeat = new NextHeartbeat(nodeId, nextHeartBeat);
   }
   
+  public void addContainerToClean(ContainerId containerId) {
+    containersToCleanToAdd.add(new io.hops.metadata.yarn.entity.ContainerId(
+            nodeId, containerId.toString()));
+  }
+
+  public void removeContainersToClean(Collection<ContainerId> containers) {
+    for (ContainerId cid : containers) {
+      containersToCleanToRemove.add(
+              new io.hops.metadata.yarn.entity.ContainerId(nodeId,
+                      cid.toString()));
+    }
+  }
+
+  public void addContainerToSignal(SignalContainerRequest request) {
+    containersToSignalToAdd.add(toContainerToSignal(request));
+  }
+
+  public void removeContainersToSignal(
+          Collection<SignalContainerRequest> requests) {
+    for (SignalContainerRequest request : requests) {
+      containersToSignalToRemove.add(toContainerToSignal(request));
+    }
+  }
+
+  public void addContainersToDecrease(Collection<Container> containers) {
+    for (Container container : containers) {
+      containersToDecreaseToAdd.add(toContainer(container));
+    }
+  }
+
+  public void removeContainersToDecrease(Collection<Container> containers) {
+    for (Container container : containers) {
+      containersToDecreaseToRemove.add(toContainer(container));
+    }
+  }
+
+  public void addRMNodeApplication(ApplicationId appId,
+          RMNodeApplication.RMNodeApplicationStatus status) {
+    rmNodeApplicationsToAdd.add(new RMNodeApplication(nodeId, appId.
+            toString(), status));
+  }
+
+  public void removeRMNodeApplications(Collection<ApplicationId> appIds,
+          RMNodeApplication.RMNodeApplicationStatus status) {
+    for (ApplicationId appId : appIds) {
+      rmNodeApplicationsToRemove.add(new RMNodeApplication(nodeId, appId.
+              toString(), status));
+    }
+  }
+
+  public void removeNodeUpdateQueue(List<UpdatedContainerInfo> ucis) {
+    for (UpdatedContainerInfo uci : ucis) {
+      removeContainerStatuses(uci.getUciId(),
+              uci.getNewlyLaunchedContainers());
+      removeContainerStatuses(uci.getUciId(), uci.getCompletedContainers());
+    }
+  }
+
+  private void removeContainerStatuses(int uciId,
+          List<org.apache.hadoop.yarn.api.records.ContainerStatus> statuses) {
+    if (statuses == null) {
+      return;
+    }
+    for (org.apache.hadoop.yarn.api.records.ContainerStatus containerStatus
+            : statuses) {
+      String containerId = containerStatus.getContainerId().toString();
+      uciToRemove.add(new io.hops.metadata.yarn.entity.UpdatedContainerInfo(
+              nodeId, containerId, uciId));
+      containerStatusToRemove.add(new ContainerStatus(containerId, nodeId,
+              uciId));
+    }
+  }
+
+  private ContainerToSignal toContainerToSignal(
+          SignalContainerRequest request) {
+    return new ContainerToSignal(nodeId, request.getContainerId().toString(),
+            request.getCommand().toString());
+  }
+
+  private io.hops.metadata.yarn.entity.Container toContainer(
+          Container container) {
+    return new io.hops.metadata.yarn.entity.Container(container.getId().
+            toString(), container.getNodeId().toString(),
+            container.getNodeHttpAddress(), container.getPriority().
+            getPriority(), container.getResource().getMemorySize(),
+            container.getResource().getVirtualCores(), container.getResource().
+            getGPUs(), container.getVersion());
+  }
+
+  private boolean isEmpty() {
+    return pendingEventType == null && nextHeartBeat == null
+            && containersToCleanToAdd.isEmpty()
+            && containersToCleanToRemove.isEmpty()
+            && containersToSignalToAdd.isEmpty()
+            && containersToSignalToRemove.isEmpty()
+            && containersToDecreaseToAdd.isEmpty()
+            && containersToDecreaseToRemove.isEmpty()
+            && rmNodeApplicationsToAdd.isEmpty()
+            && rmNodeApplicationsToRemove.isEmpty()
+            && uciToRemove.isEmpty();
+  }
+
+  /**
+   * Hands the state of the heartbeat over to the {@link HeartbeatCommitter}.
+   * A NODE_ADDED event is committed before returning, the other heartbeats
+   * are committed asynchronously.
+   */
   public void commit() throws IOException {
-    if (pendingEventType == null) {
+    if (isEmpty()) {
       return;
     }
-    final PendingEvent pendingEvent = new PendingEvent(nodeId, pendingEventType,
-            pendingEventStatus, pendingEventId, pendingEventContains);
-    RequestHandler handler = null;
-
-    if (pendingEvent.getType().equals(PendingEvent.Type.NODE_ADDED)) {
-      handler = new LightWeightRequestHandler(
-              YARNOperationType.TEST) {
-        @Override
-        public Object performTask() throws StorageException {
-          connector.beginTransaction();
-          connector.writeLock();
-          persistHeartbeat(pendingEvent);
-          connector.commit();
-          return null;
-        }
-      };
-    } else {
-      handler = new AsyncLightWeightRequestHandler(
-              YARNOperationType.TEST) {
-        @Override
-        public Object performTask() throws StorageException {
-          connector.beginTransaction();
-          connector.writeLock();
-          persistHeartbeat(pendingEvent);
-          connector.commit();
-          return null;
-        }
-      };
-
-    }
-
-    handler.handle();
-  }
-
-  private void persistHeartbeat(PendingEvent pendingEvent) throws StorageException {
+    if (pendingEventType != null) {
+      pendingEvent = new PendingEvent(nodeId, pendingEventType,
+              pendingEventStatus, pendingEventId, pendingEventContains);
+    }
+    HeartbeatCommitter.getInstance().commit(this,
+            PendingEvent.Type.NODE_ADDED.equals(pendingEventType));
+  }
+
+  void persist() throws StorageException {
     PendingEventDataAccess peDA = (PendingEventDataAccess) RMStorageFactory
             .getDataAccess(PendingEventDataAccess.class);
     NextHeartbeatDataAccess nextHBDA = (NextHeartbeatDataAccess) RMStorageFactory
@@ -188,11 +295,53 @@ private void persistHeartbeat(PendingEvent pendingEvent) throws StorageException
             .getDataAccess(RMNodeDataAccess.class);
     ResourceDataAccess resourceDA = (ResourceDataAccess) RMStorageFactory
             .getDataAccess(ResourceDataAccess.class);
+    ContainerIdToCleanDataAccess ctcDA = (ContainerIdToCleanDataAccess)
+            RMStorageFactory.getDataAccess(ContainerIdToCleanDataAccess.class);
+    ContainerToSignalDataAccess ctsDA = (ContainerToSignalDataAccess)
+            RMStorageFactory.getDataAccess(ContainerToSignalDataAccess.class);
+    ContainerToDecreaseDataAccess ctdDA = (ContainerToDecreaseDataAccess)
+            RMStorageFactory.getDataAccess(ContainerToDecreaseDataAccess.class);
+    RMNodeApplicationsDataAccess rmNodeAppDA = (RMNodeApplicationsDataAccess)
+            RMStorageFactory.getDataAccess(RMNodeApplicationsDataAccess.class);
+
+    // the removals were recorded before the additions of this heartbeat
+    // were made, so they are applied first
+    if (!containersToCleanToRemove.isEmpty()) {
+      ctcDA.removeAll(containersToCleanToRemove);
+    }
+    if (!containersToSignalToRemove.isEmpty()) {
+      ctsDA.removeAll(containersToSignalToRemove);
+    }
+    if (!containersToDecreaseToRemove.isEmpty()) {
+      ctdDA.removeAll(containersToDecreaseToRemove);
+    }
+    if (!rmNodeApplicationsToRemove.isEmpty()) {
+      rmNodeAppDA.removeAll(rmNodeApplicationsToRemove);
+    }
+    if (!uciToRemove.isEmpty()) {
+      uciDA.removeAll(uciToRemove);
+      contStatDA.removeAll(containerStatusToRemove);
+    }
 
-    peDA.add(pendingEvent);
+    if (!containersToCleanToAdd.isEmpty()) {
+      ctcDA.addAll(containersToCleanToAdd);
+    }
+    if (!containersToSignalToAdd.isEmpty()) {
+      ctsDA.addAll(containersToSignalToAdd);
+    }
+    if (!containersToDecreaseToAdd.isEmpty()) {
+      ctdDA.addAll(containersToDecreaseToAdd);
+    }
+    if (!rmNodeApplicationsToAdd.isEmpty()) {
+      rmNodeAppDA.addAll(rmNodeApplicationsToAdd);
+    }
+
+    if (pendingEvent != null) {
+      peDA.add(pendingEvent);
 
-    if (pendingEvent.getType().equals(PendingEvent.Type.NODE_ADDED)) {
-      nextHBDA.update(new NextHeartbeat(nodeId, true));
+      if (pendingEvent.getType().equals(PendingEvent.Type.NODE_ADDED)) {
+        nextHBDA.update(new NextHeartbeat(nodeId, true));
+      }
     }
 
     if (!uciToAdd.isEmpty()) {
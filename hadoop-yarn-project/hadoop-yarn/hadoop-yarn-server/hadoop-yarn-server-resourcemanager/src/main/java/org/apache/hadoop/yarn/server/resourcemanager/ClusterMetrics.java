@@ -48,6 +48,9 @@ public class ClusterMetrics {
   @Metric("# of Shutdown NMs") MutableGaugeInt numShutdownNMs;
   @Metric("AM container launch delay") MutableRate aMLaunchDelay;
   @Metric("AM register delay") MutableRate aMRegisterDelay;
+  @Metric("# of heartbeats per commit") MutableRate hbCommitBatchSize;
+  @Metric("Heartbeat commit latency") MutableRate hbCommitLatency;
+  @Metric("Heartbeat to commit delay") MutableRate hbVisibilityDelay;
 
   private static final MetricsInfo RECORD_INFO = info("ClusterMetrics",
   "Metrics for the Yarn Cluster");
@@ -190,4 +193,13 @@ public void addAMRegisterDelay(long delay) {
     aMRegisterDelay.add(delay);
   }
 
+  public void addHeartbeatCommit(int batchSize, long latency) {
+    hbCommitBatchSize.add(batchSize);
+    hbCommitLatency.add(latency);
+  }
+
+  public void addHeartbeatVisibilityDelay(long delay) {
+    hbVisibilityDelay.add(delay);
+  }
+
 }
@@ -240,6 +240,9 @@ protected void serviceInit(Configuration conf) throws Exception {
     this.rmContext.setIsDistributed(conf.getBoolean(
             YarnConfiguration.DISTRIBUTED_RM,
             YarnConfiguration.DEFAULT_DISTRIBUTED_RM));
+    if (rmContext.isDistributed()) {
+      HeartbeatCommitter.init(conf);
+    }
     
     this.configurationProvider =
         ConfigurationProviderFactory.getConfigurationProvider(conf);
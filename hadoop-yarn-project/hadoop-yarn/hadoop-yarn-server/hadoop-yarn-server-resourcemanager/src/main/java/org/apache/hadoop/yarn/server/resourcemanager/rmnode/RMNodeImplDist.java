@@ -19,7 +19,6 @@
 
 import io.hops.metadata.yarn.entity.PendingEvent;
 import io.hops.metadata.yarn.entity.RMNodeApplication;
-import io.hops.util.DBUtility;
 import io.hops.util.ToCommitHB;
 import java.io.IOException;
 import java.util.*;
@@ -257,34 +256,15 @@ public void updateNodeHeartbeatResponseForCleanup(
       response.addContainersToBeRemovedFromNM(
               new ArrayList<ContainerId>(this.containersToBeRemovedFromNM));
       response.addAllContainersToSignal(this.containersToSignal);
-      // We need to make a deep copy of containersToClean and finishedApplications
-      // since DBUtility is async and we get ConcurrentModificationException
-      Set<ContainerId> copyContainersToClean = new HashSet<>(this.containersToClean.size());
-      for (ContainerId cid : this.containersToClean) {
-        copyContainersToClean.add(ContainerId.newContainerId(cid.getApplicationAttemptId(),
-                cid.getContainerId()));
-      }
-      Set<SignalContainerRequest> copyContainersToSignal = new HashSet<>(this.containersToSignal.size());
-      for (SignalContainerRequest signalContainerRequest : this.containersToSignal) {
-        copyContainersToSignal.add(SignalContainerRequest.newInstance(signalContainerRequest.getContainerId(),
-            signalContainerRequest.getCommand()));
-      }
-      DBUtility.removeContainersToClean(copyContainersToClean, this.nodeId);
-      DBUtility.removeContainersToSignal(copyContainersToSignal, this.nodeId);
-      
-      List<ApplicationId> copyFinishedApplications = new ArrayList<>(this.finishedApplications.size());
-      for (ApplicationId appId : this.finishedApplications) {
-        copyFinishedApplications.add(ApplicationId.newInstance(appId.getClusterTimestamp(),
-                appId.getId()));
-      }
-      DBUtility.removeRMNodeApplications(copyFinishedApplications, this.nodeId,
+      // committed with the status update of this heartbeat
+      toCommit.removeContainersToClean(this.containersToClean);
+      toCommit.removeContainersToSignal(this.containersToSignal);
+      toCommit.removeRMNodeApplications(this.finishedApplications,
           RMNodeApplication.RMNodeApplicationStatus.FINISHED);
       this.containersToClean.clear();
       this.containersToSignal.clear();
       this.finishedApplications.clear();
       this.containersToBeRemovedFromNM.clear();
-    } catch (IOException ex) {
-      LOG.error(ex, ex);
     } finally {
       this.writeLock.unlock();
     }
@@ -297,11 +277,7 @@ public void updateNodeHeartbeatResponseForContainersDecreasing(
     
     try {
       response.addAllContainersToDecrease(toBeDecreasedContainers.values());
-      try{
-        DBUtility.removeContainersToDecrease(toBeDecreasedContainers.values());
-      }catch(IOException ex){
-        LOG.error(ex, ex);
-      }
+      toCommit.removeContainersToDecrease(toBeDecreasedContainers.values());
       toBeDecreasedContainers.clear();
     } finally {
       this.writeLock.unlock();
@@ -320,21 +296,16 @@ protected void handleRunningAppOnNode(RMNodeImpl rmNode,
               + ", just added it to finishedApplications list for cleanup");
       rmNode.finishedApplications.add(appId);
       rmNode.runningApplications.remove(appId);
-      try {
-        DBUtility.addRMNodeApplication(appId, rmNode.nodeId, RMNodeApplication.RMNodeApplicationStatus.FINISHED);
-        DBUtility.removeRMNodeApplication(appId, rmNode.nodeId, RMNodeApplication.RMNodeApplicationStatus.RUNNING);
-      } catch (IOException ex) {
-        LOG.error(ex, ex);
-      }
+      toCommit.addRMNodeApplication(appId,
+          RMNodeApplication.RMNodeApplicationStatus.FINISHED);
+      toCommit.removeRMNodeApplications(Collections.singletonList(appId),
+          RMNodeApplication.RMNodeApplicationStatus.RUNNING);
       return;
     }
 
     rmNode.runningApplications.add(appId);
-    try {
-      DBUtility.addRMNodeApplication(appId, rmNode.nodeId, RMNodeApplication.RMNodeApplicationStatus.RUNNING);
-    } catch (IOException ex) {
-      LOG.error(ex, ex);
-    }
+    toCommit.addRMNodeApplication(appId,
+        RMNodeApplication.RMNodeApplicationStatus.RUNNING);
     context.getDispatcher().getEventHandler()
             .handle(new RMAppRunningOnNodeEvent(appId, nodeId));
   }
@@ -345,24 +316,18 @@ protected void cleanUpAppTransitionInternal(RMNodeImpl rmNode,
     ApplicationId appId = ((RMNodeCleanAppEvent) event).getAppId();
     rmNode.finishedApplications.add(appId);
     rmNode.runningApplications.remove(appId);
-    try {
-      DBUtility.addRMNodeApplication(appId, rmNode.nodeId, RMNodeApplication.RMNodeApplicationStatus.FINISHED);
-      DBUtility.removeRMNodeApplication(appId, rmNode.nodeId, RMNodeApplication.RMNodeApplicationStatus.RUNNING);
-    } catch (IOException ex) {
-      LOG.error(ex, ex);
-  }
+    toCommit.addRMNodeApplication(appId,
+        RMNodeApplication.RMNodeApplicationStatus.FINISHED);
+    toCommit.removeRMNodeApplications(Collections.singletonList(appId),
+        RMNodeApplication.RMNodeApplicationStatus.RUNNING);
   }
 
   protected void cleanUpContainerTransitionInternal(RMNodeImpl rmNode,
           RMNodeEvent event) {
     rmNode.containersToClean.add(((RMNodeCleanContainerEvent) event).
             getContainerId());
-    try {
-      DBUtility.addContainerToClean(((RMNodeCleanContainerEvent) event).
-              getContainerId(), rmNode.getNodeID());
-    } catch (IOException ex) {
-      LOG.error(ex, ex);
-  }
+    toCommit.addContainerToClean(((RMNodeCleanContainerEvent) event).
+            getContainerId());
   }
 
   @Override
@@ -374,9 +339,13 @@ protected List<UpdatedContainerInfo> pullContainerUpdatesInternal() {
       while ((containerInfo = nodeUpdateQueue.poll()) != null) {
         latestContainerInfoList.add(containerInfo);
       }
-      DBUtility.removeUCI(latestContainerInfoList, this.nodeId.toString());
       this.nextHeartBeat = true;
-      DBUtility.addNextHB(this.nextHeartBeat, this.nodeId.toString());
+      // pulled by the scheduler, outside of handle(), so it is committed on
+      // its own
+      ToCommitHB pulled = new ToCommitHB(this.nodeId.toString());
+      pulled.removeNodeUpdateQueue(latestContainerInfoList);
+      pulled.addNextHeartBeat(this.nextHeartBeat);
+      pulled.commit();
     } catch (IOException ex) {
       LOG.error(ex, ex);
     }
@@ -627,11 +596,7 @@ protected void decreaseContainersInt(RMNodeImpl rmNode, RMNodeDecreaseContainerE
     for (Container c : de.getToBeDecreasedContainers()) {
       rmNode.toBeDecreasedContainers.put(c.getId(), c);
     }
-    try{
-      DBUtility.addContainersToDecrease(de.getToBeDecreasedContainers());
-    }catch(IOException ex){
-      LOG.error(ex, ex);
-    }
+    toCommit.addContainersToDecrease(de.getToBeDecreasedContainers());
   }
   
   @Override
@@ -735,11 +700,8 @@ protected NodeState statusUpdateWhenUnHealthyTransitionInternal(
 
   @Override
   protected void signalContainerInt(RMNodeImpl rmNode, RMNodeEvent event) {
-    try{
-      DBUtility.addContainerToSignal(((RMNodeSignalContainerEvent) event).getSignalRequest(), this.nodeId);
-    }catch(IOException ex){
-      LOG.error(ex, ex);
-    }
+    toCommit.addContainerToSignal(((RMNodeSignalContainerEvent) event).
+        getSignalRequest());
     rmNode.containersToSignal.add(((RMNodeSignalContainerEvent) event).getSignalRequest());
   }
       
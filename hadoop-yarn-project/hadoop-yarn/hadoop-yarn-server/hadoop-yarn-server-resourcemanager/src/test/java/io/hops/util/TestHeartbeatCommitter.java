@@ -0,0 +1,176 @@
+/*
+ * Copyright 2016 Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.hops.util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.yarn.conf.YarnConfiguration;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TestHeartbeatCommitter {
+
+  /**
+   * Records the committed groups of heartbeats instead of writing them to
+   * the database. The commits wait for {@link #firstCommit} and the groups
+   * holding a heartbeat of {@link #BAD_NODE} fail.
+   */
+  private static class RecordingCommitter extends HeartbeatCommitter {
+    static final String BAD_NODE = "bad:1234";
+
+    final CountDownLatch committing = new CountDownLatch(1);
+    final CountDownLatch firstCommit = new CountDownLatch(1);
+    final List<List<String>> committed =
+        Collections.synchronizedList(new ArrayList<List<String>>());
+    final List<List<String>> failed =
+        Collections.synchronizedList(new ArrayList<List<String>>());
+
+    RecordingCommitter(Configuration conf) {
+      super(conf);
+    }
+
+    @Override
+    void persist(List<ToCommitHB> heartbeats) throws IOException {
+      committing.countDown();
+      try {
+        firstCommit.await();
+      } catch (InterruptedException ex) {
+        throw new IOException(ex);
+      }
+      List<String> nodes = new ArrayList<>();
+      for (ToCommitHB hb : heartbeats) {
+        nodes.add(hb.nodeId);
+      }
+      if (nodes.contains(BAD_NODE)) {
+        failed.add(nodes);
+        throw new IOException("Failed to commit " + nodes);
+      }
+      committed.add(nodes);
+    }
+  }
+
+  private static Configuration createConf() {
+    Configuration conf = new YarnConfiguration();
+    // commit what is queued without waiting for more
+    conf.setLong(YarnConfiguration.HOPS_HB_COMMIT_MAX_LATENCY_MS, 0);
+    return conf;
+  }
+
+  @Test(timeout = 30000)
+  public void testHeartbeatsCommittedTogether() throws Exception {
+    RecordingCommitter committer = new RecordingCommitter(createConf());
+    // the first heartbeat holds the committer while the others queue up
+    committer.commit(new ToCommitHB("node0:1234"), false);
+    committer.committing.await();
+    for (int i = 1; i <= 5; i++) {
+      committer.commit(new ToCommitHB("node" + i + ":1234"), false);
+    }
+    committer.firstCommit.countDown();
+    // the heartbeats are committed in the order they are queued
+    ToCommitHB last = new ToCommitHB("node6:1234");
+    committer.commit(last, true);
+
+    List<String> nodes = new ArrayList<>();
+    for (List<String> group : committer.committed) {
+      nodes.addAll(group);
+    }
+    assertEquals(7, nodes.size());
+    assertEquals("node0:1234", nodes.get(0));
+    assertEquals("node6:1234", nodes.get(6));
+    assertTrue("Heartbeats not committed together: " + committer.committed,
+        committer.committed.size() <= 3);
+    assertEquals(Collections.singletonList("node0:1234"),
+        committer.committed.get(0));
+    assertTrue(committer.committed.get(1).size() >= 5);
+  }
+
+  @Test(timeout = 30000)
+  public void testFailedCommitRetriedOneByOne() throws Exception {
+    RecordingCommitter committer = new RecordingCommitter(createConf());
+    committer.commit(new ToCommitHB("node0:1234"), false);
+    committer.committing.await();
+    committer.commit(new ToCommitHB("node1:1234"), false);
+    committer.commit(new ToCommitHB(RecordingCommitter.BAD_NODE), false);
+    committer.commit(new ToCommitHB("node2:1234"), false);
+    committer.firstCommit.countDown();
+
+    // the heartbeat that cannot be committed is reported to its handler
+    try {
+      committer.commit(new ToCommitHB(RecordingCommitter.BAD_NODE), true);
+      fail("The heartbeat should not be committed");
+    } catch (IOException ex) {
+      // expected
+    }
+
+    // the other heartbeats of the failed group are committed one by one
+    List<String> nodes = new ArrayList<>();
+    for (List<String> group : committer.committed) {
+      nodes.addAll(group);
+    }
+    assertEquals(Collections.singletonList("node0:1234"),
+        committer.committed.get(0));
+    assertTrue(nodes.contains("node1:1234"));
+    assertTrue(nodes.contains("node2:1234"));
+    assertFalse(nodes.contains(RecordingCommitter.BAD_NODE));
+    assertTrue(committer.failed.get(0).size() >= 3);
+  }
+
+  @Test(timeout = 30000)
+  public void testQueueIsBounded() throws Exception {
+    Configuration conf = createConf();
+    conf.setInt(YarnConfiguration.HOPS_HB_COMMIT_QUEUE_SIZE, 2);
+    final RecordingCommitter committer = new RecordingCommitter(conf);
+    // taken by the committer, the next two fill the queue
+    committer.commit(new ToCommitHB("node0:1234"), false);
+    committer.committing.await();
+    committer.commit(new ToCommitHB("node1:1234"), false);
+    committer.commit(new ToCommitHB("node2:1234"), false);
+
+    final CountDownLatch queued = new CountDownLatch(1);
+    Thread handler = new Thread() {
+      @Override
+      public void run() {
+        try {
+          committer.commit(new ToCommitHB("node3:1234"), false);
+          queued.countDown();
+        } catch (IOException ex) {
+          // the latch is not counted down
+        }
+      }
+    };
+    handler.start();
+    assertFalse("The heartbeat was queued in a full queue",
+        queued.await(500, TimeUnit.MILLISECONDS));
+
+    committer.firstCommit.countDown();
+    assertTrue(queued.await(10, TimeUnit.SECONDS));
+    committer.commit(new ToCommitHB("node4:1234"), true);
+    int count = 0;
+    for (List<String> group : committer.committed) {
+      count += group.size();
+    }
+    assertEquals(5, count);
+  }
+}
@@ -288,17 +288,22 @@ static private void generateParityFile(Configuration conf,
     FileSystem outFs = inFs;
 
     Encoder encoder = new Encoder(conf, codec);
-    FileStatus srcStat = inFs.getFileStatus(inpath);
-    long srcSize = srcStat.getLen();
-    long numBlocks = (srcSize % blockSize == 0) ? (srcSize / blockSize) :
-        ((srcSize / blockSize) + 1);
-    long numStripes = (numBlocks % codec.stripeLength == 0) ?
-        (numBlocks / codec.stripeLength) :
-        ((numBlocks / codec.stripeLength) + 1);
-    StripeReader sReader =
-        new FileStripeReader(conf, blockSize, codec, inFs, 0, inpath, srcSize);
-    encoder.encodeFile(conf, inFs, inpath, outFs, destPath, (short) metaRepl,
-        numStripes, blockSize, reporter, sReader, copyPath, copy);
+    try {
+      FileStatus srcStat = inFs.getFileStatus(inpath);
+      long srcSize = srcStat.getLen();
+      long numBlocks = (srcSize % blockSize == 0) ? (srcSize / blockSize) :
+          ((srcSize / blockSize) + 1);
+      long numStripes = (numBlocks % codec.stripeLength == 0) ?
+          (numBlocks / codec.stripeLength) :
+          ((numBlocks / codec.stripeLength) + 1);
+      StripeReader sReader = new FileStripeReader(conf, blockSize, codec,
+          inFs, 0, inpath, srcSize);
+      encoder.encodeFile(conf, inFs, inpath, outFs, destPath,
+          (short) metaRepl, numStripes, blockSize, reporter, sReader, copyPath,
+          copy);
+    } finally {
+      encoder.close();
+    }
 
     FileStatus outstat = outFs.getFileStatus(destPath);
     FileStatus inStat = inFs.getFileStatus(inpath);
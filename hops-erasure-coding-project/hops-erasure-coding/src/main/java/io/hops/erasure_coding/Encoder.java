@@ -38,25 +38,114 @@
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.zip.CRC32;
 import java.util.zip.Checksum;
 
 /**
  * Represents a generic encoder that can generate a parity file for a source
  * file.
+ * <p/>
+ * A stripe is encoded as a pipeline of three stages running in parallel:
+ * the source buffers are read by a {@link ParallelStreamReader}, coded by
+ * the calling thread and the parity buffers are written by a writer thread.
+ * At most raid.encoder.pipeline.depth buffers are queued between two stages,
+ * the buffers are reused from one stripe to the next. The writer thread
+ * exits when it has been idle for {@link #WRITER_KEEP_ALIVE_SECONDS}.
  */
 public class Encoder {
   public static final Log LOG =
       LogFactory.getLog("org.apache.hadoop.raid.Encoder");
   public static final int DEFAULT_PARALLELISM = 4;
+  public static final int DEFAULT_PIPELINE_DEPTH = 2;
+  static final long WRITER_KEEP_ALIVE_SECONDS = 60;
   protected Configuration conf;
   protected int parallelism;
+  protected int pipelineDepth;
   protected Codec codec;
   protected ErasureCode code;
   protected Random rand;
   protected int bufSize;
-  protected byte[][] writeBufs;
+  // parity buffers not being coded or written
+  private BlockingQueue<byte[][]> freeParityBufs;
+  // source buffers not being read or coded
+  private BlockingQueue<ParallelStreamReader.ReadResult> freeReadResults;
+  // writes the parity buffers of all the stripes, created on first use
+  private ThreadPoolExecutor parityWriter;
+  private StageStats stats = new StageStats();
+
+  /**
+   * Bytes processed and time spent by each stage of the encoding pipeline.
+   * The throughput of a stage is the one it would have if it never waited
+   * for the other stages.
+   */
+  public static class StageStats {
+    private final AtomicLong readBytes = new AtomicLong();
+    private final AtomicLong readNanos = new AtomicLong();
+    private final AtomicLong codeBytes = new AtomicLong();
+    private final AtomicLong codeNanos = new AtomicLong();
+    private final AtomicLong writeBytes = new AtomicLong();
+    private final AtomicLong writeNanos = new AtomicLong();
+
+    void addRead(long bytes, long nanos) {
+      readBytes.addAndGet(bytes);
+      readNanos.addAndGet(nanos);
+    }
+
+    void addCode(long bytes, long nanos) {
+      codeBytes.addAndGet(bytes);
+      codeNanos.addAndGet(nanos);
+    }
+
+    void addWrite(long bytes, long nanos) {
+      writeBytes.addAndGet(bytes);
+      writeNanos.addAndGet(nanos);
+    }
+
+    /**
+     * @return the read throughput in MB/s
+     */
+    public double getReadThroughput() {
+      return throughput(readBytes.get(), readNanos.get());
+    }
+
+    /**
+     * @return the coding throughput in MB/s of source data
+     */
+    public double getCodeThroughput() {
+      return throughput(codeBytes.get(), codeNanos.get());
+    }
+
+    /**
+     * @return the parity write throughput in MB/s
+     */
+    public double getWriteThroughput() {
+      return throughput(writeBytes.get(), writeNanos.get());
+    }
+
+    private static double throughput(long bytes, long nanos) {
+      return nanos == 0 ? 0 : (bytes / 1048576.0) / (nanos / 1e9);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("read %d bytes at %.1f MB/s, coded %d bytes at " +
+              "%.1f MB/s, wrote %d bytes at %.1f MB/s", readBytes.get(),
+          getReadThroughput(), codeBytes.get(), getCodeThroughput(),
+          writeBytes.get(), getWriteThroughput());
+    }
+  }
 
   /**
    * A class that acts as a sink for data, similar to /dev/null.
@@ -76,33 +165,80 @@ public void write(byte[] b, int off, int len) throws IOException {
     this.conf = conf;
     this.parallelism =
         conf.getInt("raid.encoder.parallelism", DEFAULT_PARALLELISM);
+    this.pipelineDepth = Math.max(1,
+        conf.getInt("raid.encoder.pipeline.depth", DEFAULT_PIPELINE_DEPTH));
     this.codec = codec;
     this.code = codec.createErasureCode(conf);
     this.rand = new Random();
     this.bufSize = conf.getInt("raid.encoder.bufsize", 1024 * 1024);
-    this.writeBufs = new byte[codec.parityLength][];
     allocateBuffers();
   }
 
   private void allocateBuffers() {
-    for (int i = 0; i < codec.parityLength; i++) {
-      writeBufs[i] = new byte[bufSize];
+    allocateParityBufs();
+    freeReadResults =
+        new LinkedBlockingQueue<ParallelStreamReader.ReadResult>();
+  }
+
+  private void allocateParityBufs() {
+    freeParityBufs = new ArrayBlockingQueue<byte[][]>(pipelineDepth);
+    for (int i = 0; i < pipelineDepth; i++) {
+      freeParityBufs.add(new byte[codec.parityLength][bufSize]);
     }
   }
 
   private void configureBuffers(long blockSize) {
+    int newBufSize = bufSize;
     if ((long) bufSize > blockSize) {
-      bufSize = (int) blockSize;
-      allocateBuffers();
+      newBufSize = (int) blockSize;
     } else if (blockSize % bufSize != 0) {
-      bufSize = (int) (blockSize / 256L); // heuristic.
-      if (bufSize == 0) {
-        bufSize = 1024;
+      newBufSize = (int) (blockSize / 256L); // heuristic.
+      if (newBufSize == 0) {
+        newBufSize = 1024;
       }
-      bufSize = Math.min(bufSize, 1024 * 1024);
+      newBufSize = Math.min(newBufSize, 1024 * 1024);
+    }
+    // keep the buffers of the previous stripes when the size does not change
+    if (newBufSize != bufSize) {
+      bufSize = newBufSize;
       allocateBuffers();
     }
   }
+
+  private ExecutorService getParityWriter() {
+    if (parityWriter == null) {
+      parityWriter = new ThreadPoolExecutor(1, 1, WRITER_KEEP_ALIVE_SECONDS,
+          TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+          new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+              Thread t = new Thread(r, "Encoder parity writer");
+              t.setDaemon(true);
+              return t;
+            }
+          });
+      // the encoders that are not closed do not keep a thread
+      parityWriter.allowCoreThreadTimeOut(true);
+    }
+    return parityWriter;
+  }
+
+  /**
+   * Stops the parity writer thread without waiting for it to be idle. The
+   * encoder can not be used afterwards.
+   */
+  public void close() {
+    if (parityWriter != null) {
+      parityWriter.shutdown();
+    }
+  }
+
+  /**
+   * @return the stats of the stripes encoded by the last call to encodeFile
+   */
+  public StageStats getStageStats() {
+    return stats;
+  }
   
   /**
    * The interface to use to generate a parity file.
@@ -123,6 +259,7 @@ public void encodeFile(Configuration jobConf, FileSystem fs, Path srcFile,
       throws IOException {
     long expectedParityBlocks = numStripes * codec.parityLength;
     long expectedParityFileSize = numStripes * blockSize * codec.parityLength;
+    stats = new StageStats();
 
     if (!parityFs.mkdirs(parityFile.getParent())) {
       throw new IOException(
@@ -172,7 +309,7 @@ public void encodeFile(Configuration jobConf, FileSystem fs, Path srcFile,
       if (tmpRepl > parityRepl) {
         parityFs.setReplication(parityFile, parityRepl);
       }
-      LOG.info("Wrote parity file " + parityFile);
+      LOG.info("Wrote parity file " + parityFile + ", " + stats);
     } finally {
       if (out != null) {
         out.close();
@@ -312,6 +449,7 @@ private void encodeFileToStream(FileSystem fs, Path sourceFile,
       }
     }
 
+    byte[] copyBuf = new byte[bufSize];
     try {
       // Loop over stripes
       int stripe = 0;
@@ -342,7 +480,7 @@ private void encodeFileToStream(FileSystem fs, Path sourceFile,
           tmpOuts[i + 1].close();
           tmpOuts[i + 1] = null;
           InputStream in = new FileInputStream(tmpFiles[i]);
-          RaidUtils.copyBytes(in, out, writeBufs[i], blockSize);
+          RaidUtils.copyBytes(in, out, copyBuf, blockSize);
           reporter.progress();
         }
         if (copy != null) {
@@ -355,7 +493,7 @@ private void encodeFileToStream(FileSystem fs, Path sourceFile,
             copyOuts[i].close();
             copyOuts[i] = null;
             InputStream in = new FileInputStream(tmpCopyFiles[i]);
-            RaidUtils.copyBytes(in, copy, writeBufs[0], blockSize);
+            RaidUtils.copyBytes(in, copy, copyBuf, blockSize);
             reporter.progress();
           }
           copy.hflush();
@@ -399,11 +537,13 @@ void encodeStripe(FileSystem fs, Path sourceFile, Path parityFile,
       Progressable reporter, boolean computeBlockChecksum, int stripe,
       Path copyPath, OutputStream[] copyOuts) throws IOException {
     configureBuffers(blockSize);
-    int boundedBufferCapacity = 1;
     ParallelStreamReader parallelReader =
         new ParallelStreamReader(reporter, blocks, bufSize, parallelism,
-            boundedBufferCapacity, blockSize);
+            pipelineDepth, blockSize, freeReadResults);
     parallelReader.start();
+    ExecutorService writer = getParityWriter();
+    AtomicReference<IOException> writeEx = new AtomicReference<>();
+    long readBytes = 0;
 
     Checksum[] sourceChecksums = null;
     Checksum[] parityChecksums = null;
@@ -423,6 +563,7 @@ void encodeStripe(FileSystem fs, Path sourceFile, Path parityFile,
         try {
           readResult = parallelReader.getReadResult();
         } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
           throw new IOException("Interrupted while waiting for read result");
         }
         // Cannot tolerate any IO errors.
@@ -431,6 +572,11 @@ void encodeStripe(FileSystem fs, Path sourceFile, Path parityFile,
           throw readEx;
         }
 
+        for (int numRead : readResult.numRead) {
+          readBytes += numRead;
+        }
+
+        // Some codes modify their inputs: use them before coding.
         if (computeBlockChecksum) {
           updateChecksums(sourceChecksums, readResult.readBufs);
         }
@@ -439,18 +585,42 @@ void encodeStripe(FileSystem fs, Path sourceFile, Path parityFile,
             copyOuts[i].write(readResult.readBufs[i], 0, readResult.numRead[i]);
           }
         }
-        code.encodeBulk(readResult.readBufs, writeBufs);
+        byte[][] parityBufs;
+        try {
+          // waits while pipelineDepth parity buffers are waiting to be written
+          parityBufs = freeParityBufs.take();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted while waiting for parity buffers");
+        }
+        long start = System.nanoTime();
+        try {
+          code.encodeBulk(readResult.readBufs, parityBufs);
+        } catch (RuntimeException e) {
+          freeParityBufs.offer(parityBufs);
+          throw e;
+        }
+        stats.addCode((long) codec.stripeLength * bufSize,
+            System.nanoTime() - start);
+        parallelReader.returnReadResult(readResult);
         reporter.progress();
 
         // Now that we have some data to write, send it to the temp files.
-        for (int i = 0; i < codec.parityLength; i++) {
-          outs[i].write(writeBufs[i], 0, bufSize);
-          if (computeBlockChecksum) {
-            parityChecksums[i].update(writeBufs[i], 0, bufSize);
-          }
-          reporter.progress();
+        writer.execute(new ParityWrite(parityBufs, freeParityBufs, outs,
+            parityChecksums, writeEx));
+        if (writeEx.get() != null) {
+          throw writeEx.get();
         }
       }
+      try {
+        waitForParityWrites();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while waiting for parity writes");
+      }
+      if (writeEx.get() != null) {
+        throw writeEx.get();
+      }
       DistributedFileSystem dfs =(DistributedFileSystem)
           (fs instanceof ErasureCodingFileSystem ?
               ((ErasureCodingFileSystem) fs).getFileSystem() : fs);
@@ -459,7 +629,81 @@ void encodeStripe(FileSystem fs, Path sourceFile, Path parityFile,
       sendChecksums(dfs, parityFile, parityChecksums, stripe,
           codec.parityLength);
     } finally {
+      // the outputs are closed by the caller, do not leave writes behind
+      try {
+        waitForParityWrites();
+      } catch (InterruptedException e) {
+        // stop the pending writes, the next stripe gets a new writer and new
+        // buffers as the stopped writes may still hold the current ones
+        writer.shutdownNow();
+        parityWriter = null;
+        allocateParityBufs();
+        Thread.currentThread().interrupt();
+      }
       parallelReader.shutdown();
+      stats.addRead(readBytes, parallelReader.readTime * 1000000L);
+    }
+  }
+
+  /**
+   * Waits for the parity buffers given to the writer to be written.
+   */
+  private void waitForParityWrites() throws InterruptedException {
+    List<byte[][]> parityBufs = new ArrayList<>(pipelineDepth);
+    try {
+      for (int i = 0; i < pipelineDepth; i++) {
+        parityBufs.add(freeParityBufs.take());
+      }
+    } finally {
+      freeParityBufs.addAll(parityBufs);
+    }
+  }
+
+  /**
+   * Writes the parity buffers of a stripe to the temp files and gives them
+   * back to the queue they were taken from. Nothing is written after a failed
+   * write. The progress is reported by the coding thread.
+   */
+  private class ParityWrite implements Runnable {
+    private final byte[][] parityBufs;
+    private final BlockingQueue<byte[][]> freeBufs;
+    private final OutputStream[] outs;
+    private final Checksum[] parityChecksums;
+    private final AtomicReference<IOException> writeEx;
+
+    ParityWrite(byte[][] parityBufs, BlockingQueue<byte[][]> freeBufs,
+        OutputStream[] outs, Checksum[] parityChecksums,
+        AtomicReference<IOException> writeEx) {
+      this.parityBufs = parityBufs;
+      this.freeBufs = freeBufs;
+      this.outs = outs;
+      this.parityChecksums = parityChecksums;
+      this.writeEx = writeEx;
+    }
+
+    @Override
+    public void run() {
+      try {
+        if (writeEx.get() != null) {
+          return;
+        }
+        int size = parityBufs[0].length;
+        long start = System.nanoTime();
+        for (int i = 0; i < parityBufs.length; i++) {
+          outs[i].write(parityBufs[i], 0, size);
+          if (parityChecksums != null) {
+            parityChecksums[i].update(parityBufs[i], 0, size);
+          }
+        }
+        stats.addWrite((long) parityBufs.length * size,
+            System.nanoTime() - start);
+      } catch (IOException e) {
+        writeEx.compareAndSet(null, e);
+      } catch (RuntimeException e) {
+        writeEx.compareAndSet(null, new IOException(e));
+      } finally {
+        freeBufs.offer(parityBufs);
+      }
     }
   }
 
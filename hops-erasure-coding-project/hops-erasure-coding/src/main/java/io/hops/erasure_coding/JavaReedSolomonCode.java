@@ -0,0 +1,235 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.hops.erasure_coding;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.io.erasurecode.ErasureCoderOptions;
+import org.apache.hadoop.io.erasurecode.rawcoder.RSRawDecoder;
+import org.apache.hadoop.io.erasurecode.rawcoder.RSRawEncoder;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Pure Java Reed-Solomon code working on whole buffers with precomputed
+ * GF(2^8) multiplication tables, through the RS raw coders of hadoop-common.
+ * <p/>
+ * The parity is the one of the ISA-L coder, so this code can replace
+ * {@link NativeReedSolomonCode} where the native library cannot be loaded.
+ * It is not compatible with {@link ReedSolomonCode}.
+ * <p/>
+ * The locations are the ones of {@link ErasureCode}: the parity first, then
+ * the data. The raw coders put the data first.
+ */
+public class JavaReedSolomonCode extends ErasureCode {
+  public static final Log LOG = LogFactory.getLog(JavaReedSolomonCode.class);
+
+  private int stripeSize;
+  private int paritySize;
+
+  private RSRawEncoder encoder;
+  private RSRawDecoder decoder;
+
+  @Deprecated
+  public JavaReedSolomonCode(int stripeSize, int paritySize) {
+    init(stripeSize, paritySize);
+  }
+
+  public JavaReedSolomonCode() {
+  }
+
+  @Override
+  public void init(Codec codec) {
+    init(codec.stripeLength, codec.parityLength);
+    LOG.info("Initialized " + JavaReedSolomonCode.class +
+        " stripeLength:" + codec.stripeLength +
+        " parityLength:" + codec.parityLength);
+  }
+
+  private void init(int stripeSize, int paritySize) {
+    this.stripeSize = stripeSize;
+    this.paritySize = paritySize;
+    ErasureCoderOptions options =
+        new ErasureCoderOptions(stripeSize, paritySize);
+    encoder = new RSRawEncoder(options);
+    decoder = new RSRawDecoder(options);
+  }
+
+  @Override
+  public void encode(int[] message, int[] parity) {
+    assert (message.length == stripeSize && parity.length == paritySize);
+    byte[][] inputs = new byte[stripeSize][1];
+    byte[][] outputs = new byte[paritySize][1];
+    for (int i = 0; i < stripeSize; i++) {
+      inputs[i][0] = (byte) message[i];
+    }
+    encodeBulk(inputs, outputs);
+    for (int i = 0; i < paritySize; i++) {
+      parity[i] = outputs[i][0] & 0x000000FF;
+    }
+  }
+
+  @Override
+  public void encodeBulk(byte[][] inputs, byte[][] outputs) {
+    assert (stripeSize == inputs.length);
+    assert (paritySize == outputs.length);
+    encoder.encode(inputs, outputs);
+  }
+
+  /**
+   * Encodes the remaining bytes of the inputs into the outputs. The inputs
+   * are consumed, the outputs are ready to be read. The buffers should all be
+   * direct or all be on heap.
+   */
+  public void encodeBulk(ByteBuffer[] inputs, ByteBuffer[] outputs) {
+    assert (stripeSize == inputs.length);
+    assert (paritySize == outputs.length);
+    encoder.encode(inputs, outputs);
+  }
+
+  @Override
+  public void decode(int[] data, int[] erasedLocations, int[] erasedValues) {
+    int[] locationsToRead = new int[stripeSize];
+    int[] locationsNotToRead =
+        new int[stripeSize + paritySize - locationsToRead.length];
+    int toRead = 0;
+    int notToRead = 0;
+    for (int loc = stripeSize + paritySize - 1; loc >= 0; loc--) {
+      if (!contains(erasedLocations, loc) && toRead < stripeSize) {
+        locationsToRead[toRead++] = loc;
+      } else if (notToRead < locationsNotToRead.length) {
+        locationsNotToRead[notToRead++] = loc;
+      }
+    }
+    decode(data, erasedLocations, erasedValues, locationsToRead,
+        locationsNotToRead);
+  }
+
+  @Override
+  public void decode(int[] data, int[] erasedLocations, int[] erasedValues,
+      int[] locationsToRead, int[] locationsNotToRead) {
+    if (erasedLocations.length == 0) {
+      return;
+    }
+    byte[][] readBufs = new byte[data.length][1];
+    byte[][] writeBufs = new byte[erasedLocations.length][1];
+    for (int i = 0; i < data.length; i++) {
+      readBufs[i][0] = (byte) data[i];
+    }
+    decodeBulk(readBufs, writeBufs, erasedLocations, locationsToRead,
+        locationsNotToRead);
+    for (int i = 0; i < erasedLocations.length; i++) {
+      erasedValues[i] = writeBufs[i][0] & 0x000000FF;
+    }
+  }
+
+  /**
+   * Only the locations to read are used: the other read buffers can hold
+   * anything.
+   */
+  @Override
+  public void decodeBulk(byte[][] readBufs, byte[][] writeBufs,
+      int[] erasedLocations, int[] locationsToRead, int[] locationsNotToRead) {
+    if (erasedLocations.length == 0) {
+      return;
+    }
+    byte[][] inputs = new byte[stripeSize + paritySize][];
+    for (int loc : locationsToRead) {
+      inputs[toRawIndex(loc)] = readBufs[loc];
+    }
+    int[] erasedIndexes = toRawIndexes(erasedLocations);
+    byte[][] outputs = new byte[writeBufs.length][];
+    for (int i = 0; i < erasedLocations.length; i++) {
+      outputs[indexOf(erasedIndexes, toRawIndex(erasedLocations[i]))] =
+          writeBufs[i];
+    }
+    decoder.decode(inputs, erasedIndexes, outputs);
+  }
+
+  /**
+   * Same as {@link #decodeBulk(byte[][], byte[][], int[], int[], int[])}
+   * on the remaining bytes of the buffers. The buffers of the locations to
+   * read are consumed, the write buffers are ready to be read. The buffers
+   * should all be direct or all be on heap.
+   */
+  public void decodeBulk(ByteBuffer[] readBufs, ByteBuffer[] writeBufs,
+      int[] erasedLocations, int[] locationsToRead) {
+    if (erasedLocations.length == 0) {
+      return;
+    }
+    ByteBuffer[] inputs = new ByteBuffer[stripeSize + paritySize];
+    for (int loc : locationsToRead) {
+      inputs[toRawIndex(loc)] = readBufs[loc];
+    }
+    int[] erasedIndexes = toRawIndexes(erasedLocations);
+    ByteBuffer[] outputs = new ByteBuffer[writeBufs.length];
+    for (int i = 0; i < erasedLocations.length; i++) {
+      outputs[indexOf(erasedIndexes, toRawIndex(erasedLocations[i]))] =
+          writeBufs[i];
+    }
+    decoder.decode(inputs, erasedIndexes, outputs);
+  }
+
+  private int toRawIndex(int location) {
+    return location < paritySize ? location + stripeSize :
+        location - paritySize;
+  }
+
+  /**
+   * The raw decoder expects the erased data units before the erased parity
+   * units, so the indexes are sorted.
+   */
+  private int[] toRawIndexes(int[] locations) {
+    int[] indexes = new int[locations.length];
+    for (int i = 0; i < locations.length; i++) {
+      indexes[i] = toRawIndex(locations[i]);
+    }
+    Arrays.sort(indexes);
+    return indexes;
+  }
+
+  private static int indexOf(int[] array, int value) {
+    for (int i = 0; i < array.length; i++) {
+      if (array[i] == value) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean contains(int[] array, int value) {
+    return indexOf(array, value) >= 0;
+  }
+
+  @Override
+  public int stripeSize() {
+    return stripeSize;
+  }
+
+  @Override
+  public int paritySize() {
+    return paritySize;
+  }
+
+  @Override
+  public int symbolSize() {
+    return 8;
+  }
+}
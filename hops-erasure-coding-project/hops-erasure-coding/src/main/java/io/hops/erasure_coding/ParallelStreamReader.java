@@ -32,6 +32,7 @@
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
@@ -48,8 +49,10 @@ public class ParallelStreamReader {
   int numThreads;
   long remainingBytesPerStream;
   int bufSize;
-  long readTime = 0;
+  volatile long readTime = 0;
   volatile boolean running = true;
+  // read results given back by the consumer, reused for the next reads
+  BlockingQueue<ReadResult> freeResults;
 
   public static class ReadResult {
     public byte[][] readBufs;
@@ -65,6 +68,17 @@ public static class ReadResult {
       }
       this.ioExceptions = new IOException[readBufs.length];
     }
+
+    boolean fits(int numStreams, int bufSize) {
+      return readBufs.length == numStreams && readBufs[0].length == bufSize;
+    }
+
+    void reset() {
+      Arrays.fill(numRead, 0);
+      synchronized (ioExceptions) {
+        Arrays.fill(ioExceptions, null);
+      }
+    }
     
     void setException(int idx, Exception e) {
       synchronized (ioExceptions) {
@@ -110,7 +124,21 @@ IOException getException() {
   public ParallelStreamReader(Progressable reporter, InputStream[] streams,
       int bufSize, int numThreads, int boundedBufferCapacity,
       long maxBytesPerStream) throws IOException {
+    this(reporter, streams, bufSize, numThreads, boundedBufferCapacity,
+        maxBytesPerStream, new LinkedBlockingQueue<ReadResult>());
+  }
+
+  /**
+   * Same as above, the read results given back with
+   * {@link #returnReadResult(ReadResult)} are put in freeResults and reused.
+   * The same freeResults can be shared by successive readers.
+   */
+  public ParallelStreamReader(Progressable reporter, InputStream[] streams,
+      int bufSize, int numThreads, int boundedBufferCapacity,
+      long maxBytesPerStream, BlockingQueue<ReadResult> freeResults)
+      throws IOException {
     this.reporter = reporter;
+    this.freeResults = freeResults;
     this.streams = new InputStream[streams.length];
     this.endOffsets = new long[streams.length];
     for (int i = 0; i < streams.length; i++) {
@@ -175,20 +203,39 @@ public ReadResult getReadResult() throws InterruptedException {
     return boundedBuffer.take();
   }
 
+  /**
+   * Gives back a read result the consumer is done with, so that its buffers
+   * are reused for the next reads.
+   */
+  public void returnReadResult(ReadResult readResult) {
+    freeResults.offer(readResult);
+  }
+
+  private ReadResult nextReadResult() {
+    ReadResult readResult;
+    while ((readResult = freeResults.poll()) != null) {
+      if (readResult.fits(streams.length, bufSize)) {
+        readResult.reset();
+        return readResult;
+      }
+    }
+    return new ReadResult(streams.length, bufSize);
+  }
+
   class MainThread extends Thread {
     public void run() {
       while (running) {
-        ReadResult readResult = new ReadResult(streams.length, bufSize);
         try {
           // Do not try to read more data if the desired amount of data has
           // been read.
           if (remainingBytesPerStream == 0) {
             return;
           }
+          ReadResult readResult = nextReadResult();
           performReads(readResult);
           // Enqueue to bounder buffer.
           boundedBuffer.put(readResult);
-          remainingBytesPerStream -= bufSize;
+          remainingBytesPerStream -= Math.min(bufSize, remainingBytesPerStream);
         } catch (InterruptedException e) {
           running = false;
         }
@@ -243,9 +290,13 @@ public void run() {
         }
         boolean eofOK = true;
         byte[] buffer = readResult.readBufs[idx];
+        int toRead = (int) Math.min(remainingBytesPerStream, buffer.length);
         int numRead = RaidUtils
-            .readTillEnd(streams[idx], buffer, eofOK, endOffsets[idx],
-                (int) Math.min(remainingBytesPerStream, buffer.length));
+            .readTillEnd(streams[idx], buffer, eofOK, endOffsets[idx], toRead);
+        if (toRead < buffer.length) {
+          // the buffer may be reused, do not leave old data after the read
+          Arrays.fill(buffer, toRead, buffer.length, (byte) 0);
+        }
         readResult.numRead[idx] = numRead;
       } catch (Exception e) {
         LOG.warn("Encountered exception in stream " + idx, e);
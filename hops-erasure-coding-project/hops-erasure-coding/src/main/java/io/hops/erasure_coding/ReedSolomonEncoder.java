@@ -65,6 +65,7 @@ private void encodeStripeParallel(InputStream[] blocks,
 
     int[] data = new int[stripeSize];
     int[] code = new int[paritySize];
+    byte[][] writeBufs = new byte[paritySize][bufSize];
 
     for (long encoded = 0; encoded < blockSize; encoded += bufSize) {
       // Read some data from each block = bufSize.
@@ -56,6 +56,7 @@ protected void encodeStripeParallel(InputStream[] blocks,
       Progressable reporter, ParallelStreamReader parallelReader)
       throws IOException {
     ParallelStreamReader.ReadResult readResult;
+    byte[] writeBuf = new byte[bufSize];
     for (long encoded = 0; encoded < blockSize; encoded += bufSize) {
       try {
         readResult = parallelReader.getReadResult();
@@ -68,11 +69,11 @@ protected void encodeStripeParallel(InputStream[] blocks,
         throw readEx;
       }
 
-      xor(readResult.readBufs, writeBufs[0]);
+      xor(readResult.readBufs, writeBuf);
       reporter.progress();
 
       // Write to output
-      outs[0].write(writeBufs[0], 0, bufSize);
+      outs[0].write(writeBuf, 0, bufSize);
       reporter.progress();
     }
   }
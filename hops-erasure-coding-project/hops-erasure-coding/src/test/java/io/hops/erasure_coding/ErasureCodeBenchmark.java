@@ -0,0 +1,169 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.hops.erasure_coding;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.erasurecode.ErasureCodeNative;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the single threaded throughput of the Reed-Solomon codes on a
+ * stripe of 10 data and 4 parity buffers, the way {@link Encoder} and
+ * {@link Decoder} call them. The time is per stripe: the encoding throughput
+ * is 10 * bufferSize bytes divided by it.
+ * <p>
+ *   mvn test -Pbenchmark -DskipTests -Dbenchmark.args="ErasureCode"
+ * <p>
+ * NativeReedSolomonCode needs the ISA-L library on java.library.path, leave
+ * it out with -p code=ReedSolomonCode,JavaReedSolomonCode otherwise.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgs = {"-Xmx2g"})
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class ErasureCodeBenchmark {
+
+  private static final int STRIPE_LENGTH = 10;
+  private static final int PARITY_LENGTH = 4;
+
+  @State(Scope.Thread)
+  public static class HeapStripe {
+    @Param({"ReedSolomonCode", "JavaReedSolomonCode",
+        "NativeReedSolomonCode"})
+    public String code;
+
+    @Param({"65536", "1048576"})
+    public int bufferSize;
+
+    ErasureCode ec;
+    byte[][] inputs;
+    byte[][] outputs;
+    byte[][] readBufs;
+    byte[][] writeBufs;
+    // two data buffers lost
+    final int[] erasedLocations = {PARITY_LENGTH, PARITY_LENGTH + 1};
+    final int[] locationsToRead = new int[STRIPE_LENGTH];
+    final int[] locationsNotToRead = new int[PARITY_LENGTH];
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+      if (code.equals("NativeReedSolomonCode")) {
+        ErasureCodeNative.checkNativeCodeLoaded();
+      }
+      JSONObject json = new JSONObject();
+      json.put("id", "bench");
+      json.put("parity_dir", "/raidbench");
+      json.put("stripe_length", STRIPE_LENGTH);
+      json.put("parity_length", PARITY_LENGTH);
+      json.put("priority", 100);
+      json.put("erasure_code", "io.hops.erasure_coding." + code);
+      ec = new Codec(json).createErasureCode(new Configuration());
+
+      Random random = new Random(0);
+      inputs = new byte[STRIPE_LENGTH][bufferSize];
+      outputs = new byte[PARITY_LENGTH][bufferSize];
+      for (byte[] input : inputs) {
+        random.nextBytes(input);
+      }
+      ec.encodeBulk(inputs, outputs);
+
+      readBufs = new byte[STRIPE_LENGTH + PARITY_LENGTH][];
+      System.arraycopy(outputs, 0, readBufs, 0, PARITY_LENGTH);
+      System.arraycopy(inputs, 0, readBufs, PARITY_LENGTH, STRIPE_LENGTH);
+      writeBufs = new byte[erasedLocations.length][bufferSize];
+      int toRead = 0;
+      int notToRead = 0;
+      for (int loc = 0; loc < STRIPE_LENGTH + PARITY_LENGTH; loc++) {
+        if (loc == erasedLocations[0] || loc == erasedLocations[1] ||
+            notToRead < PARITY_LENGTH - erasedLocations.length) {
+          locationsNotToRead[notToRead++] = loc;
+        } else {
+          locationsToRead[toRead++] = loc;
+        }
+      }
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class DirectStripe {
+    @Param({"65536", "1048576"})
+    public int bufferSize;
+
+    JavaReedSolomonCode ec;
+    ByteBuffer[] inputs;
+    ByteBuffer[] outputs;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+      ec = new JavaReedSolomonCode(STRIPE_LENGTH, PARITY_LENGTH);
+      Random random = new Random(0);
+      byte[] bytes = new byte[bufferSize];
+      inputs = new ByteBuffer[STRIPE_LENGTH];
+      outputs = new ByteBuffer[PARITY_LENGTH];
+      for (int i = 0; i < STRIPE_LENGTH; i++) {
+        random.nextBytes(bytes);
+        inputs[i] = ByteBuffer.allocateDirect(bufferSize);
+        inputs[i].put(bytes);
+      }
+      for (int i = 0; i < PARITY_LENGTH; i++) {
+        outputs[i] = ByteBuffer.allocateDirect(bufferSize);
+      }
+    }
+  }
+
+  @Benchmark
+  public byte[][] encodeBulk(HeapStripe stripe) {
+    stripe.ec.encodeBulk(stripe.inputs, stripe.outputs);
+    return stripe.outputs;
+  }
+
+  @Benchmark
+  public byte[][] decodeBulk(HeapStripe stripe) {
+    stripe.ec.decodeBulk(stripe.readBufs, stripe.writeBufs,
+        stripe.erasedLocations, stripe.locationsToRead,
+        stripe.locationsNotToRead);
+    return stripe.writeBufs;
+  }
+
+  @Benchmark
+  public ByteBuffer[] encodeDirectBuffers(DirectStripe stripe) {
+    for (ByteBuffer input : stripe.inputs) {
+      input.clear();
+    }
+    stripe.ec.encodeBulk(stripe.inputs, stripe.outputs);
+    return stripe.outputs;
+  }
+}
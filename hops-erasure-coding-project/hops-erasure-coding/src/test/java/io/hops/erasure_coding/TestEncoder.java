@@ -0,0 +1,220 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.hops.erasure_coding;
+
+import junit.framework.TestCase;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class TestEncoder extends TestCase {
+  private static final int BUF_SIZE = 1024;
+  // four buffers per block, more than the pipeline depth
+  private static final int BLOCK_SIZE = 4 * BUF_SIZE;
+  private static final Path SRC = new Path("/src");
+  private static final Path PARITY = new Path("/parity");
+
+  private final Codec codec = Util.getCodec(Util.Codecs.RS);
+
+  /**
+   * Fails once the given number of bytes was written.
+   */
+  private static class FailingOutputStream extends OutputStream {
+    private int remaining;
+
+    FailingOutputStream(int failAfter) {
+      this.remaining = failAfter;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (len > remaining) {
+        throw new IOException("Failed to write");
+      }
+      remaining -= len;
+    }
+  }
+
+  /**
+   * Blocks the writes until it is released.
+   */
+  private static class BlockingOutputStream extends OutputStream {
+    final CountDownLatch entered = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      entered.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        throw new InterruptedIOException();
+      }
+    }
+  }
+
+  private Encoder createEncoder() {
+    Configuration conf = new Configuration();
+    conf.setInt("raid.encoder.bufsize", BUF_SIZE);
+    return new Encoder(conf, codec);
+  }
+
+  private byte[][] randomStripe(long seed) {
+    byte[][] data = new byte[codec.stripeLength][];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = Util.randomBytes(seed + i, BLOCK_SIZE);
+    }
+    return data;
+  }
+
+  private static InputStream[] open(byte[][] data) {
+    InputStream[] blocks = new InputStream[data.length];
+    for (int i = 0; i < data.length; i++) {
+      blocks[i] = new ByteArrayInputStream(data[i]);
+    }
+    return blocks;
+  }
+
+  private static ByteArrayOutputStream[] createOutputs(int count) {
+    ByteArrayOutputStream[] outs = new ByteArrayOutputStream[count];
+    for (int i = 0; i < count; i++) {
+      outs[i] = new ByteArrayOutputStream();
+    }
+    return outs;
+  }
+
+  /**
+   * @return the parity blocks coded one buffer after the other
+   */
+  private byte[][] expectedParity(byte[][] data) {
+    ErasureCode code = codec.createErasureCode(new Configuration());
+    byte[][] parity = new byte[codec.parityLength][BLOCK_SIZE];
+    for (int offset = 0; offset < BLOCK_SIZE; offset += BUF_SIZE) {
+      byte[][] inputs = new byte[data.length][];
+      for (int i = 0; i < data.length; i++) {
+        inputs[i] = Arrays.copyOfRange(data[i], offset, offset + BUF_SIZE);
+      }
+      byte[][] outputs = new byte[codec.parityLength][BUF_SIZE];
+      code.encodeBulk(inputs, outputs);
+      for (int i = 0; i < outputs.length; i++) {
+        System.arraycopy(outputs[i], 0, parity[i], offset, BUF_SIZE);
+      }
+    }
+    return parity;
+  }
+
+  private void encodeAndCheck(Encoder encoder, long seed) throws IOException {
+    byte[][] data = randomStripe(seed);
+    byte[][] expected = expectedParity(data);
+    ByteArrayOutputStream[] outs = createOutputs(codec.parityLength);
+    encoder.encodeStripe(null, SRC, PARITY, open(data), BLOCK_SIZE, outs,
+        RaidUtils.NULL_PROGRESSABLE);
+    for (int i = 0; i < outs.length; i++) {
+      assertTrue("Parity block " + i + " differs",
+          Arrays.equals(expected[i], outs[i].toByteArray()));
+    }
+  }
+
+  public void testParityWrittenInOrder() throws IOException {
+    Encoder encoder = createEncoder();
+    try {
+      // the buffers are reused by the second stripe
+      encodeAndCheck(encoder, 1);
+      encodeAndCheck(encoder, 2);
+    } finally {
+      encoder.close();
+    }
+  }
+
+  public void testWriteErrorPropagated() throws IOException {
+    Encoder encoder = createEncoder();
+    try {
+      OutputStream[] outs = createOutputs(codec.parityLength);
+      outs[1] = new FailingOutputStream(BUF_SIZE);
+      try {
+        encoder.encodeStripe(null, SRC, PARITY, open(randomStripe(3)),
+            BLOCK_SIZE, outs, RaidUtils.NULL_PROGRESSABLE);
+        fail("The write error was not reported");
+      } catch (IOException e) {
+        // expected
+      }
+      // all the buffers were given back
+      encodeAndCheck(encoder, 4);
+    } finally {
+      encoder.close();
+    }
+  }
+
+  public void testInterruptedWhileWriting() throws Exception {
+    final Encoder encoder = createEncoder();
+    try {
+      final OutputStream[] outs = createOutputs(codec.parityLength);
+      final BlockingOutputStream blocking = new BlockingOutputStream();
+      outs[0] = blocking;
+      final AtomicReference<Throwable> error = new AtomicReference<>();
+      final AtomicBoolean interrupted = new AtomicBoolean();
+      Thread coder = new Thread() {
+        @Override
+        public void run() {
+          try {
+            encoder.encodeStripe(null, SRC, PARITY, open(randomStripe(5)),
+                BLOCK_SIZE, outs, RaidUtils.NULL_PROGRESSABLE);
+          } catch (Throwable t) {
+            error.set(t);
+          }
+          interrupted.set(Thread.currentThread().isInterrupted());
+        }
+      };
+      coder.start();
+      assertTrue(blocking.entered.await(10, TimeUnit.SECONDS));
+      coder.interrupt();
+      coder.join(10000);
+      assertFalse("The encoder waits for the blocked write", coder.isAlive());
+      assertTrue(error.get() instanceof IOException);
+      assertTrue(interrupted.get());
+      blocking.release.countDown();
+
+      // the next stripe gets a new writer and new buffers
+      encodeAndCheck(encoder, 6);
+    } finally {
+      encoder.close();
+    }
+  }
+}
@@ -0,0 +1,215 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.hops.erasure_coding;
+
+import junit.framework.TestCase;
+import org.apache.hadoop.io.erasurecode.ErasureCodeNative;
+import org.apache.hadoop.io.erasurecode.ErasureCoderOptions;
+import org.apache.hadoop.io.erasurecode.rawcoder.NativeRSRawErasureCoderFactory;
+import org.apache.hadoop.io.erasurecode.rawcoder.RawErasureEncoder;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class TestJavaReedSolomonCode extends TestCase {
+  final int TEST_TIMES = 100;
+  final int BUF_SIZE = 1021;
+  final Random RAND = new Random();
+
+  public void testEncodeDecodeBulk() throws Exception {
+    for (int n = 0; n < TEST_TIMES; n++) {
+      int stripeSize = RAND.nextInt(20) + 1;
+      int paritySize = RAND.nextInt(6) + 1;
+      JavaReedSolomonCode ec = new JavaReedSolomonCode(stripeSize, paritySize);
+      byte[][] data = encodedStripe(ec);
+
+      List<Integer> erasedLocations = randomErasedLocations(ec);
+      int[] erased = toArray(erasedLocations);
+      List<Integer> locationsToRead =
+          ec.locationsToReadForDecode(erasedLocations);
+      byte[][] readBufs = new byte[data.length][];
+      for (int i = 0; i < data.length; i++) {
+        readBufs[i] = erasedLocations.contains(i) ? new byte[BUF_SIZE] :
+            data[i];
+      }
+      byte[][] writeBufs = new byte[erased.length][BUF_SIZE];
+      ec.decodeBulk(readBufs, writeBufs, erased, toArray(locationsToRead),
+          locationsNotToRead(ec, locationsToRead));
+      for (int i = 0; i < erased.length; i++) {
+        assertTrue("Location " + erased[i] + " not recovered",
+            Arrays.equals(data[erased[i]], writeBufs[i]));
+      }
+    }
+  }
+
+  public void testDirectBuffers() throws Exception {
+    int stripeSize = 10;
+    int paritySize = 4;
+    JavaReedSolomonCode ec = new JavaReedSolomonCode(stripeSize, paritySize);
+    for (int n = 0; n < TEST_TIMES; n++) {
+      byte[][] data = encodedStripe(ec);
+
+      ByteBuffer[] inputs = new ByteBuffer[stripeSize];
+      ByteBuffer[] outputs = new ByteBuffer[paritySize];
+      for (int i = 0; i < stripeSize; i++) {
+        inputs[i] = toDirect(data[i + paritySize]);
+      }
+      for (int i = 0; i < paritySize; i++) {
+        outputs[i] = ByteBuffer.allocateDirect(BUF_SIZE);
+      }
+      ec.encodeBulk(inputs, outputs);
+      for (int i = 0; i < paritySize; i++) {
+        assertEquals(toDirect(data[i]), outputs[i]);
+      }
+
+      List<Integer> erasedLocations = randomErasedLocations(ec);
+      int[] erased = toArray(erasedLocations);
+      List<Integer> locationsToRead =
+          ec.locationsToReadForDecode(erasedLocations);
+      ByteBuffer[] readBufs = new ByteBuffer[data.length];
+      for (int loc : locationsToRead) {
+        readBufs[loc] = toDirect(data[loc]);
+      }
+      ByteBuffer[] writeBufs = new ByteBuffer[erased.length];
+      for (int i = 0; i < erased.length; i++) {
+        writeBufs[i] = ByteBuffer.allocateDirect(BUF_SIZE);
+      }
+      ec.decodeBulk(readBufs, writeBufs, erased, toArray(locationsToRead));
+      for (int i = 0; i < erased.length; i++) {
+        assertEquals("Location " + erased[i] + " not recovered",
+            toDirect(data[erased[i]]), writeBufs[i]);
+      }
+    }
+  }
+
+  public void testEncodeDecodeSymbols() {
+    int stripeSize = 10;
+    int paritySize = 4;
+    JavaReedSolomonCode ec = new JavaReedSolomonCode(stripeSize, paritySize);
+    for (int n = 0; n < TEST_TIMES; n++) {
+      int[] message = new int[stripeSize];
+      for (int i = 0; i < stripeSize; i++) {
+        message[i] = RAND.nextInt(256);
+      }
+      int[] parity = new int[paritySize];
+      ec.encode(message, parity);
+
+      int[] data = new int[stripeSize + paritySize];
+      System.arraycopy(parity, 0, data, 0, paritySize);
+      System.arraycopy(message, 0, data, paritySize, stripeSize);
+      int[] copy = data.clone();
+      int[] erased = toArray(randomErasedLocations(ec));
+      for (int loc : erased) {
+        data[loc] = 0;
+      }
+      int[] erasedValues = new int[erased.length];
+      ec.decode(data, erased, erasedValues);
+      for (int i = 0; i < erased.length; i++) {
+        assertEquals(copy[erased[i]], erasedValues[i]);
+      }
+    }
+  }
+
+  public void testSameParityAsNativeCode() {
+    if (!ErasureCodeNative.isNativeCodeLoaded()) {
+      return;
+    }
+    int stripeSize = 10;
+    int paritySize = 4;
+    JavaReedSolomonCode ec = new JavaReedSolomonCode(stripeSize, paritySize);
+    RawErasureEncoder nativeEncoder = new NativeRSRawErasureCoderFactory()
+        .createEncoder(new ErasureCoderOptions(stripeSize, paritySize));
+    try {
+      byte[][] data = encodedStripe(ec);
+      ByteBuffer[] inputs = new ByteBuffer[stripeSize];
+      ByteBuffer[] outputs = new ByteBuffer[paritySize];
+      for (int i = 0; i < stripeSize; i++) {
+        inputs[i] = toDirect(data[i + paritySize]);
+      }
+      for (int i = 0; i < paritySize; i++) {
+        outputs[i] = ByteBuffer.allocateDirect(BUF_SIZE);
+      }
+      nativeEncoder.encode(inputs, outputs);
+      for (int i = 0; i < paritySize; i++) {
+        assertEquals(toDirect(data[i]), outputs[i]);
+      }
+    } finally {
+      nativeEncoder.release();
+    }
+  }
+
+  private byte[][] encodedStripe(JavaReedSolomonCode ec) {
+    int stripeSize = ec.stripeSize();
+    int paritySize = ec.paritySize();
+    byte[][] inputs = new byte[stripeSize][BUF_SIZE];
+    byte[][] outputs = new byte[paritySize][BUF_SIZE];
+    for (int i = 0; i < stripeSize; i++) {
+      RAND.nextBytes(inputs[i]);
+    }
+    ec.encodeBulk(inputs, outputs);
+    byte[][] data = new byte[stripeSize + paritySize][];
+    System.arraycopy(outputs, 0, data, 0, paritySize);
+    System.arraycopy(inputs, 0, data, paritySize, stripeSize);
+    return data;
+  }
+
+  private List<Integer> randomErasedLocations(ErasureCode ec) {
+    List<Integer> locations = new ArrayList<>();
+    for (int i = 0; i < ec.stripeSize() + ec.paritySize(); i++) {
+      locations.add(i);
+    }
+    Collections.shuffle(locations, RAND);
+    List<Integer> erased =
+        new ArrayList<>(locations.subList(0, RAND.nextInt(ec.paritySize()) + 1));
+    Collections.sort(erased);
+    return erased;
+  }
+
+  private int[] locationsNotToRead(ErasureCode ec,
+      List<Integer> locationsToRead) {
+    int[] locations =
+        new int[ec.stripeSize() + ec.paritySize() - locationsToRead.size()];
+    int i = 0;
+    for (int loc = 0; loc < ec.stripeSize() + ec.paritySize(); loc++) {
+      if (!locationsToRead.contains(loc)) {
+        locations[i++] = loc;
+      }
+    }
+    return locations;
+  }
+
+  private static int[] toArray(List<Integer> list) {
+    int[] array = new int[list.size()];
+    for (int i = 0; i < array.length; i++) {
+      array[i] = list.get(i);
+    }
+    return array;
+  }
+
+  private static ByteBuffer toDirect(byte[] bytes) {
+    ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+    buffer.put(bytes);
+    buffer.flip();
+    return buffer;
+  }
+}
@@ -22,8 +22,12 @@
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
 
 public class TestParallelReader extends TestCase {
   public static final Log LOG = LogFactory.getLog(TestParallelReader.class);
@@ -105,4 +109,42 @@ public void testParallelism() throws IOException, InterruptedException {
 
     LOG.info("testParallelism finished");
   }
+
+  public void testReadResultsAreReused()
+      throws IOException, InterruptedException {
+    int bufSize = 10;
+    int numStreams = 3;
+    InputStream[] streams = new InputStream[numStreams];
+    for (int i = 0; i < streams.length; i++) {
+      streams[i] = new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5, 6, 7});
+    }
+    BlockingQueue<ParallelStreamReader.ReadResult> freeResults =
+        new LinkedBlockingQueue<>();
+    ParallelStreamReader.ReadResult used =
+        new ParallelStreamReader.ReadResult(numStreams, bufSize);
+    for (byte[] buf : used.readBufs) {
+      Arrays.fill(buf, (byte) -1);
+    }
+    freeResults.add(used);
+
+    // read less than a buffer, the rest of the buffer must not keep old data
+    ParallelStreamReader parallelReader =
+        new ParallelStreamReader(RaidUtils.NULL_PROGRESSABLE, streams, bufSize,
+            numStreams, 1, 5, freeResults);
+    try {
+      parallelReader.start();
+      ParallelStreamReader.ReadResult readResult =
+          parallelReader.getReadResult();
+      assertSame(used, readResult);
+      for (int i = 0; i < numStreams; i++) {
+        assertEquals(5, readResult.numRead[i]);
+        assertTrue(Arrays.equals(new byte[]{1, 2, 3, 4, 5, 0, 0, 0, 0, 0},
+            readResult.readBufs[i]));
+      }
+      parallelReader.returnReadResult(readResult);
+      assertSame(used, freeResults.peek());
+    } finally {
+      parallelReader.shutdown();
+    }
+  }
 }